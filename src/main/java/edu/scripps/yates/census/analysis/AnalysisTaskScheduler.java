@@ -0,0 +1,261 @@
+package edu.scripps.yates.census.analysis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a graph of tasks in which each task depends on the tasks that produce
+ * its input. A task is started as soon as all its dependencies are finished,
+ * so independent tasks run concurrently, up to a maximum number of tasks at
+ * the same time.<br>
+ * Each task can have a timeout, counted from the moment the task starts, after
+ * which it is cancelled and the whole run fails.
+ *
+ * @author salvador
+ *
+ */
+public class AnalysisTaskScheduler {
+	private final static Logger log = Logger.getLogger(AnalysisTaskScheduler.class);
+	private static final AtomicInteger threadCount = new AtomicInteger();
+	private final int parallelism;
+	private final List<Task<?>> tasks = new ArrayList<Task<?>>();
+
+	/**
+	 * A task of the graph
+	 *
+	 * @param <T>
+	 *            type of the result of the task
+	 */
+	public static class Task<T> {
+		private final String name;
+		private final long timeout;
+		private final Callable<T> callable;
+		private final List<Task<?>> dependencies;
+		private volatile T result;
+		private volatile boolean finished;
+
+		private Task(String name, long timeout, Callable<T> callable, List<Task<?>> dependencies) {
+			this.name = name;
+			this.timeout = timeout;
+			this.callable = callable;
+			this.dependencies = dependencies;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 *
+		 * @return the result of the task
+		 * @throws IllegalStateException
+		 *             if the task is not finished
+		 */
+		public T getResult() {
+			if (!finished) {
+				throw new IllegalStateException("Task '" + name + "' is not finished");
+			}
+			return result;
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+
+		private boolean isReady() {
+			for (final Task<?> dependency : dependencies) {
+				if (!dependency.finished) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Runs the task, starting its timeout
+		 *
+		 * @param watchdog
+		 * @param future
+		 *            the future of the task, to be cancelled at the timeout
+		 * @return
+		 * @throws Exception
+		 */
+		private Task<T> call(ScheduledExecutorService watchdog, AtomicReference<Future<Task<?>>> future)
+				throws Exception {
+			ScheduledFuture<?> timeoutFuture = null;
+			if (timeout > 0) {
+				final Thread thread = Thread.currentThread();
+				timeoutFuture = watchdog.schedule(() -> {
+					final Future<Task<?>> taskFuture = future.get();
+					if (taskFuture != null) {
+						taskFuture.cancel(true);
+					} else {
+						thread.interrupt();
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
+			try {
+				result = callable.call();
+				finished = true;
+				return this;
+			} finally {
+				if (timeoutFuture != null) {
+					timeoutFuture.cancel(false);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 *
+	 * @param parallelism
+	 *            maximum number of tasks running at the same time
+	 */
+	public AnalysisTaskScheduler(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Adds a task to the graph
+	 *
+	 * @param name
+	 * @param timeout
+	 *            in milliseconds, from the moment the task starts. If it is
+	 *            not positive, the task has no timeout
+	 * @param callable
+	 * @param dependencies
+	 *            tasks that have to be finished before this one starts. Null
+	 *            dependencies are ignored.
+	 * @return
+	 */
+	public <T> Task<T> addTask(String name, long timeout, Callable<T> callable, Task<?>... dependencies) {
+		final List<Task<?>> dependencyList = new ArrayList<Task<?>>();
+		for (final Task<?> dependency : dependencies) {
+			if (dependency != null) {
+				dependencyList.add(dependency);
+			}
+		}
+		final Task<T> task = new Task<T>(name, timeout, callable, dependencyList);
+		tasks.add(task);
+		return task;
+	}
+
+	/**
+	 * Runs all the tasks added, and waits for them to finish. If a task fails,
+	 * the tasks that are running are cancelled and its error is thrown.
+	 *
+	 * @throws IOException
+	 *             if a task throws it
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *             if a task throws an exception that is not an
+	 *             {@link IOException} or a {@link RuntimeException}, or if a
+	 *             task didn't finish before its timeout
+	 */
+	public void run() throws IOException, InterruptedException, ExecutionException {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()),
+				runnable -> {
+					final Thread thread = new Thread(runnable, "analysis-task-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "analysis-task-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final CompletionService<Task<?>> completionService = new ExecutorCompletionService<Task<?>>(executor);
+		final Map<Future<Task<?>>, Task<?>> running = new IdentityHashMap<Future<Task<?>>, Task<?>>();
+		final Set<Task<?>> submitted = Collections.newSetFromMap(new IdentityHashMap<Task<?>, Boolean>());
+		int numFinished = 0;
+		try {
+			submitReadyTasks(completionService, watchdog, running, submitted);
+			while (!running.isEmpty()) {
+				final Future<Task<?>> future = completionService.take();
+				final Task<?> task = running.remove(future);
+				try {
+					future.get();
+				} catch (final CancellationException e) {
+					throw new ExecutionException(new TimeoutException(
+							"Task '" + task.getName() + "' didn't finish before the timeout of " + task.timeout + " ms"));
+				} catch (final ExecutionException e) {
+					log.warn("Task '" + task.getName() + "' failed: " + e.getCause());
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw e;
+				}
+				numFinished++;
+				log.debug("Task '" + task.getName() + "' finished (" + numFinished + "/" + tasks.size() + ")");
+				submitReadyTasks(completionService, watchdog, running, submitted);
+			}
+			if (numFinished < tasks.size()) {
+				throw new IllegalStateException(
+						(tasks.size() - numFinished) + " tasks could not be run because of circular dependencies");
+			}
+		} finally {
+			for (final Future<Task<?>> future : running.keySet()) {
+				future.cancel(true);
+			}
+			executor.shutdownNow();
+			watchdog.shutdownNow();
+		}
+	}
+
+	private void submitReadyTasks(CompletionService<Task<?>> completionService, ScheduledExecutorService watchdog,
+			Map<Future<Task<?>>, Task<?>> running, Set<Task<?>> submitted) {
+		for (final Task<?> task : tasks) {
+			if (submitted.contains(task) || !task.isReady()) {
+				continue;
+			}
+			submitted.add(task);
+			// the timeout is started by the task, since it may wait in the
+			// queue of the executor
+			final AtomicReference<Future<Task<?>>> futureReference = new AtomicReference<Future<Task<?>>>();
+			final Future<Task<?>> future = completionService.submit(() -> task.call(watchdog, futureReference));
+			futureReference.set(future);
+			running.put(future, task);
+		}
+	}
+
+	/**
+	 *
+	 * @return the maximum number of tasks running at the same time
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+}
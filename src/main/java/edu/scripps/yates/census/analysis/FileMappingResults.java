@@ -3,8 +3,11 @@ package edu.scripps.yates.census.analysis;
 import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import edu.scripps.yates.census.analysis.QuantAnalysis.ANALYSIS_LEVEL_OUTCOME;
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
 import edu.scripps.yates.utilities.maths.Maths;
 import edu.scripps.yates.utilities.util.Pair;
 import gnu.trove.map.hash.TIntObjectHashMap;
@@ -14,6 +17,9 @@ public class FileMappingResults {
 	private final File workingFolder;
 	private final ANALYSIS_LEVEL_OUTCOME analysisOutcome;
 	private final TIntObjectHashMap<String> fileNamesByLevels = new TIntObjectHashMap<String>();
+	// relationships of the levels already read, by level
+	private final TIntObjectHashMap<Map<String, Set<String>>> relationshipsByLevels = new TIntObjectHashMap<Map<String, Set<String>>>();
+	private Map<String, SanxotQuantResult> data;
 	// for all outcomes
 	public static final String DATA_FILE = "dataFile.tsv";
 	public static final String ION_TO_SPECTRUM_1 = "1-ion-spectrum.tsv";
@@ -229,6 +235,41 @@ public class FileMappingResults {
 		return null;
 	}
 
+	/**
+	 * Gets the relationships of a level, which are read from its file just
+	 * the first time they are requested
+	 *
+	 * @param level
+	 * @return the ids of the lower level elements by upper level id, or null
+	 *         if there is not file for that level
+	 */
+	public Map<String, Set<String>> getRelationships(int level) {
+		synchronized (relationshipsByLevels) {
+			if (!relationshipsByLevels.containsKey(level)) {
+				final File file = getFileLevel(level);
+				relationshipsByLevels.put(level,
+						file != null ? IntegrationResultWrapper.getRelationShipsFromRelatFile(file) : null);
+			}
+			return relationshipsByLevels.get(level);
+		}
+	}
+
+	/**
+	 * Gets the ratios and weights of the data file, which are read from it
+	 * just the first time they are requested
+	 *
+	 * @return the ratios and weights by id, or null if there is not data file
+	 */
+	public synchronized Map<String, SanxotQuantResult> getData() {
+		if (data == null) {
+			final File file = getDataFile();
+			if (file != null) {
+				data = IntegrationResultWrapper.getSanXotQuantResultFromDataFile(file);
+			}
+		}
+		return data;
+	}
+
 	/**
 	 * @return the workingFolder
 	 */
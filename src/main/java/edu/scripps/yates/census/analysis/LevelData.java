@@ -0,0 +1,101 @@
+package edu.scripps.yates.census.analysis;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+
+/**
+ * The ratios and weights of the elements of a level, that are passed from an
+ * analysis step to the next one. They can be in a data file, or in memory,
+ * in which case they are only written in the data file when a step needs the
+ * file (for example, when it is performed by the sanxot scripts).
+ *
+ * @author salvador
+ *
+ */
+public class LevelData {
+	private final static Logger log = Logger.getLogger(LevelData.class);
+	private final File file;
+	private Map<String, SanxotQuantResult> data;
+	private boolean written;
+
+	/**
+	 *
+	 * @param file
+	 *            data file, which is read only if the data is requested
+	 */
+	public LevelData(File file) {
+		this.file = file;
+		written = true;
+	}
+
+	/**
+	 *
+	 * @param data
+	 *            ratios and weights by id
+	 * @param file
+	 *            data file in which the data is or will be written
+	 * @param written
+	 *            whether the data is already written in the file
+	 */
+	public LevelData(Map<String, SanxotQuantResult> data, File file, boolean written) {
+		this.data = data;
+		this.file = file;
+		this.written = written;
+	}
+
+	/**
+	 *
+	 * @return the ratios and weights by id, reading them from the file if they
+	 *         are not in memory
+	 */
+	public synchronized Map<String, SanxotQuantResult> getData() {
+		if (data == null) {
+			data = IntegrationResultWrapper.getSanXotQuantResultFromDataFile(file);
+		}
+		return data;
+	}
+
+	/**
+	 *
+	 * @return the data file, writing the data in it if it was only in memory
+	 * @throws IOException
+	 */
+	public synchronized File getFile() throws IOException {
+		if (!written) {
+			log.debug("Writing data in memory to " + file.getAbsolutePath());
+			final List<String> keys = new ArrayList<String>(data.keySet());
+			Collections.sort(keys);
+			final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+			try {
+				writer.write("#id\tX\tV\n");
+				for (final String key : keys) {
+					final SanxotQuantResult element = data.get(key);
+					writer.write(key + "\t" + element.getLog2ratio() + "\t" + element.getWeight() + "\n");
+				}
+			} finally {
+				writer.close();
+			}
+			written = true;
+		}
+		return file;
+	}
+
+	/**
+	 *
+	 * @return true if the data is in memory, so it doesn't need to be read
+	 */
+	public synchronized boolean isInMemory() {
+		return data != null;
+	}
+}
@@ -2,22 +2,39 @@ package edu.scripps.yates.census.analysis;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
 import edu.scripps.yates.annotations.uniprot.UniprotProteinLocalRetriever;
 import edu.scripps.yates.census.analysis.clustering.ProteinCluster;
 import edu.scripps.yates.census.analysis.clustering.ProteinClusterUtils;
+import edu.scripps.yates.census.analysis.engine.CalibrationEngine;
+import edu.scripps.yates.census.analysis.engine.IntegrationEngine;
+import edu.scripps.yates.census.analysis.engine.JavaCalibrationEngine;
+import edu.scripps.yates.census.analysis.engine.JavaOutlierRemovalEngine;
+import edu.scripps.yates.census.analysis.engine.JavaIntegrationEngine;
+import edu.scripps.yates.census.analysis.engine.OutlierRemovalEngine;
 import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
 import edu.scripps.yates.census.analysis.wrappers.OutStatsLine;
 import edu.scripps.yates.census.analysis.wrappers.SanXotAnalysisResult;
@@ -35,6 +52,7 @@ import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import edu.scripps.yates.census.read.util.FastaPeptideIndex;
 import edu.scripps.yates.census.read.util.IonExclusion;
 import edu.scripps.yates.census.read.util.ProteinSequences;
 import edu.scripps.yates.census.read.util.QuantKeyUtils;
@@ -57,12 +75,18 @@ public class QuantAnalysis implements PropertyChangeListener {
 	private final List<QuantExperiment> quantExperiments = new ArrayList<QuantExperiment>();
 	private final File workingFolder;
 	private final String NL = System.getProperty("line.separator");
+	private static final int WRITER_BUFFER_SIZE = 1024 * 1024;
 	private final QuantCondition condition1;
 	private final QuantCondition condition2;
 	private FileMappingResults fileMappingResults;
 	private QuantParameters quantParameters = new QuantParameters();
 	private final Map<String, List<String>> replicateAndExperimentNames = new THashMap<String, List<String>>();
+	private final Map<QuantReplicate, List<ProteinGroup>> proteinGroupsByReplicate = new IdentityHashMap<QuantReplicate, List<ProteinGroup>>();
 	private DBIndexImpl dbIndex;
+	private FastaPeptideIndex fastaPeptideIndex;
+	private IntegrationEngine integrationEngine;
+	private CalibrationEngine calibrationEngine;
+	private OutlierRemovalEngine outlierRemovalEngine;
 	private final boolean ignorePTMs;
 	private static final String QUANT_FOLDER = "quant";
 	private SanXotAnalysisResult result;
@@ -293,6 +317,9 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (keepExperimentsSeparated != null) {
 			sanxot.setKeepExperimentsSeparated(keepExperimentsSeparated);
 		}
+		sanxot.setIntegrationEngine(integrationEngine);
+		sanxot.setCalibrationEngine(calibrationEngine);
+		sanxot.setOutlierRemovalEngine(outlierRemovalEngine);
 		// sanxot.addPropertyChangeListener(this);
 		// sanxot.execute();
 		try {
@@ -352,6 +379,7 @@ public class QuantAnalysis implements PropertyChangeListener {
 			break;
 		}
 
+		proteinGroupsByReplicate.clear();
 		fileMappingResults = new FileMappingResults(quantType, workingFolder, analysisOutCome,
 				replicateAndExperimentNames);
 		return fileMappingResults;
@@ -375,7 +403,7 @@ public class QuantAnalysis implements PropertyChangeListener {
 	}
 
 	private void assignDBIndexToRuns() {
-		if (dbIndex != null) {
+		if (dbIndex != null || fastaPeptideIndex != null) {
 			log.info("Setting index to all replicates in the analysis");
 			for (final QuantExperiment quantExperiment : quantExperiments) {
 				final List<QuantReplicate> replicates = quantExperiment.getReplicates();
@@ -390,6 +418,7 @@ public class QuantAnalysis implements PropertyChangeListener {
 						((IsobaricQuantParser) parser).addIonExclusions(ionExclusions);
 					}
 					parser.setDbIndex(dbIndex);
+					parser.setFastaPeptideIndex(fastaPeptideIndex);
 				}
 			}
 		}
@@ -398,177 +427,255 @@ public class QuantAnalysis implements PropertyChangeListener {
 	private void writeDataFile() throws QuantParserException, IOException {
 
 		final String fileName = getWorkingPath().getAbsolutePath() + File.separator + FileMappingResults.DATA_FILE;
-		final FileWriter dataFileWriter = new FileWriter(fileName);
-		dataFileWriter.write("#id\tX\tVcal" + NL);
-		int numPSMsDiscarded = 0;
+		final AtomicInteger numPSMsDiscarded = new AtomicInteger();
+		final QuantKeyUtils keyUtils = QuantKeyUtils.getInstance();
+		final List<Callable<StringBuilder>> replicateTasks = new ArrayList<Callable<StringBuilder>>();
+		final Set<QuantParser> parsers = Collections.newSetFromMap(new IdentityHashMap<QuantParser, Boolean>());
+		for (final QuantExperiment exp : quantExperiments) {
+			String expName = "";
+			if (quantExperiments.size() > 1) {
+				expName = exp.getName();
+			}
+			for (final QuantReplicate rep : exp.getReplicates()) {
+				String repName = "";
+				if (exp.getReplicates().size() > 1) {
+					repName = rep.getName();
+				}
+				String expRepKey = "";
+				if (!"".equals(repName)) {
+					expRepKey = "_" + repName;
+				}
+				if (!"".equals(expName)) {
+					expRepKey += "_" + expName;
+				}
+				// the parsers share static maps while reading, so they are
+				// read here, one after the other
+				rep.getParser().getPSMMap();
+				parsers.add(rep.getParser());
+				final String replicateKey = expRepKey;
+				replicateTasks.add(() -> getDataLines(rep, replicateKey, keyUtils, numPSMsDiscarded));
+			}
+		}
+		// the lines of the replicates are built in parallel, unless some
+		// replicates share the same parser, and they are written in the order
+		// of the experiments and replicates
+		int parallelism = Math.max(1, Math.min(quantParameters.getParallelism(), replicateTasks.size()));
+		if (parsers.size() < replicateTasks.size()) {
+			parallelism = 1;
+		}
+		final BufferedWriter dataFileWriter = newWriter(new File(fileName));
 		try {
-			for (final QuantExperiment exp : quantExperiments) {
-				String expName = "";
-				if (quantExperiments.size() > 1) {
-					expName = exp.getName();
+			dataFileWriter.write("#id\tX\tVcal" + NL);
+			final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+				final Thread thread = new Thread(runnable, "data-file-writer");
+				thread.setDaemon(true);
+				return thread;
+			});
+			try {
+				final List<Future<StringBuilder>> futures = new ArrayList<Future<StringBuilder>>();
+				for (final Callable<StringBuilder> replicateTask : replicateTasks) {
+					futures.add(executor.submit(replicateTask));
 				}
-				for (final QuantReplicate rep : exp.getReplicates()) {
-					String repName = "";
-					if (exp.getReplicates().size() > 1) {
-						repName = rep.getName();
-					}
-					String expRepKey = "";
-					if (!"".equals(repName)) {
-						expRepKey = "_" + repName;
-					}
-					if (!"".equals(expName)) {
-						expRepKey += "_" + expName;
-					}
-					final QuantParser parser = rep.getParser();
-					final Collection<QuantifiedPSMInterface> quantifiedPSMs = parser.getPSMMap().values();
-					for (final QuantifiedPSMInterface quantifiedPSM : quantifiedPSMs) {
-						if (ignorePTMs && quantifiedPSM.containsPTMs()) {
-							continue;
-						}
-						if (quantifiedPSM.isDiscarded()) {
-							numPSMsDiscarded++;
-							continue;
-						}
-						Double ratioValue = null;
-						String key = null;
-						Double fittingWeight = null;
-
-						// in case of isobaric isotopologues, we will write a
-						// data line per isobaric ratio in the PSM
-						final Set<QuantRatio> nonInfinityRatios = quantifiedPSM.getNonInfinityRatios();
-						if (nonInfinityRatios.isEmpty()) {
-							// skip this one
-							continue;
-						}
-						if (quantifiedPSM instanceof IsobaricQuantifiedPSM) {
-							for (final QuantRatio ratio : nonInfinityRatios) {
-								ratioValue = ratio.getLog2Ratio(condition1, condition2);
-								if (ratio instanceof IsoRatio) {
-
-									final IsoRatio isoRatio = (IsoRatio) ratio;
-
-									key = QuantKeyUtils.getInstance().getIonKey(isoRatio,
-											((IsobaricQuantifiedPSM) quantifiedPSM).getPeptide()) + expRepKey;
-
-									fittingWeight = null;
-
-									switch (quantType) {
-									case ISOTOPOLOGUES:
-										fittingWeight = (isoRatio.getMaxIntensity())
-												/ Math.sqrt(isoRatio.getMass(QuantificationLabel.LIGHT));
-										dataFileWriter.write(key + "\t" + ratioValue + "\t" + fittingWeight + "\n");
-										break;
-
-									default:
-										throw new IllegalArgumentException("Quant type " + quantType
-												+ " is not suitable for Isobaric Isotopologues. Use instead "
-												+ QuantificationType.ISOTOPOLOGUES);
-									}
-								} else if (ratio instanceof IonCountRatio) {
-									throw new IllegalArgumentException(
-											"Ion count ratios is not suitable for ratio integration since they are peptide node level.");
-								}
-								// TODO
-								// double qualityMeasurement =
-								// ratio.getMaxPeak() *
-								// ratio.getMaxPeak()
-								// / (ratio.getIon1().getMass() *
-								// ratio.getIon1().getMass());
+				for (final Future<StringBuilder> future : futures) {
+					dataFileWriter.append(waitFor(future));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		} finally {
+			if (numPSMsDiscarded.get() > 0) {
+				log.info(numPSMsDiscarded.get()
+						+ " PSMs were tagged as discarded and will not be considered in the analysis");
+			}
+			dataFileWriter.close();
+		}
+	}
 
-							}
-						} else {
-							switch (quantType) {
-							case iTRAQ:
-								fittingWeight = quantifiedPSM.getMaxPeak();
-								break;
-
-							case SILAC:
-								// fittingWeight =
-								// QuantUtil.getRegressionFactor(quantifiedPSM.getAmounts());
-								fittingWeight = QuantUtils.getMaxAmountValueByAmountType(quantifiedPSM.getAmounts(),
-										AmountType.AREA);
-								if (fittingWeight == null) {
-									log.info("no regression factor");
-								}
-								break;
-							case UNKNOWN:
-								// the PSM has to have only one ratio, and it
-								// has to have associated a confidence score
-								// which is the weight
-								Double.valueOf(quantifiedPSM.getRatios().iterator().next()
-										.getAssociatedConfidenceScore().getValue());
-								break;
-							default:
-								throw new IllegalArgumentException("Quant type " + quantType
-										+ " is not supported with this analysis configuration");
-							}
-							// if it is still null, try to see whether the ratio
-							// has some ratio_weight associated
-							if (fittingWeight == null) {
-
-								for (final QuantRatio quantRatio : nonInfinityRatios) {
-									if (quantRatio.getAssociatedConfidenceScore() != null) {
-										if (quantRatio.getAssociatedConfidenceScore().getScoreName()
-												.equals(SeparatedValuesParser.RATIO_WEIGHT)) {
-											fittingWeight = Double
-													.valueOf(quantRatio.getAssociatedConfidenceScore().getValue());
-										}
-									}
-								}
-							}
+	/**
+	 * Builds the lines of the data file of a replicate
+	 *
+	 * @param rep
+	 * @param expRepKey
+	 *            suffix of the keys of the replicate
+	 * @param keyUtils
+	 * @param numPSMsDiscarded
+	 *            counter of the PSMs tagged as discarded
+	 * @return
+	 * @throws QuantParserException
+	 */
+	private StringBuilder getDataLines(QuantReplicate rep, String expRepKey, QuantKeyUtils keyUtils,
+			AtomicInteger numPSMsDiscarded) throws QuantParserException {
+		final StringBuilder lines = new StringBuilder();
+		final QuantParser parser = rep.getParser();
+		final Collection<QuantifiedPSMInterface> quantifiedPSMs = parser.getPSMMap().values();
+		for (final QuantifiedPSMInterface quantifiedPSM : quantifiedPSMs) {
+			if (ignorePTMs && quantifiedPSM.containsPTMs()) {
+				continue;
+			}
+			if (quantifiedPSM.isDiscarded()) {
+				numPSMsDiscarded.incrementAndGet();
+				continue;
+			}
+			Double ratioValue = null;
+			String key = null;
+			Double fittingWeight = null;
+
+			// in case of isobaric isotopologues, we will write a
+			// data line per isobaric ratio in the PSM
+			final Set<QuantRatio> nonInfinityRatios = quantifiedPSM.getNonInfinityRatios();
+			if (nonInfinityRatios.isEmpty()) {
+				// skip this one
+				continue;
+			}
+			if (quantifiedPSM instanceof IsobaricQuantifiedPSM) {
+				for (final QuantRatio ratio : nonInfinityRatios) {
+					ratioValue = ratio.getLog2Ratio(condition1, condition2);
+					if (ratio instanceof IsoRatio) {
+
+						final IsoRatio isoRatio = (IsoRatio) ratio;
+
+						key = keyUtils.getIonKey(isoRatio,
+								((IsobaricQuantifiedPSM) quantifiedPSM).getPeptide()) + expRepKey;
+
+						fittingWeight = null;
+
+						switch (quantType) {
+						case ISOTOPOLOGUES:
+							fittingWeight = (isoRatio.getMaxIntensity())
+									/ Math.sqrt(isoRatio.getMass(QuantificationLabel.LIGHT));
+							lines.append(key).append("\t").append(ratioValue).append("\t").append(fittingWeight)
+									.append("\n");
+							break;
+
+						default:
+							throw new IllegalArgumentException("Quant type " + quantType
+									+ " is not suitable for Isobaric Isotopologues. Use instead "
+									+ QuantificationType.ISOTOPOLOGUES);
+						}
+					} else if (ratio instanceof IonCountRatio) {
+						throw new IllegalArgumentException(
+								"Ion count ratios is not suitable for ratio integration since they are peptide node level.");
+					}
+					// TODO
+					// double qualityMeasurement =
+					// ratio.getMaxPeak() *
+					// ratio.getMaxPeak()
+					// / (ratio.getIon1().getMass() *
+					// ratio.getIon1().getMass());
 
-							key = QuantKeyUtils.getInstance().getSpectrumKey(quantifiedPSM, distinguishModifiedSequence,
-									chargeStateSensible) + expRepKey;
-
-							// in case of not having isobaric isotopologues, we
-							// have one ratio per PSM in the replicate, not
-							// matters if it is comming from a TMT, where we
-							// have more than one ratio per PSM, because we will
-							// write each ratio in different replicates
-							if (quantifiedPSM instanceof QuantifiedPSM) {
-								QuantRatio validRatio = null;
-
-								if (quantParameters.getRatioName() != null
-										&& !"".equals(quantParameters.getRatioName())) {
-									validRatio = QuantUtils.getRatioByName(quantifiedPSM,
-											quantParameters.getRatioName());
-								} else {
-									validRatio = QuantUtils.getRatioValidForIntegrationAnalysis(quantifiedPSM);
-								}
-								if (validRatio != null) {
-									ratioValue = validRatio.getLog2Ratio(condition1, condition2);
-									if (ratioValue == null || Double.isInfinite(ratioValue)
-											|| Double.isNaN(ratioValue)) {
-										// do not print
-										continue;
-									}
-								} else {
-									// dont print
-									continue;
-								}
-							} else {
-								ratioValue = nonInfinityRatios.iterator().next().getLog2Ratio(condition1, condition2);
+				}
+			} else {
+				switch (quantType) {
+				case iTRAQ:
+					fittingWeight = quantifiedPSM.getMaxPeak();
+					break;
+
+				case SILAC:
+					// fittingWeight =
+					// QuantUtil.getRegressionFactor(quantifiedPSM.getAmounts());
+					fittingWeight = QuantUtils.getMaxAmountValueByAmountType(quantifiedPSM.getAmounts(),
+							AmountType.AREA);
+					if (fittingWeight == null) {
+						log.info("no regression factor");
+					}
+					break;
+				case UNKNOWN:
+					// the PSM has to have only one ratio, and it
+					// has to have associated a confidence score
+					// which is the weight
+					Double.valueOf(quantifiedPSM.getRatios().iterator().next()
+							.getAssociatedConfidenceScore().getValue());
+					break;
+				default:
+					throw new IllegalArgumentException("Quant type " + quantType
+							+ " is not supported with this analysis configuration");
+				}
+				// if it is still null, try to see whether the ratio
+				// has some ratio_weight associated
+				if (fittingWeight == null) {
+
+					for (final QuantRatio quantRatio : nonInfinityRatios) {
+						if (quantRatio.getAssociatedConfidenceScore() != null) {
+							if (quantRatio.getAssociatedConfidenceScore().getScoreName()
+									.equals(SeparatedValuesParser.RATIO_WEIGHT)) {
+								fittingWeight = Double
+										.valueOf(quantRatio.getAssociatedConfidenceScore().getValue());
 							}
-
-							dataFileWriter.write(key + "\t" + ratioValue + "\t" + fittingWeight + "\n");
 						}
-
 					}
+				}
 
+				key = keyUtils.getSpectrumKey(quantifiedPSM, distinguishModifiedSequence,
+						chargeStateSensible) + expRepKey;
+
+				// in case of not having isobaric isotopologues, we
+				// have one ratio per PSM in the replicate, not
+				// matters if it is comming from a TMT, where we
+				// have more than one ratio per PSM, because we will
+				// write each ratio in different replicates
+				if (quantifiedPSM instanceof QuantifiedPSM) {
+					QuantRatio validRatio = null;
+
+					if (quantParameters.getRatioName() != null
+							&& !"".equals(quantParameters.getRatioName())) {
+						validRatio = QuantUtils.getRatioByName(quantifiedPSM,
+								quantParameters.getRatioName());
+					} else {
+						validRatio = QuantUtils.getRatioValidForIntegrationAnalysis(quantifiedPSM);
+					}
+					if (validRatio != null) {
+						ratioValue = validRatio.getLog2Ratio(condition1, condition2);
+						if (ratioValue == null || Double.isInfinite(ratioValue)
+								|| Double.isNaN(ratioValue)) {
+							// do not print
+							continue;
+						}
+					} else {
+						// dont print
+						continue;
+					}
+				} else {
+					ratioValue = nonInfinityRatios.iterator().next().getLog2Ratio(condition1, condition2);
 				}
+
+				lines.append(key).append("\t").append(ratioValue).append("\t").append(fittingWeight).append("\n");
 			}
 
-		} finally {
-			if (numPSMsDiscarded > 0) {
-				log.info(
-						numPSMsDiscarded + " PSMs were tagged as discarded and will not be considered in the analysis");
+		}
+		return lines;
+	}
+
+	private static <T> T waitFor(Future<T> future) throws QuantParserException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QuantParserException(e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof QuantParserException) {
+				throw (QuantParserException) cause;
 			}
-			if (dataFileWriter != null) {
-				dataFileWriter.close();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
 			}
+			throw new QuantParserException(cause);
 		}
 	}
 
+	/**
+	 *
+	 * @param file
+	 * @return a buffered writer over a channel of the file
+	 * @throws IOException
+	 */
+	private static BufferedWriter newWriter(File file) throws IOException {
+		return new BufferedWriter(Channels.newWriter(
+				FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING),
+				StandardCharsets.UTF_8.newEncoder(), -1), WRITER_BUFFER_SIZE);
+	}
+
 	private void writeRelationshipsFilesForProteinGroupOutcome() throws IOException, QuantParserException {
 		writeIonToSpectrumMap();
 		writeSpectrumToPeptideExperimentReplicateMap();
@@ -762,25 +869,19 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 		final String all = "all";
 		for (final QuantExperiment exp : quantExperiments) {
 			for (final QuantReplicate rep : exp.getReplicates()) {
 				final QuantParser parser = rep.getParser();
 				for (final String ptmKey : parser.getPTMToSpectraMap().keySet()) {
-					if (map.containsKey(all)) {
-						map.get(all).add(ptmKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(ptmKey);
-						map.put(all, set);
-					}
+					graph.add(all, ptmKey);
 				}
 			}
 		}
 		final String header = "all" + "\t" + "ptm" + "\t" + "all --> ptm";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 	}
 
 	private void writePTMExperimentToPTMMap() throws QuantParserException, IOException {
@@ -792,8 +893,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -803,18 +904,12 @@ public class QuantAnalysis implements PropertyChangeListener {
 			for (final QuantReplicate rep : exp.getReplicates()) {
 				final QuantParser parser = rep.getParser();
 				for (final String ptmKey : parser.getPTMToSpectraMap().keySet()) {
-					if (map.containsKey(ptmKey)) {
-						map.get(ptmKey).add(ptmKey + "_" + expName);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(ptmKey + "_" + expName);
-						map.put(ptmKey, set);
-					}
+					graph.add(ptmKey, "", ptmKey, "_" + expName);
 				}
 			}
 		}
 		final String header = "ptm" + "\t" + "ptm+experiment" + "\t" + "ptm --> ptm-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 	}
 
 	private void writePTMExperimentReplicateToPTMExperimentMap() throws IOException, QuantParserException {
@@ -831,8 +926,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -853,19 +948,13 @@ public class QuantAnalysis implements PropertyChangeListener {
 				}
 				final QuantParser parser = rep.getParser();
 				for (final String ptmKey : parser.getPTMToSpectraMap().keySet()) {
-					if (map.containsKey(ptmKey + "_" + expName)) {
-						map.get(ptmKey + "_" + expName).add(ptmKey + expRepKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(ptmKey + expRepKey);
-						map.put(ptmKey + "_" + expName, set);
-					}
+					graph.add(ptmKey, "_" + expName, ptmKey, expRepKey);
 				}
 			}
 		}
 		final String header = "ptm+experiment" + "\t" + "ptm+replicate+experiment" + "\t"
 				+ "ptm-replicate-experiment --> ptm-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 	}
 
 	private void writeRelationshipsFilesForQuantSiteOutcome() throws IOException, QuantParserException {
@@ -926,27 +1015,21 @@ public class QuantAnalysis implements PropertyChangeListener {
 	 * @throws QuantParserException
 	 */
 	private void writeProteinToAllMap() throws IOException, QuantParserException {
-		final FileWriter writer = new FileWriter(
-				getWorkingPath().getAbsolutePath() + File.separator + FileMappingResults.PROTEIN_TO_ALL_6);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(
+				new File(getWorkingPath().getAbsolutePath() + File.separator + FileMappingResults.PROTEIN_TO_ALL_6));
+		final RelationshipGraph graph = new RelationshipGraph();
 		final String all = "all";
 		for (final QuantExperiment exp : quantExperiments) {
 			for (final QuantReplicate rep : exp.getReplicates()) {
 				final QuantParser parser = rep.getParser();
 				final Map<String, QuantifiedProteinInterface> quantifiedProteinMap = parser.getProteinMap();
 				for (final String proteinKey : quantifiedProteinMap.keySet()) {
-					if (map.containsKey(all)) {
-						map.get(all).add(proteinKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(proteinKey);
-						map.put(all, set);
-					}
+					graph.add(all, proteinKey);
 				}
 			}
 		}
 		final String header = "all" + "\t" + "acc" + "\t" + "all --> protein";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 	}
 
 	/**
@@ -996,25 +1079,19 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return proteinClusters;
 		}
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final ProteinCluster proteinCluster : proteinClusters) {
 			final String proteinClusterKey = proteinCluster.getProteinClusterKey();
 			final Set<QuantifiedPeptideInterface> quantifiedPeptides = proteinCluster.getPeptideSet();
 			for (final QuantifiedPeptideInterface quantifiedPeptide : quantifiedPeptides) {
 				final String peptideKey = quantifiedPeptide.getKey();
-				if (map.containsKey(proteinClusterKey)) {
-					map.get(proteinClusterKey).add(peptideKey);
-				} else {
-					final Set<String> set = new THashSet<String>();
-					set.add(peptideKey);
-					map.put(proteinClusterKey, set);
-				}
+				graph.add(proteinClusterKey, peptideKey);
 			}
 		}
-		final FileWriter writer = new FileWriter(file);
+		final Writer writer = newWriter(file);
 		final String header = "pep" + "\t" + "proteinCluster" + "\t" + "proteinCluster --> peptide";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 		return proteinClusters;
 	}
 
@@ -1040,7 +1117,7 @@ public class QuantAnalysis implements PropertyChangeListener {
 				getWorkingPath().getAbsolutePath() + File.separator + FileMappingResults.PEPTIDE_TO_PROTEIN_CLUSTER_5);
 
 		final List<QuantifiedPSMInterface> quantPSMs = new ArrayList<QuantifiedPSMInterface>();
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final RelationshipGraph graph = new RelationshipGraph();
 		for (final QuantExperiment exp : quantExperiments) {
 
 			for (final QuantReplicate rep : exp.getReplicates()) {
@@ -1065,25 +1142,19 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return proteinClusters;
 		}
-		final FileWriter writer = new FileWriter(file);
+		final Writer writer = newWriter(file);
 		for (final ProteinCluster proteinCluster : proteinClusters) {
 			final String proteinClusterKey = proteinCluster.getProteinClusterKey();
 
 			final Set<QuantifiedPeptideInterface> quantifiedPeptides = proteinCluster.getPeptideSet();
 			for (final QuantifiedPeptideInterface quantifiedPeptide : quantifiedPeptides) {
 				final String peptideKey = quantifiedPeptide.getKey();
-				if (map.containsKey(proteinClusterKey)) {
-					map.get(proteinClusterKey).add(peptideKey);
-				} else {
-					final Set<String> set = new THashSet<String>();
-					set.add(peptideKey);
-					map.put(proteinClusterKey, set);
-				}
+				graph.add(proteinClusterKey, peptideKey);
 			}
 		}
 
 		final String header = "pep" + "\t" + "proteinCluster" + "\t" + "proteinCluster --> peptide";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 		return proteinClusters;
 	}
 
@@ -1101,26 +1172,20 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 		final String all = "all";
 		for (final QuantExperiment exp : quantExperiments) {
 			for (final QuantReplicate rep : exp.getReplicates()) {
 				final QuantParser parser = rep.getParser();
 				final Map<String, Set<String>> peptideToSpectraMap2 = parser.getPeptideToSpectraMap();
 				for (final String peptideKey : peptideToSpectraMap2.keySet()) {
-					if (map.containsKey(all)) {
-						map.get(all).add(peptideKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(peptideKey);
-						map.put(all, set);
-					}
+					graph.add(all, peptideKey);
 				}
 			}
 		}
 		final String header = "all" + "\t" + "sequence+charge" + "\t" + "all --> peptide";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 	}
 
 	/**
@@ -1142,10 +1207,10 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
+		final Writer writer = newWriter(file);
 		final String all = "all";
 		final List<GroupableProtein> groupableProteins = new ArrayList<GroupableProtein>();
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final RelationshipGraph graph = new RelationshipGraph();
 		for (final QuantExperiment exp : quantExperiments) {
 
 			for (final QuantReplicate rep : exp.getReplicates()) {
@@ -1162,15 +1227,12 @@ public class QuantAnalysis implements PropertyChangeListener {
 			}
 		}
 
-		final Set<String> set = new THashSet<String>();
 		for (final ProteinCluster proteinCluster : proteinClusters) {
-			final String proteinClusterKey = proteinCluster.getProteinClusterKey();
-			set.add(proteinClusterKey);
+			graph.add(all, proteinCluster.getProteinClusterKey());
 		}
 
-		map.put(all, set);
 		final String header = "all" + "\t" + "proteinCluster" + "\t" + "all --> proteinCluster";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1180,29 +1242,20 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 		final String all = "all";
 		for (final QuantExperiment exp : quantExperiments) {
 			for (final QuantReplicate rep : exp.getReplicates()) {
-				final QuantParser parser = rep.getParser();
-				final List<GroupableProtein> groupableProteins = new ArrayList<GroupableProtein>();
-				groupableProteins.addAll(parser.getProteinMap().values());
-				final List<ProteinGroup> proteinGroups = getProteinGroups(groupableProteins);
+				final List<ProteinGroup> proteinGroups = getProteinGroups(rep);
 				for (final ProteinGroup proteinGroup : proteinGroups) {
 					final String proteinKey = KeyUtils.getInstance().getGroupKey(proteinGroup);
-					if (map.containsKey(all)) {
-						map.get(all).add(proteinKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(proteinKey);
-						map.put(all, set);
-					}
+					graph.add(all, proteinKey);
 				}
 			}
 		}
 		final String header = "all" + "\t" + "acc" + "\t" + "all --> protein";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 	}
 
 	/**
@@ -1223,8 +1276,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1235,18 +1288,12 @@ public class QuantAnalysis implements PropertyChangeListener {
 				final QuantParser parser = rep.getParser();
 				final Map<String, QuantifiedProteinInterface> quantifiedProteinMap = parser.getProteinMap();
 				for (final String proteinKey : quantifiedProteinMap.keySet()) {
-					if (map.containsKey(proteinKey)) {
-						map.get(proteinKey).add(proteinKey + "_" + expName);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(proteinKey + "_" + expName);
-						map.put(proteinKey, set);
-					}
+					graph.add(proteinKey, "", proteinKey, "_" + expName);
 				}
 			}
 		}
 		final String header = "acc" + "\t" + "acc+experiment" + "\t" + "protein --> protein-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1268,8 +1315,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1279,19 +1326,13 @@ public class QuantAnalysis implements PropertyChangeListener {
 			for (final QuantReplicate rep : exp.getReplicates()) {
 				final QuantParser parser = rep.getParser();
 				for (final String peptideKey : parser.getPeptideToSpectraMap().keySet()) {
-					if (map.containsKey(peptideKey)) {
-						map.get(peptideKey).add(peptideKey + "_" + expName);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(peptideKey + "_" + expName);
-						map.put(peptideKey, set);
-					}
+					graph.add(peptideKey, "", peptideKey, "_" + expName);
 				}
 			}
 		}
 		final String header = "sequence+charge" + "\t" + "sequence+charge+experiment" + "\t"
 				+ "peptide --> peptide-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1304,8 +1345,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1313,24 +1354,15 @@ public class QuantAnalysis implements PropertyChangeListener {
 				expName = exp.getName();
 			}
 			for (final QuantReplicate rep : exp.getReplicates()) {
-				final QuantParser parser = rep.getParser();
-				final List<GroupableProtein> groupableProteins = new ArrayList<GroupableProtein>();
-				groupableProteins.addAll(parser.getProteinMap().values());
-				final List<ProteinGroup> proteinGroups = getProteinGroups(groupableProteins);
+				final List<ProteinGroup> proteinGroups = getProteinGroups(rep);
 				for (final ProteinGroup proteinGroup : proteinGroups) {
 					final String proteinGroupKey = KeyUtils.getInstance().getGroupKey(proteinGroup);
-					if (map.containsKey(proteinGroupKey)) {
-						map.get(proteinGroupKey).add(proteinGroupKey + "_" + expName);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(proteinGroupKey + "_" + expName);
-						map.put(proteinGroupKey, set);
-					}
+					graph.add(proteinGroupKey, "", proteinGroupKey, "_" + expName);
 				}
 			}
 		}
 		final String header = "acc" + "\t" + "acc+experiment" + "\t" + "proteinGroup --> proteinGroup-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1360,8 +1392,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1383,20 +1415,14 @@ public class QuantAnalysis implements PropertyChangeListener {
 				final QuantParser parser = rep.getParser();
 				final Map<String, QuantifiedProteinInterface> quantifiedProteinMap = parser.getProteinMap();
 				for (final String proteinKey : quantifiedProteinMap.keySet()) {
-					if (map.containsKey(proteinKey + "_" + expName)) {
-						map.get(proteinKey + "_" + expName).add(proteinKey + expRepKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(proteinKey + expRepKey);
-						map.put(proteinKey + "_" + expName, set);
-					}
+					graph.add(proteinKey, "_" + expName, proteinKey, expRepKey);
 				}
 
 			}
 		}
 		final String header = "acc+experiment" + "\t" + "acc+replicate+experiment" + "\t"
 				+ "protein-experiment --> protein-replicate-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1426,8 +1452,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1448,19 +1474,13 @@ public class QuantAnalysis implements PropertyChangeListener {
 				}
 				final QuantParser parser = rep.getParser();
 				for (final String peptideKey : parser.getPeptideToSpectraMap().keySet()) {
-					if (map.containsKey(peptideKey + "_" + expName)) {
-						map.get(peptideKey + "_" + expName).add(peptideKey + expRepKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(peptideKey + expRepKey);
-						map.put(peptideKey + "_" + expName, set);
-					}
+					graph.add(peptideKey, "_" + expName, peptideKey, expRepKey);
 				}
 			}
 		}
 		final String header = "sequence+charge+experiment" + "\t" + "sequence+charge+replicate+experiment" + "\t"
 				+ "peptide-replicate-experiment --> peptide-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1480,8 +1500,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1500,26 +1520,17 @@ public class QuantAnalysis implements PropertyChangeListener {
 				if (!"".equals(expName)) {
 					expRepKey += "_" + expName;
 				}
-				final QuantParser parser = rep.getParser();
-				final List<GroupableProtein> groupableProteins = new ArrayList<GroupableProtein>();
-				groupableProteins.addAll(parser.getProteinMap().values());
-				final List<ProteinGroup> proteinGroups = getProteinGroups(groupableProteins);
+				final List<ProteinGroup> proteinGroups = getProteinGroups(rep);
 				for (final ProteinGroup proteinGroup : proteinGroups) {
 					final String proteinGroupKey = KeyUtils.getInstance().getGroupKey(proteinGroup);
-					if (map.containsKey(proteinGroupKey + "_" + expName)) {
-						map.get(proteinGroupKey + "_" + expName).add(proteinGroupKey + expRepKey);
-					} else {
-						final Set<String> set = new THashSet<String>();
-						set.add(proteinGroupKey + expRepKey);
-						map.put(proteinGroupKey + "_" + expName, set);
-					}
+					graph.add(proteinGroupKey, "_" + expName, proteinGroupKey, expRepKey);
 				}
 
 			}
 		}
 		final String header = "acc+experiment" + "\t" + "acc+replicate+experiment" + "\t"
 				+ "proteinGroup-experiment --> proteinGroup-replicate-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1541,8 +1552,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1561,20 +1572,17 @@ public class QuantAnalysis implements PropertyChangeListener {
 				if (!"".equals(expName)) {
 					expRepKey += "_" + expName;
 				}
-				final QuantParser parser = rep.getParser();
 				// in this case, get all proteins and construct protein groups.
 				// Then, asign in the map to peptides
-				final List<GroupableProtein> groupableProteins = new ArrayList<GroupableProtein>();
-				groupableProteins.addAll(parser.getProteinMap().values());
-				final List<ProteinGroup> proteinGroups = getProteinGroups(groupableProteins);
+				final List<ProteinGroup> proteinGroups = getProteinGroups(rep);
 				final Map<String, Set<String>> proteinGroupToPeptideMap2 = getProteinGroupToPeptideMap(proteinGroups);
 
-				mergeMaps(map, proteinGroupToPeptideMap2, expRepKey, expRepKey);
+				graph.addAll(proteinGroupToPeptideMap2, expRepKey, expRepKey);
 			}
 		}
 		final String header = "acc+replicate+experiment" + "\t" + "sequence+charge+replicate+experiment" + "\t"
 				+ "proteinGroup-replicate-experiment --> peptide-replicate-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1595,8 +1603,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1619,7 +1627,6 @@ public class QuantAnalysis implements PropertyChangeListener {
 				// in this case, get all proteins and construct protein groups.
 				// Then, asign in the map to peptides
 				final Map<String, QuantifiedProteinInterface> proteinMap = parser.getProteinMap();
-				final Map<String, Set<String>> map2 = new THashMap<String, Set<String>>();
 				for (final String proteinKey : proteinMap.keySet()) {
 					final QuantifiedProteinInterface quantifiedProtein = proteinMap.get(proteinKey);
 					if (quantifiedProtein.isDiscarded()) {
@@ -1632,22 +1639,15 @@ public class QuantAnalysis implements PropertyChangeListener {
 						}
 						final String peptideKey = KeyUtils.getInstance().getSequenceChargeKey(quantifiedPSM,
 								distinguishModifiedSequence, chargeStateSensible);
-						if (map2.containsKey(proteinKey)) {
-							map2.get(proteinKey).add(peptideKey);
-						} else {
-							final Set<String> set = new THashSet<String>();
-							set.add(peptideKey);
-							map2.put(proteinKey, set);
-						}
+						graph.add(proteinKey, expRepKey, peptideKey, expRepKey);
 					}
 					// }
 				}
-				mergeMaps(map, map2, expRepKey, expRepKey);
 			}
 		}
 		final String header = "acc+replicate+experiment" + "\t" + "sequence+charge+replicate+experiment" + "\t"
 				+ "protein-replicate-experiment --> peptide-replicate-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1670,6 +1670,24 @@ public class QuantAnalysis implements PropertyChangeListener {
 		return ret;
 	}
 
+	/**
+	 *
+	 * @param rep
+	 * @return the protein groups of the replicate, which are built just once
+	 *         for all the relationship files
+	 * @throws QuantParserException
+	 */
+	private List<ProteinGroup> getProteinGroups(QuantReplicate rep) throws QuantParserException {
+		List<ProteinGroup> proteinGroups = proteinGroupsByReplicate.get(rep);
+		if (proteinGroups == null) {
+			final List<GroupableProtein> groupableProteins = new ArrayList<GroupableProtein>();
+			groupableProteins.addAll(rep.getParser().getProteinMap().values());
+			proteinGroups = getProteinGroups(groupableProteins);
+			proteinGroupsByReplicate.put(rep, proteinGroups);
+		}
+		return proteinGroups;
+	}
+
 	private List<ProteinGroup> getProteinGroups(List<GroupableProtein> groupableProteins) {
 		final PAnalyzer pa = new PAnalyzer(false);
 		final List<ProteinGroup> proteinGroups = pa.run(groupableProteins);
@@ -1688,8 +1706,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 	private void writeSpectrumToPeptideExperimentReplicateMap() throws IOException, QuantParserException {
 		final String fileName = getWorkingPath().getAbsolutePath() + File.separator
 				+ FileMappingResults.SPECTRUM_TO_PEPTIDE_REPLICATE_EXPERIMENT_2;
-		final FileWriter writer = new FileWriter(fileName);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(new File(fileName));
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1709,14 +1727,12 @@ public class QuantAnalysis implements PropertyChangeListener {
 					expRepKey += "_" + expName;
 				}
 				final QuantParser parser = rep.getParser();
-				final Map<String, Set<String>> tmpMap = parser.getPeptideToSpectraMap();
-				final Map<String, Set<String>> peptideToSpectraMap2 = addRepNameToMap(tmpMap, expRepKey);
-				mergeMaps(map, peptideToSpectraMap2, expRepKey, "");
+				graph.addAll(parser.getPeptideToSpectraMap(), expRepKey, expRepKey);
 			}
 		}
 		final String header = "sequence+charge+replicate+experiment" + "\t" + "scan+raw_file" + "\t"
 				+ "spectrum --> peptide-replicate-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1732,8 +1748,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 	private void writeSpectrumToPTMExperimentReplicateMap() throws IOException, QuantParserException {
 		final String fileName = getWorkingPath().getAbsolutePath() + File.separator
 				+ FileMappingResults.SPECTRUM_TO_PTM_2;
-		final FileWriter writer = new FileWriter(fileName);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(new File(fileName));
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 			String expName = "";
@@ -1753,14 +1769,12 @@ public class QuantAnalysis implements PropertyChangeListener {
 					expRepKey += "_" + expName;
 				}
 				final QuantParser parser = rep.getParser();
-				final Map<String, Set<String>> tmpMap = parser.getPTMToSpectraMap();
-				final Map<String, Set<String>> peptideToSpectraMap2 = addRepNameToMap(tmpMap, expRepKey);
-				mergeMaps(map, peptideToSpectraMap2, expRepKey, "");
+				graph.addAll(parser.getPTMToSpectraMap(), expRepKey, expRepKey);
 			}
 		}
 		final String header = "PTM_SITE+replicate+experiment" + "\t" + "scan+raw_file" + "\t"
 				+ "spectrum --> PTM_SITE-replicate-experiment";
-		writeMapToFile(header, map, writer);
+		graph.write(header, writer);
 
 	}
 
@@ -1781,8 +1795,8 @@ public class QuantAnalysis implements PropertyChangeListener {
 		if (!overrideFilesIfExists && file.exists()) {
 			return;
 		}
-		final FileWriter writer = new FileWriter(file);
-		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		final Writer writer = newWriter(file);
+		final RelationshipGraph graph = new RelationshipGraph();
 
 		for (final QuantExperiment exp : quantExperiments) {
 
@@ -1804,80 +1818,13 @@ public class QuantAnalysis implements PropertyChangeListener {
 					expRepKey += "_" + expName;
 				}
 				final IsobaricQuantParser parser = (IsobaricQuantParser) rep.getParser();
-				final Map<String, Set<String>> tmpMap = parser.getSpectrumToIonsMap();
-
 				// add repName to the elements of the map
-				final Map<String, Set<String>> spectrumToIonsMap2 = addRepNameToMap(tmpMap, expRepKey);
-
-				mergeMaps(map, spectrumToIonsMap2, "", "");
+				graph.addAll(parser.getSpectrumToIonsMap(), expRepKey, expRepKey);
 			}
 		}
 
 		final String header = "scan+raw_file" + "\t" + "ion_type+scan+raw_file" + "\t" + "ion --> spectrum";
-		writeMapToFile(header, map, writer);
-	}
-
-	private Map<String, Set<String>> addRepNameToMap(Map<String, Set<String>> map, String repName) {
-		final Map<String, Set<String>> ret = new THashMap<String, Set<String>>();
-		for (final String key : map.keySet()) {
-			final Set<String> keys = map.get(key);
-			final Set<String> correctedKeys = new THashSet<String>();
-			for (final String key2 : keys) {
-				String newKey = key2;
-				if (!key2.endsWith(repName))
-					newKey += repName;
-				correctedKeys.add(newKey);
-			}
-			String newKey2 = key;
-			if (!newKey2.endsWith(repName))
-				newKey2 += repName;
-			ret.put(newKey2, correctedKeys);
-		}
-		return ret;
-	}
-
-	private void writeMapToFile(String header, Map<String, Set<String>> map, FileWriter writer) throws IOException {
-		try {
-			writer.write("#" + header + NL);
-			final Set<String> keySet = map.keySet();
-			final List<String> list = new ArrayList<String>();
-			list.addAll(keySet);
-			Collections.sort(list);
-			for (final String key : list) {
-				final Set<String> set = map.get(key);
-				for (final String value : set) {
-					writer.write(key + "\t" + value + NL);
-				}
-			}
-		} finally {
-			if (writer != null) {
-				writer.close();
-			}
-		}
-	}
-
-	private void mergeMaps(Map<String, Set<String>> receiver, Map<String, Set<String>> donor, String suffixForKey,
-			String suffixForValue) {
-		for (final String originalkey : donor.keySet()) {
-			String key = originalkey;
-			if (!key.endsWith(suffixForKey))
-				key += suffixForKey;
-			final Set<String> donorValues = donor.get(originalkey);
-			if (receiver.containsKey(key)) {
-				for (final String donorValue : donorValues) {
-					receiver.get(key).add(donorValue + suffixForValue);
-				}
-			} else {
-				final Set<String> set = new THashSet<String>();
-				for (final String donorValue : donorValues) {
-					String key2 = donorValue;
-					if (!key2.endsWith(suffixForKey))
-						key2 += suffixForKey;
-					set.add(key2);
-				}
-				receiver.put(key, set);
-			}
-		}
+		graph.write(header, writer);
 	}
 
 	@Override
@@ -1915,6 +1862,38 @@ public class QuantAnalysis implements PropertyChangeListener {
 		quantParameters.setSanxotScriptsFolder(folder);
 	}
 
+	public void setSanxotParallelism(int parallelism) {
+		quantParameters.setParallelism(parallelism);
+	}
+
+	/**
+	 * @param reuseUnchangedSanxotSteps
+	 *            if true, the sanxot steps with the same inputs as in a
+	 *            previous analysis reuse its files instead of being run again
+	 */
+	public void setReuseUnchangedSanxotSteps(boolean reuseUnchangedSanxotSteps) {
+		quantParameters.setReuseUnchangedSteps(reuseUnchangedSanxotSteps);
+	}
+
+	/**
+	 * @param keepSanxotLevelsInMemory
+	 *            if true, the data of the levels is passed in memory from a
+	 *            sanxot step to the next one
+	 */
+	public void setKeepSanxotLevelsInMemory(boolean keepSanxotLevelsInMemory) {
+		quantParameters.setKeepLevelsInMemory(keepSanxotLevelsInMemory);
+	}
+
+	/**
+	 * @param writeSanxotAuditFiles
+	 *            if false and the data of the levels is kept in memory, the
+	 *            sanxot steps performed in the JVM only write the result files
+	 *            that are needed by other steps
+	 */
+	public void setWriteSanxotAuditFiles(boolean writeSanxotAuditFiles) {
+		quantParameters.setWriteAuditFiles(writeSanxotAuditFiles);
+	}
+
 	public void setFastaFile(File fastaFile) {
 		log.info("Constructing index from fasta file: " + fastaFile + " using default parameters");
 		setFastaFile(DBIndexImpl.getDefaultDBIndexParams(fastaFile));
@@ -1925,6 +1904,69 @@ public class QuantAnalysis implements PropertyChangeListener {
 		dbIndex = DBIndexImpl.getByParam(dbIndexSearchParams);
 	}
 
+	/**
+	 * Builds an in-memory peptide index of the fasta file, used instead of
+	 * building a DBIndex to assign the proteins of the peptides
+	 *
+	 * @param fastaFile
+	 * @throws IOException
+	 */
+	public void setInMemoryFastaFile(File fastaFile) throws IOException {
+		log.info("Constructing in-memory peptide index from fasta file: " + fastaFile);
+		fastaPeptideIndex = FastaPeptideIndex.build(fastaFile);
+	}
+
+	public void setFastaPeptideIndex(FastaPeptideIndex fastaPeptideIndex) {
+		this.fastaPeptideIndex = fastaPeptideIndex;
+	}
+
+	/**
+	 * Sets an engine to perform the integrations instead of running sanxot in
+	 * an external process
+	 *
+	 * @param integrationEngine
+	 *            if null, sanxot is used
+	 */
+	public void setIntegrationEngine(IntegrationEngine integrationEngine) {
+		this.integrationEngine = integrationEngine;
+	}
+
+	/**
+	 * Sets an engine to perform the calibrations instead of running klibrate
+	 * in an external process
+	 *
+	 * @param calibrationEngine
+	 *            if null, klibrate is used
+	 */
+	public void setCalibrationEngine(CalibrationEngine calibrationEngine) {
+		this.calibrationEngine = calibrationEngine;
+	}
+
+	/**
+	 * Sets an engine to remove the outliers instead of running sanxotsieve in
+	 * an external process
+	 *
+	 * @param outlierRemovalEngine
+	 *            if null, sanxotsieve is used
+	 */
+	public void setOutlierRemovalEngine(OutlierRemovalEngine outlierRemovalEngine) {
+		this.outlierRemovalEngine = outlierRemovalEngine;
+	}
+
+	/**
+	 * Performs the integrations, calibrations and outlier removals in the JVM
+	 * (see {@link JavaIntegrationEngine}, {@link JavaCalibrationEngine} and
+	 * {@link JavaOutlierRemovalEngine}) instead of running sanxot, klibrate and
+	 * sanxotsieve
+	 *
+	 * @param b
+	 */
+	public void setIntegrateInJVM(boolean b) {
+		integrationEngine = b ? new JavaIntegrationEngine() : null;
+		calibrationEngine = b ? new JavaCalibrationEngine() : null;
+		outlierRemovalEngine = b ? new JavaOutlierRemovalEngine() : null;
+	}
+
 	/**
 	 * @return the result
 	 */
@@ -13,6 +13,10 @@ public class QuantParameters {
 	private int maxIterations;
 	private boolean usePython = true; // by default
 	private String ratioName;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean reuseUnchangedSteps = true;
+	private boolean keepLevelsInMemory = false;
+	private boolean writeAuditFiles = true;
 
 	public QuantParameters(boolean calibration, Double outlierRemovalFDR, File sanxotScriptsFolder, long timeout,
 			int maxIterations, boolean usePython) {
@@ -125,4 +129,83 @@ public class QuantParameters {
 	public void setRatioName(String ratioName) {
 		this.ratioName = ratioName;
 	}
+
+	/**
+	 * @return the maximum number of sanxot steps (calibrations, integrations,
+	 *         outlier removals) running at the same time
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism
+	 *            the maximum number of sanxot steps running at the same time.
+	 *            Use 1 to run them one after the other.
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return whether the steps (calibrations, integrations, outlier
+	 *         removals) with the same inputs as in a previous analysis in the
+	 *         same working folder reuse its files instead of being run again
+	 */
+	public boolean isReuseUnchangedSteps() {
+		return reuseUnchangedSteps;
+	}
+
+	/**
+	 * @param reuseUnchangedSteps
+	 *            whether the steps with the same inputs as in a previous
+	 *            analysis in the same working folder reuse its files instead
+	 *            of being run again
+	 */
+	public void setReuseUnchangedSteps(boolean reuseUnchangedSteps) {
+		this.reuseUnchangedSteps = reuseUnchangedSteps;
+	}
+
+	/**
+	 * @return whether the data of the levels is passed in memory from a step
+	 *         to the next one, instead of being written and read in data
+	 *         files
+	 */
+	public boolean isKeepLevelsInMemory() {
+		return keepLevelsInMemory;
+	}
+
+	/**
+	 * @param keepLevelsInMemory
+	 *            whether the data of the levels is passed in memory from a
+	 *            step to the next one. The steps performed in the JVM read the
+	 *            data and the relationships of each level just once, and the
+	 *            data files of the datasets are only written if a sanxot
+	 *            script needs them. The steps performed in the JVM with the
+	 *            data in memory don't reuse the results of previous analyses.
+	 */
+	public void setKeepLevelsInMemory(boolean keepLevelsInMemory) {
+		this.keepLevelsInMemory = keepLevelsInMemory;
+	}
+
+	/**
+	 * @return whether the steps performed in the JVM with the data in memory
+	 *         write their result files even if no other step needs them
+	 */
+	public boolean isWriteAuditFiles() {
+		return writeAuditFiles;
+	}
+
+	/**
+	 * @param writeAuditFiles
+	 *            whether the steps performed in the JVM with the data in
+	 *            memory write their result files (higher level data,
+	 *            statistics, info files...) for auditing the analysis. If
+	 *            false, the files are only written if a sanxot script or a
+	 *            later step needs them. It has no effect if the levels are
+	 *            not kept in memory.
+	 */
+	public void setWriteAuditFiles(boolean writeAuditFiles) {
+		this.writeAuditFiles = writeAuditFiles;
+	}
 }
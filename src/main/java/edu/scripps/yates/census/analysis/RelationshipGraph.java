@@ -0,0 +1,158 @@
+package edu.scripps.yates.census.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Set;
+
+import edu.scripps.yates.census.read.util.StringDictionary;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Relationships between the elements of two levels of the analysis, as
+ * written in the relationship files.<br>
+ * Each element is encoded once as an integer id made of the id of its key
+ * (the spectrum, peptide, protein... key) and the id of its suffix (the
+ * replicate and experiment names, as "_rep_exp"), so the keys are stored just
+ * once for all the replicates and experiments and the strings of the elements
+ * are only built when the relationships are written. The lower level elements
+ * of each upper level element are kept in an int array.
+ *
+ * @author salvador
+ *
+ */
+public class RelationshipGraph {
+	private static final String NL = System.getProperty("line.separator");
+	private final StringDictionary keys = new StringDictionary();
+	private final StringDictionary suffixes = new StringDictionary();
+	private final TLongIntHashMap elementsByKeyAndSuffix = new TLongIntHashMap(16, 0.5f, -1,
+			StringDictionary.NO_ID);
+	private final TIntArrayList elementKeys = new TIntArrayList();
+	private final TIntArrayList elementSuffixes = new TIntArrayList();
+	private final TIntObjectHashMap<TIntArrayList> lowerElementsByUpperElement = new TIntObjectHashMap<TIntArrayList>();
+
+	/**
+	 *
+	 * @param upper
+	 *            upper level element
+	 * @param lower
+	 *            lower level element
+	 */
+	public void add(String upper, String lower) {
+		add(upper, "", lower, "");
+	}
+
+	/**
+	 * Adds a relationship between an upper level element and a lower level
+	 * element, each one made of a key and a suffix
+	 *
+	 * @param upperKey
+	 * @param upperSuffix
+	 * @param lowerKey
+	 * @param lowerSuffix
+	 */
+	public void add(String upperKey, String upperSuffix, String lowerKey, String lowerSuffix) {
+		final int upper = getElement(upperKey, upperSuffix);
+		final int lower = getElement(lowerKey, lowerSuffix);
+		TIntArrayList lowerElements = lowerElementsByUpperElement.get(upper);
+		if (lowerElements == null) {
+			lowerElements = new TIntArrayList(4);
+			lowerElementsByUpperElement.put(upper, lowerElements);
+		}
+		lowerElements.add(lower);
+	}
+
+	/**
+	 * Adds all the relationships of a map. The suffixes are only appended to
+	 * the keys that don't end with them already.
+	 *
+	 * @param map
+	 *            lower level elements by upper level element
+	 * @param upperSuffix
+	 *            suffix appended to the upper level elements
+	 * @param lowerSuffix
+	 *            suffix appended to the lower level elements
+	 */
+	public void addAll(Map<String, Set<String>> map, String upperSuffix, String lowerSuffix) {
+		for (final String upperKey : map.keySet()) {
+			for (final String lowerKey : map.get(upperKey)) {
+				add(upperKey, upperKey.endsWith(upperSuffix) ? "" : upperSuffix, lowerKey,
+						lowerKey.endsWith(lowerSuffix) ? "" : lowerSuffix);
+			}
+		}
+	}
+
+	private int getElement(String key, String suffix) {
+		final int keyId = keys.encode(key);
+		final int suffixId = suffixes.encode(suffix);
+		final long keyAndSuffix = ((long) keyId << 32) | (suffixId & 0xffffffffl);
+		int element = elementsByKeyAndSuffix.get(keyAndSuffix);
+		if (element == StringDictionary.NO_ID) {
+			element = elementKeys.size();
+			elementKeys.add(keyId);
+			elementSuffixes.add(suffixId);
+			elementsByKeyAndSuffix.put(keyAndSuffix, element);
+		}
+		return element;
+	}
+
+	private String getName(int element) {
+		return keys.decode(elementKeys.get(element)) + suffixes.decode(elementSuffixes.get(element));
+	}
+
+	/**
+	 *
+	 * @return the number of upper level elements
+	 */
+	public int size() {
+		return lowerElementsByUpperElement.size();
+	}
+
+	/**
+	 * Writes the relationships sorted by upper level element and by lower level
+	 * element, with a line per relationship, and closes the writer
+	 *
+	 * @param header
+	 * @param writer
+	 * @throws IOException
+	 */
+	public void write(String header, Writer writer) throws IOException {
+		try {
+			writer.write("#" + header + NL);
+			final String[] upperNames = new String[elementKeys.size()];
+			final Integer[] uppers = new Integer[lowerElementsByUpperElement.size()];
+			int i = 0;
+			for (final int upper : lowerElementsByUpperElement.keys()) {
+				upperNames[upper] = getName(upper);
+				uppers[i++] = upper;
+			}
+			Arrays.sort(uppers, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return upperNames[o1].compareTo(upperNames[o2]);
+				}
+			});
+			for (final int upper : uppers) {
+				final TIntArrayList lowerElements = lowerElementsByUpperElement.get(upper);
+				final String[] lowerNames = new String[lowerElements.size()];
+				for (int j = 0; j < lowerNames.length; j++) {
+					lowerNames[j] = getName(lowerElements.get(j));
+				}
+				Arrays.sort(lowerNames);
+				for (int j = 0; j < lowerNames.length; j++) {
+					// the same relationship may have been added more than once
+					if (j > 0 && lowerNames[j].equals(lowerNames[j - 1])) {
+						continue;
+					}
+					writer.write(upperNames[upper] + "\t" + lowerNames[j] + NL);
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
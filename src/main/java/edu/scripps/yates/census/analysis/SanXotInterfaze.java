@@ -1,13 +1,18 @@
 package edu.scripps.yates.census.analysis;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import javax.swing.SwingWorker;
 
@@ -15,10 +20,19 @@ import org.apache.commons.exec.CommandLine;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.log4j.Logger;
 
+import edu.scripps.yates.census.analysis.AnalysisTaskScheduler.Task;
+import edu.scripps.yates.census.analysis.engine.CalibrationEngine;
+import edu.scripps.yates.census.analysis.engine.CalibrationTable;
+import edu.scripps.yates.census.analysis.engine.IntegrationEngine;
+import edu.scripps.yates.census.analysis.engine.IntegrationTable;
+import edu.scripps.yates.census.analysis.engine.OutlierRemovalEngine;
+import edu.scripps.yates.census.analysis.engine.OutlierRemovalTable;
+import edu.scripps.yates.census.analysis.wrappers.InfoFileReader;
 import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
 import edu.scripps.yates.census.analysis.wrappers.KalibrateResultWrapper;
 import edu.scripps.yates.census.analysis.wrappers.OutlierRemovalResultWrapper;
 import edu.scripps.yates.census.analysis.wrappers.SanXotAnalysisResult;
+import edu.scripps.yates.census.analysis.wrappers.SanXotResultProperty;
 import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
 import edu.scripps.yates.census.read.util.FileSplitter;
 import edu.scripps.yates.utilities.exec.CommandLineRunner;
@@ -50,6 +64,9 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 
 	public static final String END_ANALYSIS = "end analysis";
 	private static final String PYTHON = "python";
+	// prefix of the integrations performed after removing the outliers, so
+	// that they don't overwrite the files of the first integrations
+	private static final String WITHOUT_OUTLIERS_SUFFIX = "_without_outliers";
 
 	private final FileMappingResults fileMappingResults;
 
@@ -57,6 +74,15 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 	private final SanXotAnalysisResult result;
 	private boolean keepExperimentsSeparated;
 	private final QuantParameters quantParameters;
+	// if null, the integrations are performed by sanxot
+	private IntegrationEngine integrationEngine;
+	// if null, the calibrations are performed by klibrate
+	private CalibrationEngine calibrationEngine;
+	// if null, the outliers are removed by sanxotsieve
+	private OutlierRemovalEngine outlierRemovalEngine;
+	// if not null, the steps with the same inputs as in a previous analysis
+	// reuse its files
+	private SanXotStepCache stepCache;
 
 	public SanXotInterfaze(FileMappingResults fileMappingResults, QuantParameters quantParameters) {
 		this.quantParameters = quantParameters;
@@ -85,6 +111,63 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 		quantParameters.setSanxotScriptsFolder(folder);
 	}
 
+	/**
+	 * @return the engine performing the integrations, or null if they are
+	 *         performed by sanxot
+	 */
+	public IntegrationEngine getIntegrationEngine() {
+		return integrationEngine;
+	}
+
+	/**
+	 * Sets an engine to perform the integrations instead of running sanxot in
+	 * an external process
+	 *
+	 * @param integrationEngine
+	 *            if null, sanxot is used
+	 */
+	public void setIntegrationEngine(IntegrationEngine integrationEngine) {
+		this.integrationEngine = integrationEngine;
+	}
+
+	/**
+	 * @return the engine performing the calibrations, or null if they are
+	 *         performed by klibrate
+	 */
+	public CalibrationEngine getCalibrationEngine() {
+		return calibrationEngine;
+	}
+
+	/**
+	 * Sets an engine to perform the calibrations instead of running klibrate
+	 * in an external process
+	 *
+	 * @param calibrationEngine
+	 *            if null, klibrate is used
+	 */
+	public void setCalibrationEngine(CalibrationEngine calibrationEngine) {
+		this.calibrationEngine = calibrationEngine;
+	}
+
+	/**
+	 * @return the engine removing the outliers, or null if they are removed by
+	 *         sanxotsieve
+	 */
+	public OutlierRemovalEngine getOutlierRemovalEngine() {
+		return outlierRemovalEngine;
+	}
+
+	/**
+	 * Sets an engine to remove the outliers instead of running sanxotsieve in
+	 * an external process
+	 *
+	 * @param outlierRemovalEngine
+	 *            if null, sanxotsieve is used
+	 */
+	public void setOutlierRemovalEngine(OutlierRemovalEngine outlierRemovalEngine) {
+		this.outlierRemovalEngine = outlierRemovalEngine;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -119,10 +202,12 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 
 		log.info("Starting SanXot interfaze");
 		log.info("Timeout set at " + quantParameters.getTimeout() / 1000 + " sg.");
+		log.info("Running up to " + quantParameters.getParallelism() + " steps at the same time");
+		if (quantParameters.isReuseUnchangedSteps()) {
+			stepCache = new SanXotStepCache(fileMappingResults.getWorkingFolder());
+		}
 		int lowLevel = 0;
 		int upperLevel = 0;
-		File dataFile = fileMappingResults.getDataFile();
-		File infoFile = null;
 		try {
 			final Map<String, List<String>> experimentAndReplicateNames = fileMappingResults
 					.getExperimentAndReplicateNames();
@@ -130,174 +215,34 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 			lowLevel = lowLevelPair.getFirstelement();
 			Pair<Integer, File> upperLevelPair = fileMappingResults.getNextAvailableLevel(lowLevel);
 			upperLevel = upperLevelPair.getFirstelement();
-			File relatFile = lowLevelPair.getSecondElement();
 
+			// the levels to integrate are the same for all the replicates
+			final LevelPlan levelPlan = new LevelPlan();
+
+			// all the steps of all the experiments and replicates are run as a
+			// graph of tasks, so the steps that don't depend on each other
+			// run at the same time
+			final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(quantParameters.getParallelism());
+			final List<ExperimentTasks> experimentTasks = new ArrayList<ExperimentTasks>();
 			for (final String experimentName : experimentAndReplicateNames.keySet()) {
-				log.info("Experiment: " + experimentName);
 				// get the names of the replicates and experiments in order to
-				// split the relation files
+				// split the data files
 				final List<String> dataSetNames = getDataSetNames(experimentAndReplicateNames, experimentName);
+				experimentTasks.add(addExperimentTasks(scheduler, experimentName, dataSetNames, levelPlan));
+			}
+			scheduler.run();
 
-				// split relatFile in many files as replicates
-				// Map<String, File> relatFiles = FileSplitter
-				// .splitFiles(fileMappingResults.getFirstLevel().getSecondElement(),
-				// dataSetNames);
-				relatFile = fileMappingResults.getFirstLevel().getSecondElement();
-
-				// split dataFile in many files as replicates
-				Map<String, File> dataFiles = null;
-				if (dataSetNames.size() == 1 && dataSetNames.get(0).equals("")) {
-					dataFiles = new THashMap<String, File>();
-					dataFiles.put("", fileMappingResults.getDataFile());
-				} else {
-					dataFiles = FileSplitter.splitFiles(fileMappingResults.getDataFile(), dataSetNames);
-				}
-
-				final Map<String, File> calibratedDataFiles = new THashMap<String, File>();
-				for (final String datasetName : dataSetNames) {
-					// relatFile = relatFiles.get(datasetName);
-					dataFile = dataFiles.get(datasetName);
-					// get lowLevels again
-					lowLevel = fileMappingResults.getFirstLevel().getFirstelement();
-					upperLevel = fileMappingResults.getNextAvailableLevel(lowLevel).getFirstelement();
-					// CALIBRATION
-					if (quantParameters.isPerformCalibration()) {
-						final KalibrateResultWrapper calibrationResult = calibrate(lowLevel, upperLevel, relatFile,
-								dataFile, "_" + datasetName, quantParameters.getTimeout());
-						result.setKalibrationResult(calibrationResult);
-						if (calibrationResult.getCalibratedDataFile() != null) {
-							dataFile = calibrationResult.getCalibratedDataFile();
-						}
-						calibratedDataFiles.put(datasetName, dataFile);
-					} else {
-						calibratedDataFiles.put(datasetName, dataFile);
-					}
-				}
-
-				final Map<String, File> lastDataFiles = new THashMap<String, File>();
-				// loop
-				boolean dataMergingNeeded = false;
-				for (final String replicateName : dataSetNames) {
-					try {
-						log.info("Replicate: " + replicateName);
-						// relatFile = relatFiles.get(replicateName);
-						dataFile = calibratedDataFiles.get(replicateName);
-						// get lowLevels again
-						lowLevel = fileMappingResults.getFirstLevel().getFirstelement();
-						upperLevel = fileMappingResults.getNextAvailableLevel(lowLevel).getFirstelement();
-						dataMergingNeeded = false;
-						while (!dataMergingNeeded && upperLevel <= fileMappingResults.getMaxLevel()) {
-							dataMergingNeeded = fileMappingResults.isDataMergingNeeded(lowLevel);
-
-							relatFile = fileMappingResults.getFileLevel(lowLevel);
-							// split relatFile in many files as datasets
-							// relatFiles = FileSplitter.splitFiles(relatFile,
-							// dataSetNames);
-							// relatFile = relatFiles.get(replicateName);
-							lowLevelPair = fileMappingResults.getFilePairLevel(lowLevel);
-							upperLevelPair = fileMappingResults.getNextAvailableLevel(lowLevelPair.getFirstelement());
-							upperLevel = upperLevelPair.getFirstelement();
-							log.info(lowLevel + " to " + upperLevel + " on " + replicateName + " "
-									+ fileMappingResults.isDataMergingNeeded(lowLevel));
-							IntegrationResultWrapper integrationResult = null;
-							if (dataMergingNeeded) {
-								log.info("Skipping this step. It is not necessary");
-								// integrationResult = integrate(lowLevel,
-								// upperLevel, null, dataFile, null,
-								// datasetName,
-								// null);
-								//
-								// result.addIntegrationResult(integrationResult);
-							} else {
-								// first integration, estimating the variance by
-								// fitting
-								// algorithm
-
-								integrationResult = integrate(lowLevel, upperLevel, relatFile, dataFile, null,
-										replicateName, null, true);
-
-								result.addIntegrationResult(integrationResult);
-								result.addReplicateExperimentIntegrationResult(integrationResult, experimentName,
-										replicateName);
-								if (dataSetNames.size() == 1) {
-									// add this integration result as
-									// experiment level
-									result.addExperimentIntegrationResult(integrationResult, experimentName);
-								}
-								// remove outliers
-								if (quantParameters.getOutlierRemovalFDR() != null) {
-									// not perform in the last interation
-									if (fileMappingResults.getNextAvailableLevel(upperLevel) == null) {
-									} else {
-										infoFile = integrationResult.getInfoFile();
-										final OutlierRemovalResultWrapper removeOutliers = removeOutliers(
-												lowLevelPair.getFirstelement(), upperLevelPair.getFirstelement(),
-												lowLevelPair.getSecondElement(), dataFile, infoFile, quantParameters);
-										relatFile = removeOutliers.getRelatFile();
-										// second integration, using the
-										// variance
-										// calculated in previous one (use of
-										// infoFile
-										// for forcing the
-										// variance to be that one)
-
-										integrationResult = integrate(lowLevel, upperLevel, relatFile, dataFile,
-												infoFile, replicateName, null, false);
-										result.addIntegrationResult(integrationResult);
-										integrationResult.setOutlierRemovalResult(removeOutliers);
-										result.addReplicateExperimentIntegrationResult(integrationResult,
-												experimentName, replicateName);
-										if (dataSetNames.size() == 1) {
-											// add this integration result as
-											// experiment level
-											result.addExperimentIntegrationResult(integrationResult, experimentName);
-										}
-									}
-								}
-								// get datafile from higherlevel data file
-								dataFile = integrationResult.getHigherLevelDataFile();
-								lastDataFiles.put(replicateName, dataFile);
-
-								// next level
-								lowLevel = upperLevel;
-							}
-						}
-					} catch (final NextLevelException e) {
-						log.debug(e);
-						// do nothing
-					}
-				}
-				// data merging
-				if (dataMergingNeeded) {
-					lowLevelPair = fileMappingResults.getFilePairLevel(lowLevel);
+			// the results are added in the same order as if the steps were run
+			// one after the other
+			for (final ExperimentTasks tasks : experimentTasks) {
+				addExperimentResults(tasks, levelPlan);
+			}
+			if (!experimentTasks.isEmpty()) {
+				lowLevel = levelPlan.lowLevel;
+				upperLevel = levelPlan.upperLevel;
+				upperLevelPair = levelPlan.upperLevelPair;
+				if (levelPlan.dataMergingNeeded) {
 					upperLevelPair = fileMappingResults.getFilePairLevel(upperLevel);
-					relatFile = lowLevelPair.getSecondElement();
-					if (lastDataFiles.size() > 1) {
-						// merge the latest data files into only one
-						// Concatenate higherlevel result files in a single one
-						final File mergedDataFile = new File(fileMappingResults.getWorkingFolder().getAbsolutePath()
-								+ File.separator + experimentName + "_" + lowLevel + "_" + upperLevel + "_merged.tsv");
-						FileUtils.mergeFiles(lastDataFiles.values(), mergedDataFile, true);
-
-						// // up one level
-						// lowLevelPair = upperLevelPair;
-						// lowLevel = lowLevelPair.getFirstelement();
-						// upperLevelPair = fileMappingResults
-						// .getNextAvailableLevel(upperLevel);
-						// upperLevel = upperLevelPair.getFirstelement();
-						// relatFile = lowLevelPair.getSecondElement();
-						final IntegrationResultWrapper integrationResult = integrate(lowLevel, upperLevel, relatFile,
-								mergedDataFile, null, experimentName, null, true);
-						// keep the results in a Map by experiment name
-						result.addExperimentIntegrationResult(integrationResult, experimentName);
-					} else {
-						// add the replicate integration to the experiment
-						// integration
-						final IntegrationResultWrapper replicateIntegration = result
-								.getReplicateIntegrationResultsByExperiment().get(experimentName).values().iterator()
-								.next();
-						result.addExperimentIntegrationResult(replicateIntegration, experimentName);
-					}
 				}
 			}
 
@@ -329,7 +274,7 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 				final Set<File> higherLevelDataResults = new THashSet<File>();
 				for (final IntegrationResultWrapper integrationResult : result.getExperimentIntegrationResults()
 						.values()) {
-					higherLevelDataResults.add(integrationResult.getHigherLevelDataFile());
+					higherLevelDataResults.add(getHigherLevelData(integrationResult).getFile());
 				}
 				final File mergedFile = new File(fileMappingResults.getWorkingFolder().getAbsolutePath()
 						+ File.separator + "experiment_data_merged.tsv");
@@ -341,7 +286,7 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 				if (upperLevelPair != null) {
 					upperLevel = upperLevelPair.getFirstelement();
 					final IntegrationResultWrapper integrationResult = integrate(lowLevel, upperLevel,
-							lowLevelPair.getSecondElement(), mergedFile, null, "_TOTAL", null, true);
+							lowLevelPair.getSecondElement(), new LevelData(mergedFile), null, "_TOTAL", null, true);
 					result.addIntegrationResult(integrationResult);
 				} else {
 					upperLevel = lowLevel;
@@ -349,7 +294,7 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 				// make the last integration
 				final IntegrationResultWrapper lastIntegrationResults = result.getLastIntegrationResults();
 				final IntegrationResultWrapper integrationResult = integrate(lowLevel, upperLevel, null,
-						lastIntegrationResults.getHigherLevelDataFile(), null, "", null, true);
+						getHigherLevelData(lastIntegrationResults), null, "", null, true);
 				result.addIntegrationResult(integrationResult);
 				firePropertyChange(END_ANALYSIS, null, integrationResult);
 			} else {
@@ -359,18 +304,496 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 				lowLevel = lowLevelPair.getFirstelement();
 				final IntegrationResultWrapper lastIntegrationResults = result.getLastIntegrationResults();
 				final IntegrationResultWrapper integrationResult = integrate(lowLevel, upperLevel, null,
-						lastIntegrationResults.getHigherLevelDataFile(), null, "", null, true);
+						getHigherLevelData(lastIntegrationResults), null, "", null, true);
 				result.addIntegrationResult(integrationResult);
 			}
 		} catch (final NextLevelException e) {
 			// make the last integration
 			final IntegrationResultWrapper lastIntegrationResults = result.getLastIntegrationResults();
 			final IntegrationResultWrapper integrationResult = integrate(lowLevel, upperLevel, null,
-					lastIntegrationResults.getHigherLevelDataFile(), null, "", null, true);
+					getHigherLevelData(lastIntegrationResults), null, "", null, true);
 			result.addIntegrationResult(integrationResult);
 		}
 	}
 
+	/**
+	 * Adds to the scheduler the tasks analyzing an experiment: the split of the
+	 * data file in datasets, the calibration of each dataset, the integrations
+	 * and outlier removals of each dataset from level to level, and the
+	 * integration of the merged data of the datasets.
+	 *
+	 * @param scheduler
+	 * @param experimentName
+	 * @param dataSetNames
+	 * @param levelPlan
+	 * @return
+	 * @throws NextLevelException
+	 */
+	private ExperimentTasks addExperimentTasks(AnalysisTaskScheduler scheduler, String experimentName,
+			List<String> dataSetNames, LevelPlan levelPlan) throws NextLevelException {
+		log.info("Experiment: " + experimentName);
+		final ExperimentTasks ret = new ExperimentTasks(experimentName, dataSetNames);
+		// split dataFile in many files as datasets
+		final Task<Map<String, LevelData>> split = scheduler.addTask("Splitting data of " + experimentName, 0,
+				() -> splitData(dataSetNames));
+
+		final Pair<Integer, File> firstLevelPair = fileMappingResults.getFirstLevel();
+		final int firstLevel = firstLevelPair.getFirstelement();
+		final int secondLevel = fileMappingResults.getNextAvailableLevel(firstLevel).getFirstelement();
+		final File firstRelatFile = firstLevelPair.getSecondElement();
+		final Task<?>[] lastTasks = new Task<?>[dataSetNames.size()];
+		for (int i = 0; i < dataSetNames.size(); i++) {
+			final String replicateName = dataSetNames.get(i);
+			final ReplicateTasks replicateTasks = new ReplicateTasks(replicateName);
+			ret.replicates.add(replicateTasks);
+			// CALIBRATION
+			Task<?> previous = split;
+			if (quantParameters.isPerformCalibration()) {
+				replicateTasks.calibration = scheduler.addTask("Calibrating " + replicateName, getTaskTimeout(1),
+						() -> calibrate(firstLevel, secondLevel, firstRelatFile, split.getResult().get(replicateName),
+								"_" + replicateName, quantParameters.getTimeout()),
+						split);
+				previous = replicateTasks.calibration;
+			}
+			final Task<KalibrateResultWrapper> calibration = replicateTasks.calibration;
+			Supplier<LevelData> data = memoize(() -> {
+				if (calibration != null) {
+					final KalibrateResultWrapper calibrationResult = calibration.getResult();
+					if (calibrationResult.getCalibrationTable() != null) {
+						final File calibratedDataFile = new File(calibrationResult.getWorkingFolder(),
+								calibrationResult.getPrefix() + CalibrationTable.CALIBRATED_SUFFIX);
+						return new LevelData(calibrationResult.getCalibrationTable().getCalibratedData(),
+								calibratedDataFile, calibrationResult.isCalibrationTableWritten());
+					}
+					if (calibrationResult.getCalibratedDataFile() != null) {
+						return new LevelData(calibrationResult.getCalibratedDataFile());
+					}
+				}
+				return split.getResult().get(replicateName);
+			});
+			// loop
+			for (final LevelStep step : levelPlan.steps) {
+				final Supplier<LevelData> stepData = data;
+				final String stepName = step.lowLevel + " to " + step.upperLevel + " on " + replicateName;
+				final LevelStepTasks stepTasks = new LevelStepTasks(step);
+				// first integration, estimating the variance by fitting
+				// algorithm
+				final Task<IntegrationResultWrapper> integration = scheduler.addTask("Integrating " + stepName,
+						getTaskTimeout(2), () -> integrate(step.lowLevel, step.upperLevel, step.relatFile,
+								stepData.get(), null, replicateName, null, true),
+						previous);
+				stepTasks.integration = integration;
+				Task<IntegrationResultWrapper> last = integration;
+				if (step.removeOutliers) {
+					final Task<OutlierRemovalResultWrapper> outlierRemoval = scheduler.addTask(
+							"Removing outliers " + stepName, getTaskTimeout(1),
+							() -> removeOutliers(step.lowLevelPair.getFirstelement(),
+									step.upperLevelPair.getFirstelement(), step.lowLevelPair.getSecondElement(),
+									stepData.get(), integration.getResult(), quantParameters, "_" + replicateName),
+							integration);
+					// second integration, using the variance calculated in
+					// previous one
+					last = scheduler.addTask("Integrating without outliers " + stepName, getTaskTimeout(2),
+							() -> integrateWithoutOutliers(step, stepData.get(), integration.getResult(),
+									outlierRemoval.getResult(), replicateName),
+							outlierRemoval);
+					stepTasks.outlierRemoval = outlierRemoval;
+					stepTasks.integrationWithoutOutliers = last;
+				}
+				replicateTasks.steps.add(stepTasks);
+				// get data from higherlevel data
+				final Task<IntegrationResultWrapper> lastIntegration = last;
+				data = memoize(() -> getHigherLevelData(lastIntegration.getResult()));
+				stepTasks.lastData = data;
+				previous = last;
+			}
+			lastTasks[i] = previous;
+		}
+		// data merging
+		if (levelPlan.dataMergingNeeded && levelPlan.isAnyStepCompleted() && dataSetNames.size() > 1) {
+			ret.mergedIntegration = scheduler.addTask("Integrating merged data of " + experimentName,
+					getTaskTimeout(2), () -> integrateMergedData(ret, levelPlan), lastTasks);
+		}
+		return ret;
+	}
+
+	/**
+	 * Splits the data file in as many datasets. If the levels are kept in
+	 * memory, the data of each dataset is only written in a file if it is
+	 * needed.
+	 *
+	 * @param dataSetNames
+	 * @return the data of each dataset
+	 * @throws IOException
+	 */
+	private Map<String, LevelData> splitData(List<String> dataSetNames) throws IOException {
+		final Map<String, LevelData> ret = new THashMap<String, LevelData>();
+		final File dataFile = fileMappingResults.getDataFile();
+		if (dataSetNames.size() == 1 && dataSetNames.get(0).equals("")) {
+			if (quantParameters.isKeepLevelsInMemory()) {
+				ret.put("", new LevelData(fileMappingResults.getData(), dataFile, true));
+			} else {
+				ret.put("", new LevelData(dataFile));
+			}
+			return ret;
+		}
+		if (quantParameters.isKeepLevelsInMemory()) {
+			final Set<String> dataSetNameSet = new THashSet<String>(dataSetNames);
+			final Map<String, Map<String, SanxotQuantResult>> dataByDataSet = new THashMap<String, Map<String, SanxotQuantResult>>();
+			for (final String dataSetName : dataSetNameSet) {
+				dataByDataSet.put(dataSetName, new THashMap<String, SanxotQuantResult>());
+			}
+			// each element goes to the dataset of the suffix of its key, as in
+			// FileSplitter
+			for (final SanxotQuantResult element : fileMappingResults.getData().values()) {
+				final String dataSetName = FileSplitter.getDataSetName(element.getKey(), dataSetNameSet);
+				if (dataSetName != null) {
+					dataByDataSet.get(dataSetName).put(element.getKey(), element);
+				}
+			}
+			for (final String dataSetName : dataSetNameSet) {
+				ret.put(dataSetName, new LevelData(dataByDataSet.get(dataSetName),
+						FileSplitter.getDataSetFile(dataFile, dataSetName), false));
+			}
+			return ret;
+		}
+		final Map<String, File> dataFiles = FileSplitter.splitFiles(dataFile, dataSetNames);
+		for (final String dataSetName : dataFiles.keySet()) {
+			ret.put(dataSetName, new LevelData(dataFiles.get(dataSetName)));
+		}
+		return ret;
+	}
+
+	/**
+	 *
+	 * @param integrationResult
+	 * @return the higher level data of an integration, in memory if the
+	 *         integration was performed in the JVM, in which case it is only
+	 *         written in the file if it was not written yet and a step needs it
+	 */
+	private static LevelData getHigherLevelData(IntegrationResultWrapper integrationResult) {
+		if (integrationResult.getIntegrationTable() != null) {
+			final File higherLevelDataFile = new File(integrationResult.getWorkingFolder(),
+					integrationResult.getPrefix() + IntegrationTable.HIGHER_LEVEL_SUFFIX);
+			return new LevelData(integrationResult.getIntegrationTable().getHigherLevel(), higherLevelDataFile,
+					integrationResult.isIntegrationTableWritten());
+		}
+		return new LevelData(integrationResult.getHigherLevelDataFile());
+	}
+
+	/**
+	 *
+	 * @param supplier
+	 * @return a supplier that gets the value from the supplier just the first
+	 *         time, so that all the steps using it share the same value
+	 */
+	private static <T> Supplier<T> memoize(Supplier<T> supplier) {
+		final AtomicReference<T> value = new AtomicReference<T>();
+		return () -> {
+			synchronized (value) {
+				if (value.get() == null) {
+					value.set(supplier.get());
+				}
+				return value.get();
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @param engine
+	 *            engine of a step, or null if it is performed by a sanxot
+	 *            script
+	 * @return true if the step is performed with the data in memory
+	 */
+	private boolean isInMemory(Object engine) {
+		return engine != null && quantParameters.isKeepLevelsInMemory();
+	}
+
+	/**
+	 *
+	 * @param engine
+	 *            engine of a step, or null if it is performed by a sanxot
+	 *            script
+	 * @return true if the step can reuse the results of a previous analysis
+	 */
+	private boolean isStepCacheUsed(Object engine) {
+		return stepCache != null && !isInMemory(engine);
+	}
+
+	/**
+	 * Gets the relationships of a relat file, taking them from the
+	 * {@link FileMappingResults} if it is the file of the level, so that it is
+	 * read only once
+	 *
+	 * @param level
+	 * @param relatFile
+	 * @return
+	 */
+	private Map<String, Set<String>> getRelationships(int level, File relatFile) {
+		if (relatFile == null) {
+			return null;
+		}
+		if (relatFile.equals(fileMappingResults.getFileLevel(level))) {
+			return fileMappingResults.getRelationships(level);
+		}
+		return IntegrationResultWrapper.getRelationShipsFromRelatFile(relatFile);
+	}
+
+	private IntegrationResultWrapper integrateWithoutOutliers(LevelStep step, LevelData data,
+			IntegrationResultWrapper integration, OutlierRemovalResultWrapper removeOutliers, String replicateName)
+			throws IOException, InterruptedException, ExecutionException {
+		IntegrationResultWrapper integrationResult;
+		if (removeOutliers.getOutlierRemovalTable() != null && integrationEngine != null) {
+			// directly from the relationships in memory
+			integrationResult = integrate(step.lowLevel, step.upperLevel, removeOutliers, data, integration,
+					replicateName + WITHOUT_OUTLIERS_SUFFIX);
+		} else {
+			// use of infoFile for forcing the variance to be that one
+			integrationResult = integrate(step.lowLevel, step.upperLevel, removeOutliers.getRelatFile(), data,
+					integration.getInfoFile(), replicateName + WITHOUT_OUTLIERS_SUFFIX, null, false);
+		}
+		integrationResult.setOutlierRemovalResult(removeOutliers);
+		return integrationResult;
+	}
+
+	/**
+	 * Merges the latest data of the datasets of an experiment into only one
+	 * and integrates it
+	 *
+	 * @param experimentTasks
+	 * @param levelPlan
+	 * @return
+	 * @throws IOException
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	private IntegrationResultWrapper integrateMergedData(ExperimentTasks experimentTasks, LevelPlan levelPlan)
+			throws IOException, InterruptedException, ExecutionException {
+		final int lowLevel = levelPlan.lowLevel;
+		final int upperLevel = levelPlan.upperLevel;
+		final File mergedDataFile = new File(fileMappingResults.getWorkingFolder().getAbsolutePath() + File.separator
+				+ experimentTasks.experimentName + "_" + lowLevel + "_" + upperLevel + "_merged.tsv");
+		LevelData mergedData;
+		if (isInMemory(integrationEngine)) {
+			// merge the higherlevel data in memory, in the order of the
+			// datasets
+			final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+			for (final ReplicateTasks replicateTasks : experimentTasks.replicates) {
+				data.putAll(replicateTasks.getLastData().getData());
+			}
+			mergedData = new LevelData(data, mergedDataFile, false);
+		} else {
+			// Concatenate higherlevel result files in a single one, in the
+			// order of the datasets
+			final List<File> lastDataFiles = new ArrayList<File>();
+			for (final ReplicateTasks replicateTasks : experimentTasks.replicates) {
+				lastDataFiles.add(replicateTasks.getLastData().getFile());
+			}
+			FileUtils.mergeFiles(lastDataFiles, mergedDataFile, true);
+			mergedData = new LevelData(mergedDataFile);
+		}
+		final File relatFile = fileMappingResults.getFilePairLevel(lowLevel).getSecondElement();
+		return integrate(lowLevel, upperLevel, relatFile, mergedData, null, experimentTasks.experimentName, null,
+				true);
+	}
+
+	/**
+	 * Adds the results of the tasks of an experiment to the analysis result
+	 *
+	 * @param experimentTasks
+	 * @param levelPlan
+	 */
+	private void addExperimentResults(ExperimentTasks experimentTasks, LevelPlan levelPlan) {
+		final String experimentName = experimentTasks.experimentName;
+		final boolean onlyOneDataSet = experimentTasks.dataSetNames.size() == 1;
+		for (final ReplicateTasks replicateTasks : experimentTasks.replicates) {
+			if (replicateTasks.calibration != null) {
+				result.setKalibrationResult(replicateTasks.calibration.getResult());
+			}
+		}
+		for (final ReplicateTasks replicateTasks : experimentTasks.replicates) {
+			for (final LevelStepTasks stepTasks : replicateTasks.steps) {
+				final List<IntegrationResultWrapper> integrationResults = new ArrayList<IntegrationResultWrapper>();
+				integrationResults.add(stepTasks.integration.getResult());
+				if (stepTasks.integrationWithoutOutliers != null) {
+					integrationResults.add(stepTasks.integrationWithoutOutliers.getResult());
+				}
+				for (final IntegrationResultWrapper integrationResult : integrationResults) {
+					result.addIntegrationResult(integrationResult);
+					result.addReplicateExperimentIntegrationResult(integrationResult, experimentName,
+							replicateTasks.replicateName);
+					if (onlyOneDataSet) {
+						// add this integration result as experiment level
+						result.addExperimentIntegrationResult(integrationResult, experimentName);
+					}
+				}
+			}
+		}
+		if (levelPlan.dataMergingNeeded) {
+			if (experimentTasks.mergedIntegration != null) {
+				// keep the results in a Map by experiment name
+				result.addExperimentIntegrationResult(experimentTasks.mergedIntegration.getResult(), experimentName);
+			} else {
+				// add the replicate integration to the experiment
+				// integration
+				final IntegrationResultWrapper replicateIntegration = result.getReplicateIntegrationResultsByExperiment()
+						.get(experimentName).values().iterator().next();
+				result.addExperimentIntegrationResult(replicateIntegration, experimentName);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @param numCommands
+	 *            maximum number of commands run by the task
+	 * @return the timeout of a task, or 0 if there is no timeout
+	 */
+	private long getTaskTimeout(int numCommands) {
+		if (quantParameters.getTimeout() <= 0) {
+			return 0;
+		}
+		return quantParameters.getTimeout() * numCommands;
+	}
+
+	/**
+	 * The integrations to perform from the first level up to the level in
+	 * which the data of the datasets has to be merged, which are the same for
+	 * all the datasets
+	 */
+	private class LevelPlan {
+		private final List<LevelStep> steps = new ArrayList<LevelStep>();
+		private int lowLevel;
+		private int upperLevel;
+		private Pair<Integer, File> upperLevelPair;
+		private boolean dataMergingNeeded = false;
+
+		private LevelPlan() {
+			lowLevel = fileMappingResults.getFirstLevel().getFirstelement();
+			try {
+				upperLevelPair = fileMappingResults.getNextAvailableLevel(lowLevel);
+				upperLevel = upperLevelPair.getFirstelement();
+				while (!dataMergingNeeded && upperLevel <= fileMappingResults.getMaxLevel()) {
+					dataMergingNeeded = fileMappingResults.isDataMergingNeeded(lowLevel);
+					final File relatFile = fileMappingResults.getFileLevel(lowLevel);
+					final Pair<Integer, File> lowLevelPair = fileMappingResults.getFilePairLevel(lowLevel);
+					upperLevelPair = fileMappingResults.getNextAvailableLevel(lowLevelPair.getFirstelement());
+					upperLevel = upperLevelPair.getFirstelement();
+					if (dataMergingNeeded) {
+						log.info(lowLevel + " to " + upperLevel + ": skipping this step. It is not necessary");
+					} else {
+						final LevelStep step = new LevelStep(lowLevel, upperLevel, relatFile, lowLevelPair,
+								upperLevelPair);
+						steps.add(step);
+						// remove outliers
+						if (quantParameters.getOutlierRemovalFDR() != null) {
+							// not perform in the last interation
+							fileMappingResults.getNextAvailableLevel(upperLevel);
+							step.removeOutliers = true;
+						}
+						step.completed = true;
+						// next level
+						lowLevel = upperLevel;
+					}
+				}
+			} catch (final NextLevelException e) {
+				log.debug(e);
+				// do nothing
+			}
+		}
+
+		private boolean isAnyStepCompleted() {
+			for (final LevelStep step : steps) {
+				if (step.completed) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The integration of a level into the upper level, followed by the outlier
+	 * removal and the integration without the outliers if needed
+	 */
+	private static class LevelStep {
+		private final int lowLevel;
+		private final int upperLevel;
+		private final File relatFile;
+		private final Pair<Integer, File> lowLevelPair;
+		private final Pair<Integer, File> upperLevelPair;
+		private boolean removeOutliers;
+		// false if the step is the last one and its data is not integrated in
+		// further levels
+		private boolean completed;
+
+		private LevelStep(int lowLevel, int upperLevel, File relatFile, Pair<Integer, File> lowLevelPair,
+				Pair<Integer, File> upperLevelPair) {
+			this.lowLevel = lowLevel;
+			this.upperLevel = upperLevel;
+			this.relatFile = relatFile;
+			this.lowLevelPair = lowLevelPair;
+			this.upperLevelPair = upperLevelPair;
+		}
+	}
+
+	private static class LevelStepTasks {
+		private final LevelStep step;
+		private Task<IntegrationResultWrapper> integration;
+		private Task<OutlierRemovalResultWrapper> outlierRemoval;
+		private Task<IntegrationResultWrapper> integrationWithoutOutliers;
+		// higher level data of the last integration of the step
+		private Supplier<LevelData> lastData;
+
+		private LevelStepTasks(LevelStep step) {
+			this.step = step;
+		}
+
+		private IntegrationResultWrapper getLastIntegrationResult() {
+			if (integrationWithoutOutliers != null) {
+				return integrationWithoutOutliers.getResult();
+			}
+			return integration.getResult();
+		}
+	}
+
+	private static class ReplicateTasks {
+		private final String replicateName;
+		private Task<KalibrateResultWrapper> calibration;
+		private final List<LevelStepTasks> steps = new ArrayList<LevelStepTasks>();
+
+		private ReplicateTasks(String replicateName) {
+			this.replicateName = replicateName;
+		}
+
+		/**
+		 *
+		 * @return the higher level data of the last completed step, or null if
+		 *         there is not any
+		 */
+		private LevelData getLastData() {
+			for (int i = steps.size() - 1; i >= 0; i--) {
+				if (steps.get(i).step.completed) {
+					return steps.get(i).lastData.get();
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class ExperimentTasks {
+		private final String experimentName;
+		private final List<String> dataSetNames;
+		private final List<ReplicateTasks> replicates = new ArrayList<ReplicateTasks>();
+		private Task<IntegrationResultWrapper> mergedIntegration;
+
+		private ExperimentTasks(String experimentName, List<String> dataSetNames) {
+			this.experimentName = experimentName;
+			this.dataSetNames = dataSetNames;
+		}
+	}
+
 	private List<String> getDataSetNamesOLD(Map<String, List<String>> experimentAndReplicateNames,
 			String experimentName) {
 		final boolean onlyOneExperiment = experimentAndReplicateNames.size() == 1;
@@ -416,15 +839,43 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 		return datasetNames;
 	}
 
-	private OutlierRemovalResultWrapper removeOutliers(int lowLevel, int upperLevel, File relatFile, File dataFile,
-			File infoFile, QuantParameters quantParameters)
+	private OutlierRemovalResultWrapper removeOutliers(int lowLevel, int upperLevel, File relatFile, LevelData data,
+			IntegrationResultWrapper integrationResult, QuantParameters quantParameters, String key)
 			throws IOException, InterruptedException, ExecutionException {
 		final String msg = "Removing outliers data from level " + lowLevel + " to " + upperLevel + "...";
 		log.info(msg);
 		firePropertyChange(OUTLIER_REMOVAL, null, msg);
-		final String prefix = OutlierRemovalResultWrapper.DEFAULT_OUTLIER_REMOVAL_PREFIX + lowLevel + "-" + upperLevel;
-		final CommandLine removeOutlierCommandLine = getRemoveOutliersCommandLine(relatFile, prefix, dataFile, infoFile,
-				fileMappingResults.getWorkingFolder(), quantParameters);
+		final String prefix = OutlierRemovalResultWrapper.DEFAULT_OUTLIER_REMOVAL_PREFIX + lowLevel + "-" + upperLevel
+				+ key;
+		final boolean stepCacheUsed = isStepCacheUsed(outlierRemovalEngine);
+		String cacheKey = null;
+		if (stepCacheUsed) {
+			cacheKey = stepCache.getKey("outlier removal",
+					new Object[] { getEngineName(outlierRemovalEngine, SANXOT_SIEVE_PY),
+							quantParameters.getOutlierRemovalFDR() },
+					relatFile, data.getFile(), integrationResult.getInfoFile(), integrationResult.getStatisticsFile());
+			final OutlierRemovalResultWrapper cachedResults = new OutlierRemovalResultWrapper(
+					fileMappingResults.getWorkingFolder(), prefix);
+			if (stepCache.isCached(prefix, cacheKey, getOutputFiles(cachedResults))) {
+				log.info("Outlier removal not changed since the previous analysis. Reusing relation file at:"
+						+ cachedResults.getRelatFile().getAbsolutePath());
+				firePropertyChange(OUTLIER_REMOVAL_DONE, null, cachedResults);
+				return cachedResults;
+			}
+		}
+		if (outlierRemovalEngine != null) {
+			final OutlierRemovalResultWrapper outliersRemovalResults = outlierRemovalEngine
+					.removeOutliers(integrationResult, prefix, fileMappingResults.getWorkingFolder(), quantParameters);
+			log.info("Outlier removal performed in the JVM. "
+					+ outliersRemovalResults.getOutlierRemovalTable().getNumOutliers() + " outliers removed");
+			if (stepCacheUsed) {
+				stepCache.put(prefix, cacheKey, getOutputFiles(outliersRemovalResults));
+			}
+			firePropertyChange(OUTLIER_REMOVAL_DONE, null, outliersRemovalResults);
+			return outliersRemovalResults;
+		}
+		final CommandLine removeOutlierCommandLine = getRemoveOutliersCommandLine(relatFile, prefix, data.getFile(),
+				integrationResult.getInfoFile(), fileMappingResults.getWorkingFolder(), quantParameters);
 
 		final CommandLineRunner runner = runCommand(removeOutlierCommandLine, quantParameters.getTimeout());
 		if (runner.getProcessExitCode().longValue() != 0) {
@@ -436,17 +887,24 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 
 		log.info("Outlier removal performed. New relation file at:"
 				+ outliersRemovalResults.getRelatFile().getAbsolutePath());
+		if (stepCacheUsed) {
+			stepCache.put(prefix, cacheKey, getOutputFiles(outliersRemovalResults));
+		}
 
 		firePropertyChange(OUTLIER_REMOVAL_DONE, null, outliersRemovalResults);
 		return outliersRemovalResults;
 
 	}
 
-	private IntegrationResultWrapper integrate(int lowLevel, int upperLevel, File relatFile, File dataFile,
+	private IntegrationResultWrapper integrate(int lowLevel, int upperLevel, File relatFile, LevelData data,
 			File infoFile, String prefix, Double forzedVariance, boolean checkRelationshipValidity)
 			throws IOException, InterruptedException, ExecutionException {
+		if (isInMemory(integrationEngine)) {
+			return integrateInMemory(lowLevel, upperLevel, relatFile, data, infoFile, prefix, forzedVariance,
+					checkRelationshipValidity);
+		}
+		final File dataFile = data.getFile();
 		if (checkRelationshipValidity && !SanXotInterfaze.checkDataValidity(relatFile, dataFile)) {
-			SanXotInterfaze.checkDataValidity(relatFile, dataFile);
 			throw new IllegalArgumentException("Combination of data file and relat file is not valid: "
 					+ FilenameUtils.getName(relatFile.getAbsolutePath()) + " and "
 					+ FilenameUtils.getName(dataFile.getAbsolutePath()));
@@ -462,6 +920,26 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 		log.info("Using data file  " + FilenameUtils.getName(dataFile.getAbsolutePath()));
 		firePropertyChange(INTEGRATING, null, msg);
 		final String prefixString = lowLevel + "-" + upperLevel + "_" + prefix;
+		String cacheKey = null;
+		if (stepCache != null) {
+			cacheKey = getIntegrationCacheKey(relatFile, dataFile, infoFile, forzedVariance);
+			final IntegrationResultWrapper cachedResults = getCachedIntegration(lowLevel, upperLevel, prefixString,
+					cacheKey);
+			if (cachedResults != null) {
+				return cachedResults;
+			}
+		}
+		if (integrationEngine != null) {
+			final IntegrationResultWrapper integrationResults = integrationEngine.integrate(lowLevel, upperLevel,
+					relatFile, dataFile, infoFile, prefixString, forzedVariance, fileMappingResults.getWorkingFolder(),
+					fileMappingResults);
+			log.info("Integration performed in the JVM. Variance=" + integrationResults.getIntegrationVariance());
+			if (stepCache != null) {
+				stepCache.put(prefixString, cacheKey, getOutputFiles(integrationResults));
+			}
+			firePropertyChange(INTEGRATING_DONE, null, integrationResults);
+			return integrationResults;
+		}
 		CommandLine integratingCommandLine = getIntegrationCommandLine(relatFile, dataFile, infoFile, prefixString,
 				forzedVariance, fileMappingResults.getWorkingFolder(), quantParameters);
 
@@ -472,6 +950,8 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 						+ quantParameters.getTimeout() + " ms";
 				log.warn(message);
 				log.info("Trying to fix the problem by forzing variance to 0 (Using -f v0)");
+				// not reused in next analyses, as the variance is forced
+				cacheKey = null;
 				integratingCommandLine = getIntegrationCommandLine(relatFile, dataFile, infoFile, prefixString, 0.0,
 						fileMappingResults.getWorkingFolder(), quantParameters);
 				final CommandLineRunner newRunner = runCommand(integratingCommandLine, quantParameters.getTimeout());
@@ -494,68 +974,316 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 		log.info("Integration performed. Integration file at:"
 				+ integrationResults.getHigherLevelDataFile().getAbsolutePath());
 		log.info("Integration Variance=" + integrationResults.getIntegrationVariance());
+		if (stepCache != null && cacheKey != null) {
+			stepCache.put(prefixString, cacheKey, getOutputFiles(integrationResults));
+		}
 		firePropertyChange(INTEGRATING_DONE, null, integrationResults);
 		return integrationResults;
 	}
 
 	/**
-	 * Checks whether there is at least two lower elements in dataFile that maps
-	 * to the same upper level item
+	 * Integrates the data in memory with the integration engine, with the
+	 * relationships of the level read just once
 	 *
+	 * @param lowLevel
+	 * @param upperLevel
 	 * @param relatFile
-	 * @param dataFile
+	 * @param data
+	 * @param infoFile
+	 *            if not null, the variance is taken from this file
+	 * @param prefix
+	 * @param forzedVariance
+	 * @param checkRelationshipValidity
 	 * @return
+	 * @throws IOException
+	 */
+	private IntegrationResultWrapper integrateInMemory(int lowLevel, int upperLevel, File relatFile, LevelData data,
+			File infoFile, String prefix, Double forzedVariance, boolean checkRelationshipValidity)
+			throws IOException {
+		final Map<String, Set<String>> relationships = getRelationships(lowLevel, relatFile);
+		if (checkRelationshipValidity && !SanXotInterfaze.checkDataValidity(relationships, data.getData())) {
+			throw new IllegalArgumentException("Combination of data and relat file is not valid: "
+					+ FilenameUtils.getName(relatFile.getAbsolutePath()) + " and data from level " + lowLevel);
+		}
+		final String msg = "Integrating data from level " + lowLevel + " to " + upperLevel + "...";
+		log.info(msg);
+		if (relatFile == null) {
+			log.info("Not using relationships. Integrating all the data in a single element");
+		} else {
+			log.info("Using relationships from " + FilenameUtils.getName(relatFile.getAbsolutePath()));
+		}
+		firePropertyChange(INTEGRATING, null, msg);
+		final String prefixString = lowLevel + "-" + upperLevel + "_" + prefix;
+		Double variance = forzedVariance;
+		if (variance == null && infoFile != null) {
+			variance = new InfoFileReader(infoFile).getResultValue(SanXotResultProperty.VARIANCE);
+		}
+		final IntegrationResultWrapper integrationResults = integrationEngine.integrate(lowLevel, upperLevel,
+				relationships, data.getData(), prefixString, variance, fileMappingResults.getWorkingFolder(),
+				fileMappingResults, quantParameters);
+		log.info("Integration performed in the JVM with the data in memory. Variance="
+				+ integrationResults.getIntegrationVariance());
+		firePropertyChange(INTEGRATING_DONE, null, integrationResults);
+		return integrationResults;
+	}
+
+	/**
+	 * Integrates again the data of an integration without its outliers, with
+	 * the data, relationships and variance kept in memory by the outlier
+	 * removal
+	 *
+	 * @param lowLevel
+	 * @param upperLevel
+	 * @param removeOutliers
+	 * @param data
+	 *            data of the first integration, just used to know whether the
+	 *            integration changed since the previous analysis
+	 * @param integration
+	 *            first integration, just used to know whether the integration
+	 *            changed since the previous analysis
+	 * @param prefix
+	 * @return
+	 * @throws IOException
+	 */
+	private IntegrationResultWrapper integrate(int lowLevel, int upperLevel,
+			OutlierRemovalResultWrapper removeOutliers, LevelData data, IntegrationResultWrapper integration,
+			String prefix) throws IOException {
+		final String msg = "Integrating data from level " + lowLevel + " to " + upperLevel + " without outliers...";
+		log.info(msg);
+		firePropertyChange(INTEGRATING, null, msg);
+		final String prefixString = lowLevel + "-" + upperLevel + "_" + prefix;
+		final boolean stepCacheUsed = isStepCacheUsed(integrationEngine);
+		String cacheKey = null;
+		if (stepCacheUsed) {
+			// the same key as if it was integrated from the files
+			cacheKey = getIntegrationCacheKey(removeOutliers.getRelatFile(), data.getFile(), integration.getInfoFile(),
+					null);
+			final IntegrationResultWrapper cachedResults = getCachedIntegration(lowLevel, upperLevel, prefixString,
+					cacheKey);
+			if (cachedResults != null) {
+				return cachedResults;
+			}
+		}
+		final OutlierRemovalTable outlierRemoval = removeOutliers.getOutlierRemovalTable();
+		final IntegrationResultWrapper integrationResults = integrationEngine.integrate(lowLevel, upperLevel,
+				outlierRemoval.getRelationships(), outlierRemoval.getData(), prefixString,
+				outlierRemoval.getVariance(), fileMappingResults.getWorkingFolder(), fileMappingResults,
+				quantParameters);
+		log.info("Integration performed in the JVM. Variance=" + integrationResults.getIntegrationVariance());
+		if (stepCacheUsed) {
+			stepCache.put(prefixString, cacheKey, getOutputFiles(integrationResults));
+		}
+		firePropertyChange(INTEGRATING_DONE, null, integrationResults);
+		return integrationResults;
+	}
+
+	private String getIntegrationCacheKey(File relatFile, File dataFile, File infoFile, Double forzedVariance)
+			throws IOException {
+		return stepCache.getKey("integration",
+				new Object[] { getEngineName(integrationEngine, SANXOT_PY), forzedVariance }, relatFile, dataFile,
+				infoFile);
+	}
+
+	/**
+	 *
+	 * @param lowLevel
+	 * @param upperLevel
+	 * @param prefixString
+	 * @param cacheKey
+	 * @return the results of the integration in a previous analysis with the
+	 *         same inputs, or null if there is not any
+	 */
+	private IntegrationResultWrapper getCachedIntegration(int lowLevel, int upperLevel, String prefixString,
+			String cacheKey) {
+		final IntegrationResultWrapper cachedResults = new IntegrationResultWrapper(
+				fileMappingResults.getWorkingFolder(), prefixString, lowLevel, upperLevel, fileMappingResults);
+		if (!stepCache.isCached(prefixString, cacheKey, getOutputFiles(cachedResults))) {
+			return null;
+		}
+		log.info("Integration not changed since the previous analysis. Reusing integration file at:"
+				+ cachedResults.getHigherLevelDataFile().getAbsolutePath());
+		firePropertyChange(INTEGRATING_DONE, null, cachedResults);
+		return cachedResults;
+	}
+
+	private static File[] getOutputFiles(IntegrationResultWrapper integrationResults) {
+		return new File[] { integrationResults.getHigherLevelDataFile(), integrationResults.getInfoFile(),
+				integrationResults.getStatisticsFile() };
+	}
+
+	private static File[] getOutputFiles(KalibrateResultWrapper calibrationResults) {
+		return new File[] { calibrationResults.getCalibratedDataFile(), calibrationResults.getInfoFile() };
+	}
+
+	private static File[] getOutputFiles(OutlierRemovalResultWrapper outlierRemovalResults) {
+		return new File[] { outlierRemovalResults.getRelatFile(), outlierRemovalResults.getInfoFile() };
+	}
+
+	/**
+	 *
+	 * @param engine
+	 * @param script
+	 *            the script run if the engine is null
+	 * @return the name of what performs a step, so that a step is run again if
+	 *         it changes
+	 */
+	private static String getEngineName(Object engine, String script) {
+		if (engine != null) {
+			return engine.getClass().getName();
+		}
+		return script;
+	}
+
+	/**
+	 * Checks whether all the elements of the data are lower level elements in
+	 * the relationships. All the elements that are not are reported.
+	 *
+	 * @param relationships
+	 *            if null, the check is ignored
+	 * @param data
+	 * @return
+	 */
+	public static boolean checkDataValidity(Map<String, Set<String>> relationships,
+			Map<String, SanxotQuantResult> data) {
+		if (relationships == null) {
+			// ignore the check
+			return true;
+		}
+		final Set<String> lowerLevelFromRelat = new THashSet<String>();
+		for (final Set<String> lowerLevels : relationships.values()) {
+			lowerLevelFromRelat.addAll(lowerLevels);
+		}
+		int numNotFound = 0;
+		for (final String dataKey : data.keySet()) {
+			if (!lowerLevelFromRelat.contains(dataKey)) {
+				log.info(dataKey + " is  not found as lower level item in the relationships");
+				numNotFound++;
+			}
+		}
+		if (numNotFound > 0) {
+			log.info(numNotFound + " items of the data are not found as lower level items in the relationships");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether all the elements in the dataFile are lower level elements
+	 * in the relatFile. All the elements that are not are reported.<br>
+	 * Both files are read line by line, and only the lower level elements of
+	 * the relatFile are kept in memory.
+	 *
+	 * @param relatFile
+	 * @param dataFile
+	 * @return false if any element is not found or if any of the files
+	 *         cannot be read
 	 */
 	public static boolean checkDataValidity(File relatFile, File dataFile) {
 		if (relatFile == null) {
 			// ignore the check
 			return true;
 		}
-		final Map<String, SanxotQuantResult> sanXotQuantResultFromFile = IntegrationResultWrapper
-				.getSanXotQuantResultFromDataFile(dataFile);
-		final Map<String, Set<String>> relationShipsFromRelatFile = IntegrationResultWrapper
-				.getRelationShipsFromRelatFile(relatFile);
 		final Set<String> lowerLevelFromRelat = new THashSet<String>();
-		for (final String upperLevel : relationShipsFromRelatFile.keySet()) {
-			lowerLevelFromRelat.addAll(relationShipsFromRelatFile.get(upperLevel));
-		}
-		// Set<String> upperLevelsMapped = new THashSet<String>();
-		for (final String dataFileKey : sanXotQuantResultFromFile.keySet()) {
-			if (!lowerLevelFromRelat.contains(dataFileKey)) {
-				log.info(dataFileKey + " is  not found as lower level item in the relationship file "
-						+ relatFile.getAbsolutePath());
-				return false;
-			}
-			// boolean found = false;
-			// for (String upperLevel : relationShipsFromRelatFile.keySet()) {
-			// final Set<String> lowerLevels =
-			// relationShipsFromRelatFile.get(upperLevel);
-			// if (lowerLevels.contains(dataFileKey)) {
-			// found = true;
-			// // if (upperLevelsMapped.contains(upperLevel)) {
-			// // return true;
-			// // } else {
-			// // upperLevelsMapped.add(upperLevel);
-			// // }
-			// }
-			// }
-			// if (!found) {
-			// log.info(dataFileKey + " is not found as lower level item in the
-			// relationship file "
-			// + relatFile.getAbsolutePath());
-			// return false;
-			// }
+		int numNotFound = 0;
+		try {
+			// same lines than in
+			// IntegrationResultWrapper.getRelationShipsFromRelatFile
+			try (BufferedReader br = Files.newBufferedReader(relatFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.trim().startsWith("#") || !line.contains("\t")) {
+						continue;
+					}
+					final String[] split = line.split("\t");
+					if (split.length == 2) {
+						lowerLevelFromRelat.add(split[1]);
+					}
+				}
+			}
+			// same lines than in
+			// IntegrationResultWrapper.getSanXotQuantResultFromDataFile
+			try (BufferedReader br = Files.newBufferedReader(dataFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.trim().startsWith("#") || line.trim().startsWith("id") || !line.contains("\t")) {
+						continue;
+					}
+					final String[] split = line.split("\t");
+					if (split.length != 3 || !isNumber(split[1]) || !isNumber(split[2])) {
+						continue;
+					}
+					if (!lowerLevelFromRelat.contains(split[0])) {
+						log.info(split[0] + " is  not found as lower level item in the relationship file "
+								+ relatFile.getAbsolutePath());
+						numNotFound++;
+					}
+				}
+			}
+		} catch (final IOException e) {
+			log.warn("Error checking " + dataFile.getAbsolutePath() + " against " + relatFile.getAbsolutePath()
+					+ ": " + e.getMessage());
+			return false;
+		}
+		if (numNotFound > 0) {
+			log.info(numNotFound + " items of " + dataFile.getAbsolutePath()
+					+ " are not found as lower level items in the relationship file " + relatFile.getAbsolutePath());
+			return false;
 		}
 		return true;
 	}
 
-	private KalibrateResultWrapper calibrate(int lowLevel, int upperLevel, File relatFile, File dataFile, String key,
+	private static boolean isNumber(String value) {
+		try {
+			Double.valueOf(value);
+			return true;
+		} catch (final NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private KalibrateResultWrapper calibrate(int lowLevel, int upperLevel, File relatFile, LevelData data, String key,
 			long timeout) throws IOException, InterruptedException, ExecutionException {
 		final String msg = "Calibrating data " + lowLevel + " - " + upperLevel + "...";
 
 		log.info(msg);
 		firePropertyChange(CALIBRATING, null, msg);
 		final String prefix = KalibrateResultWrapper.DEFAULT_CALIBRATED_PREFIX + lowLevel + "-" + upperLevel + key;
+		if (isInMemory(calibrationEngine)) {
+			final KalibrateResultWrapper calibrationResults = calibrationEngine.calibrate(
+					getRelationships(lowLevel, relatFile), data.getData(), prefix,
+					fileMappingResults.getWorkingFolder(), quantParameters);
+			log.info("Calibration performed in the JVM with the data in memory. K="
+					+ calibrationResults.getCalibrationKConstant() + " Variance="
+					+ calibrationResults.getCalibrationVariance());
+			firePropertyChange(CALIBRATING_DONE, null, calibrationResults);
+			return calibrationResults;
+		}
+		final File dataFile = data.getFile();
+		String cacheKey = null;
+		if (stepCache != null) {
+			cacheKey = stepCache.getKey("calibration",
+					new Object[] { getEngineName(calibrationEngine, KLIBRATE_PY), quantParameters.getMaxIterations() },
+					relatFile, dataFile);
+			final KalibrateResultWrapper cachedResults = new KalibrateResultWrapper(
+					fileMappingResults.getWorkingFolder(), prefix);
+			if (stepCache.isCached(prefix, cacheKey, getOutputFiles(cachedResults))) {
+				log.info("Calibration not changed since the previous analysis. Reusing calibrated file at:"
+						+ cachedResults.getCalibratedDataFile().getAbsolutePath());
+				firePropertyChange(CALIBRATING_DONE, null, cachedResults);
+				return cachedResults;
+			}
+		}
+		if (calibrationEngine != null) {
+			final KalibrateResultWrapper calibrationResults = calibrationEngine.calibrate(relatFile, dataFile, prefix,
+					fileMappingResults.getWorkingFolder(), quantParameters);
+			log.info("Calibration performed in the JVM. K=" + calibrationResults.getCalibrationKConstant()
+					+ " Variance=" + calibrationResults.getCalibrationVariance());
+			if (stepCache != null) {
+				stepCache.put(prefix, cacheKey, getOutputFiles(calibrationResults));
+			}
+			firePropertyChange(CALIBRATING_DONE, null, calibrationResults);
+			return calibrationResults;
+		}
 		final CommandLine calibratingCommandLine = getCalibratingCommandLine(relatFile, dataFile, prefix,
 				fileMappingResults.getWorkingFolder(), quantParameters);
 
@@ -573,6 +1301,9 @@ public class SanXotInterfaze extends SwingWorker<Object, Void> {
 					+ calibrationResults.getCalibratedDataFile().getAbsolutePath());
 			log.info("Calibration K=" + calibrationResults.getCalibrationKConstant());
 			log.info("Calibration Variance=" + calibrationResults.getCalibrationVariance());
+			if (stepCache != null) {
+				stepCache.put(prefix, cacheKey, getOutputFiles(calibrationResults));
+			}
 			firePropertyChange(CALIBRATING_DONE, null, calibrationResults);
 		} else {
 			log.warn("Calibration of data file " + dataFile.getAbsolutePath() + " failed");
@@ -0,0 +1,184 @@
+package edu.scripps.yates.census.analysis;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Keeps track of the inputs of the steps (calibrations, integrations and
+ * outlier removals) of previous analyses in a working folder, so that a step
+ * whose inputs have not changed can reuse the files it wrote before instead
+ * of being run again.<br>
+ * The inputs of a step are hashed by their content (the relationship, data
+ * and info files) together with the parameters that affect its result. The
+ * hash is stored by the prefix of the output files of the step, together with
+ * the size and the modification date of these output files, so that a step
+ * is run again if its outputs were modified or deleted.
+ *
+ * @author salvador
+ *
+ */
+public class SanXotStepCache {
+	private final static Logger log = Logger.getLogger(SanXotStepCache.class);
+	public static final String CACHE_FILE_NAME = "sanxot_steps_cache.txt";
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private final File cacheFile;
+	private final Properties entries = new Properties();
+	// content hashes of the files already hashed, by path, size and date
+	private final Map<String, String> fileHashes = new THashMap<String, String>();
+
+	public SanXotStepCache(File workingFolder) {
+		cacheFile = new File(workingFolder.getAbsolutePath() + File.separator + CACHE_FILE_NAME);
+		if (cacheFile.exists()) {
+			try (InputStream in = new FileInputStream(cacheFile)) {
+				entries.load(in);
+				log.info(entries.size() + " steps of previous analyses found in " + cacheFile.getAbsolutePath());
+			} catch (final IOException e) {
+				log.warn("Error reading " + cacheFile.getAbsolutePath() + ". All the steps will be run: "
+						+ e.getMessage());
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * Gets the key of a step from its inputs
+	 *
+	 * @param stepName
+	 *            the kind of step
+	 * @param parameters
+	 *            the parameters that affect the result of the step
+	 * @param inputFiles
+	 *            the files read by the step. Null files are allowed.
+	 * @return
+	 * @throws IOException
+	 */
+	public String getKey(String stepName, Object[] parameters, File... inputFiles) throws IOException {
+		final MessageDigest digest = getMessageDigest();
+		update(digest, stepName);
+		for (final Object parameter : parameters) {
+			update(digest, String.valueOf(parameter));
+		}
+		for (final File inputFile : inputFiles) {
+			update(digest, inputFile != null ? getFileHash(inputFile) : "null");
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 *
+	 * @param prefix
+	 *            prefix of the output files of the step
+	 * @param key
+	 *            key of the inputs of the step
+	 * @param outputFiles
+	 *            output files of the step. If any of them is null, it is
+	 *            considered as not existing.
+	 * @return true if the step was run before with the same inputs and its
+	 *         output files are still the ones it wrote
+	 */
+	public synchronized boolean isCached(String prefix, String key, File... outputFiles) {
+		final String entry = entries.getProperty(prefix);
+		if (entry == null) {
+			return false;
+		}
+		final String outputsSignature = getOutputsSignature(outputFiles);
+		return outputsSignature != null && entry.equals(key + ";" + outputsSignature);
+	}
+
+	/**
+	 * Stores the key of the inputs of a step that has just been run
+	 *
+	 * @param prefix
+	 *            prefix of the output files of the step
+	 * @param key
+	 *            key of the inputs of the step
+	 * @param outputFiles
+	 *            output files of the step
+	 * @throws IOException
+	 */
+	public synchronized void put(String prefix, String key, File... outputFiles) throws IOException {
+		final String outputsSignature = getOutputsSignature(outputFiles);
+		if (outputsSignature == null) {
+			entries.remove(prefix);
+		} else {
+			entries.setProperty(prefix, key + ";" + outputsSignature);
+		}
+		try (OutputStream out = new FileOutputStream(cacheFile)) {
+			entries.store(out, "Inputs of the sanxot steps, by prefix of their output files");
+		}
+	}
+
+	private static String getOutputsSignature(File... outputFiles) {
+		final StringBuilder sb = new StringBuilder();
+		for (final File outputFile : outputFiles) {
+			if (outputFile == null || !outputFile.isFile()) {
+				return null;
+			}
+			sb.append(outputFile.length()).append("-").append(outputFile.lastModified()).append(",");
+		}
+		return sb.toString();
+	}
+
+	private String getFileHash(File file) throws IOException {
+		final String fileId = file.getAbsolutePath() + ";" + file.length() + ";" + file.lastModified();
+		synchronized (fileHashes) {
+			if (fileHashes.containsKey(fileId)) {
+				return fileHashes.get(fileId);
+			}
+		}
+		final MessageDigest digest = getMessageDigest();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+		final String hash = toHex(digest.digest());
+		synchronized (fileHashes) {
+			fileHashes.put(fileId, hash);
+		}
+		return hash;
+	}
+
+	private static MessageDigest getMessageDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (final NoSuchAlgorithmException e) {
+			// all the JVMs support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		// separator, so that different values are not concatenated in the
+		// same way
+		digest.update((byte) 0);
+	}
+
+	private static String toHex(byte[] bytes) {
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+}
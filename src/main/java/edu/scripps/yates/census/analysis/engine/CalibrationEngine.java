@@ -0,0 +1,55 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import edu.scripps.yates.census.analysis.QuantParameters;
+import edu.scripps.yates.census.analysis.wrappers.KalibrateResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+
+/**
+ * Calibrates the weights of the data of the first level, as klibrate does
+ *
+ * @author salvador
+ *
+ */
+public interface CalibrationEngine {
+	/**
+	 * Calibrates the weights of the data
+	 *
+	 * @param relatFile
+	 *            relationships between the first and the second level
+	 * @param dataFile
+	 *            ratios and weights of the first level
+	 * @param prefix
+	 *            prefix of the result files
+	 * @param workingFolder
+	 * @param quantParameters
+	 * @return
+	 * @throws IOException
+	 */
+	public KalibrateResultWrapper calibrate(File relatFile, File dataFile, String prefix, File workingFolder,
+			QuantParameters quantParameters) throws IOException;
+
+	/**
+	 * Calibrates the weights of the data, with the data and the relationships
+	 * already in memory
+	 *
+	 * @param relationships
+	 *            ids of the elements of the first level by id of the second
+	 *            level
+	 * @param data
+	 *            ratios and weights of the first level by id
+	 * @param prefix
+	 *            prefix of the result files
+	 * @param workingFolder
+	 * @param quantParameters
+	 * @return
+	 * @throws IOException
+	 */
+	public KalibrateResultWrapper calibrate(Map<String, Set<String>> relationships,
+			Map<String, SanxotQuantResult> data, String prefix, File workingFolder, QuantParameters quantParameters)
+			throws IOException;
+}
@@ -0,0 +1,92 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * In-memory result of a calibration: the k constant and the variance fitted,
+ * and the data with the calibrated weights, as in the files written by
+ * klibrate
+ *
+ * @author salvador
+ *
+ */
+public class CalibrationTable {
+	public static final String CALIBRATED_SUFFIX = "_calibrated.xls";
+	public static final String INFO_FILE_SUFFIX = "_infoFile.txt";
+
+	private final double k;
+	private final double variance;
+	private final int numIterations;
+	private final Map<String, SanxotQuantResult> calibratedData = new THashMap<String, SanxotQuantResult>();
+
+	public CalibrationTable(double k, double variance, int numIterations) {
+		this.k = k;
+		this.variance = variance;
+		this.numIterations = numIterations;
+	}
+
+	void addCalibratedElement(SanxotQuantResult element) {
+		calibratedData.put(element.getKey(), element);
+	}
+
+	public double getK() {
+		return k;
+	}
+
+	public double getVariance() {
+		return variance;
+	}
+
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	/**
+	 *
+	 * @return the ratios with the calibrated weights by id
+	 */
+	public Map<String, SanxotQuantResult> getCalibratedData() {
+		return calibratedData;
+	}
+
+	/**
+	 * Writes the table in the files that klibrate would write with that prefix
+	 *
+	 * @param workingFolder
+	 * @param prefix
+	 * @throws IOException
+	 */
+	public void write(File workingFolder, String prefix) throws IOException {
+		final String path = workingFolder.getAbsolutePath() + File.separator + prefix;
+		final List<String> keys = new ArrayList<String>(calibratedData.keySet());
+		Collections.sort(keys);
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(path + CALIBRATED_SUFFIX));
+		try {
+			writer.write("#id\tX\tVcal\n");
+			for (final String key : keys) {
+				final SanxotQuantResult element = calibratedData.get(key);
+				writer.write(key + "\t" + element.getLog2ratio() + "\t" + element.getWeight() + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+		final BufferedWriter infoWriter = new BufferedWriter(new FileWriter(path + INFO_FILE_SUFFIX));
+		try {
+			infoWriter.write("Calibration performed in the JVM in " + numIterations + " iterations\n");
+			infoWriter.write("K = " + k + "\n");
+			infoWriter.write("Variance = " + variance + "\n");
+		} finally {
+			infoWriter.close();
+		}
+	}
+}
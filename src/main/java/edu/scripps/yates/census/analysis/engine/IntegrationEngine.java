@@ -0,0 +1,72 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import edu.scripps.yates.census.analysis.FileMappingResults;
+import edu.scripps.yates.census.analysis.QuantParameters;
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+
+/**
+ * Integrates the ratios of a lower level into an upper level, as sanxot does
+ *
+ * @author salvador
+ *
+ */
+public interface IntegrationEngine {
+	/**
+	 * Integrates the data of the lower level into the upper level
+	 *
+	 * @param lowLevel
+	 * @param upperLevel
+	 * @param relatFile
+	 *            relationships between upper and lower level, or null to
+	 *            integrate all the data into a single element (sanxot -C)
+	 * @param dataFile
+	 *            ratios and weights of the lower level
+	 * @param infoFile
+	 *            if not null, the variance is taken from this file instead of
+	 *            being fitted
+	 * @param prefix
+	 *            prefix of the result files
+	 * @param forcedVariance
+	 *            if not null, the variance is forced to be this value
+	 * @param workingFolder
+	 * @param fileMappingResults
+	 * @return
+	 * @throws IOException
+	 */
+	public IntegrationResultWrapper integrate(int lowLevel, int upperLevel, File relatFile, File dataFile,
+			File infoFile, String prefix, Double forcedVariance, File workingFolder,
+			FileMappingResults fileMappingResults) throws IOException;
+
+	/**
+	 * Integrates the data of the lower level into the upper level, with the
+	 * data and the relationships already in memory
+	 *
+	 * @param lowLevel
+	 * @param upperLevel
+	 * @param relationships
+	 *            ids of the lower level elements by upper level id, or null to
+	 *            integrate all the data into a single element
+	 * @param data
+	 *            ratios and weights of the lower level elements by id
+	 * @param prefix
+	 *            prefix of the result files
+	 * @param forcedVariance
+	 *            if not null, the variance is forced to be this value
+	 * @param workingFolder
+	 * @param fileMappingResults
+	 * @param quantParameters
+	 *            if the levels are kept in memory and the audit files are not
+	 *            written, the result files are only written when requested
+	 * @return
+	 * @throws IOException
+	 */
+	public IntegrationResultWrapper integrate(int lowLevel, int upperLevel, Map<String, Set<String>> relationships,
+			Map<String, SanxotQuantResult> data, String prefix, Double forcedVariance, File workingFolder,
+			FileMappingResults fileMappingResults, QuantParameters quantParameters) throws IOException;
+}
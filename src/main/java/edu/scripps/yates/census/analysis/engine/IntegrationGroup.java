@@ -0,0 +1,122 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+
+/**
+ * An upper level element with the ratios and weights of its lower level
+ * elements
+ *
+ * @author salvador
+ *
+ */
+class IntegrationGroup {
+	private final static Logger log = Logger.getLogger(IntegrationGroup.class);
+	/**
+	 * Id of the upper level element when integrating without relationships
+	 */
+	static final String ALL_ID = "1";
+	final String id;
+	final String[] ids;
+	final double[] x;
+	final double[] w;
+
+	private IntegrationGroup(String id, List<SanxotQuantResult> elements) {
+		this.id = id;
+		ids = new String[elements.size()];
+		x = new double[elements.size()];
+		w = new double[elements.size()];
+		for (int i = 0; i < elements.size(); i++) {
+			final SanxotQuantResult element = elements.get(i);
+			ids[i] = element.getKey();
+			x[i] = element.getLog2ratio();
+			w[i] = element.getWeight();
+		}
+	}
+
+	int size() {
+		return ids.length;
+	}
+
+	/**
+	 *
+	 * @param variance
+	 * @return the weights of the elements including the variance
+	 */
+	double[] getWeights(double variance) {
+		final double[] ret = new double[w.length];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = SanXotStatistics.getWeightWithVariance(w[i], variance);
+		}
+		return ret;
+	}
+
+	/**
+	 * Groups the data by upper level element, sorted by id so that the results
+	 * are always the same. The lower level elements without a valid ratio or
+	 * weight are discarded.
+	 *
+	 * @param data
+	 * @param relationships
+	 *            ids of the lower level elements by upper level id, or null to
+	 *            group all the data into a single element
+	 * @return
+	 */
+	static List<IntegrationGroup> getGroups(Map<String, SanxotQuantResult> data,
+			Map<String, Set<String>> relationships) {
+		final List<IntegrationGroup> ret = new ArrayList<IntegrationGroup>();
+		int numDiscarded = 0;
+		if (relationships == null) {
+			final List<SanxotQuantResult> elements = new ArrayList<SanxotQuantResult>();
+			for (final SanxotQuantResult element : data.values()) {
+				if (isValid(element)) {
+					elements.add(element);
+				} else {
+					numDiscarded++;
+				}
+			}
+			if (!elements.isEmpty()) {
+				Collections.sort(elements, (e1, e2) -> e1.getKey().compareTo(e2.getKey()));
+				ret.add(new IntegrationGroup(ALL_ID, elements));
+			}
+		} else {
+			final List<String> upperIds = new ArrayList<String>(relationships.keySet());
+			Collections.sort(upperIds);
+			for (final String upperId : upperIds) {
+				final List<String> lowerIds = new ArrayList<String>(relationships.get(upperId));
+				Collections.sort(lowerIds);
+				final List<SanxotQuantResult> elements = new ArrayList<SanxotQuantResult>(lowerIds.size());
+				for (final String lowerId : lowerIds) {
+					final SanxotQuantResult element = data.get(lowerId);
+					if (element == null) {
+						continue;
+					}
+					if (isValid(element)) {
+						elements.add(element);
+					} else {
+						numDiscarded++;
+					}
+				}
+				if (!elements.isEmpty()) {
+					ret.add(new IntegrationGroup(upperId, elements));
+				}
+			}
+		}
+		if (numDiscarded > 0) {
+			log.debug(numDiscarded + " elements discarded because of a non valid ratio or weight");
+		}
+		return ret;
+	}
+
+	private static boolean isValid(SanxotQuantResult element) {
+		return !Double.isNaN(element.getLog2ratio()) && !Double.isInfinite(element.getLog2ratio())
+				&& element.getWeight() > 0.0;
+	}
+}
@@ -0,0 +1,156 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import edu.scripps.yates.census.analysis.wrappers.OutStatsLine;
+import edu.scripps.yates.census.analysis.wrappers.OutStatsReader;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * In-memory result of an integration from a lower level to an upper level,
+ * with the same content as the files written by sanxot:
+ * <ul>
+ * <li>higherLevel: the ratio and weight of each upper level element</li>
+ * <li>lowerNormV: the ratio of each lower level element relative to its upper
+ * level element, and its weight</li>
+ * <li>lowerNormW: the same ratio, and its weight including the variance of the
+ * level</li>
+ * <li>outStats: the statistics of each lower level element in its upper level
+ * element</li>
+ * <li>infoFile: the variance of the level</li>
+ * </ul>
+ *
+ * @author salvador
+ *
+ */
+public class IntegrationTable {
+	public static final String HIGHER_LEVEL_SUFFIX = "_higherLevel.xls";
+	public static final String LOWER_LEVEL_V_SUFFIX = "_lowerNormV.xls";
+	public static final String LOWER_LEVEL_W_SUFFIX = "_lowerNormW.xls";
+	public static final String STATISTICS_SUFFIX = "_outStats.xls";
+	public static final String INFO_FILE_SUFFIX = "_infoFile.txt";
+
+	private final double variance;
+	private final boolean varianceForced;
+	private final Map<String, SanxotQuantResult> higherLevel = new THashMap<String, SanxotQuantResult>();
+	private final Map<String, SanxotQuantResult> lowerLevelV = new THashMap<String, SanxotQuantResult>();
+	private final Map<String, SanxotQuantResult> lowerLevelW = new THashMap<String, SanxotQuantResult>();
+	private final List<OutStatsLine> statistics = new ArrayList<OutStatsLine>();
+
+	public IntegrationTable(double variance, boolean varianceForced) {
+		this.variance = variance;
+		this.varianceForced = varianceForced;
+	}
+
+	void addHigherLevelElement(SanxotQuantResult element) {
+		higherLevel.put(element.getKey(), element);
+	}
+
+	void addLowerLevelElement(SanxotQuantResult elementV, SanxotQuantResult elementW, OutStatsLine statisticsLine) {
+		lowerLevelV.put(elementV.getKey(), elementV);
+		lowerLevelW.put(elementW.getKey(), elementW);
+		statistics.add(statisticsLine);
+	}
+
+	public double getVariance() {
+		return variance;
+	}
+
+	/**
+	 *
+	 * @return true if the variance was not fitted but forced
+	 */
+	public boolean isVarianceForced() {
+		return varianceForced;
+	}
+
+	/**
+	 *
+	 * @return the upper level elements by id, as in the higherLevel file
+	 */
+	public Map<String, SanxotQuantResult> getHigherLevel() {
+		return higherLevel;
+	}
+
+	/**
+	 *
+	 * @return the lower level elements by id, as in the lowerNormV file
+	 */
+	public Map<String, SanxotQuantResult> getLowerLevelV() {
+		return lowerLevelV;
+	}
+
+	/**
+	 *
+	 * @return the lower level elements by id, as in the lowerNormW file
+	 */
+	public Map<String, SanxotQuantResult> getLowerLevelW() {
+		return lowerLevelW;
+	}
+
+	/**
+	 *
+	 * @return the statistics of the lower level elements, sorted by FDR
+	 */
+	public List<OutStatsLine> getStatistics() {
+		final List<OutStatsLine> ret = new ArrayList<OutStatsLine>(statistics);
+		Collections.sort(ret, OutStatsReader.comparatorByFDR);
+		return ret;
+	}
+
+	/**
+	 * Writes the table in the files that sanxot would write with that prefix
+	 *
+	 * @param workingFolder
+	 * @param prefix
+	 * @throws IOException
+	 */
+	public void write(File workingFolder, String prefix) throws IOException {
+		final String path = workingFolder.getAbsolutePath() + File.separator + prefix;
+		writeRatios(new File(path + HIGHER_LEVEL_SUFFIX), "idsup\tXsup\tVsup", higherLevel);
+		writeRatios(new File(path + LOWER_LEVEL_V_SUFFIX), "idinf\tXinf-Xsup\tVinf", lowerLevelV);
+		writeRatios(new File(path + LOWER_LEVEL_W_SUFFIX), "idinf\tXinf-Xsup\tWinf", lowerLevelW);
+		final BufferedWriter statisticsWriter = new BufferedWriter(new FileWriter(path + STATISTICS_SUFFIX));
+		try {
+			statisticsWriter.write("idsup\tXsup\tVsup\tidinf\tXinf\tVinf\tn\tZ\tFDR\n");
+			for (final OutStatsLine line : statistics) {
+				statisticsWriter.write(line.toLine() + "\n");
+			}
+		} finally {
+			statisticsWriter.close();
+		}
+		final BufferedWriter infoWriter = new BufferedWriter(new FileWriter(path + INFO_FILE_SUFFIX));
+		try {
+			infoWriter.write("Integration performed in the JVM\n");
+			if (varianceForced) {
+				infoWriter.write("Variance forced\n");
+			}
+			infoWriter.write("Variance = " + variance + "\n");
+		} finally {
+			infoWriter.close();
+		}
+	}
+
+	private void writeRatios(File file, String header, Map<String, SanxotQuantResult> ratios) throws IOException {
+		final List<String> keys = new ArrayList<String>(ratios.keySet());
+		Collections.sort(keys);
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write(header + "\n");
+			for (final String key : keys) {
+				final SanxotQuantResult ratio = ratios.get(key);
+				writer.write(key + "\t" + ratio.getLog2ratio() + "\t" + ratio.getWeight() + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
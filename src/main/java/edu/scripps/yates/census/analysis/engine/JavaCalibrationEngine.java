@@ -0,0 +1,181 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.census.analysis.QuantParameters;
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.KalibrateResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.list.array.TDoubleArrayList;
+
+/**
+ * {@link CalibrationEngine} implementing the calibration of klibrate in the
+ * JVM. The calibrated weight of each element is:<br>
+ * W<sub>i</sub> = 1 / (1/(k V<sub>i</sub>) + variance)<br>
+ * where k and the variance are fitted by regressing the squared deviations of
+ * the elements from the weighted average of their upper level element against
+ * 1/V, since the expected squared deviation is 1/(k V) + variance - 1/sum(W).
+ * As the averages depend on the calibrated weights, the fitting is repeated
+ * until k and the variance converge or the maximum number of iterations is
+ * reached.
+ * <br>
+ * It has no state, so it can be used to calibrate different datasets at the
+ * same time.
+ *
+ * @author salvador
+ *
+ */
+public class JavaCalibrationEngine implements CalibrationEngine {
+	private final static Logger log = Logger.getLogger(JavaCalibrationEngine.class);
+	private static final double RELATIVE_TOLERANCE = 1.0E-6;
+
+	@Override
+	public KalibrateResultWrapper calibrate(File relatFile, File dataFile, String prefix, File workingFolder,
+			QuantParameters quantParameters) throws IOException {
+		final Map<String, SanxotQuantResult> data = IntegrationResultWrapper.getSanXotQuantResultFromDataFile(dataFile);
+		final Map<String, Set<String>> relationships = IntegrationResultWrapper.getRelationShipsFromRelatFile(relatFile);
+		return calibrate(relationships, data, prefix, workingFolder, quantParameters);
+	}
+
+	@Override
+	public KalibrateResultWrapper calibrate(Map<String, Set<String>> relationships,
+			Map<String, SanxotQuantResult> data, String prefix, File workingFolder, QuantParameters quantParameters)
+			throws IOException {
+		final CalibrationTable table = calibrate(data, relationships, quantParameters.getMaxIterations());
+		final boolean written = quantParameters.isWriteAuditFiles() || !quantParameters.isKeepLevelsInMemory();
+		if (written) {
+			table.write(workingFolder, prefix);
+		}
+		final KalibrateResultWrapper ret = new KalibrateResultWrapper(workingFolder, prefix);
+		ret.setCalibrationTable(table, written);
+		return ret;
+	}
+
+	/**
+	 * Calibrates the weights of the data in memory
+	 *
+	 * @param data
+	 *            ratios and weights of the lower level elements by id
+	 * @param relationships
+	 *            ids of the lower level elements by upper level id
+	 * @param maxIterations
+	 * @return
+	 */
+	public CalibrationTable calibrate(Map<String, SanxotQuantResult> data, Map<String, Set<String>> relationships,
+			int maxIterations) {
+		final List<IntegrationGroup> groups = IntegrationGroup.getGroups(data, relationships);
+		double k = 1.0;
+		double variance = 0.0;
+		int iteration = 0;
+		while (iteration < Math.max(1, maxIterations)) {
+			iteration++;
+			final double[] fit = fit(groups, k, variance);
+			if (fit == null) {
+				log.warn("Calibration could not be fitted. Using k=" + k + " and variance=" + variance);
+				break;
+			}
+			final double newK = fit[0];
+			final double newVariance = fit[1];
+			final boolean converged = Math.abs(newK - k) <= RELATIVE_TOLERANCE * newK
+					&& Math.abs(newVariance - variance) <= RELATIVE_TOLERANCE * Math.max(newVariance, 1.0E-6);
+			k = newK;
+			variance = newVariance;
+			if (converged) {
+				break;
+			}
+		}
+		log.debug("Calibration fitted in " + iteration + " iterations: k=" + k + " variance=" + variance);
+		final CalibrationTable ret = new CalibrationTable(k, variance, iteration);
+		for (final SanxotQuantResult element : data.values()) {
+			final double calibratedWeight = getCalibratedWeight(element.getWeight(), k, variance);
+			ret.addCalibratedElement(new SanxotQuantResult(element.getKey(), element.getLog2ratio(), calibratedWeight));
+		}
+		return ret;
+	}
+
+	private static double getCalibratedWeight(double weight, double k, double variance) {
+		return SanXotStatistics.getWeightWithVariance(k * weight, variance);
+	}
+
+	/**
+	 * Fits the squared deviations against 1/V by least squares, with the
+	 * averages calculated with the current calibration
+	 *
+	 * @param groups
+	 * @param k
+	 * @param variance
+	 * @return k and variance, or null if they cannot be fitted
+	 */
+	private static double[] fit(List<IntegrationGroup> groups, double k, double variance) {
+		final TDoubleArrayList inverseWeights = new TDoubleArrayList();
+		final TDoubleArrayList squaredDeviations = new TDoubleArrayList();
+		for (final IntegrationGroup group : groups) {
+			final int n = group.size();
+			if (n < 2) {
+				continue;
+			}
+			final double[] weights = new double[n];
+			for (int i = 0; i < n; i++) {
+				weights[i] = getCalibratedWeight(group.w[i], k, variance);
+			}
+			final double average = SanXotStatistics.getWeightedAverage(group.x, weights);
+			// the expected squared deviation from the average is 1/W - 1/sum(W)
+			final double inverseUpperWeight = 1.0 / SanXotStatistics.sum(weights);
+			for (int i = 0; i < n; i++) {
+				final double deviation = group.x[i] - average;
+				inverseWeights.add(1.0 / group.w[i]);
+				squaredDeviations.add(deviation * deviation + inverseUpperWeight);
+			}
+		}
+		final int n = inverseWeights.size();
+		if (n < 2) {
+			return null;
+		}
+		double meanX = 0.0;
+		double meanY = 0.0;
+		for (int i = 0; i < n; i++) {
+			meanX += inverseWeights.get(i);
+			meanY += squaredDeviations.get(i);
+		}
+		meanX /= n;
+		meanY /= n;
+		double sxx = 0.0;
+		double sxy = 0.0;
+		for (int i = 0; i < n; i++) {
+			final double dx = inverseWeights.get(i) - meanX;
+			sxx += dx * dx;
+			sxy += dx * (squaredDeviations.get(i) - meanY);
+		}
+		double slope;
+		double intercept;
+		if (sxx > 0.0) {
+			slope = sxy / sxx;
+			intercept = meanY - slope * meanX;
+		} else {
+			// all the weights are equal: just the variance can be fitted
+			slope = 1.0 / k;
+			intercept = meanY - slope * meanX;
+		}
+		if (intercept < 0.0) {
+			// the variance cannot be negative: fit the line through the origin
+			double sumXY = 0.0;
+			double sumXX = 0.0;
+			for (int i = 0; i < n; i++) {
+				sumXY += inverseWeights.get(i) * squaredDeviations.get(i);
+				sumXX += inverseWeights.get(i) * inverseWeights.get(i);
+			}
+			intercept = 0.0;
+			slope = sumXY / sumXX;
+		}
+		if (slope <= 0.0 || Double.isNaN(slope)) {
+			return null;
+		}
+		return new double[] { 1.0 / slope, intercept };
+	}
+}
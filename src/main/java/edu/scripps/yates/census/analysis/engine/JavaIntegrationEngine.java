@@ -0,0 +1,227 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.census.analysis.FileMappingResults;
+import edu.scripps.yates.census.analysis.QuantParameters;
+import edu.scripps.yates.census.analysis.wrappers.InfoFileReader;
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.OutStatsLine;
+import edu.scripps.yates.census.analysis.wrappers.SanXotResultProperty;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+
+/**
+ * {@link IntegrationEngine} implementing the WSPP model of sanxot in the JVM,
+ * so that no external process is needed:
+ * <ul>
+ * <li>the weight of each lower level element includes the variance of the
+ * level: W'<sub>i</sub> = 1 / (1/W<sub>i</sub> + variance)</li>
+ * <li>the ratio of an upper level element is the weighted average of the ratios
+ * of its lower level elements, and its weight is the sum of their weights</li>
+ * <li>the variance of the level is fitted so that the variance of the Z values
+ * of the lower level elements is 1, unless it is forced</li>
+ * <li>the FDRs are calculated from the Z values by Benjamini-Hochberg</li>
+ * </ul>
+ * The results are kept in an {@link IntegrationTable} and written in the same
+ * files as sanxot, so that they can be used as the data of the next level. With
+ * the data in memory, the files are only written when they are requested,
+ * unless {@link QuantParameters#isWriteAuditFiles()}.<br>
+ * It has no state, so it can be used from different threads.
+ *
+ * @author salvador
+ *
+ */
+public class JavaIntegrationEngine implements IntegrationEngine {
+	private final static Logger log = Logger.getLogger(JavaIntegrationEngine.class);
+	private static final int MAX_ITERATIONS = 200;
+	private static final double RELATIVE_TOLERANCE = 1.0E-10;
+
+	@Override
+	public IntegrationResultWrapper integrate(int lowLevel, int upperLevel, File relatFile, File dataFile,
+			File infoFile, String prefix, Double forcedVariance, File workingFolder,
+			FileMappingResults fileMappingResults) throws IOException {
+		final Map<String, SanxotQuantResult> data = IntegrationResultWrapper.getSanXotQuantResultFromDataFile(dataFile);
+		Map<String, Set<String>> relationships = null;
+		if (relatFile != null) {
+			relationships = IntegrationResultWrapper.getRelationShipsFromRelatFile(relatFile);
+		}
+		Double variance = forcedVariance;
+		if (variance == null && infoFile != null) {
+			variance = new InfoFileReader(infoFile).getResultValue(SanXotResultProperty.VARIANCE);
+		}
+		final IntegrationTable table = integrate(data, relationships, variance);
+		table.write(workingFolder, prefix);
+		return getResults(lowLevel, upperLevel, table, prefix, workingFolder, fileMappingResults, true);
+	}
+
+	@Override
+	public IntegrationResultWrapper integrate(int lowLevel, int upperLevel, Map<String, Set<String>> relationships,
+			Map<String, SanxotQuantResult> data, String prefix, Double forcedVariance, File workingFolder,
+			FileMappingResults fileMappingResults, QuantParameters quantParameters) throws IOException {
+		final IntegrationTable table = integrate(data, relationships, forcedVariance);
+		// if not written, the files are written when they are requested
+		final boolean written = quantParameters.isWriteAuditFiles() || !quantParameters.isKeepLevelsInMemory();
+		if (written) {
+			table.write(workingFolder, prefix);
+		}
+		return getResults(lowLevel, upperLevel, table, prefix, workingFolder, fileMappingResults, written);
+	}
+
+	private IntegrationResultWrapper getResults(int lowLevel, int upperLevel, IntegrationTable table, String prefix,
+			File workingFolder, FileMappingResults fileMappingResults, boolean written) {
+		final IntegrationResultWrapper ret = new IntegrationResultWrapper(workingFolder, prefix, lowLevel, upperLevel,
+				fileMappingResults);
+		ret.setIntegrationTable(table, written);
+		return ret;
+	}
+
+	/**
+	 * Integrates the data of the lower level into the upper level in memory
+	 *
+	 * @param data
+	 *            ratios and weights of the lower level elements by id
+	 * @param relationships
+	 *            ids of the lower level elements by upper level id, or null to
+	 *            integrate all the data into a single element
+	 * @param forcedVariance
+	 *            if null, the variance is fitted
+	 * @return
+	 */
+	public IntegrationTable integrate(Map<String, SanxotQuantResult> data, Map<String, Set<String>> relationships,
+			Double forcedVariance) {
+		final List<IntegrationGroup> groups = IntegrationGroup.getGroups(data, relationships);
+		double variance;
+		if (forcedVariance != null) {
+			variance = forcedVariance;
+		} else {
+			variance = fitVariance(groups);
+		}
+		final IntegrationTable ret = new IntegrationTable(variance, forcedVariance != null);
+		// first, the Z values of all the elements, to get the FDRs
+		final List<double[]> zValues = new ArrayList<double[]>(groups.size());
+		int numElements = 0;
+		for (final IntegrationGroup group : groups) {
+			zValues.add(getZValues(group, variance));
+			numElements += group.size();
+		}
+		final double[] pValues = new double[numElements];
+		int n = 0;
+		for (final double[] groupZValues : zValues) {
+			for (final double z : groupZValues) {
+				pValues[n++] = Double.isNaN(z) ? Double.NaN : SanXotStatistics.getTwoSidedPValue(z);
+			}
+		}
+		final double[] fdrs = SanXotStatistics.getBenjaminiHochbergFDRs(pValues);
+		n = 0;
+		for (int g = 0; g < groups.size(); g++) {
+			final IntegrationGroup group = groups.get(g);
+			final double[] groupZValues = zValues.get(g);
+			final double[] weights = group.getWeights(variance);
+			final double upperWeight = SanXotStatistics.sum(weights);
+			final double upperRatio = SanXotStatistics.getWeightedAverage(group.x, weights);
+			ret.addHigherLevelElement(new SanxotQuantResult(group.id, upperRatio, upperWeight));
+			for (int i = 0; i < group.size(); i++) {
+				final double relativeRatio = group.x[i] - upperRatio;
+				final OutStatsLine statisticsLine = new OutStatsLine(group.id, upperRatio, upperWeight, group.ids[i],
+						group.x[i], group.w[i], group.size(), groupZValues[i], fdrs[n++]);
+				ret.addLowerLevelElement(new SanxotQuantResult(group.ids[i], relativeRatio, group.w[i]),
+						new SanxotQuantResult(group.ids[i], relativeRatio, weights[i]), statisticsLine);
+			}
+		}
+		log.debug(numElements + " elements integrated into " + groups.size() + " elements with variance " + variance
+				+ (forcedVariance != null ? " (forced)" : ""));
+		return ret;
+	}
+
+	/**
+	 * Z values of the lower level elements of a group. The Z of the elements
+	 * that are alone in their group is NaN.
+	 *
+	 * @param group
+	 * @param variance
+	 * @return
+	 */
+	private static double[] getZValues(IntegrationGroup group, double variance) {
+		final double[] ret = new double[group.size()];
+		final double[] weights = group.getWeights(variance);
+		final double upperWeight = SanXotStatistics.sum(weights);
+		final double upperRatio = SanXotStatistics.getWeightedAverage(group.x, weights);
+		for (int i = 0; i < ret.length; i++) {
+			final double denominator = 1.0 / weights[i] - 1.0 / upperWeight;
+			if (group.size() < 2 || denominator <= 0.0) {
+				ret[i] = Double.NaN;
+			} else {
+				ret[i] = (group.x[i] - upperRatio) / Math.sqrt(denominator);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Variance of the Z values of the lower level elements (mean of the
+	 * squares) minus 1
+	 *
+	 * @param groups
+	 * @param variance
+	 * @return
+	 */
+	private static double getZVarianceExcess(List<IntegrationGroup> groups, double variance) {
+		double sum = 0.0;
+		int n = 0;
+		for (final IntegrationGroup group : groups) {
+			if (group.size() < 2) {
+				continue;
+			}
+			for (final double z : getZValues(group, variance)) {
+				if (!Double.isNaN(z)) {
+					sum += z * z;
+					n++;
+				}
+			}
+		}
+		if (n == 0) {
+			return 0.0;
+		}
+		return sum / n - 1.0;
+	}
+
+	/**
+	 * Fits the variance of the level by bisection, so that the variance of the
+	 * Z values is 1
+	 *
+	 * @param groups
+	 * @return
+	 */
+	private static double fitVariance(List<IntegrationGroup> groups) {
+		if (getZVarianceExcess(groups, 0.0) <= 0.0) {
+			return 0.0;
+		}
+		double low = 0.0;
+		double high = 1.0E-4;
+		int iterations = 0;
+		while (getZVarianceExcess(groups, high) > 0.0) {
+			low = high;
+			high *= 2.0;
+			if (++iterations > MAX_ITERATIONS) {
+				log.warn("Variance could not be fitted. Using " + high);
+				return high;
+			}
+		}
+		for (int i = 0; i < MAX_ITERATIONS && high - low > RELATIVE_TOLERANCE * high; i++) {
+			final double middle = (low + high) / 2.0;
+			if (getZVarianceExcess(groups, middle) > 0.0) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return (low + high) / 2.0;
+	}
+}
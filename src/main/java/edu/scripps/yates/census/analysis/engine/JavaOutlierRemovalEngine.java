@@ -0,0 +1,109 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.census.analysis.QuantParameters;
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.OutStatsLine;
+import edu.scripps.yates.census.analysis.wrappers.OutlierRemovalResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * {@link OutlierRemovalEngine} implementing the iterative outlier removal of
+ * sanxotsieve in the JVM. The data and the relationships are taken from the
+ * statistics of the integration, and the integration is repeated with its
+ * variance, removing in each iteration the lower level element with the
+ * highest |Z| of each upper level element that has elements with an FDR lower
+ * than the threshold, until there are no more.<br>
+ * The result keeps the data, the relationships without the outliers and the
+ * variance in memory, so that the second integration does not need to read
+ * any file.<br>
+ * It has no state, so it can be used from different threads.
+ *
+ * @author salvador
+ *
+ */
+public class JavaOutlierRemovalEngine implements OutlierRemovalEngine {
+	private final static Logger log = Logger.getLogger(JavaOutlierRemovalEngine.class);
+	private final JavaIntegrationEngine integrationEngine = new JavaIntegrationEngine();
+
+	@Override
+	public OutlierRemovalResultWrapper removeOutliers(IntegrationResultWrapper integrationResult, String prefix,
+			File workingFolder, QuantParameters quantParameters) throws IOException {
+		final Double variance = integrationResult.getIntegrationVariance();
+		final OutlierRemovalTable table = removeOutliers(integrationResult.getResultData(),
+				variance != null ? variance : 0.0, quantParameters.getOutlierRemovalFDR());
+		final boolean written = quantParameters.isWriteAuditFiles() || !quantParameters.isKeepLevelsInMemory();
+		if (written) {
+			table.write(workingFolder, prefix);
+		}
+		final OutlierRemovalResultWrapper ret = new OutlierRemovalResultWrapper(workingFolder, prefix);
+		ret.setOutlierRemovalTable(table, written);
+		return ret;
+	}
+
+	/**
+	 * Removes the outliers in memory
+	 *
+	 * @param statistics
+	 *            the statistics of the integration, with the data and the
+	 *            relationships of the lower level elements
+	 * @param variance
+	 *            variance of the integration
+	 * @param fdr
+	 *            elements with a lower FDR are outliers
+	 * @return
+	 */
+	public OutlierRemovalTable removeOutliers(List<OutStatsLine> statistics, double variance, double fdr) {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		for (final OutStatsLine line : statistics) {
+			data.put(line.getIdinf(), new SanxotQuantResult(line.getIdinf(), line.getXinf(), line.getVinf()));
+			Set<String> lowerIds = relationships.get(line.getIdsup());
+			if (lowerIds == null) {
+				lowerIds = new THashSet<String>();
+				relationships.put(line.getIdsup(), lowerIds);
+			}
+			lowerIds.add(line.getIdinf());
+		}
+		final OutlierRemovalTable ret = new OutlierRemovalTable(data, relationships, variance, fdr);
+		int iteration = 0;
+		// each iteration removes at least one element
+		final int maxIterations = statistics.size();
+		List<OutStatsLine> currentStatistics = statistics;
+		while (iteration < maxIterations) {
+			if (iteration > 0) {
+				currentStatistics = integrationEngine.integrate(data, relationships, variance).getStatistics();
+			}
+			iteration++;
+			// the worst outlier of each upper level element
+			final Map<String, OutStatsLine> worstOutliers = new THashMap<String, OutStatsLine>();
+			for (final OutStatsLine line : currentStatistics) {
+				if (line.getFDR().isNaN() || line.getFDR() >= fdr) {
+					continue;
+				}
+				final OutStatsLine worst = worstOutliers.get(line.getIdsup());
+				if (worst == null || Math.abs(line.getZ()) > Math.abs(worst.getZ())) {
+					worstOutliers.put(line.getIdsup(), line);
+				}
+			}
+			if (worstOutliers.isEmpty()) {
+				break;
+			}
+			for (final OutStatsLine outlier : worstOutliers.values()) {
+				ret.removeOutlier(outlier.getIdsup(), outlier.getIdinf());
+			}
+		}
+		ret.setNumIterations(iteration);
+		log.debug(ret.getNumOutliers() + " outliers removed at FDR " + fdr + " in " + iteration + " iterations");
+		return ret;
+	}
+}
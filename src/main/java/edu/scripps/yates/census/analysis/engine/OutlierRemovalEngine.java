@@ -0,0 +1,32 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.scripps.yates.census.analysis.QuantParameters;
+import edu.scripps.yates.census.analysis.wrappers.IntegrationResultWrapper;
+import edu.scripps.yates.census.analysis.wrappers.OutlierRemovalResultWrapper;
+
+/**
+ * Removes the outliers of an integration, as sanxotsieve does
+ *
+ * @author salvador
+ *
+ */
+public interface OutlierRemovalEngine {
+	/**
+	 * Removes the lower level elements that are outliers in their upper level
+	 * element, at the FDR of the {@link QuantParameters}
+	 *
+	 * @param integrationResult
+	 *            the integration in which the outliers are detected
+	 * @param prefix
+	 *            prefix of the result files
+	 * @param workingFolder
+	 * @param quantParameters
+	 * @return
+	 * @throws IOException
+	 */
+	public OutlierRemovalResultWrapper removeOutliers(IntegrationResultWrapper integrationResult, String prefix,
+			File workingFolder, QuantParameters quantParameters) throws IOException;
+}
@@ -0,0 +1,152 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * In-memory result of an outlier removal: the relationships without the
+ * outliers, the outliers removed, and the data and variance of the integration,
+ * so that the integration can be repeated without the outliers without reading
+ * any file
+ *
+ * @author salvador
+ *
+ */
+public class OutlierRemovalTable {
+	public static final String RELAT_SUFFIX = "_cleaned.xls";
+	public static final String OUTLIERS_SUFFIX = "_outliers.xls";
+	public static final String INFO_FILE_SUFFIX = "_infoFile.txt";
+
+	private final Map<String, SanxotQuantResult> data;
+	private final Map<String, Set<String>> relationships;
+	private final Map<String, Set<String>> outliers = new THashMap<String, Set<String>>();
+	private final double variance;
+	private final double fdr;
+	private int numIterations;
+	private int numOutliers;
+
+	OutlierRemovalTable(Map<String, SanxotQuantResult> data, Map<String, Set<String>> relationships, double variance,
+			double fdr) {
+		this.data = data;
+		this.relationships = relationships;
+		this.variance = variance;
+		this.fdr = fdr;
+	}
+
+	void removeOutlier(String upperId, String lowerId) {
+		final Set<String> lowerIds = relationships.get(upperId);
+		if (lowerIds == null || !lowerIds.remove(lowerId)) {
+			return;
+		}
+		if (lowerIds.isEmpty()) {
+			relationships.remove(upperId);
+		}
+		Set<String> set = outliers.get(upperId);
+		if (set == null) {
+			set = new THashSet<String>();
+			outliers.put(upperId, set);
+		}
+		set.add(lowerId);
+		numOutliers++;
+	}
+
+	void setNumIterations(int numIterations) {
+		this.numIterations = numIterations;
+	}
+
+	/**
+	 *
+	 * @return the ratios and weights of the lower level elements by id
+	 */
+	public Map<String, SanxotQuantResult> getData() {
+		return data;
+	}
+
+	/**
+	 *
+	 * @return the ids of the lower level elements by upper level id, without
+	 *         the outliers
+	 */
+	public Map<String, Set<String>> getRelationships() {
+		return relationships;
+	}
+
+	/**
+	 *
+	 * @return the ids of the outliers by upper level id
+	 */
+	public Map<String, Set<String>> getOutliers() {
+		return outliers;
+	}
+
+	/**
+	 *
+	 * @return the variance of the integration, used to detect the outliers
+	 */
+	public double getVariance() {
+		return variance;
+	}
+
+	public double getFDR() {
+		return fdr;
+	}
+
+	public int getNumIterations() {
+		return numIterations;
+	}
+
+	public int getNumOutliers() {
+		return numOutliers;
+	}
+
+	/**
+	 * Writes the table in the files that sanxotsieve would write with that
+	 * prefix
+	 *
+	 * @param workingFolder
+	 * @param prefix
+	 * @throws IOException
+	 */
+	public void write(File workingFolder, String prefix) throws IOException {
+		final String path = workingFolder.getAbsolutePath() + File.separator + prefix;
+		writeRelationships(new File(path + RELAT_SUFFIX), relationships);
+		writeRelationships(new File(path + OUTLIERS_SUFFIX), outliers);
+		final BufferedWriter infoWriter = new BufferedWriter(new FileWriter(path + INFO_FILE_SUFFIX));
+		try {
+			infoWriter.write("Outlier removal performed in the JVM in " + numIterations + " iterations\n");
+			infoWriter.write(numOutliers + " outliers removed at FDR " + fdr + "\n");
+			infoWriter.write("Variance = " + variance + "\n");
+		} finally {
+			infoWriter.close();
+		}
+	}
+
+	private void writeRelationships(File file, Map<String, Set<String>> map) throws IOException {
+		final List<String> upperIds = new ArrayList<String>(map.keySet());
+		Collections.sort(upperIds);
+		final BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writer.write("#idsup\tidinf\n");
+			for (final String upperId : upperIds) {
+				final List<String> lowerIds = new ArrayList<String>(map.get(upperId));
+				Collections.sort(lowerIds);
+				for (final String lowerId : lowerIds) {
+					writer.write(upperId + "\t" + lowerId + "\n");
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+}
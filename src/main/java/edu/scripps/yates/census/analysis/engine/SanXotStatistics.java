@@ -0,0 +1,104 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import java.util.Arrays;
+
+/**
+ * Statistics used by the in-JVM implementations of the SanXot programs
+ *
+ * @author salvador
+ *
+ */
+public class SanXotStatistics {
+	private SanXotStatistics() {
+	}
+
+	/**
+	 * Weight of an element including the variance of the level:<br>
+	 * W' = 1 / (1/W + variance)
+	 *
+	 * @param weight
+	 * @param variance
+	 * @return
+	 */
+	public static double getWeightWithVariance(double weight, double variance) {
+		return 1.0 / (1.0 / weight + variance);
+	}
+
+	public static double sum(double[] values) {
+		double ret = 0.0;
+		for (final double value : values) {
+			ret += value;
+		}
+		return ret;
+	}
+
+	public static double getWeightedAverage(double[] values, double[] weights) {
+		double sum = 0.0;
+		double sumWeights = 0.0;
+		for (int i = 0; i < values.length; i++) {
+			sum += values[i] * weights[i];
+			sumWeights += weights[i];
+		}
+		return sum / sumWeights;
+	}
+
+	/**
+	 * Complementary error function, with a fractional error lower than 1.2E-7
+	 * (Chebyshev approximation from Numerical Recipes)
+	 *
+	 * @param x
+	 * @return
+	 */
+	public static double erfc(double x) {
+		final double z = Math.abs(x);
+		final double t = 1.0 / (1.0 + 0.5 * z);
+		final double ans = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+						+ t * (-0.82215223 + t * 0.17087277)))))))));
+		return x >= 0.0 ? ans : 2.0 - ans;
+	}
+
+	/**
+	 * Two sided p-value of a value of a standard normal distribution
+	 *
+	 * @param z
+	 * @return
+	 */
+	public static double getTwoSidedPValue(double z) {
+		return Math.min(1.0, erfc(Math.abs(z) / Math.sqrt(2.0)));
+	}
+
+	/**
+	 * Benjamini-Hochberg FDRs of the p-values. The NaN p-values are ignored and
+	 * get a NaN FDR.
+	 *
+	 * @param pValues
+	 * @return
+	 */
+	public static double[] getBenjaminiHochbergFDRs(double[] pValues) {
+		final double[] fdrs = new double[pValues.length];
+		Arrays.fill(fdrs, Double.NaN);
+		int numValid = 0;
+		for (final double pValue : pValues) {
+			if (!Double.isNaN(pValue)) {
+				numValid++;
+			}
+		}
+		// indexes of the valid p-values, sorted by p-value
+		final Integer[] indexes = new Integer[numValid];
+		int n = 0;
+		for (int i = 0; i < pValues.length; i++) {
+			if (!Double.isNaN(pValues[i])) {
+				indexes[n++] = i;
+			}
+		}
+		Arrays.sort(indexes, (i1, i2) -> Double.compare(pValues[i1], pValues[i2]));
+		double min = 1.0;
+		for (int rank = numValid; rank >= 1; rank--) {
+			final int index = indexes[rank - 1];
+			min = Math.min(min, pValues[index] * numValid / rank);
+			fdrs[index] = min;
+		}
+		return fdrs;
+	}
+}
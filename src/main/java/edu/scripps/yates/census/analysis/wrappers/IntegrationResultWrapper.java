@@ -15,6 +15,7 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import edu.scripps.yates.census.analysis.FileMappingResults;
+import edu.scripps.yates.census.analysis.engine.IntegrationTable;
 import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.THashSet;
 
@@ -33,6 +34,10 @@ public class IntegrationResultWrapper {
 	private OutlierRemovalResultWrapper outlierRemovalResult;
 	private final FileMappingResults fileMappingResults;
 	private OutStatsReader outStatsReader;
+	// results in memory, if the integration was performed in the JVM
+	private IntegrationTable integrationTable;
+	// whether the results in memory are already written in the files
+	private boolean integrationTableWritten = true;
 	private final static String DEFAULT_HIGHERLEVEL_SUFFIX = "_higherLevel";
 	private final static String DEFAULT_INFO_FILE_SUFFIX = "_infoFile";
 	private final static String DEFAULT_LOWERLEVEL_V_SUFFIX = "_lowerNormV";
@@ -84,6 +89,48 @@ public class IntegrationResultWrapper {
 		this.outlierRemovalResult = outlierRemovalResult;
 	}
 
+	/**
+	 * @return the results of the integration in memory, or null if it was
+	 *         performed by sanxot
+	 */
+	public IntegrationTable getIntegrationTable() {
+		return integrationTable;
+	}
+
+	/**
+	 * Sets the results of the integration in memory, so that they are not
+	 * read from the files
+	 *
+	 * @param integrationTable
+	 * @param written
+	 *            whether the results are already written in the files. If
+	 *            not, they are written the first time that a file is requested
+	 */
+	public synchronized void setIntegrationTable(IntegrationTable integrationTable, boolean written) {
+		this.integrationTable = integrationTable;
+		integrationTableWritten = written;
+	}
+
+	/**
+	 * @return true if the results of the integration in memory are written
+	 *         in the files
+	 */
+	public synchronized boolean isIntegrationTableWritten() {
+		return integrationTableWritten;
+	}
+
+	private synchronized void writeIntegrationTable() {
+		if (integrationTable != null && !integrationTableWritten) {
+			try {
+				integrationTable.write(workingFolder, prefix);
+			} catch (final IOException e) {
+				throw new IllegalArgumentException(
+						"Error writing the results of the integration: " + e.getMessage(), e);
+			}
+			integrationTableWritten = true;
+		}
+	}
+
 	/**
 	 * @return the lowLevel
 	 */
@@ -99,6 +146,7 @@ public class IntegrationResultWrapper {
 	}
 
 	public File getHigherLevelDataFile() {
+		writeIntegrationTable();
 		File higherLevelFile = new File(
 				workingFolder.getAbsolutePath() + File.separator + prefix + higherLevelSuffix + ".xls");
 		if (higherLevelFile.exists() && higherLevelFile.isFile())
@@ -112,6 +160,9 @@ public class IntegrationResultWrapper {
 	 * @return
 	 */
 	public Map<String, SanxotQuantResult> getHighLevelRatios() {
+		if (integrationTable != null) {
+			return integrationTable.getHigherLevel();
+		}
 		return getRatiosAndWeightsFromFile(getHigherLevelDataFile());
 	}
 
@@ -130,6 +181,9 @@ public class IntegrationResultWrapper {
 	 * @return
 	 */
 	public Map<String, SanxotQuantResult> getLowerLevelRatiosAndNormalizedWeigths() {
+		if (integrationTable != null) {
+			return integrationTable.getLowerLevelW();
+		}
 		return getRatiosAndWeightsFromFile(getLowerLevelWFile());
 	}
 
@@ -139,6 +193,9 @@ public class IntegrationResultWrapper {
 	 * @return
 	 */
 	public Map<String, SanxotQuantResult> getLowerLevelRatiosAndWeigths() {
+		if (integrationTable != null) {
+			return integrationTable.getLowerLevelV();
+		}
 		return getRatiosAndWeightsFromFile(getLowerLevelVFile());
 	}
 
@@ -329,6 +386,7 @@ public class IntegrationResultWrapper {
 	}
 
 	public File getLowerLevelVFile() {
+		writeIntegrationTable();
 		File ret = new File(workingFolder.getAbsolutePath() + File.separator + prefix + lowerLevelVSuffix + ".xls");
 		if (ret.exists() && ret.isFile())
 			return ret;
@@ -336,6 +394,7 @@ public class IntegrationResultWrapper {
 	}
 
 	public File getLowerLevelWFile() {
+		writeIntegrationTable();
 		File ret = new File(workingFolder.getAbsolutePath() + File.separator + prefix + lowerLevelWSuffix + ".xls");
 		if (ret.exists() && ret.isFile())
 			return ret;
@@ -343,6 +402,7 @@ public class IntegrationResultWrapper {
 	}
 
 	public File getStatisticsFile() {
+		writeIntegrationTable();
 		File ret = new File(workingFolder.getAbsolutePath() + File.separator + prefix + statisticsSuffix + ".xls");
 		if (ret.exists() && ret.isFile())
 			return ret;
@@ -357,6 +417,7 @@ public class IntegrationResultWrapper {
 	}
 
 	public File getInfoFile() {
+		writeIntegrationTable();
 		File calibratedFile = new File(
 				workingFolder.getAbsolutePath() + File.separator + prefix + infoFileSuffix + ".txt");
 		if (calibratedFile.exists() && calibratedFile.isFile())
@@ -365,10 +426,16 @@ public class IntegrationResultWrapper {
 	}
 
 	public Double getIntegrationVariance() throws IOException {
+		if (integrationTable != null) {
+			return integrationTable.getVariance();
+		}
 		return getInfoFileReader().getResultValue(SanXotResultProperty.VARIANCE);
 	}
 
 	public List<OutStatsLine> getResultData() {
+		if (integrationTable != null) {
+			return integrationTable.getStatistics();
+		}
 		try {
 			if (outStatsReader == null) {
 				outStatsReader = new OutStatsReader(getStatisticsFile());
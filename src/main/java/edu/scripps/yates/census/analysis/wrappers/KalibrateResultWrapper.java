@@ -3,6 +3,8 @@ package edu.scripps.yates.census.analysis.wrappers;
 import java.io.File;
 import java.io.IOException;
 
+import edu.scripps.yates.census.analysis.engine.CalibrationTable;
+
 public class KalibrateResultWrapper {
 	private final File workingFolder;
 	private final String prefix;
@@ -12,6 +14,10 @@ public class KalibrateResultWrapper {
 	private String vGraphSuffix;
 	private String dataFileForGraphSuffix;
 	private InfoFileReader infoFileReader;
+	// results in memory, if the calibration was performed in the JVM
+	private CalibrationTable calibrationTable;
+	// whether the results in memory are already written in the files
+	private boolean calibrationTableWritten = true;
 
 	public final static String DEFAULT_CALIBRATED_PREFIX = "calibration_";
 	private final static String DEFAULT_CALIBRATED_SUFFIX = "_calibrated";
@@ -31,7 +37,50 @@ public class KalibrateResultWrapper {
 
 	}
 
+	/**
+	 * @return the results of the calibration in memory, or null if it was
+	 *         performed by klibrate
+	 */
+	public CalibrationTable getCalibrationTable() {
+		return calibrationTable;
+	}
+
+	/**
+	 * Sets the results of the calibration in memory, so that they are not
+	 * read from the files
+	 *
+	 * @param calibrationTable
+	 * @param written
+	 *            whether the results are already written in the files. If
+	 *            not, they are written the first time that a file is requested
+	 */
+	public synchronized void setCalibrationTable(CalibrationTable calibrationTable, boolean written) {
+		this.calibrationTable = calibrationTable;
+		calibrationTableWritten = written;
+	}
+
+	/**
+	 * @return true if the results of the calibration in memory are written
+	 *         in the files
+	 */
+	public synchronized boolean isCalibrationTableWritten() {
+		return calibrationTableWritten;
+	}
+
+	private synchronized void writeCalibrationTable() {
+		if (calibrationTable != null && !calibrationTableWritten) {
+			try {
+				calibrationTable.write(workingFolder, prefix);
+			} catch (final IOException e) {
+				throw new IllegalArgumentException(
+						"Error writing the results of the calibration: " + e.getMessage(), e);
+			}
+			calibrationTableWritten = true;
+		}
+	}
+
 	public File getCalibratedDataFile() {
+		writeCalibrationTable();
 		File calibratedFile = new File(workingFolder.getAbsolutePath()
 				+ File.separator + prefix + calibratedSuffix + ".xls");
 		if (calibratedFile.exists() && calibratedFile.isFile())
@@ -64,6 +113,7 @@ public class KalibrateResultWrapper {
 	}
 
 	public File getInfoFile() {
+		writeCalibrationTable();
 		File ret = new File(workingFolder.getAbsolutePath() + File.separator
 				+ prefix + infoFileSuffix + ".txt");
 		if (ret.exists() && ret.isFile())
@@ -72,10 +122,16 @@ public class KalibrateResultWrapper {
 	}
 
 	public Double getCalibrationKConstant() throws IOException {
+		if (calibrationTable != null) {
+			return calibrationTable.getK();
+		}
 		return getInfoFileReader().getResultValue(SanXotResultProperty.K);
 	}
 
 	public Double getCalibrationVariance() throws IOException {
+		if (calibrationTable != null) {
+			return calibrationTable.getVariance();
+		}
 		return getInfoFileReader()
 				.getResultValue(SanXotResultProperty.VARIANCE);
 	}
@@ -51,6 +51,27 @@ public class OutStatsLine {
 			FDR = Double.valueOf(split[8]);
 	}
 
+	public OutStatsLine(String idsup, double Xsup, double Vsup, String idinf, double Xinf, double Vinf, int n,
+			double Z, double FDR) {
+		this.idsup = idsup;
+		this.Xsup = Xsup;
+		this.Vsup = Vsup;
+		this.idinf = idinf;
+		this.Xinf = Xinf;
+		this.Vinf = Vinf;
+		this.n = n;
+		this.Z = Z;
+		this.FDR = FDR;
+	}
+
+	/**
+	 * @return the line as in the outStats file
+	 */
+	public String toLine() {
+		return idsup + "\t" + Xsup + "\t" + Vsup + "\t" + idinf + "\t" + Xinf + "\t" + Vinf + "\t" + n + "\t" + Z
+				+ "\t" + FDR;
+	}
+
 	/**
 	 * @return the idsup
 	 */
@@ -1,6 +1,9 @@
 package edu.scripps.yates.census.analysis.wrappers;
 
 import java.io.File;
+import java.io.IOException;
+
+import edu.scripps.yates.census.analysis.engine.OutlierRemovalTable;
 
 public class OutlierRemovalResultWrapper {
 	private final File workingFolder;
@@ -9,6 +12,10 @@ public class OutlierRemovalResultWrapper {
 	private String relatSuffix;
 	private String outliersSuffix;
 	private InfoFileReader infoFileReader;
+	// results in memory, if the outlier removal was performed in the JVM
+	private OutlierRemovalTable outlierRemovalTable;
+	// whether the results in memory are already written in the files
+	private boolean outlierRemovalTableWritten = true;
 
 	private final static String DEFAULT_OUTLIER_REMOVAL_SUFFIX = "_without_outliers";
 	private final static String DEFAULT_INFO_FILE_SUFFIX = "_infoFile";
@@ -25,7 +32,42 @@ public class OutlierRemovalResultWrapper {
 
 	}
 
+	/**
+	 * @return the results of the outlier removal in memory, or null if it was
+	 *         performed by sanxotsieve
+	 */
+	public OutlierRemovalTable getOutlierRemovalTable() {
+		return outlierRemovalTable;
+	}
+
+	/**
+	 * Sets the results of the outlier removal in memory, so that the
+	 * relationships without outliers are not read from the files
+	 *
+	 * @param outlierRemovalTable
+	 * @param written
+	 *            whether the results are already written in the files. If
+	 *            not, they are written the first time that a file is requested
+	 */
+	public synchronized void setOutlierRemovalTable(OutlierRemovalTable outlierRemovalTable, boolean written) {
+		this.outlierRemovalTable = outlierRemovalTable;
+		outlierRemovalTableWritten = written;
+	}
+
+	private synchronized void writeOutlierRemovalTable() {
+		if (outlierRemovalTable != null && !outlierRemovalTableWritten) {
+			try {
+				outlierRemovalTable.write(workingFolder, prefix);
+			} catch (final IOException e) {
+				throw new IllegalArgumentException(
+						"Error writing the results of the outlier removal: " + e.getMessage(), e);
+			}
+			outlierRemovalTableWritten = true;
+		}
+	}
+
 	public File getOutliersFile() {
+		writeOutlierRemovalTable();
 		File calibratedFile = new File(workingFolder.getAbsolutePath()
 				+ File.separator + prefix + outliersSuffix + ".xls");
 		if (calibratedFile.exists() && calibratedFile.isFile())
@@ -34,6 +76,7 @@ public class OutlierRemovalResultWrapper {
 	}
 
 	public File getRelatFile() {
+		writeOutlierRemovalTable();
 		File ret = new File(workingFolder.getAbsolutePath() + File.separator
 				+ prefix + relatSuffix + ".xls");
 		if (ret.exists() && ret.isFile())
@@ -42,6 +85,7 @@ public class OutlierRemovalResultWrapper {
 	}
 
 	public File getInfoFile() {
+		writeOutlierRemovalTable();
 		File ret = new File(workingFolder.getAbsolutePath() + File.separator
 				+ prefix + infoFileSuffix + ".txt");
 		if (ret.exists() && ret.isFile())
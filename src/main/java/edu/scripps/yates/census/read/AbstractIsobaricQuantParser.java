@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.Set;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
+import edu.scripps.yates.census.read.model.IonArena;
 import edu.scripps.yates.census.read.model.IonSerie.IonSerieType;
 import edu.scripps.yates.census.read.model.interfaces.IsobaricQuantParser;
 import edu.scripps.yates.census.read.util.IonExclusion;
@@ -25,6 +26,9 @@ public abstract class AbstractIsobaricQuantParser extends AbstractQuantParser im
 
 	// ion exclusions
 	protected final List<IonExclusion> ionExclusions = new ArrayList<IonExclusion>();
+	// off-heap storage of the fragment ions, if enabled
+	private IonArena ionArena;
+	private boolean useOffHeapIonStore = false;
 
 	public AbstractIsobaricQuantParser() {
 		super();
@@ -122,6 +126,49 @@ public abstract class AbstractIsobaricQuantParser extends AbstractQuantParser im
 		return ionExclusions;
 	}
 
+	/**
+	 * If true, the fragment ions of the PSMs read by this parser will be stored
+	 * off-heap in an {@link IonArena} instead of as Ion objects. It has
+	 * to be called before the files are processed. Setting it to false doesn't
+	 * release the ions already stored, which are released only by
+	 * {@link #releaseIonStore()}.
+	 *
+	 * @param useOffHeapIonStore
+	 */
+	public void setUseOffHeapIonStore(boolean useOffHeapIonStore) {
+		this.useOffHeapIonStore = useOffHeapIonStore;
+	}
+
+	public boolean isUseOffHeapIonStore() {
+		return useOffHeapIonStore;
+	}
+
+	/**
+	 * @return the arena in which the fragment ions are stored or null if they
+	 *         are stored in the heap
+	 */
+	public IonArena getIonArena() {
+		if (!useOffHeapIonStore) {
+			return null;
+		}
+		if (ionArena == null) {
+			ionArena = new IonArena();
+		}
+		return ionArena;
+	}
+
+	/**
+	 * Releases the off-heap memory used by the fragment ions of this parser.
+	 * After calling this, the PSMs of this parser cannot access their ions
+	 * anymore.
+	 */
+	public void releaseIonStore() {
+		if (ionArena != null) {
+			ionArena.release();
+			ionArena = null;
+		}
+	}
+
 	@Override
 	protected abstract void process() throws QuantParserException;
 
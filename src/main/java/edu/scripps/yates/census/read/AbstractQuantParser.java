@@ -7,29 +7,49 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.log4j.Logger;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
 import edu.scripps.yates.census.read.model.RatioDescriptor;
 import edu.scripps.yates.census.read.model.StaticQuantMaps;
+import edu.scripps.yates.census.read.model.VersionedCache;
 import edu.scripps.yates.census.read.model.interfaces.QuantParser;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import edu.scripps.yates.census.read.util.AccessionResolutionTable;
+import edu.scripps.yates.census.read.util.AccessionResolutionTable.Resolution;
+import edu.scripps.yates.census.read.util.CachedDBIndex;
+import edu.scripps.yates.census.read.util.FastaPeptideIndex;
+import edu.scripps.yates.census.read.util.IonKeyIndex;
+import edu.scripps.yates.census.read.util.PTMsInProteinCache;
+import edu.scripps.yates.census.read.util.ProteinMergeEngine;
 import edu.scripps.yates.census.read.util.ProteinSequences;
 import edu.scripps.yates.census.read.util.QuantUtils;
 import edu.scripps.yates.census.read.util.QuantificationLabel;
+import edu.scripps.yates.census.read.util.UniprotAnnotationPrefetcher;
 import edu.scripps.yates.utilities.annotations.UniprotProteinLocalRetrieverInterface;
 import edu.scripps.yates.utilities.annotations.uniprot.xml.Entry;
 import edu.scripps.yates.utilities.fasta.FastaParser;
 import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexStoreException;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
 import edu.scripps.yates.utilities.ipi.IPI2UniprotACCMap;
 import edu.scripps.yates.utilities.progresscounter.ProgressCounter;
 import edu.scripps.yates.utilities.progresscounter.ProgressPrintingType;
@@ -38,7 +58,6 @@ import edu.scripps.yates.utilities.proteomicsmodel.enums.AccessionType;
 import edu.scripps.yates.utilities.proteomicsmodel.factories.AccessionEx;
 import edu.scripps.yates.utilities.proteomicsmodel.utils.KeyUtils;
 import edu.scripps.yates.utilities.remote.RemoteSSHFileReference;
-import edu.scripps.yates.utilities.sequence.PTMInProtein;
 import edu.scripps.yates.utilities.util.Pair;
 import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.THashSet;
@@ -46,6 +65,7 @@ import gnu.trove.set.hash.THashSet;
 public abstract class AbstractQuantParser implements QuantParser {
 	private static final Logger log = Logger.getLogger(AbstractQuantParser.class);
 	protected DBIndexInterface dbIndex;
+	protected FastaPeptideIndex fastaPeptideIndex;
 
 	protected final List<RemoteSSHFileReference> remoteFileRetrievers = new ArrayList<RemoteSSHFileReference>();
 
@@ -65,7 +85,7 @@ public abstract class AbstractQuantParser implements QuantParser {
 	// the key is the protein key
 	protected final Map<String, QuantifiedProteinInterface> localProteinMap = new THashMap<String, QuantifiedProteinInterface>();
 	// the key is the spectrum key
-	protected final Map<String, QuantifiedPSMInterface> localPsmMap = new THashMap<String, QuantifiedPSMInterface>();
+	protected final Map<String, QuantifiedPSMInterface> localPsmMap = new IonIndexedPSMMap();
 	// the key is the peptide key (the peptide sequence, distinguising between
 	// modified or not, depending on 'distinguishModifiedPeptides' variable
 	protected final Map<String, QuantifiedPeptideInterface> localPeptideMap = new THashMap<String, QuantifiedPeptideInterface>();
@@ -90,13 +110,30 @@ public abstract class AbstractQuantParser implements QuantParser {
 	private boolean ignoreACCFormat;
 	protected boolean getPTMInProteinMap = false;
 	protected ProteinSequences proteinSequences;
+	private boolean prefetchUniprotAnnotations = false;
+	private UniprotAnnotationPrefetcher annotationPrefetcher;
+	private AccessionResolutionTable accessionResolutionTable;
 
 	// PEPTIDE KEY GROUPING SETTINGS
 	private boolean distinguishModifiedSequences = true;
 	private boolean chargeSensible = true;
 	private final Set<String> ratiosToCapture = new THashSet<String>();
-	private boolean reCalculatedIonsCountsReady = false;
-	private final THashMap<String, Set<QuantifiedPSMInterface>> psmsByIonKey = new THashMap<String, Set<QuantifiedPSMInterface>>();
+	// index of the PSMs in localPsmMap by ion, updated as the map changes
+	private final IonKeyIndex ionKeyIndex = new IonKeyIndex();
+	private volatile QuantParserSnapshot snapshot;
+	// PROGRESS AND CANCELLATION
+	private static final long PROGRESS_INTERVAL_MILLIS = 500;
+	private final List<ParserProgressListener> progressListeners = new CopyOnWriteArrayList<ParserProgressListener>();
+	private volatile boolean cancelRequested = false;
+	private ParsingPhase phase = ParsingPhase.NOT_STARTED;
+	private long charsRead;
+	private long rowsRead;
+	private long processStartTime;
+	private long lastProgressTime;
+	private int postProcessingParallelism = 1;
+	// mapping of the PTMs of the PSMs to their proteins, shared by default
+	// with the other parsers
+	private PTMsInProteinCache ptmsInProteinCache = PTMsInProteinCache.getSharedInstance();
 
 	@Override
 	public boolean isDistinguishModifiedSequences() {
@@ -469,11 +506,54 @@ public abstract class AbstractQuantParser implements QuantParser {
 	}
 
 	/**
+	 * Sets the index used to get the proteins of the peptides. It is used
+	 * through the {@link CachedDBIndex} shared by all the parsers using the
+	 * same index.
+	 *
 	 * @param dbIndexInterface the dbIndex to set
 	 */
 	@Override
 	public void setDbIndex(DBIndexInterface dbIndexInterface) {
-		dbIndex = dbIndexInterface;
+		if (dbIndexInterface != null) {
+			dbIndex = CachedDBIndex.getInstance(dbIndexInterface).asDBIndex();
+		} else {
+			dbIndex = null;
+		}
+	}
+
+	@Override
+	public void setFastaPeptideIndex(FastaPeptideIndex fastaPeptideIndex) {
+		this.fastaPeptideIndex = fastaPeptideIndex;
+	}
+
+	public FastaPeptideIndex getFastaPeptideIndex() {
+		return fastaPeptideIndex;
+	}
+
+	/**
+	 *
+	 * @return true if the proteins of the peptides can be got from a
+	 *         {@link FastaPeptideIndex} or from a {@link DBIndexInterface}
+	 */
+	protected boolean isProteinIndexAvailable() {
+		return fastaPeptideIndex != null || dbIndex != null;
+	}
+
+	/**
+	 * Gets the proteins containing the peptide sequence from the
+	 * {@link FastaPeptideIndex} if available, or otherwise from the
+	 * {@link DBIndexInterface}, through the {@link CachedDBIndex} shared by all
+	 * the parsers using the same index
+	 *
+	 * @param cleanSequence
+	 * @return
+	 * @throws DBIndexStoreException
+	 */
+	protected Set<IndexedProtein> getProteinsFromDBIndex(String cleanSequence) throws DBIndexStoreException {
+		if (fastaPeptideIndex != null) {
+			return fastaPeptideIndex.getProteins(cleanSequence);
+		}
+		return dbIndex.getProteins(cleanSequence);
 	}
 
 	@Override
@@ -498,66 +578,322 @@ public abstract class AbstractQuantParser implements QuantParser {
 	}
 
 	private void startProcess() throws QuantParserException {
+		processStartTime = System.currentTimeMillis();
+		charsRead = 0;
+		rowsRead = 0;
 		if (clearStaticMapsBeforeReading) {
 			// clear information in static maps
 			StaticQuantMaps.clearInfo();
 		}
-		// first process
-		process();
-		// set processed to true
-		processed = true;
-		// remove psms assigned to decoy proteins that were discarded
-		removeDecoyPSMs();
-		// second expand protein map
+		try {
+			// first process
+			setPhase(ParsingPhase.READING);
+			process();
+			// set processed to true
+			processed = true;
+			if (annotationPrefetcher != null) {
+				// load the last accessions while the first phases run
+				annotationPrefetcher.flush();
+			}
+			if (postProcessingParallelism > 1) {
+				final ForkJoinPool pool = new ForkJoinPool(postProcessingParallelism);
+				try {
+					postProcessInParallel(pool);
+				} finally {
+					pool.shutdown();
+				}
+			} else {
+				// remove psms assigned to decoy proteins that were discarded
+				setPhase(ParsingPhase.REMOVING_DECOYS);
+				removeDecoyPSMs();
+				// second expand protein map
+				setPhase(ParsingPhase.MAPPING_IPI_TO_UNIPROT);
+				mapIPI2Uniprot();
+				// third merge proteins with secondary accessions
+				setPhase(ParsingPhase.MERGING_SECONDARY_ACCESSIONS);
+				mergeProteinsWithSecondaryAccessionsInParser();
+				// get ptmsInProteins, which implies to get uniprot annotations
+				setPhase(ParsingPhase.PTMS_IN_PROTEINS);
+				createPTMsInProteins();
+			}
+		} finally {
+			// the annotations are not needed anymore, and its threads are
+			// released also if the parsing fails
+			resetAnnotationPrefetcher();
+		}
+		if (dbIndex != null && fastaPeptideIndex == null) {
+			CachedDBIndex.getInstance(dbIndex).logStatistics();
+		}
+		saveAccessionResolutionTable();
+		setPhase(ParsingPhase.DONE);
+	}
+
+	/**
+	 * Same phases than in {@link #startProcess()}, but the passes over the PSMs
+	 * are run as parallel streams in the pool, and the removal of decoy PSMs
+	 * (that only changes the PSM map) runs at the same time than the mapping
+	 * of IPI accessions (that only changes the protein map).<br>
+	 * The merging of proteins by secondary accessions changes the relationships
+	 * between the proteins, peptides and PSMs, so it is not parallelized.
+	 *
+	 * @param pool
+	 * @throws QuantParserException
+	 */
+	private void postProcessInParallel(ForkJoinPool pool) throws QuantParserException {
+		setPhase(ParsingPhase.REMOVING_DECOYS);
+		final Future<Void> decoyRemoval = pool.submit(() -> {
+			removeDecoyPSMs();
+			return null;
+		});
+		// the decoy removal goes on while mapping the accessions, but the
+		// phases are reported in the same order than when not in parallel
+		setPhase(ParsingPhase.MAPPING_IPI_TO_UNIPROT);
 		mapIPI2Uniprot();
-		// third merge proteins with secondary accessions
+		waitFor(decoyRemoval);
+		setPhase(ParsingPhase.MERGING_SECONDARY_ACCESSIONS);
 		mergeProteinsWithSecondaryAccessionsInParser();
-		// get ptmsInProteins, which implies to get uniprot annotations
-		createPTMsInProteins();
+		setPhase(ParsingPhase.PTMS_IN_PROTEINS);
+		waitFor(pool.submit(() -> {
+			createPTMsInProteins();
+			return null;
+		}));
+	}
+
+	private static <T> T waitFor(Future<T> future) throws QuantParserException {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new QuantParserException(e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof QuantParserException) {
+				throw (QuantParserException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new QuantParserException(cause);
+		}
 	}
 
-	private void createPTMsInProteins() throws QuantParserException {
+	/**
+	 * Sets the number of threads used to process the PSMs and proteins after
+	 * reading the input files (removing decoys, mapping accessions and
+	 * mapping PTMs to protein coordinates). By default is 1, so they are not
+	 * processed in parallel. If greater than 1, the
+	 * {@link UniprotProteinLocalRetrieverInterface} and the
+	 * {@link ProteinSequences} should be safe to be read from different
+	 * threads.<br>
+	 * The parallel passes only read the model objects, whose derived values
+	 * are kept in thread safe caches (see {@link VersionedCache}), and the
+	 * PTMs in proteins are cached in a {@link PTMsInProteinCache} that is safe
+	 * to be used from different threads. The phases that change the
+	 * relationships between proteins, peptides and PSMs are not run in
+	 * parallel.
+	 *
+	 * @param postProcessingParallelism
+	 */
+	public void setPostProcessingParallelism(int postProcessingParallelism) {
+		this.postProcessingParallelism = postProcessingParallelism;
+	}
 
-		if (getPTMInProteinMap) {
-			final Set<String> accs = getProteinMap().keySet();
-			uplr.getAnnotatedProteins(uniprotVersion, accs);
+	public int getPostProcessingParallelism() {
+		return postProcessingParallelism;
+	}
 
-			for (final QuantifiedPSMInterface psm : getPSMMap().values()) {
-				final String sequence = psm.getSequence();
-				String ptmKey = sequence; // by default if no ptms
-				if (!psm.getPTMsInPeptide().isEmpty()) {
-					final List<PTMInProtein> ptmsInProtein = psm.getPTMsInProtein(uplr, proteinSequences);
-					ptmKey = getPTMKeyFromPTMsInProtein(ptmsInProtein);
+	/**
+	 * Sets the cache of the mappings of the PTMs of the PSMs to their
+	 * proteins. By default, the one returned by
+	 * {@link PTMsInProteinCache#getSharedInstance()}, that is shared by all
+	 * the parsers.
+	 *
+	 * @param ptmsInProteinCache
+	 */
+	public void setPTMsInProteinCache(PTMsInProteinCache ptmsInProteinCache) {
+		if (ptmsInProteinCache == null) {
+			throw new IllegalArgumentException("The PTMs in protein cache cannot be null");
+		}
+		this.ptmsInProteinCache = ptmsInProteinCache;
+	}
 
-				}
-				final String spectrumKey = KeyUtils.getInstance().getSpectrumKey(psm, isDistinguishModifiedSequences(),
-						isChargeSensible());
-				addToMap(ptmKey, ptmToSpectraMap, spectrumKey);
+	public PTMsInProteinCache getPTMsInProteinCache() {
+		return ptmsInProteinCache;
+	}
+
+	/**
+	 * @param collection
+	 * @return a parallel stream if the post processing is parallel. In that
+	 *         case, it has to be consumed from a task of the pool
+	 */
+	private <T> Stream<T> postProcessingStream(Collection<T> collection) {
+		if (postProcessingParallelism > 1) {
+			return collection.parallelStream();
+		}
+		return collection.stream();
+	}
+
+	private static void mergeMaps(Map<String, Set<String>> receiver, Map<String, Set<String>> donor) {
+		for (final String key : donor.keySet()) {
+			if (receiver.containsKey(key)) {
+				receiver.get(key).addAll(donor.get(key));
+			} else {
+				receiver.put(key, donor.get(key));
 			}
 		}
+	}
+
+	/**
+	 * Processes the input files in the executor, returning a future of the
+	 * immutable snapshot of the result (see {@link #freeze()}).<br>
+	 * Cancelling the returned future requests the cancellation of the
+	 * processing, which stops at the next protein group (or row, depending on
+	 * the input format), completing the future with a
+	 * {@link ParserCancelledException}. A cancelled parser should be discarded.
+	 *
+	 * @param executor
+	 * @return
+	 */
+	public CompletableFuture<QuantParserSnapshot> processAsync(Executor executor) {
+		final CompletableFuture<QuantParserSnapshot> future = CompletableFuture.supplyAsync(() -> {
+			try {
+				return freeze();
+			} catch (final QuantParserException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+		future.whenComplete((snapshot, throwable) -> {
+			if (throwable instanceof CancellationException) {
+				cancel();
+			}
+		});
+		return future;
+	}
 
+	/**
+	 * Requests the cancellation of the processing of the input files. It is
+	 * checked at the beginning of each protein group (or row) and between the
+	 * processing phases, throwing a {@link ParserCancelledException}.
+	 */
+	public void cancel() {
+		cancelRequested = true;
 	}
 
-	private String getPTMKeyFromPTMsInProtein(List<PTMInProtein> ptmsInProtein) {
-		final StringBuilder sb = new StringBuilder();
-		Collections.sort(ptmsInProtein, new Comparator<PTMInProtein>() {
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
 
-			@Override
-			public int compare(PTMInProtein o1, PTMInProtein o2) {
-				final int ret = o1.getProteinACC().compareTo(o2.getProteinACC());
-				if (ret != 0) {
-					return ret;
+	/**
+	 * To be called by the parsers before processing a new protein group (or
+	 * row)
+	 *
+	 * @throws ParserCancelledException
+	 *             if {@link #cancel()} was called
+	 */
+	protected void checkCancelled() throws ParserCancelledException {
+		if (cancelRequested) {
+			throw new ParserCancelledException("Processing cancelled while " + phase);
+		}
+	}
+
+	public void addProgressListener(ParserProgressListener listener) {
+		progressListeners.add(listener);
+	}
+
+	public void removeProgressListener(ParserProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	public ParsingPhase getPhase() {
+		return phase;
+	}
+
+	private void setPhase(ParsingPhase phase) throws ParserCancelledException {
+		checkCancelled();
+		this.phase = phase;
+		fireProgress();
+	}
+
+	/**
+	 * To be called by the parsers for each row read from a text input file, so
+	 * that the progress listeners are notified periodically
+	 *
+	 * @param line
+	 */
+	protected void rowRead(String line) {
+		rowsRead++;
+		// the line plus its line terminator
+		charsRead += line.length() + 1;
+		if (!progressListeners.isEmpty()
+				&& System.currentTimeMillis() - lastProgressTime >= PROGRESS_INTERVAL_MILLIS) {
+			fireProgress();
+		}
+	}
+
+	private void fireProgress() {
+		if (progressListeners.isEmpty()) {
+			return;
+		}
+		lastProgressTime = System.currentTimeMillis();
+		final ParserProgressEvent event = new ParserProgressEvent(phase, charsRead, rowsRead, localPsmMap.size(),
+				lastProgressTime - processStartTime);
+		for (final ParserProgressListener listener : progressListeners) {
+			listener.onProgress(event);
+		}
+	}
+
+	/**
+	 * Creates an immutable snapshot of the maps and relationships of this
+	 * parser, processing the input files if they were not processed yet. The
+	 * snapshot can be queried from many threads without locking. It is created
+	 * just once, so later calls return the same snapshot.
+	 *
+	 * @return
+	 * @throws QuantParserException
+	 */
+	public QuantParserSnapshot freeze() throws QuantParserException {
+		if (snapshot == null) {
+			synchronized (this) {
+				if (snapshot == null) {
+					if (!processed) {
+						startProcess();
+					}
+					setPhase(ParsingPhase.FREEZING);
+					snapshot = new QuantParserSnapshot(this);
+					setPhase(ParsingPhase.DONE);
 				}
-				return Integer.compare(o1.getPosition(), o2.getPosition());
 			}
-		});
-		for (final PTMInProtein ptmInProtein : ptmsInProtein) {
-			if (!"".equals(sb.toString())) {
-				sb.append(QuantUtils.KEY_SEPARATOR);
+		}
+		return snapshot;
+	}
+
+	private void createPTMsInProteins() throws QuantParserException {
+
+		if (getPTMInProteinMap) {
+			final Set<String> accs = getProteinMap().keySet();
+			if (annotationPrefetcher != null) {
+				annotationPrefetcher.getAnnotatedProteins(accs);
+			} else {
+				uplr.getAnnotatedProteins(uniprotVersion, accs);
 			}
-			sb.append(ptmInProtein.toString());
+			// each thread fills its own partial map, and they are merged at
+			// the end
+			final Map<String, Set<String>> ptmToSpectra = postProcessingStream(getPSMMap().values()).collect(
+					THashMap<String, Set<String>>::new, (map, psm) -> {
+						final String sequence = psm.getSequence();
+						String ptmKey = sequence; // by default if no ptms
+						if (!psm.getPTMsInPeptide().isEmpty()) {
+							ptmKey = ptmsInProteinCache.getPTMsInProtein(psm, uplr, uniprotVersion, proteinSequences)
+									.getPTMKey();
+						}
+						final String spectrumKey = KeyUtils.getInstance().getSpectrumKey(psm,
+								isDistinguishModifiedSequences(), isChargeSensible());
+						addToMap(ptmKey, map, spectrumKey);
+					}, AbstractQuantParser::mergeMaps);
+			mergeMaps(ptmToSpectraMap, ptmToSpectra);
+			log.info(ptmsInProteinCache);
 		}
-		return sb.toString();
+
 	}
 
 	protected abstract void process() throws QuantParserException;
@@ -625,23 +961,17 @@ public abstract class AbstractQuantParser implements QuantParser {
 				final Accession acc = FastaParser.getACC(accession);
 				if (acc.getAccessionType() == AccessionType.IPI) {
 					final QuantifiedProteinInterface quantProtein = localProteinMap.get(accession);
-					Accession primaryAccession = new AccessionEx(accession, AccessionType.IPI);
-					final Pair<Accession, Set<Accession>> pair = IPI2UniprotACCMap.getInstance()
-							.getPrimaryAndSecondaryAccessionsFromIPI(primaryAccession);
-					if (pair.getFirstelement() != null) {
-						primaryAccession = pair.getFirstelement();
-						if (!newMap.containsKey(primaryAccession.getAccession())) {
-							newMap.put(primaryAccession.getAccession(), quantProtein);
+					final Resolution resolution = resolveIPIAccession(accession);
+					final String primaryAccession = resolution.getPrimaryAccession();
+					if (primaryAccession != null) {
+						if (!newMap.containsKey(primaryAccession)) {
+							newMap.put(primaryAccession, quantProtein);
 						}
 					}
-					final Set<Accession> secondaryAccs = pair.getSecondElement();
-					if (secondaryAccs != null) {
-						for (final Accession secondaryAcc : secondaryAccs) {
-							if (!newMap.containsKey(secondaryAcc.getAccession())) {
-								newMap.put(secondaryAcc.getAccession(), quantProtein);
-							}
+					for (final String secondaryAcc : resolution.getSecondaryAccessions()) {
+						if (!newMap.containsKey(secondaryAcc)) {
+							newMap.put(secondaryAcc, quantProtein);
 						}
-
 					}
 				}
 			}
@@ -656,10 +986,127 @@ public abstract class AbstractQuantParser implements QuantParser {
 		}
 	}
 
+	/**
+	 * Gets the primary and secondary uniprot accessions of an IPI accession,
+	 * from the {@link AccessionResolutionTable} if it was resolved before, or
+	 * otherwise from the {@link IPI2UniprotACCMap}, storing it in the table.
+	 *
+	 * @param accession
+	 * @return
+	 */
+	private Resolution resolveIPIAccession(String accession) {
+		// stored apart from the resolutions by the uniprot retriever
+		final String key = "IPI2Uniprot|" + accession;
+		if (accessionResolutionTable != null) {
+			final Resolution resolution = accessionResolutionTable.get(key);
+			if (resolution != null) {
+				return resolution;
+			}
+		}
+		final Pair<Accession, Set<Accession>> pair = IPI2UniprotACCMap.getInstance()
+				.getPrimaryAndSecondaryAccessionsFromIPI(new AccessionEx(accession, AccessionType.IPI));
+		String primaryAccession = null;
+		if (pair.getFirstelement() != null) {
+			primaryAccession = pair.getFirstelement().getAccession();
+		}
+		final List<String> secondaryAccessions = new ArrayList<String>();
+		if (pair.getSecondElement() != null) {
+			for (final Accession secondaryAcc : pair.getSecondElement()) {
+				secondaryAccessions.add(secondaryAcc.getAccession());
+			}
+		}
+		if (accessionResolutionTable != null) {
+			accessionResolutionTable.put(key, primaryAccession, secondaryAccessions);
+		}
+		return new Resolution(primaryAccession, secondaryAccessions);
+	}
+
+	/**
+	 * Gets the primary accession of an accession from the
+	 * {@link AccessionResolutionTable} if it was resolved before, or otherwise
+	 * from its uniprot entry, storing it in the table. The accessions not
+	 * found are stored by {@link #storeNotFoundAccessions(Set, Map)}.
+	 *
+	 * @param accession
+	 * @param annotatedProteins
+	 *            the uniprot entries of the accessions not in the table
+	 * @return the primary accession, or null if the accession was not found
+	 */
+	private String getPrimaryAccession(String accession, Map<String, Entry> annotatedProteins) {
+		if (accessionResolutionTable != null) {
+			final Resolution resolution = accessionResolutionTable.get(accession);
+			if (resolution != null) {
+				return resolution.getPrimaryAccession();
+			}
+		}
+		String primaryAccession = null;
+		final Entry entry = annotatedProteins.get(accession);
+		if (entry != null && entry.getAccession() != null && !entry.getAccession().isEmpty()) {
+			primaryAccession = entry.getAccession().get(0);
+		}
+		if (accessionResolutionTable != null && primaryAccession != null) {
+			accessionResolutionTable.put(accession, primaryAccession, null);
+		}
+		return primaryAccession;
+	}
+
+	/**
+	 * Stores in the {@link AccessionResolutionTable} the accessions requested
+	 * to the retriever for which no entry was returned, as not found (obsolete
+	 * or unknown), so that they are not requested again in the next runs. It
+	 * is only called when the retriever answered the request, even if no entry
+	 * at all was returned, so that the accessions are retrieved again in the
+	 * next runs if the retrieval failed.
+	 *
+	 * @param requestedAccessions
+	 * @param annotatedProteins
+	 *            the uniprot entries returned for those accessions
+	 */
+	private void storeNotFoundAccessions(Set<String> requestedAccessions, Map<String, Entry> annotatedProteins) {
+		if (accessionResolutionTable == null) {
+			return;
+		}
+		for (final String accession : requestedAccessions) {
+			final Entry entry = annotatedProteins.get(accession);
+			if (entry == null || entry.getAccession() == null || entry.getAccession().isEmpty()) {
+				accessionResolutionTable.put(accession, null, null);
+			}
+		}
+	}
+
+	/**
+	 * Sets a table of accessions resolved in previous runs, so that only the
+	 * accessions not in the table are resolved by the uniprot retriever and by
+	 * the IPI mapping. The new resolutions are saved in the table at the end
+	 * of the processing.
+	 *
+	 * @param accessionResolutionTable
+	 */
+	public void setAccessionResolutionTable(AccessionResolutionTable accessionResolutionTable) {
+		this.accessionResolutionTable = accessionResolutionTable;
+	}
+
+	public AccessionResolutionTable getAccessionResolutionTable() {
+		return accessionResolutionTable;
+	}
+
+	private void saveAccessionResolutionTable() {
+		if (accessionResolutionTable == null || !accessionResolutionTable.isModified()) {
+			return;
+		}
+		try {
+			accessionResolutionTable.save();
+		} catch (final IOException e) {
+			log.warn("Error saving the resolved accessions to " + accessionResolutionTable.getFile() + ": "
+					+ e.getMessage());
+		}
+	}
+
 	public void enableProteinMergingBySecondaryAccessions(UniprotProteinLocalRetrieverInterface uplr,
 			String uniprotVersion) {
 		this.uplr = uplr;
 		this.uniprotVersion = uniprotVersion;
+		resetAnnotationPrefetcher();
 	}
 
 	private void mergeProteinsWithSecondaryAccessionsInParser() throws QuantParserException {
@@ -685,45 +1132,46 @@ public abstract class AbstractQuantParser implements QuantParser {
 		}
 		listOfSets.add(set);
 
-		int numObsoletes = 0;
+		final ProteinMergeEngine mergeEngine = new ProteinMergeEngine();
 		log.info("Merging proteins that have secondary accessions according to Uniprot " + latestVersion + "...");
 		final ProgressCounter counter = new ProgressCounter(accessions.size(), ProgressPrintingType.PERCENTAGE_STEPS,
 				0);
 		final int initialSize = accessions.size();
 		for (final Set<String> accessionSet : listOfSets) {
-			final Map<String, Entry> annotatedProteins = uplr.getAnnotatedProteins(uniprotVersion, accessionSet,
-					retrieveFastaIsoforms, false);
+			// only the accessions not resolved in previous runs are retrieved
+			final Set<String> unresolvedAccessions = new THashSet<String>();
+			for (final String accession : accessionSet) {
+				if (accessionResolutionTable == null || !accessionResolutionTable.contains(accession)) {
+					unresolvedAccessions.add(accession);
+				}
+			}
+			Map<String, Entry> annotatedProteins = Collections.emptyMap();
+			if (!unresolvedAccessions.isEmpty()) {
+				Map<String, Entry> retrieved = null;
+				try {
+					retrieved = getAnnotatedProteins(unresolvedAccessions);
+				} catch (final RuntimeException e) {
+					log.warn("Error retrieving the uniprot entries of " + unresolvedAccessions.size()
+							+ " accessions: " + e.getMessage());
+				}
+				if (retrieved != null) {
+					annotatedProteins = retrieved;
+					// the retriever answered, so the accessions without entry
+					// are obsolete or unknown, even if none of them was found
+					storeNotFoundAccessions(unresolvedAccessions, annotatedProteins);
+				}
+			}
 			for (final String accession : accessionSet) {
 				counter.increment();
 				final String percentage = counter.printIfNecessary();
 				if (!"".equals(percentage)) {
 					log.debug(percentage);
 				}
-				final QuantifiedProteinInterface quantifiedProtein = StaticQuantMaps.proteinMap.getItem(accession);
-				final Entry entry = annotatedProteins.get(accession);
-				if (entry != null && entry.getAccession() != null && !entry.getAccession().isEmpty()) {
-					final String primaryAccession = entry.getAccession().get(0);
+				final String primaryAccession = getPrimaryAccession(accession, annotatedProteins);
+				if (primaryAccession != null) {
 					if (!accession.equals(primaryAccession) && !accession.contains(primaryAccession)) {
-						log.info("Replacing accession " + quantifiedProtein.getAccession() + " by primary accession "
-								+ primaryAccession);
-						quantifiedProtein.setPrimaryAccession(primaryAccession);
-						if (StaticQuantMaps.proteinMap.containsKey(primaryAccession)) {
-							// there was already a protein with that
-							// primaryAccession
-							final QuantifiedProteinInterface quantifiedProtein2 = StaticQuantMaps.proteinMap
-									.getItem(primaryAccession);
-							// merge quantifiedPRotein and quantifiedPRotein2
-							mergeProteins(quantifiedProtein, quantifiedProtein2);
-
-						} else {
-							numObsoletes++;
-						}
-						// remove old/secondary accession
-						getProteinMap().remove(accession);
-						StaticQuantMaps.proteinMap.remove(accession);
-						getProteinMap().put(primaryAccession, quantifiedProtein);
-
-						StaticQuantMaps.proteinMap.addItem(quantifiedProtein);
+						log.info("Replacing accession " + accession + " by primary accession " + primaryAccession);
+						mergeEngine.proposeMerge(accession, primaryAccession);
 					}
 				} else {
 					// // remove the protein because is obsolete
@@ -732,6 +1180,10 @@ public abstract class AbstractQuantParser implements QuantParser {
 				}
 			}
 		}
+		// all the merges are done at once, once the final primary accession
+		// of each protein is known
+		mergeEngine.merge(getProteinMap());
+		final int numObsoletes = mergeEngine.getNumRenamedProteins();
 		final int finalSize = getProteinMap().size();
 		if (initialSize != finalSize) {
 			log.info(initialSize - finalSize
@@ -740,22 +1192,70 @@ public abstract class AbstractQuantParser implements QuantParser {
 		log.info("Obsolete accessions from " + numObsoletes + " proteins were changed to primary ones");
 	}
 
-	private static void mergeProteins(QuantifiedProteinInterface proteinReceiver,
-			QuantifiedProteinInterface proteinDonor) {
-		// PSMS
-		for (final QuantifiedPSMInterface psm : proteinDonor.getQuantifiedPSMs()) {
-			proteinReceiver.addPSM(psm, true);
-			psm.getQuantifiedProteins().remove(proteinDonor);
-			psm.addQuantifiedProtein(proteinReceiver, true);
+	/**
+	 * Gets the annotations of the accessions from the
+	 * {@link UniprotAnnotationPrefetcher} if the annotations are prefetched, or
+	 * otherwise from the {@link UniprotProteinLocalRetrieverInterface}
+	 *
+	 * @param accessions
+	 * @return
+	 */
+	private Map<String, Entry> getAnnotatedProteins(Set<String> accessions) {
+		if (annotationPrefetcher != null) {
+			return annotationPrefetcher.getAnnotatedProteins(accessions);
+		}
+		return uplr.getAnnotatedProteins(uniprotVersion, accessions, retrieveFastaIsoforms, false);
+	}
+
+	/**
+	 * If enabled, the uniprot annotations of the proteins are loaded in
+	 * background threads while the files are parsed, so they are already
+	 * loaded when merging the proteins by secondary accessions and when
+	 * getting the PTMs in the proteins. It requires the
+	 * {@link UniprotProteinLocalRetrieverInterface} to be set before
+	 * processing.
+	 *
+	 * @param prefetchUniprotAnnotations
+	 */
+	public void setPrefetchUniprotAnnotations(boolean prefetchUniprotAnnotations) {
+		this.prefetchUniprotAnnotations = prefetchUniprotAnnotations;
+		if (!prefetchUniprotAnnotations) {
+			resetAnnotationPrefetcher();
 		}
-		// Peptides
-		for (final QuantifiedPeptideInterface peptide : proteinDonor.getQuantifiedPeptides()) {
-			proteinReceiver.addPeptide(peptide, true);
+	}
 
-			peptide.getQuantifiedProteins().remove(proteinDonor);
+	public boolean isPrefetchUniprotAnnotations() {
+		return prefetchUniprotAnnotations;
+	}
+
+	/**
+	 * Shuts down the {@link UniprotAnnotationPrefetcher}, if any, so that a new
+	 * one is created with the current settings when needed. It has to be
+	 * called when any setting used to retrieve the annotations changes.
+	 */
+	private void resetAnnotationPrefetcher() {
+		if (annotationPrefetcher != null) {
+			annotationPrefetcher.shutdown();
+			annotationPrefetcher = null;
 		}
 	}
 
+	/**
+	 * To be called by the parsers when a protein accession is found, so that
+	 * its annotations start loading in background if enabled
+	 *
+	 * @param accession
+	 */
+	protected void proteinAccessionFound(String accession) {
+		if (!prefetchUniprotAnnotations || uplr == null) {
+			return;
+		}
+		if (annotationPrefetcher == null) {
+			annotationPrefetcher = new UniprotAnnotationPrefetcher(uplr, uniprotVersion, retrieveFastaIsoforms);
+		}
+		annotationPrefetcher.queue(accession);
+	}
+
 	private void removeDecoyPSMs() {
 		if (decoyPattern != null) {
 			// in case of decoyPattern is enabled, we may have some PSMs
@@ -764,12 +1264,9 @@ public abstract class AbstractQuantParser implements QuantParser {
 			// so we need to discard them
 			// We iterate over the psms, and we will remove the ones with no
 			// proteins
-			final Set<String> keysToDelete = new THashSet<String>();
-			for (final String key : localPsmMap.keySet()) {
-				if (localPsmMap.get(key).getQuantifiedProteins().isEmpty()) {
-					keysToDelete.add(key);
-				}
-			}
+			final Set<String> keysToDelete = postProcessingStream(localPsmMap.entrySet())
+					.filter(entry -> entry.getValue().getQuantifiedProteins().isEmpty()).map(entry -> entry.getKey())
+					.collect(Collectors.toCollection(THashSet<String>::new));
 			if (!keysToDelete.isEmpty()) {
 				log.info("Removing " + keysToDelete.size() + " PSMs not assigned to proteins");
 			}
@@ -790,6 +1287,7 @@ public abstract class AbstractQuantParser implements QuantParser {
 
 	public void setRetrieveFastaIsoforms(boolean retrieveFastaIsoforms) {
 		this.retrieveFastaIsoforms = retrieveFastaIsoforms;
+		resetAnnotationPrefetcher();
 	}
 
 	@Override
@@ -826,6 +1324,7 @@ public abstract class AbstractQuantParser implements QuantParser {
 
 	public void setUplr(UniprotProteinLocalRetrieverInterface uplr) {
 		this.uplr = uplr;
+		resetAnnotationPrefetcher();
 	}
 
 	public ProteinSequences getProteinSequences() {
@@ -842,6 +1341,7 @@ public abstract class AbstractQuantParser implements QuantParser {
 
 	public void setUniprotVersion(String uniprotVersion) {
 		this.uniprotVersion = uniprotVersion;
+		resetAnnotationPrefetcher();
 	}
 
 	/**
@@ -876,30 +1376,67 @@ public abstract class AbstractQuantParser implements QuantParser {
 
 	@Override
 	public int getReCalculatedIonCount(QuantifiedPSMInterface psm) {
-		final Map<String, Set<QuantifiedPSMInterface>> psMsByIonKey2 = getPSMsByIonKey();
-		final String ionkey = KeyUtils.getInstance().getSequenceChargeKey(psm, true, true);
-		return psMsByIonKey2.get(ionkey).size();
+		return ionKeyIndex.getIonCount(psm);
 	}
 
+	/**
+	 * Returns a read-only view of the index of PSMs by ion key (full sequence +
+	 * "-" + charge), which is kept up to date as PSMs are added or removed from
+	 * the PSM map.
+	 */
 	@Override
 	public Map<String, Set<QuantifiedPSMInterface>> getPSMsByIonKey() {
-		if (!reCalculatedIonsCountsReady) {
+		if (!processed) {
 			try {
+				startProcess();
+			} catch (final QuantParserException e) {
+				log.error(e.getMessage());
+			}
+		}
+		return ionKeyIndex.asMap();
+	}
 
-				getPSMMap().values().stream().forEach(psm2 -> {
-					final String ionkey = psm2.getFullSequence() + "-" + psm2.getChargeState();
-					if (!psmsByIonKey.containsKey(ionkey)) {
-						psmsByIonKey.put(ionkey, new THashSet<QuantifiedPSMInterface>());
-					}
-					psmsByIonKey.get(ionkey).add(psm2);
-				});
+	/**
+	 * PSM map that keeps the {@link IonKeyIndex} of the parser updated. Note
+	 * that removing PSMs through the views of the map (keySet, values or
+	 * entrySet) is not reflected in the index.
+	 */
+	private class IonIndexedPSMMap extends THashMap<String, QuantifiedPSMInterface> {
+		private static final long serialVersionUID = 3089627614318934617L;
+
+		@Override
+		public QuantifiedPSMInterface put(String key, QuantifiedPSMInterface psm) {
+			final QuantifiedPSMInterface previous = super.put(key, psm);
+			if (previous != psm) {
+				if (previous != null) {
+					ionKeyIndex.remove(previous);
+				}
+				ionKeyIndex.add(psm);
+			}
+			return previous;
+		}
 
-				reCalculatedIonsCountsReady = true;
-			} catch (final QuantParserException e) {
+		@Override
+		public void putAll(Map<? extends String, ? extends QuantifiedPSMInterface> map) {
+			for (final Map.Entry<? extends String, ? extends QuantifiedPSMInterface> entry : map.entrySet()) {
+				put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		@Override
+		public QuantifiedPSMInterface remove(Object key) {
+			final QuantifiedPSMInterface previous = super.remove(key);
+			if (previous != null) {
+				ionKeyIndex.remove(previous);
 			}
+			return previous;
 		}
 
-		return psmsByIonKey;
+		@Override
+		public void clear() {
+			super.clear();
+			ionKeyIndex.clear();
+		}
 	}
 
 	@Override
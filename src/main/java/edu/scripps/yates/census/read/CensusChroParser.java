@@ -166,7 +166,7 @@ public class CensusChroParser extends AbstractIsobaricQuantParser {
 				int counter = 0;
 				final DecimalFormat df = new DecimalFormat("#.#");
 				for (final ProteinType protein : proteins) {
-
+					checkCancelled();
 					counter++;
 					if (counter % 100 == 0)
 						log.info("Processing protein " + df.format(Double.valueOf(counter) * 100 / totalProteins) + " %"
@@ -210,7 +210,8 @@ public class CensusChroParser extends AbstractIsobaricQuantParser {
 								} else {
 									quantifiedPSM = new IsobaricQuantifiedPSM(peptide,
 											conditionsByLabelsByFile.get(remoteFileRetriever), ionExclusions,
-											getQuantifiedAAs(), isDistinguishModifiedSequences(), isChargeSensible());
+											getQuantifiedAAs(), isDistinguishModifiedSequences(), isChargeSensible(),
+											getIonArena());
 								}
 								final String spectrumKey2 = KeyUtils.getInstance().getSpectrumKey(quantifiedPSM,
 										isDistinguishModifiedSequences(), isChargeSensible());
@@ -251,12 +252,12 @@ public class CensusChroParser extends AbstractIsobaricQuantParser {
 
 								}
 
-								if (dbIndex != null) {
+								if (isProteinIndexAvailable()) {
 									final String seq = quantifiedPSM.getFullSequence();
 
 									final String cleanSeq = FastaParser.cleanSequence(seq);
 
-									final Set<IndexedProtein> indexedProteins = dbIndex.getProteins(cleanSeq);
+									final Set<IndexedProtein> indexedProteins = getProteinsFromDBIndex(cleanSeq);
 									if (indexedProteins.isEmpty()) {
 										peptidesMissingInDB.add(cleanSeq);
 										if (!ignoreNotFoundPeptidesInDB) {
@@ -362,6 +363,7 @@ public class CensusChroParser extends AbstractIsobaricQuantParser {
 		addToMap(protein.getAccession(), proteinToPeptidesMap, psm.getKey());
 		// add protein to protein map
 		localProteinMap.put(protein.getAccession(), protein);
+		proteinAccessionFound(protein.getAccession());
 		// log size
 		if (localProteinMap.size() % 1000 == 0) {
 			log.info(localProteinMap.size() + " proteins processed..." + localPsmMap.size() + " psms processed..."
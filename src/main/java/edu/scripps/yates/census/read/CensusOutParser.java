@@ -34,6 +34,7 @@ import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import edu.scripps.yates.census.read.util.BestPSMSelector;
 import edu.scripps.yates.census.read.util.MyHashMap;
 import edu.scripps.yates.census.read.util.QuantKeyUtils;
 import edu.scripps.yates.census.read.util.QuantUtils;
@@ -55,7 +56,6 @@ import edu.scripps.yates.utilities.remote.RemoteSSHFileReference;
 import edu.scripps.yates.utilities.sequence.PositionInPeptide;
 import edu.scripps.yates.utilities.strings.StringUtils;
 import gnu.trove.list.array.TIntArrayList;
-import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.THashSet;
 
 public class CensusOutParser extends AbstractQuantParser {
@@ -123,6 +123,10 @@ public class CensusOutParser extends AbstractQuantParser {
 	public static final String LOCALIZATION_SCORE = "Localization_Score";
 	public static final String ION_COUNT = "Ion Count";
 	private boolean onlyOneSpectrumPerChromatographicPeakAndPerSaltStep = false;
+	// best PSM per chromatographic peak and salt step
+	private final BestPSMSelector<QuantifiedPSMInterface> bestPSMSelector = new BestPSMSelector<QuantifiedPSMInterface>(
+			this::getSpectrumPerChromatographicPeakAndPerSaltStepKey, QuantifiedPSMInterface::getKey,
+			this::removeRedundantPSM);
 	private boolean skipSingletons = false; // by default
 	private boolean skipNonResolvedPeaks = true; // by default
 
@@ -295,6 +299,7 @@ public class CensusOutParser extends AbstractQuantParser {
 	@Override
 	protected void process() throws QuantParserException {
 		processed = false;
+		bestPSMSelector.clear();
 		log.info("Processing quant file...");
 
 		try {
@@ -336,6 +341,7 @@ public class CensusOutParser extends AbstractQuantParser {
 					final Set<QuantifiedProteinInterface> proteinGroup = new THashSet<QuantifiedProteinInterface>();
 					boolean itWasPeptides = false;
 					while ((line = br.readLine()) != null) {
+						rowRead(line);
 						if (line.startsWith(H)) {
 							if (line.contains("\t")) {
 								final String[] split = line.split("\t");
@@ -363,6 +369,8 @@ public class CensusOutParser extends AbstractQuantParser {
 						} else if (line.startsWith(P)) {
 							try {
 								if (itWasPeptides) {
+									// a new protein group starts
+									checkCancelled();
 									proteinGroup.clear();
 								}
 								itWasPeptides = false;
@@ -437,69 +445,10 @@ public class CensusOutParser extends AbstractQuantParser {
 				}
 
 				if (onlyOneSpectrumPerChromatographicPeakAndPerSaltStep) {
-					log.info(
-							"Reviewing data in order to remove redundant measurements of the same chromatographic peak in the same salt step");
-					// create a map in which the key is the peptideSequence +
-					// rawFile (removing the H) + chargeState
-					// and the values are Sets of psms
-					final Map<String, Set<QuantifiedPSMInterface>> map = new THashMap<String, Set<QuantifiedPSMInterface>>();
-					for (final QuantifiedPSMInterface psm : localPsmMap.values()) {
-						final String key = getSpectrumPerChromatographicPeakAndPerSaltStepKey(psm);
-						if (map.containsKey(key)) {
-							map.get(key).add(psm);
-						} else {
-							final Set<QuantifiedPSMInterface> set = new THashSet<QuantifiedPSMInterface>();
-							set.add(psm);
-							map.put(key, set);
-						}
-					}
-					// once the map is populated,
-					// look for each key, if we have more than one psm
-					// in that case, select the best one
-					int numRemoved = 0;
-					for (final String key : map.keySet()) {
-						final Set<QuantifiedPSMInterface> psmSet = map.get(key);
-						if (psmSet.size() > 1) {
-							final QuantifiedPSMInterface bestPSM = getBestPSM(psmSet);
-							final Set<QuantifiedPSMInterface> toIgnore = new THashSet<QuantifiedPSMInterface>();
-							for (final QuantifiedPSMInterface psm : psmSet) {
-								if (!psm.equals(bestPSM)) {
-									toIgnore.add(psm);
-								}
-							}
-							// remove the psms in toIgnore Set
-							if (!toIgnore.isEmpty()) {
-								for (final QuantifiedPSMInterface psmToIgnore : toIgnore) {
-									numRemoved++;
-									localPsmMap.remove(psmToIgnore.getKey());
-									StaticQuantMaps.psmMap.remove(psmToIgnore);
-									// remove it from its peptide
-									final QuantifiedPeptideInterface quantifiedPeptide = psmToIgnore
-											.getQuantifiedPeptide();
-									if (quantifiedPeptide != null) {
-										quantifiedPeptide.getQuantifiedPSMs().remove(psmToIgnore);
-									}
-									if (quantifiedPeptide.getQuantifiedPSMs().isEmpty()) {
-										localPeptideMap.remove(quantifiedPeptide.getKey());
-										StaticQuantMaps.peptideMap.remove(quantifiedPeptide);
-									}
-									// remove it from its proteins
-									final Set<QuantifiedProteinInterface> quantifiedProteins = psmToIgnore
-											.getQuantifiedProteins();
-									for (final QuantifiedProteinInterface protein : quantifiedProteins) {
-										protein.getQuantifiedPSMs().remove(psmToIgnore);
-										if (protein.getQuantifiedPSMs().isEmpty()) {
-											localProteinMap.remove(protein.getKey());
-											StaticQuantMaps.proteinMap.remove(protein);
-										}
-									}
-
-								}
-							}
-						}
-					}
-					log.info(numRemoved + " PSMs were redundant and removed.");
-
+					// the raw file names read in this file may change the keys
+					// of the best PSMs kept from the previous files
+					bestPSMSelector.reconcile();
+					log.info(bestPSMSelector.getNumDiscardedPSMs() + " PSMs were redundant and removed.");
 				}
 			}
 			if (!someValidFile)
@@ -559,67 +508,81 @@ public class CensusOutParser extends AbstractQuantParser {
 	}
 
 	/**
-	 * Get the best PSM from the set of PSMs, looking into (in this order) the
-	 * REGRESSION_FACTOR or the XCorr
+	 * Offers the psm as the best PSM of its chromatographic peak and salt step
+	 * (see {@link #getSpectrumPerChromatographicPeakAndPerSaltStepKey(QuantifiedPSMInterface)}).
+	 * It is called before the psm is registered in the maps and linked to its
+	 * peptide and proteins. If there was already a better one, false is
+	 * returned (and the psm is removed in case of being already registered).
+	 * Otherwise, the psm becomes the best one and the previous best is removed
+	 * from the maps, from its peptide and from its proteins.
 	 *
-	 * @param psmSet
-	 * @return
+	 * @param psm
+	 * @return true if the psm is kept
 	 */
-	private QuantifiedPSMInterface getBestPSM(Set<QuantifiedPSMInterface> psmSet) {
-		final List<QuantifiedPSMInterface> list = new ArrayList<QuantifiedPSMInterface>();
-		list.addAll(psmSet);
-		Collections.sort(list, new Comparator<QuantifiedPSMInterface>() {
+	private boolean offerAsBestPSM(QuantifiedPSMInterface psm) {
+		return bestPSMSelector.offer(psm, getScoreValue(REGRESSION_FACTOR, psm), psm.getXCorr());
+	}
 
-			@Override
-			public int compare(QuantifiedPSMInterface o1, QuantifiedPSMInterface o2) {
-				// regression_factor
-				final Double regressionFactor1 = getRatioScore(REGRESSION_FACTOR, o1);
-				final Double regressionFactor2 = getRatioScore(REGRESSION_FACTOR, o2);
-				if (regressionFactor1 != null && regressionFactor2 != null) {
-					final int compare = Double.compare(regressionFactor2, regressionFactor1);
-					if (compare != 0) {
-						return compare;
-					}
-				}
-				// xcorr
-				final Float xcorr1 = o1.getXCorr();
-				final Float xcorr2 = o2.getXCorr();
-				if (xcorr1 != null && xcorr2 != null) {
-					final int compare = Float.compare(xcorr2, xcorr1);
-					if (compare != 0) {
-						return compare;
-					}
-				}
-				return 0;
+	/**
+	 * Removes the psm from the maps, from its peptide and from its proteins,
+	 * removing also the peptide and the proteins if they end up with no PSMs
+	 *
+	 * @param psmToIgnore
+	 */
+	private void removeRedundantPSM(QuantifiedPSMInterface psmToIgnore) {
+		localPsmMap.remove(psmToIgnore.getKey());
+		StaticQuantMaps.psmMap.remove(psmToIgnore);
+		// remove it from its peptide
+		final QuantifiedPeptideInterface quantifiedPeptide = psmToIgnore.getQuantifiedPeptide();
+		if (quantifiedPeptide != null) {
+			quantifiedPeptide.removeQuantifiedPSM(psmToIgnore);
+			if (quantifiedPeptide.getQuantifiedPSMs().isEmpty()) {
+				localPeptideMap.remove(quantifiedPeptide.getKey());
+				StaticQuantMaps.peptideMap.remove(quantifiedPeptide);
+			}
+		}
+		// remove it from its proteins
+		final Set<QuantifiedProteinInterface> quantifiedProteins = psmToIgnore.getQuantifiedProteins();
+		for (final QuantifiedProteinInterface protein : quantifiedProteins) {
+			protein.removeQuantifiedPSM(psmToIgnore);
+			if (protein.getQuantifiedPSMs().isEmpty()) {
+				localProteinMap.remove(protein.getKey());
+				StaticQuantMaps.proteinMap.remove(protein);
 			}
+		}
+	}
 
-			private Double getRatioScore(String scoreName, QuantifiedPSMInterface o1) {
-				if (o1.getRatios() != null) {
-					for (final Ratio quantRatio : o1.getRatios()) {
-						if (quantRatio.getAssociatedConfidenceScore() != null) {
-							if (quantRatio.getAssociatedConfidenceScore().getScoreName().equals(scoreName)) {
-								try {
-									return Double.valueOf(quantRatio.getAssociatedConfidenceScore().getValue());
-								} catch (final NumberFormatException e) {
+	/**
+	 * Gets the value of the score of one of the ratios of the psm, or of one of
+	 * its amounts, with that name
+	 *
+	 * @param scoreName
+	 * @param psm
+	 * @return the value or NaN if not found
+	 */
+	private static double getScoreValue(String scoreName, QuantifiedPSMInterface psm) {
+		if (psm.getRatios() != null) {
+			for (final Ratio quantRatio : psm.getRatios()) {
+				if (quantRatio.getAssociatedConfidenceScore() != null) {
+					if (quantRatio.getAssociatedConfidenceScore().getScoreName().equals(scoreName)) {
+						try {
+							return Double.valueOf(quantRatio.getAssociatedConfidenceScore().getValue());
+						} catch (final NumberFormatException e) {
 
-								}
-							}
 						}
 					}
 				}
-				if (o1.getAmounts() != null) {
-					for (final Amount amount : o1.getAmounts()) {
-						if (amount.getAmountType().name().equals(scoreName)) {
-							return amount.getValue();
-						}
-
-					}
+			}
+		}
+		if (psm.getAmounts() != null) {
+			for (final Amount amount : psm.getAmounts()) {
+				if (amount.getAmountType().name().equals(scoreName)) {
+					return amount.getValue();
 				}
-				return null;
+
 			}
-		});
-		// return the first element
-		return list.get(0);
+		}
+		return Double.NaN;
 	}
 
 	/**
@@ -752,13 +715,6 @@ public class CensusOutParser extends AbstractQuantParser {
 			if (StaticQuantMaps.psmMap.containsKey(psmKey)) {
 				quantifiedPSM = StaticQuantMaps.psmMap.getItem(psmKey);
 			}
-			StaticQuantMaps.psmMap.addItem(quantifiedPSM);
-
-			// psms.add(quantifiedPSM);
-			// add to map
-			if (!localPsmMap.containsKey(quantifiedPSM.getKey())) {
-				localPsmMap.put(quantifiedPSM.getKey(), quantifiedPSM);
-			}
 
 			// if we have ratios
 			if (ratioDescriptors != null && !ratioDescriptors.isEmpty()) {
@@ -1183,6 +1139,19 @@ public class CensusOutParser extends AbstractQuantParser {
 				parseLocalizationScore(localizationScore, quantifiedPSM);
 			}
 
+			// keep just the best PSM per chromatographic peak and salt step,
+			// before registering it in the maps
+			if (onlyOneSpectrumPerChromatographicPeakAndPerSaltStep && !offerAsBestPSM(quantifiedPSM)) {
+				return;
+			}
+			StaticQuantMaps.psmMap.addItem(quantifiedPSM);
+
+			// psms.add(quantifiedPSM);
+			// add to map
+			if (!localPsmMap.containsKey(quantifiedPSM.getKey())) {
+				localPsmMap.put(quantifiedPSM.getKey(), quantifiedPSM);
+			}
+
 			// create the peptide
 			QuantifiedPeptideInterface quantifiedPeptide = null;
 			final String peptideKey = KeyUtils.getInstance().getSequenceChargeKey(quantifiedPSM,
@@ -1201,9 +1170,9 @@ public class CensusOutParser extends AbstractQuantParser {
 				localPeptideMap.put(peptideKey, quantifiedPeptide);
 			}
 
-			if (dbIndex != null) {
+			if (isProteinIndexAvailable()) {
 				final String cleanSeq = quantifiedPSM.getSequence();
-				final Set<IndexedProtein> indexedProteins = dbIndex.getProteins(cleanSeq);
+				final Set<IndexedProtein> indexedProteins = getProteinsFromDBIndex(cleanSeq);
 				if (indexedProteins.isEmpty()) {
 					if (!ignoreNotFoundPeptidesInDB) {
 						throw new PeptideNotFoundInDBIndexException("The peptide " + cleanSeq
@@ -1233,6 +1202,7 @@ public class CensusOutParser extends AbstractQuantParser {
 						taxonomies.addAll(newQuantifiedProtein.getTaxonomies());
 					}
 					final QuantifiedProteinInterface tmp = localProteinMap.put(proteinKey, newQuantifiedProtein);
+					proteinAccessionFound(proteinKey);
 					// add to protein-experiment map
 					addToMap(experimentKey, experimentToProteinsMap, proteinKey);
 					// add psm to the protein
@@ -2061,6 +2031,7 @@ public class CensusOutParser extends AbstractQuantParser {
 		StaticQuantMaps.proteinMap.addItem(quantifiedProtein);
 
 		final QuantifiedProteinInterface tmp = localProteinMap.put(proteinACC, quantifiedProtein);
+		proteinAccessionFound(proteinACC);
 		// add to protein-experiment map
 		addToMap(experimentKey, experimentToProteinsMap, proteinACC);
 
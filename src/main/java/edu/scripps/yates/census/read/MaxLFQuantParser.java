@@ -170,6 +170,8 @@ public class MaxLFQuantParser extends AbstractQuantParser {
 
 					int numLine = 1;
 					while ((line = br.readLine()) != null) {
+						checkCancelled();
+						rowRead(line);
 						try {
 							if (numLine == 1) {
 								final String[] split = line.split("\t");
@@ -532,9 +534,9 @@ public class MaxLFQuantParser extends AbstractQuantParser {
 				}
 				final List<QuantifiedProteinInterface> quantifiedProteins = new ArrayList<QuantifiedProteinInterface>();
 
-				if (dbIndex != null) {
+				if (isProteinIndexAvailable()) {
 					final String cleanSeq = peptide.getSequence();
-					final Set<IndexedProtein> indexedProteins = dbIndex.getProteins(cleanSeq);
+					final Set<IndexedProtein> indexedProteins = getProteinsFromDBIndex(cleanSeq);
 					if (indexedProteins.isEmpty()) {
 						if (!ignoreNotFoundPeptidesInDB) {
 							throw new PeptideNotFoundInDBIndexException("The peptide " + cleanSeq
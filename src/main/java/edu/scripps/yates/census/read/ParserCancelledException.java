@@ -0,0 +1,18 @@
+package edu.scripps.yates.census.read;
+
+/**
+ * Thrown by an {@link AbstractQuantParser} when it stops processing because
+ * {@link AbstractQuantParser#cancel()} was called
+ *
+ * @author salvador
+ *
+ */
+public class ParserCancelledException extends QuantParserException {
+
+	private static final long serialVersionUID = 4203764812569361541L;
+
+	public ParserCancelledException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,68 @@
+package edu.scripps.yates.census.read;
+
+/**
+ * Progress of an {@link AbstractQuantParser} at a given time
+ *
+ * @author salvador
+ *
+ */
+public class ParserProgressEvent {
+	private final ParsingPhase phase;
+	private final long charsRead;
+	private final long rowsRead;
+	private final int numPSMs;
+	private final long elapsedMillis;
+
+	public ParserProgressEvent(ParsingPhase phase, long charsRead, long rowsRead, int numPSMs, long elapsedMillis) {
+		this.phase = phase;
+		this.charsRead = charsRead;
+		this.rowsRead = rowsRead;
+		this.numPSMs = numPSMs;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public ParsingPhase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * @return the number of characters read from the input text files,
+	 *         counting the characters of the lines and one per line terminator
+	 */
+	public long getCharsRead() {
+		return charsRead;
+	}
+
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	public int getNumPSMs() {
+		return numPSMs;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public double getRowsPerSecond() {
+		return perSecond(rowsRead);
+	}
+
+	public double getPSMsPerSecond() {
+		return perSecond(numPSMs);
+	}
+
+	private double perSecond(long count) {
+		if (elapsedMillis <= 0) {
+			return 0.0;
+		}
+		return count * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return phase + ": " + rowsRead + " rows (" + charsRead + " chars), " + numPSMs + " PSMs in "
+				+ elapsedMillis + "ms";
+	}
+}
@@ -0,0 +1,12 @@
+package edu.scripps.yates.census.read;
+
+/**
+ * Receives the progress of an {@link AbstractQuantParser} while it processes
+ * its input files. It is called from the thread that is processing.
+ *
+ * @author salvador
+ *
+ */
+public interface ParserProgressListener {
+	public void onProgress(ParserProgressEvent event);
+}
@@ -0,0 +1,12 @@
+package edu.scripps.yates.census.read;
+
+/**
+ * Phases of the processing of the input files by an {@link AbstractQuantParser}
+ *
+ * @author salvador
+ *
+ */
+public enum ParsingPhase {
+	NOT_STARTED, READING, REMOVING_DECOYS, MAPPING_IPI_TO_UNIPROT, MERGING_SECONDARY_ACCESSIONS, PTMS_IN_PROTEINS, FREEZING,
+	DONE;
+}
@@ -112,6 +112,8 @@ public class QuantCompareParser extends AbstractQuantParser {
 			final Set<String> uniqueLineStrings = new THashSet<String>();
 			int numLine = 0;
 			for (final String line : lines) {
+				checkCancelled();
+				rowRead(line);
 				numLine++;
 				final String[] split = line.split("\t");
 
@@ -78,6 +78,8 @@ public class QuantCompareTimsTOFParser extends QuantCompareParser {
 			final Set<String> uniqueLineStrings = new THashSet<String>();
 			int numLine = 0;
 			for (final String line : lines) {
+				checkCancelled();
+				rowRead(line);
 				numLine++;
 				final String[] split = line.split("\t");
 
@@ -0,0 +1,329 @@
+package edu.scripps.yates.census.read;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Immutable snapshot of the maps and relationships of a processed
+ * {@link AbstractQuantParser}, created by {@link AbstractQuantParser#freeze()}.
+ * <br>
+ * All the maps and sets are packed into sorted arrays, looked up by binary
+ * search, and the derived indexes (PSMs by ion key, PSMs, peptides and
+ * proteins by item key) are computed when the snapshot is created, so it can
+ * be read by many threads at the same time without any locking.<br>
+ * The lazily computed relationships of the model objects are also computed
+ * when freezing, but the model objects are still mutable, so they should not
+ * be modified while the snapshot is being read.
+ *
+ * @author salvador
+ *
+ */
+public class QuantParserSnapshot {
+	private final Map<String, QuantifiedProteinInterface> proteinMap;
+	private final Map<String, QuantifiedPSMInterface> psmMap;
+	private final Map<String, QuantifiedPeptideInterface> peptideMap;
+	private final Map<String, Set<String>> proteinToPeptidesMap;
+	private final Map<String, Set<String>> peptideToSpectraMap;
+	private final Map<String, Set<String>> ptmToSpectraMap;
+	private final Set<String> taxonomies;
+	private final Set<String> uniprotAccSet;
+	private final Map<String, Set<QuantifiedPSMInterface>> psmsByIonKey;
+	private final Map<String, Set<QuantifiedPSMInterface>> psmsByPeptideKey;
+	private final Map<String, Set<QuantifiedPSMInterface>> psmsByProteinKey;
+	private final Map<String, Set<QuantifiedPeptideInterface>> peptidesByProteinKey;
+	private final Map<String, Set<QuantifiedProteinInterface>> proteinsByPeptideKey;
+	private final Map<String, Set<QuantifiedProteinInterface>> proteinsByPSMKey;
+
+	QuantParserSnapshot(AbstractQuantParser parser) throws QuantParserException {
+		proteinMap = new FrozenMap<QuantifiedProteinInterface>(parser.getProteinMap());
+		psmMap = new FrozenMap<QuantifiedPSMInterface>(parser.getPSMMap());
+		peptideMap = new FrozenMap<QuantifiedPeptideInterface>(parser.getPeptideMap());
+		proteinToPeptidesMap = freezeKeySets(parser.getProteinToPeptidesMap());
+		peptideToSpectraMap = freezeKeySets(parser.getPeptideToSpectraMap());
+		ptmToSpectraMap = freezeKeySets(parser.getPTMToSpectraMap());
+		taxonomies = new FrozenSet(parser.getTaxonomies());
+		uniprotAccSet = new FrozenSet(parser.getUniprotAccSet());
+		psmsByIonKey = freezeItemSets(parser.getPSMsByIonKey());
+
+		final Map<String, Set<QuantifiedPSMInterface>> psmsByPeptide = new THashMap<String, Set<QuantifiedPSMInterface>>();
+		final Map<String, Set<QuantifiedProteinInterface>> proteinsByPeptide = new THashMap<String, Set<QuantifiedProteinInterface>>();
+		for (final QuantifiedPeptideInterface peptide : peptideMap.values()) {
+			psmsByPeptide.put(peptide.getKey(), peptide.getQuantifiedPSMs());
+			proteinsByPeptide.put(peptide.getKey(), peptide.getQuantifiedProteins());
+		}
+		psmsByPeptideKey = freezeItemSets(psmsByPeptide);
+		proteinsByPeptideKey = freezeItemSets(proteinsByPeptide);
+
+		final Map<String, Set<QuantifiedPSMInterface>> psmsByProtein = new THashMap<String, Set<QuantifiedPSMInterface>>();
+		final Map<String, Set<QuantifiedPeptideInterface>> peptidesByProtein = new THashMap<String, Set<QuantifiedPeptideInterface>>();
+		for (final QuantifiedProteinInterface protein : proteinMap.values()) {
+			psmsByProtein.put(protein.getKey(), protein.getQuantifiedPSMs());
+			peptidesByProtein.put(protein.getKey(), protein.getQuantifiedPeptides());
+		}
+		psmsByProteinKey = freezeItemSets(psmsByProtein);
+		peptidesByProteinKey = freezeItemSets(peptidesByProtein);
+
+		final Map<String, Set<QuantifiedProteinInterface>> proteinsByPSM = new THashMap<String, Set<QuantifiedProteinInterface>>();
+		for (final QuantifiedPSMInterface psm : psmMap.values()) {
+			proteinsByPSM.put(psm.getKey(), psm.getQuantifiedProteins());
+			// computes the lazy relationships of the psm
+			psm.getQuantifiedPeptide();
+			psm.getQuantRatios();
+		}
+		proteinsByPSMKey = freezeItemSets(proteinsByPSM);
+	}
+
+	private static Map<String, Set<String>> freezeKeySets(Map<String, Set<String>> map) {
+		final Map<String, Set<String>> ret = new THashMap<String, Set<String>>(map.size());
+		for (final String key : map.keySet()) {
+			ret.put(key, new FrozenSet(map.get(key)));
+		}
+		return new FrozenMap<Set<String>>(ret);
+	}
+
+	private static <T> Map<String, Set<T>> freezeItemSets(Map<String, Set<T>> map) {
+		final Map<String, Set<T>> ret = new THashMap<String, Set<T>>(map.size());
+		for (final String key : map.keySet()) {
+			final Set<T> set = map.get(key);
+			if (set == null || set.isEmpty()) {
+				ret.put(key, Collections.<T> emptySet());
+			} else {
+				ret.put(key, Collections.unmodifiableSet(new THashSet<T>(set)));
+			}
+		}
+		return new FrozenMap<Set<T>>(ret);
+	}
+
+	public Map<String, QuantifiedProteinInterface> getProteinMap() {
+		return proteinMap;
+	}
+
+	public Map<String, QuantifiedPSMInterface> getPSMMap() {
+		return psmMap;
+	}
+
+	public Map<String, QuantifiedPeptideInterface> getPeptideMap() {
+		return peptideMap;
+	}
+
+	public Map<String, Set<String>> getProteinToPeptidesMap() {
+		return proteinToPeptidesMap;
+	}
+
+	public Map<String, Set<String>> getPeptideToSpectraMap() {
+		return peptideToSpectraMap;
+	}
+
+	public Map<String, Set<String>> getPTMToSpectraMap() {
+		return ptmToSpectraMap;
+	}
+
+	public Set<String> getTaxonomies() {
+		return taxonomies;
+	}
+
+	public Set<String> getUniprotAccSet() {
+		return uniprotAccSet;
+	}
+
+	/**
+	 *
+	 * @return the PSMs by ion key (full sequence + charge)
+	 */
+	public Map<String, Set<QuantifiedPSMInterface>> getPSMsByIonKey() {
+		return psmsByIonKey;
+	}
+
+	/**
+	 * Returns the number of PSMs with the same full sequence and charge of the
+	 * psm
+	 *
+	 * @param psm
+	 * @return
+	 */
+	public int getReCalculatedIonCount(QuantifiedPSMInterface psm) {
+		final Set<QuantifiedPSMInterface> psms = psmsByIonKey.get(psm.getFullSequence() + "-" + psm.getChargeState());
+		if (psms == null) {
+			return 0;
+		}
+		return psms.size();
+	}
+
+	public int getReCalculatedIonCount(QuantifiedPeptideInterface peptide) {
+		final Set<QuantifiedPSMInterface> psms = getPSMsOfPeptide(peptide.getKey());
+		if (psms.isEmpty()) {
+			return 0;
+		}
+		return getReCalculatedIonCount(psms.iterator().next());
+	}
+
+	public Set<QuantifiedPSMInterface> getPSMsOfPeptide(String peptideKey) {
+		return getOrEmpty(psmsByPeptideKey, peptideKey);
+	}
+
+	public Set<QuantifiedProteinInterface> getProteinsOfPeptide(String peptideKey) {
+		return getOrEmpty(proteinsByPeptideKey, peptideKey);
+	}
+
+	public Set<QuantifiedPSMInterface> getPSMsOfProtein(String proteinKey) {
+		return getOrEmpty(psmsByProteinKey, proteinKey);
+	}
+
+	public Set<QuantifiedPeptideInterface> getPeptidesOfProtein(String proteinKey) {
+		return getOrEmpty(peptidesByProteinKey, proteinKey);
+	}
+
+	public Set<QuantifiedProteinInterface> getProteinsOfPSM(String psmKey) {
+		return getOrEmpty(proteinsByPSMKey, psmKey);
+	}
+
+	private static <T> Set<T> getOrEmpty(Map<String, Set<T>> map, String key) {
+		final Set<T> set = map.get(key);
+		if (set == null) {
+			return Collections.emptySet();
+		}
+		return set;
+	}
+
+	/**
+	 * Immutable map with the keys sorted in an array, looked up by binary
+	 * search
+	 *
+	 * @param <V>
+	 */
+	private static class FrozenMap<V> extends AbstractMap<String, V> {
+		private final String[] keys;
+		private final Object[] values;
+
+		private FrozenMap(Map<String, ? extends V> map) {
+			keys = map.keySet().toArray(new String[map.size()]);
+			Arrays.sort(keys);
+			values = new Object[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				values[i] = map.get(keys[i]);
+			}
+		}
+
+		private int indexOf(Object key) {
+			if (!(key instanceof String)) {
+				return -1;
+			}
+			return Arrays.binarySearch(keys, key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public V get(Object key) {
+			final int index = indexOf(key);
+			if (index < 0) {
+				return null;
+			}
+			return (V) values[index];
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return new FrozenSet(keys);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Collection<V> values() {
+			return (Collection<V>) Collections.unmodifiableList(Arrays.asList(values));
+		}
+
+		@Override
+		public Set<Entry<String, V>> entrySet() {
+			return new AbstractSet<Entry<String, V>>() {
+
+				@Override
+				public Iterator<Entry<String, V>> iterator() {
+					return new Iterator<Entry<String, V>>() {
+						private int index = 0;
+
+						@Override
+						public boolean hasNext() {
+							return index < keys.length;
+						}
+
+						@SuppressWarnings("unchecked")
+						@Override
+						public Entry<String, V> next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							final Entry<String, V> entry = new SimpleImmutableEntry<String, V>(keys[index],
+									(V) values[index]);
+							index++;
+							return entry;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return keys.length;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Immutable set of strings sorted in an array, looked up by binary search
+	 */
+	private static class FrozenSet extends AbstractSet<String> {
+		private final String[] values;
+
+		private FrozenSet(Collection<String> collection) {
+			values = collection.toArray(new String[collection.size()]);
+			Arrays.sort(values);
+		}
+
+		/**
+		 * @param sortedValues
+		 *            already sorted, not copied
+		 */
+		private FrozenSet(String[] sortedValues) {
+			values = sortedValues;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && Arrays.binarySearch(values, o) >= 0;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return Collections.unmodifiableList(Arrays.asList(values)).iterator();
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+	}
+
+}
@@ -159,6 +159,8 @@ public class SeparatedValuesParser extends AbstractQuantParser {
 
 				int numLine = 0;
 				while ((line = br.readLine()) != null) {
+					checkCancelled();
+					rowRead(line);
 					numLine++;
 					if ("".equals(line.trim())) {
 						continue;
@@ -375,9 +377,9 @@ public class SeparatedValuesParser extends AbstractQuantParser {
 			localPeptideMap.put(peptideKey, quantifiedPeptide);
 		}
 
-		if (dbIndex != null) {
+		if (isProteinIndexAvailable()) {
 			final String cleanSeq = quantifiedPSM.getSequence();
-			final Set<IndexedProtein> indexedProteins = dbIndex.getProteins(cleanSeq);
+			final Set<IndexedProtein> indexedProteins = getProteinsFromDBIndex(cleanSeq);
 			if (indexedProteins.isEmpty()) {
 				if (!super.ignoreNotFoundPeptidesInDB) {
 					throw new PeptideNotFoundInDBIndexException("The peptide " + cleanSeq
@@ -442,7 +444,7 @@ public class SeparatedValuesParser extends AbstractQuantParser {
 			addToMap(experimentKey, experimentToProteinsMap, proteinKey);
 
 		}
-		if (proteinACC == null && dbIndex == null) {
+		if (proteinACC == null && !isProteinIndexAvailable()) {
 			throw new IllegalArgumentException("Protein missing for peptide  " + quantifiedPeptide.getKey() + " ("
 					+ psmId + "). Either provide a protein column or a Fasta file");
 		}
@@ -1,8 +1,10 @@
 package edu.scripps.yates.census.read.model;
 
+import java.util.Collections;
 import java.util.Set;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
+import edu.scripps.yates.census.read.model.interfaces.HasModificationCount;
 import edu.scripps.yates.census.read.model.interfaces.HasQuantRatios;
 import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
@@ -12,21 +14,26 @@ import edu.scripps.yates.utilities.proteomicsmodel.Ratio;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.set.hash.THashSet;
 
-public abstract class AbstractContainsQuantifiedPSMs implements HasQuantRatios {
+public abstract class AbstractContainsQuantifiedPSMs implements HasQuantRatios, HasModificationCount {
 
-	protected final Set<QuantRatio> quantRatios = new THashSet<QuantRatio>();
-	private Set<Ratio> ratios;
+	private final VersionedCache<Set<QuantRatio>> quantRatios = new VersionedCache<Set<QuantRatio>>();
+	private final VersionedCache<Set<Ratio>> ratios = new VersionedCache<Set<Ratio>>();
+	// ratios added by addRatio(), kept apart so that they are not lost when
+	// the ratios are taken again from the PSMs
+	private final Set<Ratio> addedRatios = new THashSet<Ratio>();
 
 	public abstract Set<QuantifiedPSMInterface> getQuantifiedPSMs();
 
 	@Override
 	public Set<QuantRatio> getQuantRatios() {
-		if (quantRatios == null || quantRatios.isEmpty()) {
+		if (!quantRatios.isValid(getModificationCount())) {
+			final Set<QuantRatio> set = new THashSet<QuantRatio>();
 			for (final QuantifiedPSMInterface psm : getQuantifiedPSMs()) {
-				quantRatios.addAll(psm.getQuantRatios());
+				set.addAll(psm.getQuantRatios());
 			}
+			quantRatios.set(Collections.unmodifiableSet(set), getModificationCount());
 		}
-		return quantRatios;
+		return quantRatios.get();
 	}
 
 	@Override
@@ -53,18 +60,33 @@ public abstract class AbstractContainsQuantifiedPSMs implements HasQuantRatios {
 
 	@Override
 	public Set<Ratio> getRatios() {
-		if (ratios == null || ratios.isEmpty()) {
-			ratios = new THashSet<Ratio>();
+		if (!ratios.isValid(getModificationCount())) {
+			final Set<Ratio> set = new THashSet<Ratio>();
 			for (final QuantifiedPSMInterface psm : getQuantifiedPSMs()) {
-				ratios.addAll(psm.getRatios());
+				set.addAll(psm.getRatios());
 			}
+			set.addAll(addedRatios);
+			ratios.set(Collections.unmodifiableSet(set), getModificationCount());
 		}
-		return ratios;
+		return ratios.get();
 	}
 
 	@Override
 	public boolean addRatio(Ratio ratio) {
-		return getRatios().add(ratio);
+		if (getRatios().contains(ratio)) {
+			return false;
+		}
+		return addedRatios.add(ratio);
+	}
+
+	/**
+	 *
+	 * @return the number of ratios explicitly added by {@link #addRatio(Ratio)},
+	 *         to be included in {@link #getModificationCount()} of the
+	 *         subclasses
+	 */
+	protected int getAddedRatiosCount() {
+		return addedRatios.size();
 	}
 
 	@Override
@@ -11,6 +11,9 @@ public class Ion {
 	private final QuantificationLabel label;
 	private boolean singleton = false;
 	private final IonSerieType ionSerieType;
+	// in case of being a view over an ion stored in an IonArena
+	private final IonSerie serie;
+	private final int record;
 
 	public Ion(int ionNumber, double mass, double intensity, QuantificationLabel label, IonSerieType ionSerieType) {
 		super();
@@ -19,12 +22,35 @@ public class Ion {
 		this.ionNumber = ionNumber;
 		this.label = label;
 		this.ionSerieType = ionSerieType;
+		serie = null;
+		record = -1;
+	}
+
+	/**
+	 * Creates a view over an ion stored in the {@link IonArena} of the serie
+	 *
+	 * @param serie
+	 * @param ionNumber
+	 * @param record
+	 */
+	Ion(IonSerie serie, int ionNumber, int record) {
+		super();
+		mass = 0.0;
+		intensity = 0.0;
+		this.ionNumber = ionNumber;
+		label = serie.getNonNullLabel();
+		ionSerieType = serie.getIonSerieType();
+		this.serie = serie;
+		this.record = record;
 	}
 
 	/**
 	 * @return the mass
 	 */
 	public double getMass() {
+		if (serie != null) {
+			return serie.getIonArena().getMass(record);
+		}
 		return mass;
 	}
 
@@ -32,6 +58,9 @@ public class Ion {
 	 * @return the intensity
 	 */
 	public double getIntensity() {
+		if (serie != null) {
+			return serie.getIonArena().getIntensity(record);
+		}
 		return intensity;
 	}
 
@@ -43,33 +72,58 @@ public class Ion {
 	}
 
 	public void setRatio(IsoRatio censusRatio) {
+		if (serie != null) {
+			serie.getIonArena().setInRatio(record, censusRatio != null);
+			return;
+		}
 		ratio = censusRatio;
 
 	}
 
+	/**
+	 * Gets the ratio that this ion is composing. The ions stored in an
+	 * {@link IonArena} don't keep a reference to their ratio, so it will be
+	 * null for them. Use {@link #isInRatio()} to know whether an ion is
+	 * composing a ratio.
+	 *
+	 * @return
+	 */
 	public IsoRatio getRatio() {
 		return ratio;
 	}
 
+	/**
+	 * @return true if this ion is composing a ratio
+	 */
+	public boolean isInRatio() {
+		if (serie != null) {
+			return serie.getIonArena().isInRatio(record);
+		}
+		return ratio != null;
+	}
+
 	public QuantificationLabel getLabel() {
 		return label;
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * 
+	 *
 	 * @see java.lang.Object#toString()
 	 */
 	@Override
 	public String toString() {
-		return ionSerieType + " Ion " + label + " " + ionNumber + "[M=" + mass + ", I=" + intensity + ", ratio=" + ratio
-				+ "]";
+		return ionSerieType + " Ion " + label + " " + ionNumber + "[M=" + getMass() + ", I=" + getIntensity()
+				+ ", ratio=" + (serie != null ? isInRatio() : getRatio()) + "]";
 	}
 
 	/**
 	 * @return the singleton
 	 */
 	public boolean isSingleton() {
+		if (serie != null) {
+			return serie.getIonArena().isSingleton(record);
+		}
 		return singleton;
 	}
 
@@ -78,6 +132,10 @@ public class Ion {
 	 *            the singleton to set
 	 */
 	public void setSingleton(boolean singleton) {
+		if (serie != null) {
+			serie.getIonArena().setSingleton(record, singleton);
+			return;
+		}
 		this.singleton = singleton;
 	}
 
@@ -85,4 +143,40 @@ public class Ion {
 		return ionSerieType;
 	}
 
+	/**
+	 * @return the serie in which this ion is stored in case of being a view
+	 *         over an {@link IonArena}, or null otherwise
+	 */
+	IonSerie getSerie() {
+		return serie;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		if (serie != null) {
+			return 31 * System.identityHashCode(serie) + record;
+		}
+		return super.hashCode();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (serie != null && obj instanceof Ion) {
+			// two views are equal if they are over the same stored ion
+			final Ion other = (Ion) obj;
+			return serie == other.serie && record == other.record;
+		}
+		return super.equals(obj);
+	}
+
 }
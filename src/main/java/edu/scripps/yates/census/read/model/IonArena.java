@@ -0,0 +1,179 @@
+package edu.scripps.yates.census.read.model;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Off-heap storage of fragment {@link Ion}s. Each ion is a fixed size record
+ * (mass, intensity, ion number and flags) in a direct {@link ByteBuffer}, and
+ * it is referenced by its record index. Buffers are allocated in chunks as
+ * needed, and the records of the removed ions are reused by the next ions
+ * stored.<br>
+ * An arena is owned by a parser. The memory is released (by the garbage
+ * collector of the direct buffers) after calling {@link #release()}, so the
+ * {@link Ion}s and {@link IonSerie}s created over it cannot be used after that.
+ *
+ * @author salvador
+ *
+ */
+public class IonArena {
+	private final static Logger log = Logger.getLogger(IonArena.class);
+	private static final int MASS_OFFSET = 0;
+	private static final int INTENSITY_OFFSET = 8;
+	private static final int ION_NUMBER_OFFSET = 16;
+	private static final int FLAGS_OFFSET = 20;
+	private static final int RECORD_SIZE = 24;
+	private static final int SINGLETON_FLAG = 1;
+	private static final int IN_RATIO_FLAG = 2;
+	private static final int DEFAULT_RECORDS_PER_CHUNK = 1 << 16;
+
+	private final int recordsPerChunk;
+	private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private final TIntArrayList freeRecords = new TIntArrayList();
+	private int numRecords = 0;
+	private boolean released = false;
+
+	public IonArena() {
+		this(DEFAULT_RECORDS_PER_CHUNK);
+	}
+
+	public IonArena(int recordsPerChunk) {
+		this.recordsPerChunk = recordsPerChunk;
+	}
+
+	/**
+	 * Stores a new ion, in the record of a removed ion if any
+	 *
+	 * @param ionNumber
+	 * @param mass
+	 * @param intensity
+	 * @return the record index of the ion
+	 */
+	public synchronized int add(int ionNumber, double mass, double intensity) {
+		if (released) {
+			throw new IllegalStateException("Ion arena has been already released");
+		}
+		final int record;
+		if (!freeRecords.isEmpty()) {
+			record = freeRecords.removeAt(freeRecords.size() - 1);
+		} else {
+			final int chunkIndex = numRecords / recordsPerChunk;
+			if (chunkIndex == chunks.size()) {
+				chunks.add(ByteBuffer.allocateDirect(recordsPerChunk * RECORD_SIZE));
+			}
+			record = numRecords++;
+		}
+		final ByteBuffer chunk = chunks.get(record / recordsPerChunk);
+		final int position = getPosition(record);
+		chunk.putDouble(position + MASS_OFFSET, mass);
+		chunk.putDouble(position + INTENSITY_OFFSET, intensity);
+		chunk.putInt(position + ION_NUMBER_OFFSET, ionNumber);
+		chunk.putInt(position + FLAGS_OFFSET, 0);
+		return record;
+	}
+
+	/**
+	 * Removes an ion, so that its record can be reused. The record cannot be
+	 * accessed after calling this.
+	 *
+	 * @param record
+	 */
+	public synchronized void free(int record) {
+		if (released) {
+			return;
+		}
+		freeRecords.add(record);
+	}
+
+	private ByteBuffer getChunk(int record) {
+		if (released) {
+			throw new IllegalStateException("Ion arena has been already released");
+		}
+		return chunks.get(record / recordsPerChunk);
+	}
+
+	private int getPosition(int record) {
+		return (record % recordsPerChunk) * RECORD_SIZE;
+	}
+
+	public double getMass(int record) {
+		return getChunk(record).getDouble(getPosition(record) + MASS_OFFSET);
+	}
+
+	public double getIntensity(int record) {
+		return getChunk(record).getDouble(getPosition(record) + INTENSITY_OFFSET);
+	}
+
+	public int getIonNumber(int record) {
+		return getChunk(record).getInt(getPosition(record) + ION_NUMBER_OFFSET);
+	}
+
+	public boolean isSingleton(int record) {
+		return (getChunk(record).getInt(getPosition(record) + FLAGS_OFFSET) & SINGLETON_FLAG) != 0;
+	}
+
+	public void setSingleton(int record, boolean singleton) {
+		setFlag(record, SINGLETON_FLAG, singleton);
+	}
+
+	/**
+	 *
+	 * @param record
+	 * @return true if the ion is composing a ratio
+	 */
+	public boolean isInRatio(int record) {
+		return (getChunk(record).getInt(getPosition(record) + FLAGS_OFFSET) & IN_RATIO_FLAG) != 0;
+	}
+
+	public void setInRatio(int record, boolean inRatio) {
+		setFlag(record, IN_RATIO_FLAG, inRatio);
+	}
+
+	private void setFlag(int record, int flag, boolean value) {
+		final ByteBuffer chunk = getChunk(record);
+		final int position = getPosition(record) + FLAGS_OFFSET;
+		int flags = chunk.getInt(position);
+		if (value) {
+			flags |= flag;
+		} else {
+			flags &= ~flag;
+		}
+		chunk.putInt(position, flags);
+	}
+
+	/**
+	 * @return the number of ions stored
+	 */
+	public synchronized int size() {
+		return numRecords - freeRecords.size();
+	}
+
+	/**
+	 * @return the number of off-heap bytes allocated
+	 */
+	public long getAllocatedBytes() {
+		return (long) chunks.size() * recordsPerChunk * RECORD_SIZE;
+	}
+
+	/**
+	 * Drops all the buffers, so that the off-heap memory can be reclaimed.
+	 */
+	public synchronized void release() {
+		if (!chunks.isEmpty()) {
+			log.debug("Releasing " + getAllocatedBytes() + " bytes of " + size() + " ions");
+		}
+		chunks.clear();
+		freeRecords.clear();
+		numRecords = 0;
+		released = true;
+	}
+
+	public boolean isReleased() {
+		return released;
+	}
+}
@@ -7,6 +7,7 @@ import org.apache.log4j.Logger;
 
 import edu.scripps.yates.census.read.util.IonExclusion;
 import edu.scripps.yates.census.read.util.QuantificationLabel;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.hash.THashSet;
 
@@ -16,6 +17,11 @@ public class IonSerie {
 	private static final String MSC = "MSC";
 	private int maxNumberIon = 0;
 	private final TIntObjectHashMap<Ion> ionMap = new TIntObjectHashMap<Ion>();
+	// in case of storing the ions off-heap
+	private final IonArena ionArena;
+	private TIntIntHashMap recordsByIonNumber;
+	// views over the ions of the arena, only created when asked for the map
+	private TIntObjectHashMap<Ion> ionViews;
 
 	public enum IonSerieType {
 		Y, B
@@ -27,9 +33,26 @@ public class IonSerie {
 
 	public IonSerie(QuantificationLabel label, IonSerieType ionSerieType, String rawString,
 			Collection<IonExclusion> ionExclusions) {
+		this(label, ionSerieType, rawString, ionExclusions, null);
+	}
+
+	/**
+	 *
+	 * @param label
+	 * @param ionSerieType
+	 * @param rawString
+	 * @param ionExclusions
+	 * @param ionArena      if not null, the ions are stored in this arena and
+	 *                      the {@link Ion}s returned are views over it
+	 */
+	public IonSerie(QuantificationLabel label, IonSerieType ionSerieType, String rawString,
+			Collection<IonExclusion> ionExclusions, IonArena ionArena) {
 		this.label = label;
 		this.ionSerieType = ionSerieType;
-
+		this.ionArena = ionArena;
+		if (ionArena != null) {
+			recordsByIonNumber = new TIntIntHashMap();
+		}
 		parseRawString(rawString, ionExclusions);
 	}
 
@@ -54,8 +77,12 @@ public class IonSerie {
 			} else {
 				Long intensity = parseIntensity(split[i + 1]);
 				if (intensity != null) {
-					Ion ion = new Ion(ionNumber, mass, intensity, label, this.ionSerieType);
-					ionMap.put(ionNumber, ion);
+					if (ionArena != null) {
+						recordsByIonNumber.put(ionNumber, ionArena.add(ionNumber, mass, intensity));
+					} else {
+						Ion ion = new Ion(ionNumber, mass, intensity, label, this.ionSerieType);
+						ionMap.put(ionNumber, ion);
+					}
 					maxNumberIon = ionNumber;
 				} else {
 					log.warn("this cannot happen!");
@@ -82,6 +109,15 @@ public class IonSerie {
 	 * @param numIon
 	 */
 	public void removeIon(int numIon) {
+		if (ionArena != null) {
+			if (recordsByIonNumber.containsKey(numIon)) {
+				ionArena.free(recordsByIonNumber.remove(numIon));
+				if (ionViews != null) {
+					ionViews.remove(numIon);
+				}
+			}
+			return;
+		}
 		ionMap.remove(numIon);
 
 	}
@@ -106,13 +142,100 @@ public class IonSerie {
 	}
 
 	public Ion getIon(int ionNumber) {
+		if (ionArena != null) {
+			if (ionViews != null) {
+				return ionViews.get(ionNumber);
+			}
+			if (!recordsByIonNumber.containsKey(ionNumber)) {
+				return null;
+			}
+			return new Ion(this, ionNumber, recordsByIonNumber.get(ionNumber));
+		}
 		return ionMap.get(ionNumber);
 	}
 
+	/**
+	 *
+	 * @param ionNumber
+	 * @return true if the serie has an ion with that ion number
+	 */
+	public boolean containsIon(int ionNumber) {
+		if (ionArena != null) {
+			return recordsByIonNumber.containsKey(ionNumber);
+		}
+		return ionMap.containsKey(ionNumber);
+	}
+
+	/**
+	 *
+	 * @param ionNumber
+	 * @return the intensity of the ion with that ion number or NaN if the serie
+	 *         doesn't have it
+	 */
+	public double getIntensity(int ionNumber) {
+		if (ionArena != null) {
+			if (!recordsByIonNumber.containsKey(ionNumber)) {
+				return Double.NaN;
+			}
+			return ionArena.getIntensity(recordsByIonNumber.get(ionNumber));
+		}
+		final Ion ion = ionMap.get(ionNumber);
+		if (ion == null) {
+			return Double.NaN;
+		}
+		return ion.getIntensity();
+	}
+
+	/**
+	 *
+	 * @param ionNumber
+	 * @return the mass of the ion with that ion number or NaN if the serie
+	 *         doesn't have it
+	 */
+	public double getMass(int ionNumber) {
+		if (ionArena != null) {
+			if (!recordsByIonNumber.containsKey(ionNumber)) {
+				return Double.NaN;
+			}
+			return ionArena.getMass(recordsByIonNumber.get(ionNumber));
+		}
+		final Ion ion = ionMap.get(ionNumber);
+		if (ion == null) {
+			return Double.NaN;
+		}
+		return ion.getMass();
+	}
+
+	/**
+	 * Gets the ions by their ion number. In case of having the ions stored in
+	 * an {@link IonArena}, the map contains views over the ions, which are
+	 * created the first time this is called and kept while the ions are not
+	 * removed from the serie. The map should not be modified, use
+	 * {@link #removeIon(int)} instead.
+	 *
+	 * @return
+	 */
 	public TIntObjectHashMap<Ion> getIonMap() {
+		if (ionArena != null) {
+			if (ionViews == null) {
+				ionViews = new TIntObjectHashMap<Ion>(recordsByIonNumber.size());
+				for (final int ionNumber : recordsByIonNumber.keys()) {
+					ionViews.put(ionNumber, new Ion(this, ionNumber, recordsByIonNumber.get(ionNumber)));
+				}
+			}
+			return ionViews;
+		}
 		return ionMap;
 	}
 
+	private Collection<Ion> getIons() {
+		return getIonMap().valueCollection();
+	}
+
+	IonArena getIonArena() {
+		return ionArena;
+	}
+
 	/**
 	 * @return the ionSerieType
 	 */
@@ -154,8 +277,15 @@ public class IonSerie {
 	 * @return the isLabelled
 	 */
 	public boolean isSingletonLabeled() {
-		for (Ion ion : ionMap.valueCollection()) {
-			if (ion.getRatio() == null)
+		if (ionArena != null) {
+			for (final int record : recordsByIonNumber.values()) {
+				if (!ionArena.isInRatio(record))
+					return true;
+			}
+			return false;
+		}
+		for (Ion ion : getIons()) {
+			if (!ion.isInRatio())
 				return true;
 		}
 		return false;
@@ -167,7 +297,9 @@ public class IonSerie {
 	 * @return the isLabelled
 	 */
 	public boolean isLabeled() {
-
+		if (ionArena != null) {
+			return !recordsByIonNumber.isEmpty();
+		}
 		return !ionMap.isEmpty();
 	}
 
@@ -179,7 +311,7 @@ public class IonSerie {
 	public Set<Ion> getNonNullIons() {
 
 		Set<Ion> ret = new THashSet<Ion>();
-		for (Ion ion : ionMap.valueCollection()) {
+		for (Ion ion : getIons()) {
 			ret.add(ion);
 		}
 
@@ -194,8 +326,8 @@ public class IonSerie {
 	 */
 	public Set<Ion> getSingletonIons() {
 		Set<Ion> list = new THashSet<Ion>();
-		for (Ion ion : ionMap.valueCollection()) {
-			if (ion.getRatio() == null)
+		for (Ion ion : getIons()) {
+			if (!ion.isInRatio())
 				list.add(ion);
 			else if (ion.isSingleton()) {
 				list.add(ion);
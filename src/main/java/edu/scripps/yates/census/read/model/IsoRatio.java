@@ -16,6 +16,8 @@ public class IsoRatio extends CensusRatio {
 	private final int numIon;
 	private final IonSerieType ionSerieType;
 	private final Map<QuantificationLabel, Ion> ionsByLabel = new THashMap<QuantificationLabel, Ion>();
+	// series of the ions stored in an IonArena, which are read from there
+	private final Map<QuantificationLabel, IonSerie> seriesByLabel = new THashMap<QuantificationLabel, IonSerie>();
 	private final QuantificationLabel quantificationLabel1;
 	private final QuantificationLabel quantificationLabel2;
 	private final Map<QuantificationLabel, Double> massesByLabel = new THashMap<QuantificationLabel, Double>();
@@ -43,25 +45,21 @@ public class IsoRatio extends CensusRatio {
 		if (ion1 == null && ion2 == null)
 			throw new IllegalArgumentException("Ions and Ionr cannot be null at the same time");
 
+		this.numIon = numIon;
 		if (ion1 != null) {
-			ionsByLabel.put(quantificationLabel1, ion1);
-			ion1.setRatio(this);
-			massesByLabel.put(quantificationLabel1, ion1.getMass());
+			addIon(quantificationLabel1, ion1);
 			if (ion2 == null) {
 				ion1.setSingleton(true);
 			}
 		}
 		this.quantificationLabel1 = quantificationLabel1;
 		if (ion2 != null) {
-			ionsByLabel.put(quantificationLabel2, ion2);
-			ion2.setRatio(this);
-			massesByLabel.put(quantificationLabel2, ion2.getMass());
+			addIon(quantificationLabel2, ion2);
 			if (ion1 == null) {
 				ion2.setSingleton(true);
 			}
 		}
 		this.quantificationLabel2 = quantificationLabel2;
-		this.numIon = numIon;
 		this.ionSerieType = ionSerieType;
 
 		labelsByConditions = new THashMap<QuantCondition, QuantificationLabel>();
@@ -72,6 +70,29 @@ public class IsoRatio extends CensusRatio {
 		conditionsByLabels.put(quantificationLabel2, condition2);
 	}
 
+	private void addIon(QuantificationLabel label, Ion ion) {
+		ion.setRatio(this);
+		if (ion.getSerie() != null) {
+			// the ion is a view over an IonArena, so only its serie is kept
+			seriesByLabel.put(label, ion.getSerie());
+		} else {
+			ionsByLabel.put(label, ion);
+			massesByLabel.put(label, ion.getMass());
+		}
+	}
+
+	private boolean containsIon(QuantificationLabel label) {
+		return ionsByLabel.containsKey(label) || seriesByLabel.containsKey(label);
+	}
+
+	private double getIonIntensity(QuantificationLabel label) {
+		final IonSerie serie = seriesByLabel.get(label);
+		if (serie != null) {
+			return serie.getIntensity(numIon);
+		}
+		return ionsByLabel.get(label).getIntensity();
+	}
+
 	/**
 	 * Gets the log2 of the ratio
 	 *
@@ -79,14 +100,12 @@ public class IsoRatio extends CensusRatio {
 	 */
 	@Override
 	public double getLog2Ratio(QuantificationLabel labelNumerator, QuantificationLabel labelDenominator) {
-		if (ionsByLabel.containsKey(labelNumerator) && ionsByLabel.containsKey(labelDenominator)) {
-			final Ion ion1 = ionsByLabel.get(labelNumerator);
-			final Ion ion2 = ionsByLabel.get(labelDenominator);
-			final double value = Double.valueOf(ion1.getIntensity()) / Double.valueOf(ion2.getIntensity());
+		if (containsIon(labelNumerator) && containsIon(labelDenominator)) {
+			final double value = getIonIntensity(labelNumerator) / getIonIntensity(labelDenominator);
 			return Math.log(value) / Math.log(2);
-		} else if (ionsByLabel.containsKey(labelNumerator) && !ionsByLabel.containsKey(labelDenominator)) {
+		} else if (containsIon(labelNumerator) && !containsIon(labelDenominator)) {
 			return Double.POSITIVE_INFINITY;
-		} else if (!ionsByLabel.containsKey(labelNumerator) && ionsByLabel.containsKey(labelDenominator)) {
+		} else if (!containsIon(labelNumerator) && containsIon(labelDenominator)) {
 			// ion1==null && ion2!=null
 			return Double.NEGATIVE_INFINITY;
 		} else {
@@ -100,10 +119,10 @@ public class IsoRatio extends CensusRatio {
 	 */
 	public double getMaxIntensity() {
 		double max = Double.MIN_VALUE;
-		if (ionsByLabel.containsKey(quantificationLabel1) && ionsByLabel.get(quantificationLabel1).getIntensity() > max)
-			max = ionsByLabel.get(quantificationLabel1).getIntensity();
-		if (ionsByLabel.containsKey(quantificationLabel2) && ionsByLabel.get(quantificationLabel2).getIntensity() > max)
-			max = ionsByLabel.get(quantificationLabel2).getIntensity();
+		if (containsIon(quantificationLabel1) && getIonIntensity(quantificationLabel1) > max)
+			max = getIonIntensity(quantificationLabel1);
+		if (containsIon(quantificationLabel2) && getIonIntensity(quantificationLabel2) > max)
+			max = getIonIntensity(quantificationLabel2);
 		return max;
 	}
 
@@ -112,11 +131,11 @@ public class IsoRatio extends CensusRatio {
 	 */
 	public double getAverageIntensityPeak() {
 		final TDoubleArrayList values = new TDoubleArrayList();
-		if (ionsByLabel.containsKey(quantificationLabel1)) {
-			values.add(Double.valueOf(ionsByLabel.get(quantificationLabel1).getIntensity()));
+		if (containsIon(quantificationLabel1)) {
+			values.add(getIonIntensity(quantificationLabel1));
 		}
-		if (ionsByLabel.containsKey(quantificationLabel2)) {
-			values.add(Double.valueOf(ionsByLabel.get(quantificationLabel2).getIntensity()));
+		if (containsIon(quantificationLabel2)) {
+			values.add(getIonIntensity(quantificationLabel2));
 		}
 		if (!values.isEmpty())
 			return Maths.mean(values);
@@ -141,8 +160,8 @@ public class IsoRatio extends CensusRatio {
 	 * @return the intensity1
 	 */
 	public double getIntensity(QuantificationLabel label) {
-		if (ionsByLabel.containsKey(label))
-			return ionsByLabel.get(label).getIntensity();
+		if (containsIon(label))
+			return getIonIntensity(label);
 		return Double.NaN;
 	}
 
@@ -153,15 +172,13 @@ public class IsoRatio extends CensusRatio {
 	 */
 	@Override
 	public double getNonLogRatio(QuantificationLabel labelNumerator, QuantificationLabel labelDenominator) {
-		if (ionsByLabel.containsKey(labelNumerator) && ionsByLabel.containsKey(labelDenominator)) {
-			final Ion ion1 = ionsByLabel.get(labelNumerator);
-			final Ion ion2 = ionsByLabel.get(labelDenominator);
-			final double value = Double.valueOf(ion1.getIntensity()) / Double.valueOf(ion2.getIntensity());
+		if (containsIon(labelNumerator) && containsIon(labelDenominator)) {
+			final double value = getIonIntensity(labelNumerator) / getIonIntensity(labelDenominator);
 			return value;
 
-		} else if (ionsByLabel.containsKey(labelNumerator) && !ionsByLabel.containsKey(labelDenominator)) {
+		} else if (containsIon(labelNumerator) && !containsIon(labelDenominator)) {
 			return Double.POSITIVE_INFINITY; // n/0
-		} else if (!ionsByLabel.containsKey(labelNumerator) && ionsByLabel.containsKey(labelDenominator)) {
+		} else if (!containsIon(labelNumerator) && containsIon(labelDenominator)) {
 			// ion1==null && ion2!=null
 			return 0.0; // 0/n
 		} else {
@@ -202,6 +219,10 @@ public class IsoRatio extends CensusRatio {
 	}
 
 	public Ion getIon(QuantificationLabel label) {
+		final IonSerie serie = seriesByLabel.get(label);
+		if (serie != null) {
+			return serie.getIon(numIon);
+		}
 		return ionsByLabel.get(label);
 	}
 
@@ -213,6 +234,9 @@ public class IsoRatio extends CensusRatio {
 	 * @return
 	 */
 	public Double getMass(QuantificationLabel label) {
+		if (seriesByLabel.containsKey(label)) {
+			return seriesByLabel.get(label).getMass(numIon);
+		}
 		if (massesByLabel.containsKey(label)) {
 			return massesByLabel.get(label);
 		}
@@ -231,13 +255,15 @@ public class IsoRatio extends CensusRatio {
 	}
 
 	public Double getMass(QuantCondition condition) {
-		return massesByLabel.get(labelsByConditions.get(condition));
+		final QuantificationLabel label = labelsByConditions.get(condition);
+		if (seriesByLabel.containsKey(label)) {
+			return seriesByLabel.get(label).getMass(numIon);
+		}
+		return massesByLabel.get(label);
 	}
 
 	public double getIntensity(QuantCondition conditionDenominator) {
-		if (ionsByLabel.containsKey(labelsByConditions.get(conditionDenominator)))
-			return ionsByLabel.get(labelsByConditions.get(conditionDenominator)).getIntensity();
-		return Double.NaN;
+		return getIntensity(labelsByConditions.get(conditionDenominator));
 	}
 
 }
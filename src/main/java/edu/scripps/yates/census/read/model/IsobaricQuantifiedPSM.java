@@ -3,6 +3,7 @@ package edu.scripps.yates.census.read.model;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +27,7 @@ import edu.scripps.yates.census.read.util.QuantificationLabel;
 import edu.scripps.yates.utilities.grouping.GroupableProtein;
 import edu.scripps.yates.utilities.maths.Maths;
 import edu.scripps.yates.utilities.proteomicsmodel.AbstractPSM;
+import edu.scripps.yates.utilities.proteomicsmodel.Amount;
 import edu.scripps.yates.utilities.proteomicsmodel.Protein;
 import edu.scripps.yates.utilities.proteomicsmodel.Ratio;
 import edu.scripps.yates.utilities.proteomicsmodel.enums.AggregationLevel;
@@ -55,6 +57,8 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 	private final Set<String> fileNames = new THashSet<String>();
 	private boolean discarded;
 	private final Set<Character> quantifiedSites;
+	private final IonArena ionArena;
+	private final VersionedCache<Set<Amount>> ionAmounts = new VersionedCache<Set<Amount>>();
 
 	/**
 	 *
@@ -73,7 +77,26 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 	public IsobaricQuantifiedPSM(Peptide peptide, Map<QuantificationLabel, QuantCondition> conditionsByLabels,
 			Collection<IonExclusion> ionExclusions, Set<Character> quantifiedSites, boolean distinguishModifiedSequence,
 			boolean chargeStateSensible) {
+		this(peptide, conditionsByLabels, ionExclusions, quantifiedSites, distinguishModifiedSequence,
+				chargeStateSensible, null);
+	}
+
+	/**
+	 *
+	 * @param peptide
+	 * @param conditionsByLabels
+	 * @param ionExclusions
+	 * @param quantifiedSites
+	 * @param distinguishModifiedSequence
+	 * @param chargeStateSensible
+	 * @param ionArena                    if not null, the fragment ions are
+	 *                                    stored off-heap in this arena
+	 */
+	public IsobaricQuantifiedPSM(Peptide peptide, Map<QuantificationLabel, QuantCondition> conditionsByLabels,
+			Collection<IonExclusion> ionExclusions, Set<Character> quantifiedSites, boolean distinguishModifiedSequence,
+			boolean chargeStateSensible, IonArena ionArena) {
 		super(distinguishModifiedSequence, chargeStateSensible);
+		this.ionArena = ionArena;
 		censusChroPeptide = peptide;
 		this.ionExclusions = ionExclusions;
 		setScanNumber(peptide.getScan());
@@ -104,8 +127,8 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 		final String ys = frag.getYs();
 
 		// SERIE Y
-		serieYHeavy = new IonSerie(QuantificationLabel.HEAVY, IonSerieType.Y, yr, ionExclusions);
-		serieYLight = new IonSerie(QuantificationLabel.LIGHT, IonSerieType.Y, ys, ionExclusions);
+		serieYHeavy = new IonSerie(QuantificationLabel.HEAVY, IonSerieType.Y, yr, ionExclusions, ionArena);
+		serieYLight = new IonSerie(QuantificationLabel.LIGHT, IonSerieType.Y, ys, ionExclusions, ionArena);
 		// check the ions and remove the ones that has the same intensities in
 		// the two labels, which means that cannot be distinguished
 		checkIons(serieYLight, serieYHeavy);
@@ -129,8 +152,8 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 		// SERIE B
 		final String br = frag.getBr();
 		final String bs = frag.getBs();
-		serieBHeavy = new IonSerie(QuantificationLabel.HEAVY, IonSerieType.B, br, ionExclusions);
-		serieBLight = new IonSerie(QuantificationLabel.LIGHT, IonSerieType.B, bs, ionExclusions);
+		serieBHeavy = new IonSerie(QuantificationLabel.HEAVY, IonSerieType.B, br, ionExclusions, ionArena);
+		serieBLight = new IonSerie(QuantificationLabel.LIGHT, IonSerieType.B, bs, ionExclusions, ionArena);
 		// check the ions and remove the ones that has the same intensities in
 		// the two labels, which means that cannot be distinguished
 		checkIons(serieBLight, serieBHeavy);
@@ -152,8 +175,13 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 			}
 		}
 
-		// create ion amounts
-		createIonAmounts();
+		// create ion amounts. In case of having the ions stored off-heap, they
+		// are created from them when asked, in getAmounts()
+		if (ionArena == null) {
+			for (final QuantAmount amount : getIonAmounts()) {
+				addAmount(amount);
+			}
+		}
 	}
 
 	public void addSpectrumToIonsMaps(String spectrumKey, Map<String, Set<String>> spectrumToIonsMap,
@@ -176,10 +204,11 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 		}
 	}
 
-	private void createIonAmounts() {
-		final Set<QuantCondition> conditions = getIonsByCondition().keySet();
-		for (final QuantCondition condition : conditions) {
-			final Set<Ion> ions = getIonsByCondition().get(condition);
+	private List<QuantAmount> getIonAmounts() {
+		final List<QuantAmount> ret = new ArrayList<QuantAmount>();
+		final Map<QuantCondition, Set<Ion>> ionsByCondition = getIonsByCondition();
+		for (final QuantCondition condition : ionsByCondition.keySet()) {
+			final Set<Ion> ions = ionsByCondition.get(condition);
 			if (ions != null) {
 				for (final Ion ion : ions) {
 					final QuantAmount amount = new QuantAmount(ion.getIntensity(),
@@ -188,25 +217,48 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 					// singleton or not
 					final boolean singleton = ion.isSingleton();
 					amount.setSingleton(singleton);
-					addAmount(amount);
+					ret.add(amount);
 				}
 			}
 		}
+		return ret;
+	}
 
+	/**
+	 * In case of having the ions stored off-heap, the amounts of the ions are
+	 * not kept in this PSM but created from the ions the first time this is
+	 * called. The returned set is unmodifiable in that case, and it is shared
+	 * until other amounts are added with {@link #addAmount(Amount)}. It can be
+	 * called from several threads.
+	 */
+	@Override
+	public Set<Amount> getAmounts() {
+		if (ionArena == null) {
+			return super.getAmounts();
+		}
+		// amounts are only added to the PSM, so the number of them is its
+		// version
+		final Set<Amount> amounts = super.getAmounts();
+		final int numAmounts = amounts != null ? amounts.size() : -1;
+		if (!ionAmounts.isValid(numAmounts)) {
+			final Set<Amount> ret = new THashSet<Amount>();
+			if (amounts != null) {
+				ret.addAll(amounts);
+			}
+			ret.addAll(getIonAmounts());
+			ionAmounts.set(Collections.unmodifiableSet(ret), numAmounts);
+		}
+		return ionAmounts.get();
 	}
 
 	private void checkIons(IonSerie lightSerie, IonSerie heavySerie) {
-		final TIntObjectHashMap<Ion> lightMap = lightSerie.getIonMap();
-		final TIntObjectHashMap<Ion> heavyMap = heavySerie.getIonMap();
 		int max = lightSerie.getMaxNumberIon();
 		if (heavySerie.getMaxNumberIon() > max)
 			max = heavySerie.getMaxNumberIon();
 
 		for (int numIon = 1; numIon <= max; numIon++) {
-			final Ion lightIon = lightMap.get(numIon);
-			final Ion heavyIon = heavyMap.get(numIon);
-			if (lightIon != null && heavyIon != null) {
-				if (lightIon.getIntensity() == heavyIon.getIntensity()) {
+			if (lightSerie.containsIon(numIon) && heavySerie.containsIon(numIon)) {
+				if (lightSerie.getIntensity(numIon) == heavySerie.getIntensity(numIon)) {
 					lightSerie.removeIon(numIon);
 					heavySerie.removeIon(numIon);
 				}
@@ -309,6 +361,11 @@ public class IsobaricQuantifiedPSM extends AbstractPSM implements QuantifiedPSMI
 		return ret;
 	}
 
+	@Override
+	public boolean removeQuantifiedProtein(QuantifiedProteinInterface protein) {
+		return getProteins().remove(protein);
+	}
+
 	/**
 	 * @return the quantifiedProteins
 	 */
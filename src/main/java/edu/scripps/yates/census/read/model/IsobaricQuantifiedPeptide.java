@@ -1,7 +1,10 @@
 package edu.scripps.yates.census.read.model;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
 import edu.scripps.yates.census.read.model.interfaces.HasIsoRatios;
@@ -16,8 +19,8 @@ import gnu.trove.set.hash.THashSet;
 
 public class IsobaricQuantifiedPeptide extends QuantifiedPeptide implements HasIsoRatios {
 
-	private final Map<String, IonCountRatio> countRatiosByConditionKey = new THashMap<String, IonCountRatio>();
-	private Map<QuantCondition, Set<Ion>> ionsByConditions;
+	private final VersionedCache<Map<String, IonCountRatio>> countRatiosByConditionKey = new VersionedCache<Map<String, IonCountRatio>>();
+	private final VersionedCache<Map<QuantCondition, Set<Ion>>> ionsByConditions = new VersionedCache<Map<QuantCondition, Set<Ion>>>();
 
 	/**
 	 * Creates a {@link IsobaricQuantifiedPeptide} object, adding the
@@ -259,14 +262,19 @@ public class IsobaricQuantifiedPeptide extends QuantifiedPeptide implements HasI
 	@Override
 	public IonCountRatio getIonCountRatio(QuantCondition cond1, QuantCondition cond2) {
 		final String conditionKey = cond1.getName() + cond2.getName();
-		if (countRatiosByConditionKey.containsKey(conditionKey)) {
-			return countRatiosByConditionKey.get(conditionKey);
+		final int modificationCount = getModificationCount();
+		final Map<String, IonCountRatio> ratios;
+		if (!countRatiosByConditionKey.isValid(modificationCount)) {
+			ratios = countRatiosByConditionKey.set(new ConcurrentHashMap<String, IonCountRatio>(), modificationCount);
 		} else {
-			final IonCountRatio ratio = QuantUtils.getIonCountRatioForPeptide(this, cond1, cond2);
-
-			countRatiosByConditionKey.put(conditionKey, ratio);
-			return ratio;
+			ratios = countRatiosByConditionKey.get();
+		}
+		IonCountRatio ratio = ratios.get(conditionKey);
+		if (ratio == null) {
+			ratio = QuantUtils.getIonCountRatioForPeptide(this, cond1, cond2);
+			ratios.put(conditionKey, ratio);
 		}
+		return ratio;
 	}
 
 	@Override
@@ -278,61 +286,42 @@ public class IsobaricQuantifiedPeptide extends QuantifiedPeptide implements HasI
 
 	@Override
 	public Map<QuantCondition, Set<Ion>> getIonsByCondition() {
-		if (ionsByConditions == null) {
-			ionsByConditions = new THashMap<QuantCondition, Set<Ion>>();
-			for (final IsobaricQuantifiedPSM quantPSM : getIsobaricQuantifiedPSMs()) {
-				final Map<QuantCondition, Set<Ion>> ions = quantPSM.getIonsByCondition();
-				for (final QuantCondition condition : ions.keySet()) {
-					final Set<Ion> c = ions.get(condition);
-					if (ionsByConditions.containsKey(condition)) {
-						ionsByConditions.get(condition).addAll(c);
-					} else {
-						ionsByConditions.put(condition, c);
-					}
-				}
-			}
+		if (!ionsByConditions.isValid(getModificationCount())) {
+			ionsByConditions.set(Collections.unmodifiableMap(collectIonsByCondition(getIsobaricQuantifiedPSMs())),
+					getModificationCount());
 		}
-		return ionsByConditions;
+		return ionsByConditions.get();
 	}
 
 	@Override
 	public Map<QuantCondition, Set<Ion>> getIonsByCondition(String replicateName) {
 		if (replicateName == null) {
-			if (ionsByConditions == null) {
-				ionsByConditions = new THashMap<QuantCondition, Set<Ion>>();
-				for (final IsobaricQuantifiedPSM quantPSM : getIsobaricQuantifiedPSMs()) {
-
-					final Map<QuantCondition, Set<Ion>> ions = quantPSM.getIonsByCondition();
-					for (final QuantCondition condition : ions.keySet()) {
-						final Set<Ion> c = ions.get(condition);
-						if (ionsByConditions.containsKey(condition)) {
-							ionsByConditions.get(condition).addAll(c);
-						} else {
-							ionsByConditions.put(condition, c);
-						}
-					}
-
-				}
+			return getIonsByCondition();
+		}
+		final Set<IsobaricQuantifiedPSM> psms = new THashSet<IsobaricQuantifiedPSM>();
+		for (final IsobaricQuantifiedPSM quantPSM : getIsobaricQuantifiedPSMs()) {
+			if (quantPSM.getFileNames().contains(replicateName)) {
+				psms.add(quantPSM);
 			}
-			return ionsByConditions;
-		} else {
-			final Map<QuantCondition, Set<Ion>> ionsByConditions = new THashMap<QuantCondition, Set<Ion>>();
-			for (final IsobaricQuantifiedPSM quantPSM : getIsobaricQuantifiedPSMs()) {
-				if (replicateName == null || quantPSM.getFileNames().contains(replicateName)) {
-					final Map<QuantCondition, Set<Ion>> ions = quantPSM.getIonsByCondition();
-					for (final QuantCondition condition : ions.keySet()) {
-						final Set<Ion> c = ions.get(condition);
-						if (ionsByConditions.containsKey(condition)) {
-							ionsByConditions.get(condition).addAll(c);
-						} else {
-							ionsByConditions.put(condition, c);
-						}
-					}
+		}
+		return collectIonsByCondition(psms);
+	}
+
+	private static Map<QuantCondition, Set<Ion>> collectIonsByCondition(Collection<IsobaricQuantifiedPSM> psms) {
+		final Map<QuantCondition, Set<Ion>> ret = new THashMap<QuantCondition, Set<Ion>>();
+		for (final IsobaricQuantifiedPSM quantPSM : psms) {
+			final Map<QuantCondition, Set<Ion>> ions = quantPSM.getIonsByCondition();
+			for (final QuantCondition condition : ions.keySet()) {
+				final Set<Ion> c = ions.get(condition);
+				if (ret.containsKey(condition)) {
+					ret.get(condition).addAll(c);
+				} else {
+					// copy it, so the set of the psm is not modified
+					ret.put(condition, new THashSet<Ion>(c));
 				}
 			}
-			return ionsByConditions;
 		}
-
+		return ret;
 	}
 
 	@Override
@@ -6,6 +6,7 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -28,9 +29,11 @@ public class IsobaricQuantifiedProtein extends QuantifiedProtein implements HasI
 
 	private final ProteinType protein;
 	private boolean distinguishModifiedPeptides;
-	private Map<QuantCondition, Set<Ion>> ionsByConditions;
-	private final Map<String, IonCountRatio> countRatiosByConditionKey = new THashMap<String, IonCountRatio>();
-	private Set<IsoRatio> isoRatios;
+	private final VersionedCache<Map<QuantCondition, Set<Ion>>> ionsByConditions = new VersionedCache<Map<QuantCondition, Set<Ion>>>();
+	private final VersionedCache<Map<String, IonCountRatio>> countRatiosByConditionKey = new VersionedCache<Map<String, IonCountRatio>>();
+	private final VersionedCache<Set<IsoRatio>> isoRatios = new VersionedCache<Set<IsoRatio>>();
+	private final VersionedCache<Set<IsobaricQuantifiedPSM>> isobaricQuantifiedPSMs = new VersionedCache<Set<IsobaricQuantifiedPSM>>();
+	private final VersionedCache<Set<IsobaricQuantifiedPeptide>> isobaricQuantifiedPeptides = new VersionedCache<Set<IsobaricQuantifiedPeptide>>();
 
 	public IsobaricQuantifiedProtein(ProteinType protein) {
 		super(protein.getLocus());
@@ -233,26 +236,43 @@ public class IsobaricQuantifiedProtein extends QuantifiedProtein implements HasI
 		return sb.toString();
 	}
 
+	/**
+	 *
+	 * @return the {@link IsobaricQuantifiedPSM}s of the protein. The returned set
+	 *         is an unmodifiable view shared until the protein is modified
+	 */
 	public Set<IsobaricQuantifiedPSM> getIsobaricQuantifiedPSMs() {
-		final Set<IsobaricQuantifiedPSM> ret = new THashSet<IsobaricQuantifiedPSM>();
-		final Set<QuantifiedPSMInterface> quantifiedPSMs2 = getQuantifiedPSMs();
-		for (final QuantifiedPSMInterface quantifiedPSMInterface : quantifiedPSMs2) {
-			if (quantifiedPSMInterface instanceof IsobaricQuantifiedPSM) {
-				ret.add((IsobaricQuantifiedPSM) quantifiedPSMInterface);
+		if (!isobaricQuantifiedPSMs.isValid(getModificationCount())) {
+			final Set<IsobaricQuantifiedPSM> ret = new THashSet<IsobaricQuantifiedPSM>();
+			final Set<QuantifiedPSMInterface> quantifiedPSMs2 = getQuantifiedPSMs();
+			for (final QuantifiedPSMInterface quantifiedPSMInterface : quantifiedPSMs2) {
+				if (quantifiedPSMInterface instanceof IsobaricQuantifiedPSM) {
+					ret.add((IsobaricQuantifiedPSM) quantifiedPSMInterface);
+				}
 			}
+			isobaricQuantifiedPSMs.set(Collections.unmodifiableSet(ret), getModificationCount());
 		}
-		return ret;
+		return isobaricQuantifiedPSMs.get();
 	}
 
+	/**
+	 *
+	 * @return the {@link IsobaricQuantifiedPeptide}s of the protein. The
+	 *         returned set is an unmodifiable view shared until the protein is
+	 *         modified
+	 */
 	public Set<IsobaricQuantifiedPeptide> getIsobaricQuantifiedPeptides() {
-		final Set<IsobaricQuantifiedPeptide> ret = new THashSet<IsobaricQuantifiedPeptide>();
-		final Set<QuantifiedPeptideInterface> quantifiedPeptides2 = getQuantifiedPeptides();
-		for (final QuantifiedPeptideInterface quantifiedPeptideInterface : quantifiedPeptides2) {
-			if (quantifiedPeptideInterface instanceof IsobaricQuantifiedPeptide) {
-				ret.add((IsobaricQuantifiedPeptide) quantifiedPeptideInterface);
+		if (!isobaricQuantifiedPeptides.isValid(getModificationCount())) {
+			final Set<IsobaricQuantifiedPeptide> ret = new THashSet<IsobaricQuantifiedPeptide>();
+			final Set<QuantifiedPeptideInterface> quantifiedPeptides2 = getQuantifiedPeptides();
+			for (final QuantifiedPeptideInterface quantifiedPeptideInterface : quantifiedPeptides2) {
+				if (quantifiedPeptideInterface instanceof IsobaricQuantifiedPeptide) {
+					ret.add((IsobaricQuantifiedPeptide) quantifiedPeptideInterface);
+				}
 			}
+			isobaricQuantifiedPeptides.set(Collections.unmodifiableSet(ret), getModificationCount());
 		}
-		return ret;
+		return isobaricQuantifiedPeptides.get();
 	}
 
 	/**
@@ -443,21 +463,23 @@ public class IsobaricQuantifiedProtein extends QuantifiedProtein implements HasI
 
 	@Override
 	public Map<QuantCondition, Set<Ion>> getIonsByCondition() {
-		if (ionsByConditions == null) {
-			ionsByConditions = new THashMap<QuantCondition, Set<Ion>>();
+		if (!ionsByConditions.isValid(getModificationCount())) {
+			final Map<QuantCondition, Set<Ion>> map = new THashMap<QuantCondition, Set<Ion>>();
 			for (final IsobaricQuantifiedPSM quantPSM : getIsobaricQuantifiedPSMs()) {
 				final Map<QuantCondition, Set<Ion>> ions = quantPSM.getIonsByCondition();
 				for (final QuantCondition condition : ions.keySet()) {
 					final Set<Ion> c = ions.get(condition);
-					if (ionsByConditions.containsKey(condition)) {
-						ionsByConditions.get(condition).addAll(c);
+					if (map.containsKey(condition)) {
+						map.get(condition).addAll(c);
 					} else {
-						ionsByConditions.put(condition, c);
+						// copy it, so the set of the psm is not modified
+						map.put(condition, new THashSet<Ion>(c));
 					}
 				}
 			}
+			ionsByConditions.set(Collections.unmodifiableMap(map), getModificationCount());
 		}
-		return ionsByConditions;
+		return ionsByConditions.get();
 	}
 
 	@Override
@@ -474,20 +496,28 @@ public class IsobaricQuantifiedProtein extends QuantifiedProtein implements HasI
 
 	@Override
 	public Set<IsoRatio> getIsoRatios() {
-		if (isoRatios == null || isoRatios.isEmpty()) {
-			isoRatios = new THashSet<IsoRatio>();
+		if (!isoRatios.isValid(getModificationCount())) {
+			final Set<IsoRatio> set = new THashSet<IsoRatio>();
 			for (final IsobaricQuantifiedPSM psm : getIsobaricQuantifiedPSMs()) {
-				isoRatios.addAll(psm.getIsoRatios());
+				set.addAll(psm.getIsoRatios());
 			}
+			isoRatios.set(Collections.unmodifiableSet(set), getModificationCount());
 		}
-		return isoRatios;
+		return isoRatios.get();
 	}
 
 	@Override
 	public IonCountRatio getIonCountRatio(QuantCondition cond1, QuantCondition cond2) {
 		final String conditionKey = cond1.getName() + cond2.getName();
-		if (countRatiosByConditionKey.containsKey(conditionKey)) {
-			return countRatiosByConditionKey.get(conditionKey);
+		final int modificationCount = getModificationCount();
+		final Map<String, IonCountRatio> ratios;
+		if (!countRatiosByConditionKey.isValid(modificationCount)) {
+			ratios = countRatiosByConditionKey.set(new ConcurrentHashMap<String, IonCountRatio>(), modificationCount);
+		} else {
+			ratios = countRatiosByConditionKey.get();
+		}
+		if (ratios.containsKey(conditionKey)) {
+			return ratios.get(conditionKey);
 		} else {
 			final Set<Ion> ions1 = getIonsByCondition().get(cond1);
 			int numIons1 = 0;
@@ -502,7 +532,7 @@ public class IsobaricQuantifiedProtein extends QuantifiedProtein implements HasI
 			final IonCountRatio ratio = new IonCountRatio(AggregationLevel.PROTEINGROUP);
 			ratio.addIonCount(cond1, numIons1);
 			ratio.addIonCount(cond2, numIons2);
-			countRatiosByConditionKey.put(conditionKey, ratio);
+			ratios.put(conditionKey, ratio);
 			return ratio;
 		}
 	}
@@ -538,7 +568,8 @@ public class IsobaricQuantifiedProtein extends QuantifiedProtein implements HasI
 					if (ionsByConditions2.containsKey(condition)) {
 						ionsByConditions2.get(condition).addAll(c);
 					} else {
-						ionsByConditions2.put(condition, c);
+						// copy it, so the set of the psm is not modified
+						ionsByConditions2.put(condition, new THashSet<Ion>(c));
 					}
 				}
 			}
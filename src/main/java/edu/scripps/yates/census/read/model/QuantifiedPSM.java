@@ -269,4 +269,9 @@ public class QuantifiedPSM extends AbstractPSM implements QuantifiedPSMInterface
 		return addProtein(protein, recursively);
 	}
 
+	@Override
+	public boolean removeQuantifiedProtein(QuantifiedProteinInterface protein) {
+		return getProteins().remove(protein);
+	}
+
 }
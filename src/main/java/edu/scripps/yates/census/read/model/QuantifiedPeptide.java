@@ -2,11 +2,13 @@ package edu.scripps.yates.census.read.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
+import edu.scripps.yates.census.read.model.interfaces.HasModificationCount;
 import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
@@ -27,9 +29,13 @@ import gnu.trove.map.hash.THashMap;
 import gnu.trove.set.hash.TCharHashSet;
 import gnu.trove.set.hash.THashSet;
 
-public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPeptideInterface {
+public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPeptideInterface, HasModificationCount {
 	private boolean discarded;
-	private Set<QuantRatio> quantRatios;
+	private int modificationCount;
+	private final VersionedCache<Set<QuantifiedPSMInterface>> quantifiedPSMs = new VersionedCache<Set<QuantifiedPSMInterface>>();
+	private final VersionedCache<Set<QuantRatio>> quantRatios = new VersionedCache<Set<QuantRatio>>();
+	// quant ratios added by addQuantRatio()
+	private final Set<QuantRatio> addedQuantRatios = new THashSet<QuantRatio>();
 
 	// DISTINGUISH TO ALWAYS CONSIDER CHARGE AND MODIFIED SEQUENCE
 //	/**
@@ -80,6 +86,9 @@ public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPept
 				isChargeSensible()))) {
 			if (!getPSMs().contains(quantPSM)) {
 				final boolean ret = super.addPSM(quantPSM, recursive);
+				if (ret) {
+					modificationCount++;
+				}
 				return ret;
 			}
 			return false;
@@ -280,6 +289,15 @@ public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPept
 		return addPSM(quantifiedPSM, recursively);
 	}
 
+	@Override
+	public boolean removeQuantifiedPSM(QuantifiedPSMInterface psm) {
+		final boolean ret = getPSMs().remove(psm);
+		if (ret) {
+			modificationCount++;
+		}
+		return ret;
+	}
+
 	@Override
 	public Set<QuantifiedProteinInterface> getQuantifiedProteins() {
 
@@ -297,21 +315,34 @@ public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPept
 		return addProtein(protein, recursively);
 	}
 
+	@Override
+	public boolean removeQuantifiedProtein(QuantifiedProteinInterface protein) {
+		return getProteins().remove(protein);
+	}
+
+	@Override
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
 	@Override
 	public Set<QuantifiedPSMInterface> getQuantifiedPSMs() {
-		final Set<QuantifiedPSMInterface> ret = new THashSet<QuantifiedPSMInterface>();
-		for (final PSM psm : getPSMs()) {
-			if (psm instanceof QuantifiedPSMInterface) {
-				ret.add((QuantifiedPSMInterface) psm);
+		if (!quantifiedPSMs.isValid(modificationCount)) {
+			final Set<QuantifiedPSMInterface> set = new THashSet<QuantifiedPSMInterface>();
+			for (final PSM psm : getPSMs()) {
+				if (psm instanceof QuantifiedPSMInterface) {
+					set.add((QuantifiedPSMInterface) psm);
+				}
 			}
+			quantifiedPSMs.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return ret;
+		return quantifiedPSMs.get();
 	}
 
 	@Override
 	public Set<QuantRatio> getQuantRatios() {
-		if (quantRatios == null || quantRatios.isEmpty()) {
-			quantRatios = new THashSet<QuantRatio>();
+		if (!quantRatios.isValid(modificationCount)) {
+			final Set<QuantRatio> set = new THashSet<QuantRatio>();
 
 			final Set<Ratio> ratios = getRatios();
 			if (ratios.isEmpty()) {
@@ -319,18 +350,20 @@ public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPept
 				for (final QuantifiedPSMInterface quantPSM : quantifiedPSMs) {
 					final Set<QuantRatio> quantRatiosFromPSM = quantPSM.getQuantRatios();
 					for (final QuantRatio ratio : quantRatiosFromPSM) {
-						quantRatios.add(ratio);
+						set.add(ratio);
 					}
 				}
 			} else {
 				for (final Ratio ratio : ratios) {
 					if (ratio instanceof QuantRatio) {
-						quantRatios.add((QuantRatio) ratio);
+						set.add((QuantRatio) ratio);
 					}
 				}
 			}
+			set.addAll(addedQuantRatios);
+			quantRatios.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantRatios;
+		return quantRatios.get();
 	}
 
 	@Override
@@ -346,14 +379,19 @@ public class QuantifiedPeptide extends AbstractPeptide implements QuantifiedPept
 		}
 		final boolean ret = super.addRatio(ratio);
 		if (ret) {
-			quantRatios = null;
+			modificationCount++;
 		}
 		return ret;
 	}
 
 	@Override
 	public boolean addQuantRatio(QuantRatio ratio) {
-		return getQuantRatios().add(ratio);
+		if (getQuantRatios().contains(ratio)) {
+			return false;
+		}
+		addedQuantRatios.add(ratio);
+		modificationCount++;
+		return true;
 	}
 
 	@Override
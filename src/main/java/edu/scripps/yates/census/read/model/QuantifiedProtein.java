@@ -9,6 +9,7 @@ import java.util.Set;
 import org.apache.log4j.Logger;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
+import edu.scripps.yates.census.read.model.interfaces.HasModificationCount;
 import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
@@ -25,14 +26,15 @@ import edu.scripps.yates.utilities.proteomicsmodel.factories.AccessionEx;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.set.hash.THashSet;
 
-public class QuantifiedProtein extends AbstractProtein implements QuantifiedProteinInterface {
+public class QuantifiedProtein extends AbstractProtein implements QuantifiedProteinInterface, HasModificationCount {
 	private static final Logger log = Logger.getLogger(QuantifiedProtein.class);
 
 	private boolean discarded;
 
-	private Set<QuantifiedPSMInterface> quantifiedPSMs;
-	private Set<QuantifiedPeptideInterface> quantifiedPeptides;
-	private Set<QuantRatio> quantRatios;
+	private int modificationCount;
+	private final VersionedCache<Set<QuantifiedPSMInterface>> quantifiedPSMs = new VersionedCache<Set<QuantifiedPSMInterface>>();
+	private final VersionedCache<Set<QuantifiedPeptideInterface>> quantifiedPeptides = new VersionedCache<Set<QuantifiedPeptideInterface>>();
+	private final VersionedCache<Set<QuantRatio>> quantRatios = new VersionedCache<Set<QuantRatio>>();
 
 	public QuantifiedProtein(String proteinAcc) {
 		this(proteinAcc, false);
@@ -66,16 +68,17 @@ public class QuantifiedProtein extends AbstractProtein implements QuantifiedProt
 	 */
 	@Override
 	public Set<QuantifiedPSMInterface> getQuantifiedPSMs() {
-		if (quantifiedPSMs == null || quantifiedPSMs.isEmpty()) {
-			quantifiedPSMs = new THashSet<QuantifiedPSMInterface>();
+		if (!quantifiedPSMs.isValid(modificationCount)) {
+			final Set<QuantifiedPSMInterface> set = new THashSet<QuantifiedPSMInterface>();
 			for (final PSM psm : getPSMs()) {
 				if (psm instanceof QuantifiedPSMInterface) {
 					final QuantifiedPSMInterface quantPSM = (QuantifiedPSMInterface) psm;
-					quantifiedPSMs.add(quantPSM);
+					set.add(quantPSM);
 				}
 			}
+			quantifiedPSMs.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantifiedPSMs;
+		return quantifiedPSMs.get();
 	}
 
 	/**
@@ -83,27 +86,32 @@ public class QuantifiedProtein extends AbstractProtein implements QuantifiedProt
 	 */
 	@Override
 	public Set<QuantifiedPeptideInterface> getQuantifiedPeptides() {
-		if (quantifiedPeptides == null || quantifiedPeptides.isEmpty()) {
-			quantifiedPeptides = new THashSet<QuantifiedPeptideInterface>();
+		if (!quantifiedPeptides.isValid(modificationCount)) {
+			final Set<QuantifiedPeptideInterface> set = new THashSet<QuantifiedPeptideInterface>();
 			for (final QuantifiedPSMInterface psm : getQuantifiedPSMs()) {
 				if (psm.getQuantifiedPeptide() != null) {
-					quantifiedPeptides.add(psm.getQuantifiedPeptide());
+					set.add(psm.getQuantifiedPeptide());
 				}
 			}
+			quantifiedPeptides.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantifiedPeptides;
+		return quantifiedPeptides.get();
 	}
 
 	@Override
 	public boolean addPSM(PSM psm, boolean recursive) {
 		final boolean ret = super.addPSM(psm, recursive);
 		if (ret) {
-			quantifiedPSMs = null;
-			quantifiedPeptides = null;
+			modificationCount++;
 		}
 		return ret;
 	}
 
+	@Override
+	public int getModificationCount() {
+		return modificationCount;
+	}
+
 	/**
 	 * @return the rawfileNames
 	 */
@@ -217,17 +225,18 @@ public class QuantifiedProtein extends AbstractProtein implements QuantifiedProt
 
 	@Override
 	public Set<QuantRatio> getQuantRatios() {
-		if (quantRatios == null || quantRatios.isEmpty()) {
-			quantRatios = new THashSet<QuantRatio>();
+		if (!quantRatios.isValid(modificationCount)) {
+			final Set<QuantRatio> set = new THashSet<QuantRatio>();
 
 			final Set<Ratio> ratios = getRatios();
 			for (final Ratio ratio : ratios) {
 				if (ratio instanceof QuantRatio) {
-					quantRatios.add((QuantRatio) ratio);
+					set.add((QuantRatio) ratio);
 				}
 			}
+			quantRatios.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantRatios;
+		return quantRatios.get();
 	}
 
 	@Override
@@ -243,14 +252,14 @@ public class QuantifiedProtein extends AbstractProtein implements QuantifiedProt
 		}
 		final boolean ret = super.addRatio(ratio);
 		if (ret) {
-			quantRatios = null;
+			modificationCount++;
 		}
 		return ret;
 	}
 
 	@Override
 	public boolean addQuantRatio(QuantRatio ratio) {
-		return getQuantRatios().add(ratio);
+		return addRatio(ratio);
 	}
 
 	@Override
@@ -263,4 +272,13 @@ public class QuantifiedProtein extends AbstractProtein implements QuantifiedProt
 		return addPSM(psm, recursively);
 	}
 
+	@Override
+	public boolean removeQuantifiedPSM(QuantifiedPSMInterface psm) {
+		final boolean ret = getPSMs().remove(psm);
+		if (ret) {
+			modificationCount++;
+		}
+		return ret;
+	}
+
 }
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Set;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
+import edu.scripps.yates.census.read.model.interfaces.HasModificationCount;
 import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
@@ -25,14 +26,16 @@ import edu.scripps.yates.utilities.proteomicsmodel.enums.AggregationLevel;
 import gnu.trove.list.array.TDoubleArrayList;
 import gnu.trove.set.hash.THashSet;
 
-public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implements QuantifiedProteinInterface {
+public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein
+		implements QuantifiedProteinInterface, HasModificationCount {
 	private boolean distinguishModifiedPeptides;
 	private final IndexedProtein indexedProtein;
 	private boolean discarded;
 
-	private Set<QuantifiedPeptideInterface> quantifiedPeptides;
-	private Set<QuantifiedPSMInterface> quantifiedPSMs;
-	private Set<QuantRatio> quantRatios;
+	private int modificationCount;
+	private final VersionedCache<Set<QuantifiedPeptideInterface>> quantifiedPeptides = new VersionedCache<Set<QuantifiedPeptideInterface>>();
+	private final VersionedCache<Set<QuantifiedPSMInterface>> quantifiedPSMs = new VersionedCache<Set<QuantifiedPSMInterface>>();
+	private final VersionedCache<Set<QuantRatio>> quantRatios = new VersionedCache<Set<QuantRatio>>();
 
 	public QuantifiedProteinFromDBIndexEntry(IndexedProtein indexedProtein, boolean ignoreTaxonomies,
 			boolean ignoreACCFormat) {
@@ -59,16 +62,17 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 	 */
 	@Override
 	public Set<QuantifiedPSMInterface> getQuantifiedPSMs() {
-		if (quantifiedPSMs == null || quantifiedPSMs.isEmpty()) {
-			quantifiedPSMs = new THashSet<QuantifiedPSMInterface>();
+		if (!quantifiedPSMs.isValid(modificationCount)) {
+			final Set<QuantifiedPSMInterface> set = new THashSet<QuantifiedPSMInterface>();
 			for (final PSM psm : getPSMs()) {
 				if (psm instanceof QuantifiedPSMInterface) {
 					final QuantifiedPSMInterface quantPSM = (QuantifiedPSMInterface) psm;
-					quantifiedPSMs.add(quantPSM);
+					set.add(quantPSM);
 				}
 			}
+			quantifiedPSMs.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantifiedPSMs;
+		return quantifiedPSMs.get();
 	}
 
 	/**
@@ -76,15 +80,30 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 	 */
 	@Override
 	public Set<QuantifiedPeptideInterface> getQuantifiedPeptides() {
-		if (quantifiedPeptides == null || quantifiedPeptides.isEmpty()) {
-			quantifiedPeptides = new THashSet<QuantifiedPeptideInterface>();
+		if (!quantifiedPeptides.isValid(modificationCount)) {
+			final Set<QuantifiedPeptideInterface> set = new THashSet<QuantifiedPeptideInterface>();
 			for (final QuantifiedPSMInterface psm : getQuantifiedPSMs()) {
 				if (psm.getQuantifiedPeptide() != null) {
-					quantifiedPeptides.add(psm.getQuantifiedPeptide());
+					set.add(psm.getQuantifiedPeptide());
 				}
 			}
+			quantifiedPeptides.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantifiedPeptides;
+		return quantifiedPeptides.get();
+	}
+
+	@Override
+	public boolean addPSM(PSM psm, boolean recursive) {
+		final boolean ret = super.addPSM(psm, recursive);
+		if (ret) {
+			modificationCount++;
+		}
+		return ret;
+	}
+
+	@Override
+	public int getModificationCount() {
+		return modificationCount;
 	}
 
 	@Override
@@ -92,6 +111,15 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 		return addPSM(quantifiedPSM, recursive);
 	}
 
+	@Override
+	public boolean removeQuantifiedPSM(QuantifiedPSMInterface psm) {
+		final boolean ret = getPSMs().remove(psm);
+		if (ret) {
+			modificationCount++;
+		}
+		return ret;
+	}
+
 	@Override
 	public List<GroupablePeptide> getGroupablePeptides() {
 		final List<GroupablePeptide> list = new ArrayList<GroupablePeptide>();
@@ -142,10 +170,12 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 	public boolean addQuantifiedPeptide(QuantifiedPeptideInterface peptide, boolean recursive) {
 
 		final Set<QuantifiedPSMInterface> quantifiedPSMs2 = peptide.getQuantifiedPSMs();
-		if (quantifiedPSMs.containsAll(quantifiedPSMs2)) {
+		if (getQuantifiedPSMs().containsAll(quantifiedPSMs2)) {
 			return false;
 		}
-		quantifiedPSMs.addAll(quantifiedPSMs2);
+		for (final QuantifiedPSMInterface psm : quantifiedPSMs2) {
+			addPSM(psm, false);
+		}
 		if (recursive) {
 			peptide.addQuantifiedProtein(this, false);
 		}
@@ -187,7 +217,7 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 
 	@Override
 	public boolean addQuantRatio(QuantRatio ratio) {
-		return getQuantRatios().add(ratio);
+		return addRatio(ratio);
 	}
 
 	@Override
@@ -203,7 +233,7 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 		}
 		final boolean ret = super.addRatio(ratio);
 		if (ret) {
-			quantRatios = null;
+			modificationCount++;
 		}
 		return ret;
 	}
@@ -261,17 +291,18 @@ public class QuantifiedProteinFromDBIndexEntry extends AbstractProtein implement
 
 	@Override
 	public Set<QuantRatio> getQuantRatios() {
-		if (quantRatios == null || quantRatios.isEmpty()) {
-			quantRatios = new THashSet<QuantRatio>();
+		if (!quantRatios.isValid(modificationCount)) {
+			final Set<QuantRatio> set = new THashSet<QuantRatio>();
 
 			final Set<Ratio> ratios = getRatios();
 			for (final Ratio ratio : ratios) {
 				if (ratio instanceof QuantRatio) {
-					quantRatios.add((QuantRatio) ratio);
+					set.add((QuantRatio) ratio);
 				}
 			}
+			quantRatios.set(Collections.unmodifiableSet(set), modificationCount);
 		}
-		return quantRatios;
+		return quantRatios.get();
 	}
 
 	@Override
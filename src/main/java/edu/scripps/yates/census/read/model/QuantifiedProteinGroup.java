@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Set;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
+import edu.scripps.yates.census.read.model.interfaces.HasModificationCount;
 import edu.scripps.yates.census.read.model.interfaces.QuantRatio;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
 import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
@@ -21,6 +22,7 @@ public class QuantifiedProteinGroup extends AbstractContainsQuantifiedPSMs {
 	private static final String SEPARATOR = " ## ";
 	protected final Set<QuantifiedProteinInterface> proteins = new THashSet<QuantifiedProteinInterface>();
 	private StringBuilder accessionString;
+	private final VersionedCache<Set<QuantifiedPSMInterface>> quantifiedPSMs = new VersionedCache<Set<QuantifiedPSMInterface>>();
 
 	public QuantifiedProteinGroup(ProteinGroup proteinGroup) {
 		for (final GroupableProtein groupableProtein : proteinGroup) {
@@ -37,11 +39,28 @@ public class QuantifiedProteinGroup extends AbstractContainsQuantifiedPSMs {
 
 	@Override
 	public Set<QuantifiedPSMInterface> getQuantifiedPSMs() {
-		final Set<QuantifiedPSMInterface> ret = new THashSet<QuantifiedPSMInterface>();
-		for (final QuantifiedProteinInterface quantifiedProtein : getProteins()) {
-			ret.addAll(quantifiedProtein.getQuantifiedPSMs());
+		if (!quantifiedPSMs.isValid(getModificationCount())) {
+			final Set<QuantifiedPSMInterface> ret = new THashSet<QuantifiedPSMInterface>();
+			for (final QuantifiedProteinInterface quantifiedProtein : proteins) {
+				ret.addAll(quantifiedProtein.getQuantifiedPSMs());
+			}
+			quantifiedPSMs.set(Collections.unmodifiableSet(ret), getModificationCount());
 		}
+		return quantifiedPSMs.get();
+	}
 
+	/**
+	 * The group is modified when any of its proteins is modified, so its
+	 * modification count is the sum of the ones of its proteins
+	 */
+	@Override
+	public int getModificationCount() {
+		int ret = getAddedRatiosCount();
+		for (final QuantifiedProteinInterface quantifiedProtein : proteins) {
+			if (quantifiedProtein instanceof HasModificationCount) {
+				ret += ((HasModificationCount) quantifiedProtein).getModificationCount();
+			}
+		}
 		return ret;
 	}
 
@@ -0,0 +1,71 @@
+package edu.scripps.yates.census.read.model;
+
+import edu.scripps.yates.census.read.model.interfaces.HasModificationCount;
+
+/**
+ * A value derived from an object of the model, which is valid while the
+ * modification count of that object (see {@link HasModificationCount}) does
+ * not change.<br>
+ * Once computed for a modification count, the same instance is returned by
+ * {@link #get()} until the next modification, so it is shared by all the
+ * callers instead of being copied. Collections should be stored as
+ * unmodifiable views, and changed through the mutators of the model objects,
+ * which increase their modification count.<br>
+ * The value and its modification count are published together as an
+ * immutable snapshot, so the cache can be read and filled from several
+ * threads. Two threads may compute the same value at the same time, in which
+ * case the last one stored is kept.
+ *
+ * @author salvador
+ *
+ * @param <T>
+ */
+public class VersionedCache<T> {
+	private volatile Snapshot<T> snapshot;
+
+	private static class Snapshot<T> {
+		private final T value;
+		private final int version;
+
+		private Snapshot(T value, int version) {
+			this.value = value;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * @param modificationCount
+	 * @return true if the cached value was computed for that modification count
+	 */
+	public boolean isValid(int modificationCount) {
+		final Snapshot<T> snapshot = this.snapshot;
+		return snapshot != null && snapshot.version == modificationCount;
+	}
+
+	/**
+	 * @return the last value stored, or null if there is none
+	 */
+	public T get() {
+		final Snapshot<T> snapshot = this.snapshot;
+		if (snapshot == null) {
+			return null;
+		}
+		return snapshot.value;
+	}
+
+	/**
+	 * Stores the value computed for that modification count
+	 *
+	 * @param value
+	 * @param modificationCount
+	 * @return the value
+	 */
+	public T set(T value, int modificationCount) {
+		snapshot = new Snapshot<T>(value, modificationCount);
+		return value;
+	}
+
+	public void invalidate() {
+		snapshot = null;
+	}
+}
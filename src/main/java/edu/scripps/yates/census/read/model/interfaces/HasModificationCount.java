@@ -0,0 +1,19 @@
+package edu.scripps.yates.census.read.model.interfaces;
+
+/**
+ * Objects of the quantitative model that count the modifications of their
+ * relationships (PSMs, peptides, proteins or ratios added), so that the values
+ * derived from them can be cached until the next modification.
+ *
+ * @author salvador
+ *
+ */
+public interface HasModificationCount {
+	/**
+	 * Gets the number of modifications of this object. It changes every time a
+	 * relationship of this object is modified.
+	 *
+	 * @return
+	 */
+	public int getModificationCount();
+}
@@ -6,4 +6,12 @@ public interface HasQuantifiedPSMs {
 	public Set<QuantifiedPSMInterface> getQuantifiedPSMs();
 
 	public boolean addQuantifiedPSM(QuantifiedPSMInterface psm, boolean recursively);
+
+	/**
+	 * Removes a PSM from this object
+	 *
+	 * @param psm
+	 * @return true if the PSM was removed
+	 */
+	public boolean removeQuantifiedPSM(QuantifiedPSMInterface psm);
 }
@@ -6,4 +6,12 @@ public interface HasQuantifiedProteins {
 	public Set<QuantifiedProteinInterface> getQuantifiedProteins();
 
 	public boolean addQuantifiedProtein(QuantifiedProteinInterface protein, boolean recursively);
+
+	/**
+	 * Removes a protein from this object
+	 *
+	 * @param protein
+	 * @return true if the protein was removed
+	 */
+	public boolean removeQuantifiedProtein(QuantifiedProteinInterface protein);
 }
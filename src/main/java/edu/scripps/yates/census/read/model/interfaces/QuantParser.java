@@ -9,6 +9,7 @@ import java.util.regex.PatternSyntaxException;
 
 import edu.scripps.yates.census.analysis.QuantCondition;
 import edu.scripps.yates.census.read.QuantParserException;
+import edu.scripps.yates.census.read.util.FastaPeptideIndex;
 import edu.scripps.yates.census.read.util.QuantificationLabel;
 import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
 import edu.scripps.yates.utilities.remote.RemoteSSHFileReference;
@@ -35,6 +36,14 @@ public interface QuantParser {
 
 	void setDbIndex(DBIndexInterface dbIndex);
 
+	/**
+	 * Sets an in-memory peptide index to assign the proteins of the peptides,
+	 * used instead of the {@link DBIndexInterface} if both are set
+	 *
+	 * @param fastaPeptideIndex
+	 */
+	void setFastaPeptideIndex(FastaPeptideIndex fastaPeptideIndex);
+
 	Map<String, QuantifiedPSMInterface> getPSMMap() throws QuantParserException;
 
 	Map<String, QuantifiedProteinInterface> getProteinMap() throws QuantParserException;
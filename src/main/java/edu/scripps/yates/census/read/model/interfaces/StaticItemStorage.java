@@ -1,5 +1,6 @@
 package edu.scripps.yates.census.read.model.interfaces;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
@@ -93,6 +94,40 @@ public class StaticItemStorage<T extends HasKey> {
 
 	}
 
+	/**
+	 * Adds all the items under a single lock
+	 *
+	 * @param hasKeyObjs
+	 */
+	public void addItems(Collection<T> hasKeyObjs) {
+		WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			for (T hasKeyObj : hasKeyObjs) {
+				map.put(hasKeyObj.getKey(), hasKeyObj);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes all the items with these keys under a single lock
+	 *
+	 * @param keys
+	 */
+	public void removeKeys(Collection<String> keys) {
+		WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			for (String key : keys) {
+				map.remove(key);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
 	public boolean isEmpty() {
 		ReadLock readLock = lock.readLock();
 		try {
@@ -0,0 +1,369 @@
+package edu.scripps.yates.census.read.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import org.apache.log4j.Logger;
+
+import gnu.trove.map.hash.THashMap;
+
+/**
+ * Table of resolved protein accessions for a given uniprot version, persisted
+ * in a file so that the accessions resolved in previous runs are not resolved
+ * again. It stores:
+ * <ul>
+ * <li>the primary accession of an accession, as reported by the uniprot
+ * retriever (or that it was not found in uniprot), and</li>
+ * <li>the primary and secondary uniprot accessions of an IPI accession.</li>
+ * </ul>
+ * The file is memory-mapped when loaded: the records are sorted by accession
+ * and looked up by binary search over an index of offsets, so the table is not
+ * read into the heap. The accessions resolved during the run are kept in
+ * memory until {@link #save()} merges them into a new file.<br>
+ * There is one table per file, shared by all the parsers (see
+ * {@link #getInstance(File, String)}), and it is safe to be used from
+ * different threads.
+ *
+ * @author salvador
+ *
+ */
+public class AccessionResolutionTable {
+	private final static Logger log = Logger.getLogger(AccessionResolutionTable.class);
+	private static final int MAGIC = 0x41525442;
+	private static final int FILE_VERSION = 1;
+	private static final String LATEST_VERSION = "latest";
+	private static final Map<File, AccessionResolutionTable> instances = new THashMap<File, AccessionResolutionTable>();
+
+	private final File file;
+	private final String uniprotVersion;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	// records loaded from the file
+	private MappedByteBuffer records;
+	private IntBuffer recordOffsets;
+	// records resolved in this run, not saved yet
+	private final Map<String, Resolution> newResolutions = new THashMap<String, Resolution>();
+
+	/**
+	 * The resolution of an accession
+	 */
+	public static class Resolution {
+		private final String primaryAccession;
+		private final List<String> secondaryAccessions;
+
+		public Resolution(String primaryAccession, List<String> secondaryAccessions) {
+			this.primaryAccession = primaryAccession;
+			if (secondaryAccessions == null) {
+				this.secondaryAccessions = Collections.emptyList();
+			} else {
+				this.secondaryAccessions = Collections.unmodifiableList(new ArrayList<String>(secondaryAccessions));
+			}
+		}
+
+		/**
+		 *
+		 * @return the primary accession, or null if the accession was not
+		 *         found
+		 */
+		public String getPrimaryAccession() {
+			return primaryAccession;
+		}
+
+		public List<String> getSecondaryAccessions() {
+			return secondaryAccessions;
+		}
+	}
+
+	private AccessionResolutionTable(File file, String uniprotVersion) throws IOException {
+		this.file = file;
+		this.uniprotVersion = uniprotVersion;
+		if (file.exists()) {
+			map();
+		}
+	}
+
+	/**
+	 * Gets the table shared by all the parsers for that uniprot version,
+	 * loading it from the folder if it was saved before
+	 *
+	 * @param folder
+	 * @param uniprotVersion
+	 *            if null, the latest version
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized static AccessionResolutionTable getInstance(File folder, String uniprotVersion)
+			throws IOException {
+		final String version = uniprotVersion != null ? uniprotVersion : LATEST_VERSION;
+		final File file = new File(folder, "accessionResolution_" + version.replaceAll("[^a-zA-Z0-9._-]", "_")
+				+ ".table");
+		AccessionResolutionTable ret = instances.get(file);
+		if (ret == null) {
+			ret = new AccessionResolutionTable(file, version);
+			instances.put(file, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Removes all the shared tables. The tables not saved are lost.
+	 */
+	public synchronized static void clearInstances() {
+		instances.clear();
+	}
+
+	private void map() throws IOException {
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			final MappedByteBuffer buffer = randomAccessFile.getChannel().map(MapMode.READ_ONLY, 0,
+					randomAccessFile.length());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FILE_VERSION) {
+				throw new IOException(file.getAbsolutePath() + " is not a valid accession resolution table");
+			}
+			final String version = readString(buffer);
+			if (!uniprotVersion.equals(version)) {
+				throw new IOException("Accession resolution table " + file.getAbsolutePath()
+						+ " is for uniprot version " + version + " and not " + uniprotVersion);
+			}
+			final int numRecords = buffer.getInt();
+			final int indexStart = buffer.position();
+			final ByteBuffer index = buffer.duplicate();
+			index.position(indexStart);
+			index.limit(indexStart + numRecords * 4);
+			recordOffsets = index.slice().asIntBuffer();
+			records = buffer;
+			log.info(numRecords + " resolved accessions loaded from " + file.getAbsolutePath());
+		} finally {
+			// the mapped buffer remains valid after closing the file
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * Gets how the accession was resolved
+	 *
+	 * @param accession
+	 * @return the resolution, or null if it was not resolved before
+	 */
+	public Resolution get(String accession) {
+		final ReadLock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			final Resolution ret = newResolutions.get(accession);
+			if (ret != null) {
+				return ret;
+			}
+			return getFromFile(accession);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public boolean contains(String accession) {
+		return get(accession) != null;
+	}
+
+	/**
+	 * Stores the resolution of an accession, to be saved by {@link #save()}
+	 *
+	 * @param accession
+	 * @param primaryAccession
+	 *            null if the accession was not found
+	 * @param secondaryAccessions
+	 */
+	public void put(String accession, String primaryAccession, List<String> secondaryAccessions) {
+		final WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			newResolutions.put(accession, new Resolution(primaryAccession, secondaryAccessions));
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 *
+	 * @return true if there are resolutions not saved yet
+	 */
+	public boolean isModified() {
+		final ReadLock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			return !newResolutions.isEmpty();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private Resolution getFromFile(String accession) {
+		if (records == null) {
+			return null;
+		}
+		int low = 0;
+		int high = recordOffsets.limit() - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final ByteBuffer record = getRecord(mid);
+			final int comparison = readString(record).compareTo(accession);
+			if (comparison < 0) {
+				low = mid + 1;
+			} else if (comparison > 0) {
+				high = mid - 1;
+			} else {
+				return readResolution(record);
+			}
+		}
+		return null;
+	}
+
+	private ByteBuffer getRecord(int index) {
+		final ByteBuffer record = records.duplicate();
+		record.position(recordOffsets.get(index));
+		return record;
+	}
+
+	private static Resolution readResolution(ByteBuffer record) {
+		String primaryAccession = readString(record);
+		if (primaryAccession.isEmpty()) {
+			primaryAccession = null;
+		}
+		final int numSecondaries = record.getShort();
+		final List<String> secondaryAccessions = new ArrayList<String>(numSecondaries);
+		for (int i = 0; i < numSecondaries; i++) {
+			secondaryAccessions.add(readString(record));
+		}
+		return new Resolution(primaryAccession, secondaryAccessions);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Writes a new file with the resolutions of the file and the ones resolved
+	 * in this run, and maps it
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		final WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			if (newResolutions.isEmpty()) {
+				return;
+			}
+			final Map<String, Resolution> all = new THashMap<String, Resolution>();
+			if (records != null) {
+				for (int i = 0; i < recordOffsets.limit(); i++) {
+					final ByteBuffer record = getRecord(i);
+					final String accession = readString(record);
+					all.put(accession, readResolution(record));
+				}
+			}
+			all.putAll(newResolutions);
+			final List<String> accessions = new ArrayList<String>(all.keySet());
+			Collections.sort(accessions);
+
+			final File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			// written to a temporary file, so the current one is still valid
+			// if something fails
+			final File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+			final DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FILE_VERSION);
+				writeString(out, uniprotVersion);
+				out.writeInt(accessions.size());
+				final int indexStart = out.size();
+				int offset = indexStart + accessions.size() * 4;
+				// first the offsets of the records
+				for (final String accession : accessions) {
+					out.writeInt(offset);
+					offset += getRecordLength(accession, all.get(accession));
+				}
+				for (final String accession : accessions) {
+					final Resolution resolution = all.get(accession);
+					writeString(out, accession);
+					writeString(out, resolution.getPrimaryAccession() != null ? resolution.getPrimaryAccession() : "");
+					out.writeShort(resolution.getSecondaryAccessions().size());
+					for (final String secondaryAccession : resolution.getSecondaryAccessions()) {
+						writeString(out, secondaryAccession);
+					}
+				}
+			} finally {
+				out.close();
+			}
+			// the old mapping has to be released before replacing the file
+			final boolean mapped = records != null;
+			records = null;
+			recordOffsets = null;
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (final IOException e) {
+				// the old file is still there, so it is mapped again and the
+				// new resolutions are kept in memory
+				tmpFile.delete();
+				if (mapped) {
+					map();
+				}
+				throw new IOException(
+						"Error moving " + tmpFile.getAbsolutePath() + " to " + file.getAbsolutePath(), e);
+			}
+			newResolutions.clear();
+			map();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private static int getRecordLength(String accession, Resolution resolution) {
+		int length = 2 + accession.getBytes(StandardCharsets.UTF_8).length;
+		length += 2;
+		if (resolution.getPrimaryAccession() != null) {
+			length += resolution.getPrimaryAccession().getBytes(StandardCharsets.UTF_8).length;
+		}
+		length += 2;
+		for (final String secondaryAccession : resolution.getSecondaryAccessions()) {
+			length += 2 + secondaryAccession.getBytes(StandardCharsets.UTF_8).length;
+		}
+		return length;
+	}
+
+	public String getUniprotVersion() {
+		return uniprotVersion;
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
@@ -0,0 +1,156 @@
+package edu.scripps.yates.census.read.util;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Keeps the best PSM per chromatographic peak and salt step, comparing their
+ * REGRESSION_FACTOR and, if not available in both or equal, their XCorr.<br>
+ * The PSMs that are not the best ones of their peak are discarded with the
+ * remover provided, and they are counted once per PSM id, even if they are
+ * offered again (as when the same PSM is read under another protein group).
+ *
+ * @author salvador
+ *
+ * @param <T> the type of the PSMs
+ */
+public class BestPSMSelector<T> {
+	private final Function<T, String> peakKeyFunction;
+	private final Function<T, String> idFunction;
+	private final Consumer<T> remover;
+	private final Map<String, BestPSM<T>> bestPSMsByPeakKey = new THashMap<String, BestPSM<T>>();
+	private final Set<String> discardedPSMIds = new THashSet<String>();
+
+	/**
+	 *
+	 * @param peakKeyFunction gets the key of the chromatographic peak and salt
+	 *                        step of a PSM
+	 * @param idFunction      gets the id of a PSM
+	 * @param remover         called with each PSM discarded
+	 */
+	public BestPSMSelector(Function<T, String> peakKeyFunction, Function<T, String> idFunction,
+			Consumer<T> remover) {
+		this.peakKeyFunction = peakKeyFunction;
+		this.idFunction = idFunction;
+		this.remover = remover;
+	}
+
+	/**
+	 * Offers the psm as the best PSM of its chromatographic peak and salt step.
+	 * If there was already a better one, the psm is discarded and false is
+	 * returned. Otherwise, the psm becomes the best one and the previous best
+	 * is discarded.
+	 *
+	 * @param psm
+	 * @param regressionFactor NaN if not available
+	 * @param xcorr            null if not available
+	 * @return true if the psm is kept
+	 */
+	public boolean offer(T psm, double regressionFactor, Float xcorr) {
+		final BestPSM<T> candidate = new BestPSM<T>(psm, regressionFactor, xcorr);
+		final String key = peakKeyFunction.apply(psm);
+		final BestPSM<T> current = bestPSMsByPeakKey.get(key);
+		if (current == null || current.psm == psm) {
+			bestPSMsByPeakKey.put(key, candidate);
+			return true;
+		}
+		if (candidate.isBetterThan(current)) {
+			discard(current.psm);
+			bestPSMsByPeakKey.put(key, candidate);
+			// in case of having been discarded before
+			discardedPSMIds.remove(idFunction.apply(psm));
+			return true;
+		}
+		discard(psm);
+		return false;
+	}
+
+	/**
+	 * Recalculates the peak keys of the best PSMs, since they may change after
+	 * they were offered, keeping only the best one if two of them get the same
+	 * key
+	 *
+	 * @return the number of PSMs discarded
+	 */
+	public int reconcile() {
+		final int numDiscarded = discardedPSMIds.size();
+		final Map<String, BestPSM<T>> rekeyed = new THashMap<String, BestPSM<T>>();
+		for (final BestPSM<T> best : bestPSMsByPeakKey.values()) {
+			final String key = peakKeyFunction.apply(best.psm);
+			final BestPSM<T> current = rekeyed.get(key);
+			if (current == null) {
+				rekeyed.put(key, best);
+			} else if (best.isBetterThan(current)) {
+				discard(current.psm);
+				rekeyed.put(key, best);
+			} else {
+				discard(best.psm);
+			}
+		}
+		bestPSMsByPeakKey.clear();
+		bestPSMsByPeakKey.putAll(rekeyed);
+		return discardedPSMIds.size() - numDiscarded;
+	}
+
+	private void discard(T psm) {
+		discardedPSMIds.add(idFunction.apply(psm));
+		remover.accept(psm);
+	}
+
+	/**
+	 *
+	 * @return the number of different PSMs discarded and not kept afterwards
+	 */
+	public int getNumDiscardedPSMs() {
+		return discardedPSMIds.size();
+	}
+
+	public void clear() {
+		bestPSMsByPeakKey.clear();
+		discardedPSMIds.clear();
+	}
+
+	/**
+	 * A PSM with the scores used to select the best PSM, so that they are read
+	 * just once
+	 */
+	private static class BestPSM<T> {
+		private final T psm;
+		private final double regressionFactor;
+		private final float xcorr;
+
+		private BestPSM(T psm, double regressionFactor, Float xcorr) {
+			this.psm = psm;
+			this.regressionFactor = regressionFactor;
+			this.xcorr = xcorr != null ? xcorr : Float.NaN;
+		}
+
+		/**
+		 * Compares the REGRESSION_FACTOR and, if not available in both or
+		 * equal, the XCorr
+		 *
+		 * @param other
+		 * @return
+		 */
+		private boolean isBetterThan(BestPSM<T> other) {
+			if (!Double.isNaN(regressionFactor) && !Double.isNaN(other.regressionFactor)) {
+				final int compare = Double.compare(regressionFactor, other.regressionFactor);
+				if (compare != 0) {
+					return compare > 0;
+				}
+			}
+			if (!Float.isNaN(xcorr) && !Float.isNaN(other.xcorr)) {
+				final int compare = Float.compare(xcorr, other.xcorr);
+				if (compare != 0) {
+					return compare > 0;
+				}
+			}
+			return false;
+		}
+	}
+}
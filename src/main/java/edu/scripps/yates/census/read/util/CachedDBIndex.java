@@ -0,0 +1,353 @@
+package edu.scripps.yates.census.read.util;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexStoreException;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Cache in front of a {@link DBIndexInterface} for the lookups of proteins by
+ * peptide sequence. The proteins of the last looked up sequences are kept in a
+ * LRU cache of configurable capacity, and the sequences that were not found
+ * are kept so that they are never looked up again. A Bloom filter of these
+ * missing sequences avoids checking them for the sequences that are found.<br>
+ * There is one cache per {@link DBIndexInterface}, shared by all the parsers
+ * using it (see {@link #getInstance(DBIndexInterface)}) and released when none
+ * of them is reachable. The cache is used as a {@link DBIndexInterface}
+ * through {@link #asDBIndex()}, which decorates the index, so that the parsers
+ * use it as any other index.<br>
+ * It counts the hits, the misses and the time spent in the lookups to the
+ * index.
+ *
+ * @author salvador
+ *
+ */
+public class CachedDBIndex {
+	private final static Logger log = Logger.getLogger(CachedDBIndex.class);
+	public static final int DEFAULT_CAPACITY = 100000;
+	private static final double MISSING_FILTER_FALSE_POSITIVE_RATE = 0.01;
+	// weakly referenced, so that the cache of an index is released once no
+	// parser uses it
+	private static final Map<DBIndexInterface, WeakReference<CachedDBIndex>> instances = new WeakHashMap<DBIndexInterface, WeakReference<CachedDBIndex>>();
+	private static int defaultCapacity = DEFAULT_CAPACITY;
+
+	private final DBIndexInterface dbIndex;
+	private final DBIndexInterface cachedDBIndex;
+	private int capacity;
+	private final LinkedHashMap<String, Set<IndexedProtein>> cache;
+	private final Set<String> missingSequences = new THashSet<String>();
+	private final StringBloomFilter missingSequencesFilter;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong missingHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong lookupNanos = new AtomicLong();
+
+	/**
+	 *
+	 * @param dbIndex
+	 * @param capacity maximum number of sequences found in the index that are
+	 *                 kept
+	 */
+	public CachedDBIndex(DBIndexInterface dbIndex, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of the cache must be greater than 0");
+		}
+		this.dbIndex = dbIndex;
+		this.capacity = capacity;
+		cache = new LinkedHashMap<String, Set<IndexedProtein>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 4622145207936357405L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Set<IndexedProtein>> eldest) {
+				return size() > CachedDBIndex.this.capacity;
+			}
+		};
+		missingSequencesFilter = new StringBloomFilter(capacity, MISSING_FILTER_FALSE_POSITIVE_RATE);
+		cachedDBIndex = (DBIndexInterface) Proxy.newProxyInstance(DBIndexInterface.class.getClassLoader(),
+				new Class<?>[] { DBIndexInterface.class }, new CachingHandler());
+	}
+
+	public CachedDBIndex(DBIndexInterface dbIndex) {
+		this(dbIndex, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Gets the cache shared by all the parsers for that index, creating it
+	 * with the default capacity if needed. If the index is already the one
+	 * returned by {@link #asDBIndex()}, its cache is returned.
+	 *
+	 * @param dbIndex
+	 * @return
+	 */
+	public synchronized static CachedDBIndex getInstance(DBIndexInterface dbIndex) {
+		final CachedDBIndex decorator = getDecorator(dbIndex);
+		if (decorator != null) {
+			return decorator;
+		}
+		final WeakReference<CachedDBIndex> reference = instances.get(dbIndex);
+		CachedDBIndex ret = reference != null ? reference.get() : null;
+		if (ret == null) {
+			ret = new CachedDBIndex(dbIndex, defaultCapacity);
+			instances.put(dbIndex, new WeakReference<CachedDBIndex>(ret));
+		}
+		return ret;
+	}
+
+	/**
+	 *
+	 * @param dbIndex
+	 * @return the {@link CachedDBIndex} whose {@link #asDBIndex()} is that
+	 *         index, or null if it is not one of them
+	 */
+	private static CachedDBIndex getDecorator(DBIndexInterface dbIndex) {
+		if (dbIndex != null && Proxy.isProxyClass(dbIndex.getClass())) {
+			final InvocationHandler handler = Proxy.getInvocationHandler(dbIndex);
+			if (handler instanceof CachingHandler) {
+				return ((CachingHandler) handler).getCachedDBIndex();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the capacity of the caches created after this call by
+	 * {@link #getInstance(DBIndexInterface)}
+	 *
+	 * @param capacity
+	 */
+	public synchronized static void setDefaultCapacity(int capacity) {
+		defaultCapacity = capacity;
+	}
+
+	public synchronized static int getDefaultCapacity() {
+		return defaultCapacity;
+	}
+
+	/**
+	 * Removes the shared cache of that index, so that it can be released
+	 *
+	 * @param dbIndex
+	 */
+	public synchronized static void removeInstance(DBIndexInterface dbIndex) {
+		final CachedDBIndex decorator = getDecorator(dbIndex);
+		if (decorator != null) {
+			instances.remove(decorator.getDBIndex());
+		} else {
+			instances.remove(dbIndex);
+		}
+	}
+
+	/**
+	 * Removes all the shared caches
+	 */
+	public synchronized static void clearInstances() {
+		instances.clear();
+	}
+
+	/**
+	 *
+	 * @return a {@link DBIndexInterface} that looks up the proteins of the
+	 *         peptide sequences through this cache, and delegates all the other
+	 *         methods to the index
+	 */
+	public DBIndexInterface asDBIndex() {
+		return cachedDBIndex;
+	}
+
+	/**
+	 * Gets the proteins containing the peptide sequence. The returned set
+	 * should not be modified.
+	 *
+	 * @param sequence
+	 * @return
+	 * @throws DBIndexStoreException
+	 */
+	public Set<IndexedProtein> getProteins(String sequence) throws DBIndexStoreException {
+		synchronized (this) {
+			// the filter is checked first, since most of the sequences are
+			// found
+			if (missingSequencesFilter.mightContain(sequence) && missingSequences.contains(sequence)) {
+				missingHits.incrementAndGet();
+				return Collections.emptySet();
+			}
+			final Set<IndexedProtein> proteins = cache.get(sequence);
+			if (proteins != null) {
+				hits.incrementAndGet();
+				return proteins;
+			}
+		}
+		misses.incrementAndGet();
+		final long start = System.nanoTime();
+		Set<IndexedProtein> proteins = dbIndex.getProteins(sequence);
+		lookupNanos.addAndGet(System.nanoTime() - start);
+		synchronized (this) {
+			if (proteins == null || proteins.isEmpty()) {
+				missingSequences.add(sequence);
+				missingSequencesFilter.add(sequence);
+				proteins = Collections.emptySet();
+			} else {
+				proteins = Collections.unmodifiableSet(proteins);
+				cache.put(sequence, proteins);
+			}
+		}
+		return proteins;
+	}
+
+	/**
+	 *
+	 * @return the index decorated by this cache
+	 */
+	public DBIndexInterface getDBIndex() {
+		return dbIndex;
+	}
+
+	/**
+	 *
+	 * @return maximum number of sequences found in the index that are kept
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Sets the maximum number of sequences found in the index that are kept,
+	 * discarding the least recently used ones if there are more
+	 *
+	 * @param capacity
+	 */
+	public synchronized void setCapacity(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of the cache must be greater than 0");
+		}
+		this.capacity = capacity;
+		final Iterator<String> iterator = cache.keySet().iterator();
+		while (cache.size() > capacity && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 *
+	 * @return number of lookups resolved by the cache of found sequences
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 *
+	 * @return number of lookups resolved by the set of missing sequences
+	 */
+	public long getMissingHits() {
+		return missingHits.get();
+	}
+
+	/**
+	 *
+	 * @return number of lookups that went to the index
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 *
+	 * @return total time spent in the lookups to the index, in milliseconds
+	 */
+	public double getLookupMillis() {
+		return lookupNanos.get() / 1000000.0;
+	}
+
+	/**
+	 *
+	 * @return average time of a lookup to the index, in milliseconds
+	 */
+	public double getAverageLookupMillis() {
+		final long numMisses = misses.get();
+		if (numMisses == 0) {
+			return 0.0;
+		}
+		return getLookupMillis() / numMisses;
+	}
+
+	public synchronized int getNumMissingSequences() {
+		return missingSequences.size();
+	}
+
+	public synchronized void clear() {
+		cache.clear();
+		missingSequences.clear();
+		missingSequencesFilter.clear();
+		hits.set(0);
+		missingHits.set(0);
+		misses.set(0);
+		lookupNanos.set(0);
+	}
+
+	public void logStatistics() {
+		log.info(this);
+	}
+
+	@Override
+	public String toString() {
+		return "DBIndex cache: " + hits.get() + " hits, " + missingHits.get() + " hits of missing sequences, "
+				+ misses.get() + " lookups to the index (average " + getAverageLookupMillis() + "ms)";
+	}
+
+	/**
+	 * Implementation of the {@link DBIndexInterface} returned by
+	 * {@link CachedDBIndex#asDBIndex()}. The lookups of proteins by peptide
+	 * sequence go through the cache, and the rest of methods go to the index.
+	 */
+	private class CachingHandler implements InvocationHandler {
+
+		private CachedDBIndex getCachedDBIndex() {
+			return CachedDBIndex.this;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final Class<?>[] parameterTypes = method.getParameterTypes();
+			if ("getProteins".equals(method.getName()) && parameterTypes.length == 1
+					&& parameterTypes[0] == String.class) {
+				return getProteins((String) args[0]);
+			}
+			if (method.getDeclaringClass() == Object.class) {
+				if ("equals".equals(method.getName())) {
+					return proxy == args[0];
+				}
+				if ("hashCode".equals(method.getName())) {
+					return System.identityHashCode(proxy);
+				}
+				if ("toString".equals(method.getName())) {
+					return "Cached " + dbIndex;
+				}
+			}
+			try {
+				return method.invoke(dbIndex, args);
+			} catch (final InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
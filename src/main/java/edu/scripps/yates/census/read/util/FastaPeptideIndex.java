@@ -0,0 +1,484 @@
+package edu.scripps.yates.census.read.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * In-memory index of the peptides of a set of protein sequences, to assign the
+ * proteins of the peptides without building an external DBIndex.<br>
+ * The protein sequences are concatenated (separated by a character that is
+ * never in a peptide), and the k-mer starting at each position of each
+ * protein (shorter at the end of the protein) is packed with its position
+ * into a sorted array of longs. A peptide is looked up by binary search of the
+ * range of k-mers starting with its first residues, and each candidate
+ * position is then verified against the whole peptide, so any peptide is
+ * found, regardless of the enzyme or the number of misscleavages, and
+ * regardless of being shorter than k.<br>
+ * The index is built in parallel, and it can be saved to a file that is later
+ * loaded as memory-mapped, so it is not built again nor copied into the heap.
+ * The k-mers are mapped in chunks, since a single mapped buffer cannot be
+ * larger than 2GB.<br>
+ * It can be used wherever a {@link DBIndexInterface} is expected through
+ * {@link #asDBIndex()}.
+ * <br>
+ * It is safe to be read from different threads.
+ *
+ * @author salvador
+ *
+ */
+public class FastaPeptideIndex {
+	private final static Logger log = Logger.getLogger(FastaPeptideIndex.class);
+	public static final int DEFAULT_KMER_LENGTH = 6;
+	// 5 bits per residue in the 31 bits of a positive int
+	public static final int MAX_KMER_LENGTH = 6;
+	private static final int MAGIC = 0x46504958;
+	private static final int FILE_VERSION = 2;
+	private static final byte SEPARATOR = '*';
+	// 2^27 k-mers (1GB) per buffer
+	private static final int CHUNK_BITS = 27;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final int kmerLength;
+	private final String[] fastaDefLines;
+	// start of each protein in the concatenated sequence
+	private final int[] proteinStarts;
+	private final ByteBuffer sequence;
+	// the sorted k-mers, in chunks of CHUNK_SIZE
+	private final LongBuffer[] kmers;
+	private final int numKmers;
+	private final IndexedProtein[] indexedProteins;
+	private final DBIndexInterface dbIndex;
+
+	private FastaPeptideIndex(int kmerLength, String[] fastaDefLines, int[] proteinStarts, ByteBuffer sequence,
+			LongBuffer[] kmers, int numKmers) {
+		this.kmerLength = kmerLength;
+		this.fastaDefLines = fastaDefLines;
+		this.proteinStarts = proteinStarts;
+		this.sequence = sequence;
+		this.kmers = kmers;
+		this.numKmers = numKmers;
+		indexedProteins = new IndexedProtein[fastaDefLines.length];
+		dbIndex = (DBIndexInterface) Proxy.newProxyInstance(DBIndexInterface.class.getClassLoader(),
+				new Class<?>[] { DBIndexInterface.class }, new DBIndexHandler());
+	}
+
+	/**
+	 * Builds the index from the protein sequences, using the accessions as the
+	 * fasta headers of the proteins
+	 *
+	 * @param proteinSequences
+	 * @return
+	 */
+	public static FastaPeptideIndex build(ProteinSequences proteinSequences) {
+		return build(proteinSequences, DEFAULT_KMER_LENGTH);
+	}
+
+	public static FastaPeptideIndex build(Map<String, String> sequencesByFastaDefLine, int kmerLength) {
+		final List<String> fastaDefLines = new ArrayList<String>(sequencesByFastaDefLine.keySet());
+		Collections.sort(fastaDefLines);
+		final List<String> sequences = new ArrayList<String>(fastaDefLines.size());
+		for (final String fastaDefLine : fastaDefLines) {
+			sequences.add(sequencesByFastaDefLine.get(fastaDefLine));
+		}
+		return build(fastaDefLines, sequences, kmerLength);
+	}
+
+	/**
+	 * Builds the index from a fasta file
+	 *
+	 * @param fastaFile
+	 * @return
+	 * @throws IOException
+	 */
+	public static FastaPeptideIndex build(File fastaFile) throws IOException {
+		return build(fastaFile, DEFAULT_KMER_LENGTH);
+	}
+
+	public static FastaPeptideIndex build(File fastaFile, int kmerLength) throws IOException {
+		final List<String> fastaDefLines = new ArrayList<String>();
+		final List<String> sequences = new ArrayList<String>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(fastaFile));
+			String line;
+			StringBuilder sb = null;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.startsWith(">")) {
+					if (sb != null) {
+						sequences.add(sb.toString());
+					}
+					fastaDefLines.add(line.substring(1));
+					sb = new StringBuilder();
+				} else if (sb != null) {
+					sb.append(line);
+				}
+			}
+			if (sb != null) {
+				sequences.add(sb.toString());
+			}
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+		return build(fastaDefLines, sequences, kmerLength);
+	}
+
+	private static FastaPeptideIndex build(List<String> fastaDefLines, List<String> sequences, int kmerLength) {
+		if (kmerLength < 1 || kmerLength > MAX_KMER_LENGTH) {
+			throw new IllegalArgumentException("The k-mer length has to be between 1 and " + MAX_KMER_LENGTH);
+		}
+		final long t0 = System.currentTimeMillis();
+		final int numProteins = sequences.size();
+		final int[] proteinStarts = new int[numProteins];
+		// there is a k-mer per residue
+		final int[] kmerStarts = new int[numProteins + 1];
+		long length = 0;
+		for (int i = 0; i < numProteins; i++) {
+			proteinStarts[i] = (int) length;
+			final int proteinLength = sequences.get(i).length();
+			length += proteinLength + 1;
+			if (length > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Too many protein sequences to be indexed in memory");
+			}
+			kmerStarts[i + 1] = kmerStarts[i] + proteinLength;
+		}
+		final byte[] concatenated = new byte[(int) length];
+		final long[] kmerArray = new long[kmerStarts[numProteins]];
+		IntStream.range(0, numProteins).parallel().forEach(i -> {
+			final String proteinSequence = sequences.get(i).toUpperCase();
+			final int start = proteinStarts[i];
+			for (int j = 0; j < proteinSequence.length(); j++) {
+				concatenated[start + j] = (byte) proteinSequence.charAt(j);
+			}
+			concatenated[start + proteinSequence.length()] = SEPARATOR;
+			int index = kmerStarts[i];
+			for (int j = 0; j < proteinSequence.length(); j++) {
+				final int residues = Math.min(kmerLength, proteinSequence.length() - j);
+				kmerArray[index++] = pack(encode(concatenated, start + j, residues, kmerLength), start + j);
+			}
+		});
+		Arrays.parallelSort(kmerArray);
+		log.info("Peptide index of " + numProteins + " proteins and " + kmerArray.length + " " + kmerLength
+				+ "-mers built in " + (System.currentTimeMillis() - t0) + "ms");
+		final LongBuffer[] kmers = new LongBuffer[getNumChunks(kmerArray.length)];
+		for (int i = 0; i < kmers.length; i++) {
+			final int offset = i * CHUNK_SIZE;
+			kmers[i] = LongBuffer.wrap(kmerArray, offset, Math.min(CHUNK_SIZE, kmerArray.length - offset)).slice();
+		}
+		return new FastaPeptideIndex(kmerLength, fastaDefLines.toArray(new String[numProteins]), proteinStarts,
+				ByteBuffer.wrap(concatenated), kmers, kmerArray.length);
+	}
+
+	/**
+	 * Encodes some residues as a k-mer, padded at the right if there are less
+	 * than k residues, so that the k-mers starting with some residues are
+	 * sorted together
+	 */
+	private static int encode(byte[] sequence, int start, int residues, int kmerLength) {
+		int code = 0;
+		for (int i = start; i < start + residues; i++) {
+			code = (code << 5) | ((sequence[i] - 'A') & 31);
+		}
+		return code << (5 * (kmerLength - residues));
+	}
+
+	private static int getNumChunks(int numKmers) {
+		return (numKmers + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+	}
+
+	private long getKmer(int index) {
+		return kmers[index >>> CHUNK_BITS].get(index & CHUNK_MASK);
+	}
+
+	private static long pack(int code, int position) {
+		return ((long) code << 32) | position;
+	}
+
+	/**
+	 * Gets the proteins containing the peptide sequence
+	 *
+	 * @param cleanSequence
+	 *            peptide sequence without modifications
+	 * @return the proteins, or an empty set if the sequence is not found
+	 */
+	public Set<IndexedProtein> getProteins(String cleanSequence) {
+		final byte[] peptide = cleanSequence.toUpperCase().getBytes(StandardCharsets.US_ASCII);
+		if (peptide.length == 0) {
+			return Collections.emptySet();
+		}
+		final Set<IndexedProtein> ret = new THashSet<IndexedProtein>();
+		// range of the k-mers starting with the first residues of the peptide
+		final int residues = Math.min(kmerLength, peptide.length);
+		final int fromCode = encode(peptide, 0, residues, kmerLength);
+		final int toCode = fromCode + (1 << (5 * (kmerLength - residues)));
+		int index = lowerBound(pack(fromCode, 0));
+		while (index < numKmers) {
+			final long kmer = getKmer(index++);
+			if ((int) (kmer >>> 32) >= toCode) {
+				break;
+			}
+			final int position = (int) kmer;
+			if (matches(peptide, position)) {
+				ret.add(getIndexedProtein(getProteinIndex(position)));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the proteins of a batch of peptide sequences, looked up in
+	 * parallel
+	 *
+	 * @param cleanSequences
+	 * @return the proteins of each sequence, an empty set for the ones not
+	 *         found
+	 */
+	public Map<String, Set<IndexedProtein>> getProteins(Collection<String> cleanSequences) {
+		final Map<String, Set<IndexedProtein>> ret = new ConcurrentHashMap<String, Set<IndexedProtein>>();
+		cleanSequences.parallelStream().distinct().forEach(cleanSequence -> {
+			ret.put(cleanSequence, getProteins(cleanSequence));
+		});
+		return ret;
+	}
+
+	private boolean matches(byte[] peptide, int position) {
+		if (position + peptide.length > sequence.capacity()) {
+			return false;
+		}
+		for (int i = 0; i < peptide.length; i++) {
+			if (sequence.get(position + i) != peptide[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int lowerBound(long key) {
+		int low = 0;
+		int high = numKmers;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (getKmer(mid) < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private int getProteinIndex(int position) {
+		final int index = Arrays.binarySearch(proteinStarts, position);
+		if (index >= 0) {
+			return index;
+		}
+		return -index - 2;
+	}
+
+	private IndexedProtein getIndexedProtein(int proteinIndex) {
+		synchronized (indexedProteins) {
+			IndexedProtein ret = indexedProteins[proteinIndex];
+			if (ret == null) {
+				ret = new IndexedProtein(fastaDefLines[proteinIndex], proteinIndex);
+				indexedProteins[proteinIndex] = ret;
+			}
+			return ret;
+		}
+	}
+
+	/**
+	 *
+	 * @return a {@link DBIndexInterface} that looks up the proteins of the
+	 *         peptide sequences in this index. The rest of methods of the
+	 *         interface, which search by mass, are not supported.
+	 */
+	public DBIndexInterface asDBIndex() {
+		return dbIndex;
+	}
+
+	public int getNumProteins() {
+		return fastaDefLines.length;
+	}
+
+	public int getKmerLength() {
+		return kmerLength;
+	}
+
+	/**
+	 * Saves the index to a file that can be loaded with {@link #load(File)}
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		final DataOutputStream header = new DataOutputStream(headerBytes);
+		header.writeInt(kmerLength);
+		header.writeInt(fastaDefLines.length);
+		for (int i = 0; i < fastaDefLines.length; i++) {
+			header.writeInt(proteinStarts[i]);
+			header.writeUTF(fastaDefLines[i]);
+		}
+		header.writeInt(sequence.capacity());
+		header.writeInt(numKmers);
+		header.close();
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			randomAccessFile.setLength(0);
+			final FileChannel channel = randomAccessFile.getChannel();
+			final long sequenceOffset = 12 + headerBytes.size();
+			final long kmersOffset = getKmersOffset(sequenceOffset, sequence.capacity());
+			final ByteBuffer start = ByteBuffer.allocate(12);
+			start.putInt(MAGIC).putInt(FILE_VERSION).putInt(headerBytes.size()).flip();
+			channel.write(start, 0);
+			channel.write(ByteBuffer.wrap(headerBytes.toByteArray()), 12);
+			channel.write(sequence.duplicate(), sequenceOffset);
+			// the k-mers are written through a small buffer
+			final ByteBuffer kmerBytes = ByteBuffer.allocate(8 * 1024 * 1024);
+			long position = kmersOffset;
+			for (final LongBuffer chunk : kmers) {
+				final LongBuffer kmersToWrite = chunk.duplicate();
+				while (kmersToWrite.hasRemaining()) {
+					kmerBytes.clear();
+					final LongBuffer longs = kmerBytes.asLongBuffer();
+					final int numLongs = Math.min(longs.remaining(), kmersToWrite.remaining());
+					final LongBuffer slice = kmersToWrite.slice();
+					slice.limit(numLongs);
+					longs.put(slice);
+					kmersToWrite.position(kmersToWrite.position() + numLongs);
+					kmerBytes.limit(numLongs * 8);
+					while (kmerBytes.hasRemaining()) {
+						position += channel.write(kmerBytes, position);
+					}
+				}
+			}
+		} finally {
+			randomAccessFile.close();
+		}
+		log.info("Peptide index saved to " + file.getAbsolutePath());
+	}
+
+	/**
+	 * Loads an index saved with {@link #save(File)}. The sequences and the
+	 * k-mers are memory-mapped, not read into the heap.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static FastaPeptideIndex load(File file) throws IOException {
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = randomAccessFile.getChannel();
+			final ByteBuffer start = ByteBuffer.allocate(12);
+			channel.read(start, 0);
+			start.flip();
+			if (start.remaining() < 12 || start.getInt() != MAGIC) {
+				throw new IOException(file.getAbsolutePath() + " is not a peptide index file");
+			}
+			final int version = start.getInt();
+			if (version != FILE_VERSION) {
+				throw new IOException("Version " + version + " of peptide index file " + file.getAbsolutePath()
+						+ " is not supported");
+			}
+			final ByteBuffer headerBytes = ByteBuffer.allocate(start.getInt());
+			channel.read(headerBytes, 12);
+			final DataInputStream header = new DataInputStream(
+					new ByteArrayInputStream(headerBytes.array()));
+			final int kmerLength = header.readInt();
+			final int numProteins = header.readInt();
+			final int[] proteinStarts = new int[numProteins];
+			final String[] fastaDefLines = new String[numProteins];
+			for (int i = 0; i < numProteins; i++) {
+				proteinStarts[i] = header.readInt();
+				fastaDefLines[i] = header.readUTF();
+			}
+			final int sequenceLength = header.readInt();
+			final int numKmers = header.readInt();
+			final long sequenceOffset = 12 + headerBytes.capacity();
+			final long kmersOffset = getKmersOffset(sequenceOffset, sequenceLength);
+			final ByteBuffer sequence = channel.map(MapMode.READ_ONLY, sequenceOffset, sequenceLength);
+			final LongBuffer[] kmers = new LongBuffer[getNumChunks(numKmers)];
+			for (int i = 0; i < kmers.length; i++) {
+				final long offset = (long) i * CHUNK_SIZE;
+				final long size = Math.min(CHUNK_SIZE, numKmers - offset) * 8l;
+				kmers[i] = channel.map(MapMode.READ_ONLY, kmersOffset + offset * 8l, size).asLongBuffer();
+			}
+			log.info("Peptide index of " + numProteins + " proteins loaded from " + file.getAbsolutePath());
+			return new FastaPeptideIndex(kmerLength, fastaDefLines, proteinStarts, sequence, kmers, numKmers);
+		} finally {
+			// the mapped buffers remain valid after closing the channel
+			randomAccessFile.close();
+		}
+	}
+
+	/**
+	 * The k-mers are aligned to 8 bytes after the sequences
+	 */
+	private static long getKmersOffset(long sequenceOffset, int sequenceLength) {
+		final long end = sequenceOffset + sequenceLength;
+		return (end + 7) / 8 * 8;
+	}
+
+	/**
+	 * Implementation of the {@link DBIndexInterface} returned by
+	 * {@link FastaPeptideIndex#asDBIndex()}
+	 */
+	private class DBIndexHandler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final Class<?>[] parameterTypes = method.getParameterTypes();
+			if ("getProteins".equals(method.getName()) && parameterTypes.length == 1
+					&& parameterTypes[0] == String.class) {
+				return getProteins((String) args[0]);
+			}
+			if (method.getDeclaringClass() == Object.class) {
+				if ("equals".equals(method.getName())) {
+					return proxy == args[0];
+				}
+				if ("hashCode".equals(method.getName())) {
+					return System.identityHashCode(proxy);
+				}
+				if ("toString".equals(method.getName())) {
+					return "Fasta peptide index of " + getNumProteins() + " proteins";
+				}
+			}
+			throw new UnsupportedOperationException(method.getName()
+					+ " is not supported by the fasta peptide index, which only looks up peptide sequences");
+		}
+	}
+}
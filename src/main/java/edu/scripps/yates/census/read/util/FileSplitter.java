@@ -3,21 +3,29 @@ package edu.scripps.yates.census.read.util;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.FilenameUtils;
 
 import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
 
 public class FileSplitter {
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
 	/**
 	 * Reads the relatFile and split the file into as many dataSetNames as
-	 * exist, each one containing the data corresponding to each dataSet
+	 * exist, each one containing the data corresponding to each dataSet.<br>
+	 * The file is read just once. The dataSet of each line is the one whose
+	 * name is the suffix of the id in the first column (or in the second
+	 * column if there is not any in the first one), preceded by '_', as the
+	 * ids are built by QuantAnalysis.
 	 *
 	 * @param inputFile
 	 * @param dataSetNames
@@ -32,40 +40,47 @@ public class FileSplitter {
 		// return ret;
 		// }
 
+		final Set<String> dataSetNameSet = new THashSet<String>(dataSetNames);
 		final Map<String, BufferedWriter> mapOfFiles = new THashMap<String, BufferedWriter>();
 		final Map<String, File> listOfFiles = new THashMap<String, File>();
-		// create an output file per each dataSetName
-		for (final String dataSetName : dataSetNames) {
-			final File file = new File(inputFile.getParentFile().getAbsoluteFile() + File.separator
-					+ FilenameUtils.getBaseName(inputFile.getAbsolutePath()) + "_" + dataSetName + "."
-					+ FilenameUtils.getExtension(inputFile.getAbsolutePath()));
-			listOfFiles.put(dataSetName, file);
-			final FileWriter fstream = new FileWriter(file);
-			final BufferedWriter out = new BufferedWriter(fstream);
-			mapOfFiles.put(dataSetName, out);
-		}
-
-		FileInputStream fis;
 		try {
-			fis = new FileInputStream(inputFile);
-			final BufferedReader in = new BufferedReader(new InputStreamReader(fis));
+			// create an output file per each dataSetName
+			for (final String dataSetName : dataSetNameSet) {
+				final File file = getDataSetFile(inputFile, dataSetName);
+				listOfFiles.put(dataSetName, file);
+				mapOfFiles.put(dataSetName, new BufferedWriter(
+						new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8),
+						BUFFER_SIZE));
+			}
 
-			String aLine;
-			String firstLine = null;
-			while ((aLine = in.readLine()) != null) {
-				if (firstLine == null) {
-					firstLine = aLine;
-					// write the first line in all the writters
-					final Collection<BufferedWriter> outs = mapOfFiles.values();
-					for (final BufferedWriter out : outs) {
-						out.write(firstLine);
-						out.newLine();
+			final BufferedReader in = new BufferedReader(Files.newBufferedReader(inputFile.toPath(),
+					StandardCharsets.UTF_8), BUFFER_SIZE);
+			try {
+				String aLine;
+				String firstLine = null;
+				while ((aLine = in.readLine()) != null) {
+					if (firstLine == null) {
+						firstLine = aLine;
+						// write the first line in all the writters
+						for (final BufferedWriter out : mapOfFiles.values()) {
+							out.write(firstLine);
+							out.newLine();
+						}
+						continue;
 					}
-					continue;
-				}
-				final String[] split = aLine.split("\t");
-				for (final String dataSetName : dataSetNames) {
-					if (split[0].contains(dataSetName) || split[1].contains(dataSetName)) {
+					final int firstTab = aLine.indexOf('\t');
+					if (firstTab < 0) {
+						continue;
+					}
+					String dataSetName = getDataSetName(aLine.substring(0, firstTab), dataSetNameSet);
+					if (dataSetName == null) {
+						int secondTab = aLine.indexOf('\t', firstTab + 1);
+						if (secondTab < 0) {
+							secondTab = aLine.length();
+						}
+						dataSetName = getDataSetName(aLine.substring(firstTab + 1, secondTab), dataSetNameSet);
+					}
+					if (dataSetName != null) {
 						// get the file writter corresponding to the dataset
 						// detected as sufix
 						final BufferedWriter out = mapOfFiles.get(dataSetName);
@@ -73,17 +88,50 @@ public class FileSplitter {
 						out.newLine();
 					}
 				}
+			} finally {
+				in.close();
 			}
-
-			in.close();
+		} finally {
 			// close all file writters
 			for (final BufferedWriter out : mapOfFiles.values()) {
 				out.close();
 			}
-		} catch (final IOException e) {
-			e.printStackTrace();
 		}
 		return listOfFiles;
 	}
 
+	/**
+	 * Gets the dataSet of an id, which is the longest suffix of the id that
+	 * follows a '_' and is the name of a dataSet. It takes as many lookups as
+	 * '_' are in the id, no matter how many dataSets there are.
+	 *
+	 * @param id
+	 * @param dataSetNames
+	 * @return the name of the dataSet, or null if the id doesn't end with any
+	 */
+	public static String getDataSetName(String id, Set<String> dataSetNames) {
+		int index = id.indexOf('_');
+		while (index >= 0) {
+			final String suffix = id.substring(index + 1);
+			if (dataSetNames.contains(suffix)) {
+				return suffix;
+			}
+			index = id.indexOf('_', index + 1);
+		}
+		return null;
+	}
+
+	/**
+	 *
+	 * @param inputFile
+	 * @param dataSetName
+	 * @return the file in which the data of a dataSet of the input file is
+	 *         written
+	 */
+	public static File getDataSetFile(File inputFile, String dataSetName) {
+		return new File(inputFile.getParentFile().getAbsoluteFile() + File.separator
+				+ FilenameUtils.getBaseName(inputFile.getAbsolutePath()) + "_" + dataSetName + "."
+				+ FilenameUtils.getExtension(inputFile.getAbsolutePath()));
+	}
+
 }
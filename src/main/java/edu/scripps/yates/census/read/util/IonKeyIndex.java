@@ -0,0 +1,241 @@
+package edu.scripps.yates.census.read.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Index of PSMs by ion (full sequence + charge), maintained as the PSMs are
+ * added and removed. The full sequences are encoded in a
+ * {@link StringDictionary} and packed with the charge in a long key, so no
+ * key string is created per PSM, and the ion count of a PSM is got in
+ * constant time.<br>
+ * It is safe to read it from different threads while it is being updated.
+ *
+ * @author salvador
+ *
+ */
+public class IonKeyIndex {
+	private final StringDictionary fullSequences = new StringDictionary();
+	private final TLongObjectHashMap<Set<QuantifiedPSMInterface>> psmsByIon = new TLongObjectHashMap<Set<QuantifiedPSMInterface>>();
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 *
+	 * @param fullSequence
+	 * @param charge
+	 * @return the ion key as a string: full sequence + "-" + charge
+	 */
+	public static String getIonKey(String fullSequence, int charge) {
+		return fullSequence + "-" + charge;
+	}
+
+	private static long pack(int fullSequenceId, int charge) {
+		return ((long) fullSequenceId << 32) | (charge & 0xffffffffl);
+	}
+
+	public void add(QuantifiedPSMInterface psm) {
+		final WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			final long ion = pack(fullSequences.encode(psm.getFullSequence()), psm.getChargeState());
+			Set<QuantifiedPSMInterface> psms = psmsByIon.get(ion);
+			if (psms == null) {
+				psms = new THashSet<QuantifiedPSMInterface>();
+				psmsByIon.put(ion, psms);
+			}
+			psms.add(psm);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	public void remove(QuantifiedPSMInterface psm) {
+		final WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			final int fullSequenceId = fullSequences.getId(psm.getFullSequence());
+			if (fullSequenceId == StringDictionary.NO_ID) {
+				return;
+			}
+			final long ion = pack(fullSequenceId, psm.getChargeState());
+			final Set<QuantifiedPSMInterface> psms = psmsByIon.get(ion);
+			if (psms != null) {
+				psms.remove(psm);
+				if (psms.isEmpty()) {
+					psmsByIon.remove(ion);
+				}
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 *
+	 * @param fullSequence
+	 * @param charge
+	 * @return the number of PSMs with that full sequence and charge
+	 */
+	public int getIonCount(String fullSequence, int charge) {
+		final ReadLock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			final Set<QuantifiedPSMInterface> psms = getPSMsWithNoLock(fullSequence, charge);
+			if (psms == null) {
+				return 0;
+			}
+			return psms.size();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public int getIonCount(QuantifiedPSMInterface psm) {
+		return getIonCount(psm.getFullSequence(), psm.getChargeState());
+	}
+
+	/**
+	 *
+	 * @param fullSequence
+	 * @param charge
+	 * @return a copy of the set of PSMs with that full sequence and charge, or
+	 *         null if there is not any
+	 */
+	public Set<QuantifiedPSMInterface> getPSMs(String fullSequence, int charge) {
+		final ReadLock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			final Set<QuantifiedPSMInterface> psms = getPSMsWithNoLock(fullSequence, charge);
+			if (psms == null) {
+				return null;
+			}
+			return Collections.unmodifiableSet(new THashSet<QuantifiedPSMInterface>(psms));
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private Set<QuantifiedPSMInterface> getPSMsWithNoLock(String fullSequence, int charge) {
+		final int fullSequenceId = fullSequences.getId(fullSequence);
+		if (fullSequenceId == StringDictionary.NO_ID) {
+			return null;
+		}
+		return psmsByIon.get(pack(fullSequenceId, charge));
+	}
+
+	/**
+	 *
+	 * @return the number of different ions
+	 */
+	public int size() {
+		final ReadLock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			return psmsByIon.size();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public void clear() {
+		final WriteLock writeLock = lock.writeLock();
+		try {
+			writeLock.lock();
+			psmsByIon.clear();
+			fullSequences.clear();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Gets a read-only view of the index as a map in which the keys are the
+	 * ion keys as in {@link #getIonKey(String, int)}. The map reflects the
+	 * later changes of the index.
+	 *
+	 * @return
+	 */
+	public Map<String, Set<QuantifiedPSMInterface>> asMap() {
+		return new AbstractMap<String, Set<QuantifiedPSMInterface>>() {
+
+			@Override
+			public Set<QuantifiedPSMInterface> get(Object key) {
+				if (!(key instanceof String)) {
+					return null;
+				}
+				final String ionKey = (String) key;
+				final int index = ionKey.lastIndexOf('-');
+				if (index < 0) {
+					return null;
+				}
+				try {
+					return getPSMs(ionKey.substring(0, index), Integer.valueOf(ionKey.substring(index + 1)));
+				} catch (final NumberFormatException e) {
+					return null;
+				}
+			}
+
+			@Override
+			public boolean containsKey(Object key) {
+				return get(key) != null;
+			}
+
+			@Override
+			public int size() {
+				return IonKeyIndex.this.size();
+			}
+
+			@Override
+			public Set<Entry<String, Set<QuantifiedPSMInterface>>> entrySet() {
+				return new AbstractSet<Entry<String, Set<QuantifiedPSMInterface>>>() {
+
+					@Override
+					public Iterator<Entry<String, Set<QuantifiedPSMInterface>>> iterator() {
+						return getEntries().iterator();
+					}
+
+					@Override
+					public int size() {
+						return IonKeyIndex.this.size();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 *
+	 * @return a copy of the entries of the index
+	 */
+	private List<Map.Entry<String, Set<QuantifiedPSMInterface>>> getEntries() {
+		final ReadLock readLock = lock.readLock();
+		try {
+			readLock.lock();
+			final List<Map.Entry<String, Set<QuantifiedPSMInterface>>> ret = new ArrayList<Map.Entry<String, Set<QuantifiedPSMInterface>>>(
+					psmsByIon.size());
+			for (final long ion : psmsByIon.keys()) {
+				final String fullSequence = fullSequences.decode((int) (ion >>> 32));
+				final int charge = (int) ion;
+				ret.add(new AbstractMap.SimpleImmutableEntry<String, Set<QuantifiedPSMInterface>>(
+						getIonKey(fullSequence, charge),
+						Collections.unmodifiableSet(new THashSet<QuantifiedPSMInterface>(psmsByIon.get(ion)))));
+			}
+			return ret;
+		} finally {
+			readLock.unlock();
+		}
+	}
+}
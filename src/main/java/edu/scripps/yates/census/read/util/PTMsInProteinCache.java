@@ -0,0 +1,227 @@
+package edu.scripps.yates.census.read.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.scripps.yates.census.read.AbstractQuantParser;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import edu.scripps.yates.utilities.annotations.UniprotProteinLocalRetrieverInterface;
+import edu.scripps.yates.utilities.sequence.PTMInProtein;
+
+/**
+ * Cache of the mapping of the PTMs of the PSMs to the coordinates of their
+ * proteins. All the PSMs with the same full sequence assigned to the same set
+ * of proteins, with the same protein sequences, have the same
+ * {@link PTMInProtein}s, so they are calculated just once.<br>
+ * By default, all the parsers use the same instance (see
+ * {@link #getSharedInstance()}), so the mappings are reused between the
+ * parsers of a session. Another instance can be set to a parser with
+ * {@link AbstractQuantParser#setPTMsInProteinCache(PTMsInProteinCache)}.<br>
+ * It keeps at most a maximum number of mappings, discarding the least recently
+ * used ones, and the number of hits and misses, in order to evaluate its
+ * usefulness.<br>
+ * It can be used from several threads. Two threads asking at the same time
+ * for a mapping not cached yet may both calculate it.
+ *
+ * @author salvador
+ *
+ */
+public class PTMsInProteinCache {
+	public static final int DEFAULT_MAX_SIZE = 100000;
+	private static PTMsInProteinCache sharedInstance;
+	private final Map<String, PTMsInProtein> cache;
+	// ids of the ProteinSequences used, so that mappings calculated with
+	// different sequences are not mixed. They are compared by identity, and
+	// weakly referenced so that the cache doesn't keep them in memory
+	private final List<ProteinSequencesId> proteinSequencesIds = new ArrayList<ProteinSequencesId>();
+	private int lastProteinSequencesId = 0;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The {@link PTMInProtein}s of a PSM and the key built from them
+	 *
+	 */
+	public static class PTMsInProtein {
+		private final List<PTMInProtein> ptmsInProtein;
+		private final String ptmKey;
+
+		private PTMsInProtein(List<PTMInProtein> ptmsInProtein, String ptmKey) {
+			this.ptmsInProtein = ptmsInProtein;
+			this.ptmKey = ptmKey;
+		}
+
+		/**
+		 *
+		 * @return the {@link PTMInProtein}s sorted by protein accession and
+		 *         position
+		 */
+		public List<PTMInProtein> getPTMsInProtein() {
+			return ptmsInProtein;
+		}
+
+		public String getPTMKey() {
+			return ptmKey;
+		}
+	}
+
+	private static class ProteinSequencesId extends WeakReference<ProteinSequences> {
+		private final int id;
+
+		private ProteinSequencesId(ProteinSequences proteinSequences, int id) {
+			super(proteinSequences);
+			this.id = id;
+		}
+	}
+
+	/**
+	 *
+	 * @return the instance used by default by all the parsers, which keeps at
+	 *         most {@link #DEFAULT_MAX_SIZE} mappings
+	 */
+	public static synchronized PTMsInProteinCache getSharedInstance() {
+		if (sharedInstance == null) {
+			sharedInstance = new PTMsInProteinCache();
+		}
+		return sharedInstance;
+	}
+
+	public PTMsInProteinCache() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 *
+	 * @param maxSize
+	 *            maximum number of mappings kept
+	 */
+	public PTMsInProteinCache(int maxSize) {
+		cache = Collections.synchronizedMap(new LinkedHashMap<String, PTMsInProtein>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PTMsInProtein> eldest) {
+				return size() > maxSize;
+			}
+		});
+	}
+
+	/**
+	 * Gets the {@link PTMInProtein}s of the psm, calculating them with
+	 * getPTMsInProtein of the psm if they were not calculated before for the
+	 * same full sequence, set of proteins, uniprot version and protein
+	 * sequences.
+	 *
+	 * @param psm
+	 * @param uplr
+	 * @param uniprotVersion
+	 * @param proteinSequences
+	 * @return
+	 */
+	public PTMsInProtein getPTMsInProtein(QuantifiedPSMInterface psm, UniprotProteinLocalRetrieverInterface uplr,
+			String uniprotVersion, ProteinSequences proteinSequences) {
+		final String key = getKey(psm, uniprotVersion, proteinSequences);
+		PTMsInProtein ret = cache.get(key);
+		if (ret != null) {
+			hits.incrementAndGet();
+			return ret;
+		}
+		misses.incrementAndGet();
+		// sort a copy, since the list may belong to the psm
+		final List<PTMInProtein> ptmsInProtein = new ArrayList<PTMInProtein>(
+				psm.getPTMsInProtein(uplr, proteinSequences));
+		final String ptmKey = QuantUtils.getPTMKeyFromPTMsInProtein(ptmsInProtein);
+		ret = new PTMsInProtein(Collections.unmodifiableList(ptmsInProtein), ptmKey);
+		cache.put(key, ret);
+		return ret;
+	}
+
+	private String getKey(QuantifiedPSMInterface psm, String uniprotVersion, ProteinSequences proteinSequences) {
+		final List<String> accessions = new ArrayList<String>();
+		for (final QuantifiedProteinInterface protein : psm.getQuantifiedProteins()) {
+			accessions.add(protein.getAccession());
+		}
+		Collections.sort(accessions);
+		final StringBuilder sb = new StringBuilder(psm.getFullSequence()).append('|').append(uniprotVersion)
+				.append('|').append(getProteinSequencesId(proteinSequences));
+		for (final String accession : accessions) {
+			sb.append('|').append(accession);
+		}
+		return sb.toString();
+	}
+
+	private int getProteinSequencesId(ProteinSequences proteinSequences) {
+		if (proteinSequences == null) {
+			return 0;
+		}
+		synchronized (proteinSequencesIds) {
+			final Iterator<ProteinSequencesId> iterator = proteinSequencesIds.iterator();
+			while (iterator.hasNext()) {
+				final ProteinSequencesId proteinSequencesId = iterator.next();
+				final ProteinSequences referent = proteinSequencesId.get();
+				if (referent == proteinSequences) {
+					return proteinSequencesId.id;
+				}
+				if (referent == null) {
+					// its mappings are not reachable anymore, and will be
+					// discarded as the least recently used
+					iterator.remove();
+				}
+			}
+			// ids are not reused, so mappings of collected sequences are not
+			// mixed with the new ones
+			final int id = ++lastProteinSequencesId;
+			proteinSequencesIds.add(new ProteinSequencesId(proteinSequences, id));
+			return id;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 *
+	 * @return the ratio of hits over the total number of requests, or 0 if
+	 *         there was not any request
+	 */
+	public double getHitRate() {
+		final long h = hits.get();
+		final long total = h + misses.get();
+		if (total == 0) {
+			return 0.0;
+		}
+		return 1.0 * h / total;
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Clears the cache and its counters. The ids of the protein sequences are
+	 * kept, since they may be still used.
+	 */
+	public void clear() {
+		cache.clear();
+		hits.set(0);
+		misses.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return size() + " PTM mappings cached, " + hits.get() + " hits, " + misses.get() + " misses (hit rate "
+				+ Math.round(getHitRate() * 100) + "%)";
+	}
+}
@@ -0,0 +1,250 @@
+package edu.scripps.yates.census.read.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.census.read.model.StaticQuantMaps;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPeptideInterface;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.THashSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Merges the proteins whose accessions are equivalent (secondary accessions
+ * of the same primary accession, IPI accessions mapped to it...) in a single
+ * batch.<br>
+ * The merges are first proposed with
+ * {@link #proposeMerge(String, String)}, and the final equivalence classes of
+ * accessions are computed with a union-find, so that the cascaded merges are
+ * resolved before touching any protein. Then, {@link #merge(Map)} moves the
+ * PSMs and peptides of all the proteins of each class to a single protein just
+ * once, and updates the protein maps in bulk.
+ *
+ * @author salvador
+ *
+ */
+public class ProteinMergeEngine {
+	private final static Logger log = Logger.getLogger(ProteinMergeEngine.class);
+	private final StringDictionary accessions = new StringDictionary();
+	// parent of each accession id in the union-find
+	private final TIntArrayList parents = new TIntArrayList();
+	// accessions proposed to be merged into another one
+	private final TIntHashSet secondaryAccessions = new TIntHashSet();
+	private int numRenamedProteins;
+	private int numMergedProteins;
+
+	private int getId(String accession) {
+		final int id = accessions.encode(accession);
+		while (parents.size() <= id) {
+			parents.add(parents.size());
+		}
+		return id;
+	}
+
+	private int find(int id) {
+		while (parents.get(id) != id) {
+			// path halving
+			parents.set(id, parents.get(parents.get(id)));
+			id = parents.get(id);
+		}
+		return id;
+	}
+
+	/**
+	 * Proposes that the protein with that accession is merged into the one of
+	 * the primary accession
+	 *
+	 * @param accession
+	 * @param primaryAccession
+	 */
+	public void proposeMerge(String accession, String primaryAccession) {
+		final int id = getId(accession);
+		final int primaryId = getId(primaryAccession);
+		secondaryAccessions.add(id);
+		final int root = find(id);
+		final int primaryRoot = find(primaryId);
+		if (root != primaryRoot) {
+			parents.set(root, primaryRoot);
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of merges proposed
+	 */
+	public int getNumProposedMerges() {
+		return secondaryAccessions.size();
+	}
+
+	/**
+	 * Merges the proteins of each class of equivalent accessions into one
+	 * protein, that is stored in the map under the final primary accession of
+	 * the class. If there was already a protein with that accession, it
+	 * receives the PSMs and peptides of the others. Otherwise, one of the
+	 * proteins of the class takes the final primary accession.<br>
+	 * The proteins are also updated in {@link StaticQuantMaps#proteinMap}.
+	 *
+	 * @param proteinMap
+	 *            the proteins by accession
+	 */
+	public void merge(Map<String, QuantifiedProteinInterface> proteinMap) {
+		numRenamedProteins = 0;
+		numMergedProteins = 0;
+		final TIntObjectHashMap<TIntArrayList> classes = new TIntObjectHashMap<TIntArrayList>();
+		for (int id = 0; id < parents.size(); id++) {
+			final int root = find(id);
+			TIntArrayList members = classes.get(root);
+			if (members == null) {
+				members = new TIntArrayList();
+				classes.put(root, members);
+			}
+			members.add(id);
+		}
+		final Set<String> keysToRemove = new THashSet<String>();
+		final Map<String, QuantifiedProteinInterface> proteinsToPut = new THashMap<String, QuantifiedProteinInterface>();
+		final List<QuantifiedProteinInterface> itemsToAdd = new ArrayList<QuantifiedProteinInterface>();
+		for (final TIntArrayList members : classes.valueCollection()) {
+			if (members.size() < 2) {
+				continue;
+			}
+			final List<String> classAccessions = new ArrayList<String>(members.size());
+			for (int i = 0; i < members.size(); i++) {
+				classAccessions.add(accessions.decode(members.get(i)));
+			}
+			// sorted, so that the result does not depend on the order of the
+			// proposals
+			Collections.sort(classAccessions);
+			final String finalAccession = getFinalAccession(classAccessions);
+			final QuantifiedProteinInterface receiver = mergeClass(finalAccession, classAccessions, proteinMap);
+			if (receiver == null) {
+				continue;
+			}
+			for (final String accession : classAccessions) {
+				if (!accession.equals(finalAccession)) {
+					keysToRemove.add(accession);
+				}
+			}
+			proteinsToPut.put(finalAccession, receiver);
+			itemsToAdd.add(receiver);
+		}
+		for (final String key : keysToRemove) {
+			proteinMap.remove(key);
+		}
+		proteinMap.putAll(proteinsToPut);
+		StaticQuantMaps.proteinMap.removeKeys(keysToRemove);
+		StaticQuantMaps.proteinMap.addItems(itemsToAdd);
+		log.debug(numMergedProteins + " proteins merged and " + numRenamedProteins + " renamed in "
+				+ proteinsToPut.size() + " classes of equivalent accessions");
+	}
+
+	/**
+	 * The final accession of a class is the one that is not proposed to be
+	 * merged into another one
+	 *
+	 * @param classAccessions
+	 *            sorted
+	 * @return
+	 */
+	private String getFinalAccession(List<String> classAccessions) {
+		for (final String accession : classAccessions) {
+			if (!secondaryAccessions.contains(accessions.getId(accession))) {
+				return accession;
+			}
+		}
+		// a cycle of proposals
+		return classAccessions.get(0);
+	}
+
+	private QuantifiedProteinInterface mergeClass(String finalAccession, List<String> classAccessions,
+			Map<String, QuantifiedProteinInterface> proteinMap) {
+		// the same protein may be under different accessions
+		final Set<QuantifiedProteinInterface> proteins = Collections
+				.newSetFromMap(new IdentityHashMap<QuantifiedProteinInterface, Boolean>());
+		final List<QuantifiedProteinInterface> orderedProteins = new ArrayList<QuantifiedProteinInterface>();
+		for (final String accession : classAccessions) {
+			final QuantifiedProteinInterface protein = getProtein(accession, proteinMap);
+			if (protein != null && proteins.add(protein)) {
+				orderedProteins.add(protein);
+			}
+		}
+		if (orderedProteins.isEmpty()) {
+			return null;
+		}
+		QuantifiedProteinInterface receiver = getProtein(finalAccession, proteinMap);
+		if (receiver == null) {
+			receiver = orderedProteins.get(0);
+			receiver.setPrimaryAccession(finalAccession);
+			numRenamedProteins++;
+		}
+		proteins.remove(receiver);
+		if (proteins.isEmpty()) {
+			return receiver;
+		}
+		numMergedProteins += proteins.size();
+		// each PSM and peptide is moved just once, even if it was in several
+		// of the proteins
+		final Set<QuantifiedPSMInterface> psms = new THashSet<QuantifiedPSMInterface>();
+		final Set<QuantifiedPeptideInterface> peptides = new THashSet<QuantifiedPeptideInterface>();
+		for (final QuantifiedProteinInterface donor : proteins) {
+			psms.addAll(donor.getQuantifiedPSMs());
+			peptides.addAll(donor.getQuantifiedPeptides());
+		}
+		for (final QuantifiedPSMInterface psm : psms) {
+			receiver.addPSM(psm, true);
+			for (final QuantifiedProteinInterface donor : proteins) {
+				psm.removeQuantifiedProtein(donor);
+			}
+			psm.addQuantifiedProtein(receiver, true);
+		}
+		for (final QuantifiedPeptideInterface peptide : peptides) {
+			receiver.addPeptide(peptide, true);
+			for (final QuantifiedProteinInterface donor : proteins) {
+				peptide.removeQuantifiedProtein(donor);
+			}
+		}
+		return receiver;
+	}
+
+	private QuantifiedProteinInterface getProtein(String accession,
+			Map<String, QuantifiedProteinInterface> proteinMap) {
+		final QuantifiedProteinInterface protein = proteinMap.get(accession);
+		if (protein != null) {
+			return protein;
+		}
+		return StaticQuantMaps.proteinMap.getItem(accession);
+	}
+
+	/**
+	 *
+	 * @return number of proteins that were merged into others in the last
+	 *         {@link #merge(Map)}
+	 */
+	public int getNumMergedProteins() {
+		return numMergedProteins;
+	}
+
+	/**
+	 *
+	 * @return number of proteins that took a new primary accession in the
+	 *         last {@link #merge(Map)}
+	 */
+	public int getNumRenamedProteins() {
+		return numRenamedProteins;
+	}
+
+	public void clear() {
+		accessions.clear();
+		parents.clear();
+		secondaryAccessions.clear();
+	}
+}
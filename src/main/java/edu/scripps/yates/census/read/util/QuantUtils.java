@@ -370,7 +370,7 @@ public class QuantUtils {
 					.iterator();
 			while (proteinsIterator.hasNext()) {
 				final QuantifiedProteinInterface quantifiedProtein = proteinsIterator.next();
-				quantifiedProtein.getQuantifiedPSMs().remove(quantifiedPSM);
+				quantifiedProtein.removeQuantifiedPSM(quantifiedPSM);
 				proteinsIterator.remove();
 				final int numPSMs = quantifiedProtein.getQuantifiedPSMs().size();
 				if (quantifiedProtein.getAccession().equals("J3QTB2")) {
@@ -392,12 +392,12 @@ public class QuantUtils {
 		// remove this protein from its peptides
 		final Set<QuantifiedPeptideInterface> quantifiedPeptides = quantifiedProtein.getQuantifiedPeptides();
 		for (final QuantifiedPeptideInterface quantifiedPeptide : quantifiedPeptides) {
-			quantifiedPeptide.getQuantifiedProteins().remove(quantifiedProtein);
+			quantifiedPeptide.removeQuantifiedProtein(quantifiedProtein);
 		}
 		// remove the protein from its psms
 		final Set<QuantifiedPSMInterface> quantifiedPSMs = quantifiedProtein.getQuantifiedPSMs();
 		for (final QuantifiedPSMInterface quantifiedPSM : quantifiedPSMs) {
-			quantifiedPSM.getQuantifiedProteins().remove(quantifiedProtein);
+			quantifiedPSM.removeQuantifiedProtein(quantifiedProtein);
 		}
 
 	}
@@ -817,4 +817,34 @@ public class QuantUtils {
 		}
 		return ret;
 	}
+
+	/**
+	 * Builds a key from the {@link PTMInProtein}s, after sorting them by
+	 * protein accession and position
+	 *
+	 * @param ptmsInProtein
+	 *            this list is sorted
+	 * @return
+	 */
+	public static String getPTMKeyFromPTMsInProtein(List<PTMInProtein> ptmsInProtein) {
+		final StringBuilder sb = new StringBuilder();
+		Collections.sort(ptmsInProtein, new Comparator<PTMInProtein>() {
+
+			@Override
+			public int compare(PTMInProtein o1, PTMInProtein o2) {
+				final int ret = o1.getProteinACC().compareTo(o2.getProteinACC());
+				if (ret != 0) {
+					return ret;
+				}
+				return Integer.compare(o1.getPosition(), o2.getPosition());
+			}
+		});
+		for (final PTMInProtein ptmInProtein : ptmsInProtein) {
+			if (!"".equals(sb.toString())) {
+				sb.append(KEY_SEPARATOR);
+			}
+			sb.append(ptmInProtein.toString());
+		}
+		return sb.toString();
+	}
 }
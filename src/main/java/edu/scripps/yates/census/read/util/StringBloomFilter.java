@@ -0,0 +1,84 @@
+package edu.scripps.yates.census.read.util;
+
+import java.util.BitSet;
+
+/**
+ * Bloom filter of strings. It may say that a string was added when it was not
+ * (with a probability that depends on the expected number of strings and on
+ * the false positive rate provided), but never the opposite.
+ *
+ * @author salvador
+ *
+ */
+public class StringBloomFilter {
+	private final BitSet bits;
+	private final int numBits;
+	private final int numHashes;
+
+	/**
+	 *
+	 * @param expectedInsertions
+	 * @param falsePositiveRate
+	 *            between 0 and 1
+	 */
+	public StringBloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1) {
+			expectedInsertions = 1;
+		}
+		if (falsePositiveRate <= 0.0 || falsePositiveRate >= 1.0) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+		}
+		final double ln2 = Math.log(2);
+		numBits = (int) Math.max(64, Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2)));
+		numHashes = (int) Math.max(1, Math.round((double) numBits / expectedInsertions * ln2));
+		bits = new BitSet(numBits);
+	}
+
+	public void add(String value) {
+		final int hash1 = value.hashCode();
+		final int hash2 = secondHash(value);
+		for (int i = 0; i < numHashes; i++) {
+			bits.set(index(hash1, hash2, i));
+		}
+	}
+
+	/**
+	 *
+	 * @param value
+	 * @return false if the value was never added, true if it was probably
+	 *         added
+	 */
+	public boolean mightContain(String value) {
+		final int hash1 = value.hashCode();
+		final int hash2 = secondHash(value);
+		for (int i = 0; i < numHashes; i++) {
+			if (!bits.get(index(hash1, hash2, i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		bits.clear();
+	}
+
+	private int index(int hash1, int hash2, int i) {
+		final int combined = hash1 + i * hash2;
+		return (combined & Integer.MAX_VALUE) % numBits;
+	}
+
+	/**
+	 * FNV-1a hash of the characters, independent from
+	 * {@link String#hashCode()}
+	 */
+	private static int secondHash(String value) {
+		int hash = 0x811c9dc5;
+		for (int i = 0; i < value.length(); i++) {
+			hash ^= value.charAt(i);
+			hash *= 0x01000193;
+		}
+		// odd, so that the combined hashes cover all the bits
+		return hash | 1;
+	}
+}
@@ -0,0 +1,69 @@
+package edu.scripps.yates.census.read.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+/**
+ * Dictionary that encodes strings as consecutive integer ids, starting at 0,
+ * so that repeated values (sequences, raw files, accessions...) are stored
+ * just once.
+ *
+ * @author salvador
+ *
+ */
+public class StringDictionary {
+	public static final int NO_ID = -1;
+	private final TObjectIntHashMap<String> idsByValue = new TObjectIntHashMap<String>(16, 0.5f, NO_ID);
+	private final List<String> values = new ArrayList<String>();
+
+	/**
+	 * Gets the id of the value, adding it to the dictionary if it is not
+	 * already there
+	 *
+	 * @param value
+	 * @return
+	 */
+	public int encode(String value) {
+		if (value == null) {
+			return NO_ID;
+		}
+		int id = idsByValue.get(value);
+		if (id == NO_ID) {
+			id = values.size();
+			values.add(value);
+			idsByValue.put(value, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Gets the id of the value or {@link #NO_ID} if it is not in the dictionary
+	 *
+	 * @param value
+	 * @return
+	 */
+	public int getId(String value) {
+		if (value == null) {
+			return NO_ID;
+		}
+		return idsByValue.get(value);
+	}
+
+	public String decode(int id) {
+		if (id < 0 || id >= values.size()) {
+			return null;
+		}
+		return values.get(id);
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	public void clear() {
+		idsByValue.clear();
+		values.clear();
+	}
+}
@@ -0,0 +1,196 @@
+package edu.scripps.yates.census.read.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import edu.scripps.yates.utilities.annotations.UniprotProteinLocalRetrieverInterface;
+import edu.scripps.yates.utilities.annotations.uniprot.xml.Entry;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+/**
+ * Loads the uniprot annotations of the protein accessions in background
+ * threads while the files are still being parsed.<br>
+ * The accessions are queued with {@link #queue(String)} as the parsers find
+ * them, and every time a batch is complete it is loaded by the
+ * {@link UniprotProteinLocalRetrieverInterface} in a background thread. Then
+ * {@link #getAnnotatedProteins(Collection)} waits for the pending batches and
+ * only loads the accessions that were not queued before.<br>
+ * By default just one background thread is used, since the retriever may not
+ * be safe to be called from different threads at the same time.
+ *
+ * @author salvador
+ *
+ */
+public class UniprotAnnotationPrefetcher {
+	private final static Logger log = Logger.getLogger(UniprotAnnotationPrefetcher.class);
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final UniprotProteinLocalRetrieverInterface uplr;
+	private final String uniprotVersion;
+	private final boolean retrieveFastaIsoforms;
+	private final int batchSize;
+	private final ExecutorService executor;
+	private final Map<String, Entry> annotatedProteins = new ConcurrentHashMap<String, Entry>();
+	// all the accessions queued, loaded or not
+	private final Set<String> queuedAccessions = new THashSet<String>();
+	private Set<String> pendingBatch = new THashSet<String>();
+	private final List<Future<?>> batches = new ArrayList<Future<?>>();
+
+	public UniprotAnnotationPrefetcher(UniprotProteinLocalRetrieverInterface uplr, String uniprotVersion,
+			boolean retrieveFastaIsoforms) {
+		this(uplr, uniprotVersion, retrieveFastaIsoforms, DEFAULT_BATCH_SIZE, 1);
+	}
+
+	/**
+	 *
+	 * @param uplr
+	 * @param uniprotVersion
+	 * @param retrieveFastaIsoforms
+	 * @param batchSize
+	 *            number of accessions loaded by each call to the retriever
+	 * @param numThreads
+	 *            number of background threads loading batches at the same time
+	 */
+	public UniprotAnnotationPrefetcher(UniprotProteinLocalRetrieverInterface uplr, String uniprotVersion,
+			boolean retrieveFastaIsoforms, int batchSize, int numThreads) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("The batch size has to be positive");
+		}
+		this.uplr = uplr;
+		this.uniprotVersion = uniprotVersion;
+		this.retrieveFastaIsoforms = retrieveFastaIsoforms;
+		this.batchSize = batchSize;
+		executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+			final Thread thread = new Thread(runnable, "uniprot-prefetch-" + threadCount.incrementAndGet());
+			// it should not keep the JVM alive
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queues an accession to be loaded in background. Accessions already
+	 * queued are ignored.
+	 *
+	 * @param accession
+	 */
+	public synchronized void queue(String accession) {
+		if (accession == null || !queuedAccessions.add(accession)) {
+			return;
+		}
+		pendingBatch.add(accession);
+		if (pendingBatch.size() >= batchSize) {
+			submitPendingBatch();
+		}
+	}
+
+	/**
+	 * Starts loading the accessions queued that didn't complete a batch
+	 */
+	public synchronized void flush() {
+		if (!pendingBatch.isEmpty()) {
+			submitPendingBatch();
+		}
+	}
+
+	private void submitPendingBatch() {
+		final Set<String> batch = pendingBatch;
+		pendingBatch = new THashSet<String>();
+		batches.add(executor.submit(() -> {
+			try {
+				annotatedProteins
+						.putAll(uplr.getAnnotatedProteins(uniprotVersion, batch, retrieveFastaIsoforms, false));
+			} catch (final RuntimeException e) {
+				log.warn("Error prefetching uniprot annotations: " + e.getMessage());
+				// they will be loaded again when requested
+				synchronized (this) {
+					queuedAccessions.removeAll(batch);
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Gets the annotations of the accessions, waiting for the batches being
+	 * loaded in background and loading the accessions that were never queued.
+	 *
+	 * @param accessions
+	 * @return the annotations by accession, not including the accessions not
+	 *         found
+	 */
+	public Map<String, Entry> getAnnotatedProteins(Collection<String> accessions) {
+		flush();
+		waitForPendingBatches();
+		final Set<String> notQueued = new THashSet<String>();
+		synchronized (this) {
+			for (final String accession : accessions) {
+				if (queuedAccessions.add(accession)) {
+					notQueued.add(accession);
+				}
+			}
+		}
+		if (!notQueued.isEmpty()) {
+			log.debug(notQueued.size() + " accessions were not prefetched");
+			annotatedProteins
+					.putAll(uplr.getAnnotatedProteins(uniprotVersion, notQueued, retrieveFastaIsoforms, false));
+		}
+		final Map<String, Entry> ret = new THashMap<String, Entry>();
+		for (final String accession : accessions) {
+			final Entry entry = annotatedProteins.get(accession);
+			if (entry != null) {
+				ret.put(accession, entry);
+			}
+		}
+		return ret;
+	}
+
+	private void waitForPendingBatches() {
+		final List<Future<?>> toWait;
+		synchronized (this) {
+			toWait = new ArrayList<Future<?>>(batches);
+			batches.clear();
+		}
+		for (final Future<?> batch : toWait) {
+			try {
+				batch.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for uniprot annotations", e);
+			} catch (final ExecutionException e) {
+				throw new IllegalStateException("Error prefetching uniprot annotations", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return number of accessions queued so far
+	 */
+	public synchronized int getNumQueuedAccessions() {
+		return queuedAccessions.size();
+	}
+
+	public String getUniprotVersion() {
+		return uniprotVersion;
+	}
+
+	/**
+	 * Stops the background threads. Batches already submitted are completed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}
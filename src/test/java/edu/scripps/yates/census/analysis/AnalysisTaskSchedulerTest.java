@@ -0,0 +1,111 @@
+package edu.scripps.yates.census.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import edu.scripps.yates.census.analysis.AnalysisTaskScheduler.Task;
+
+public class AnalysisTaskSchedulerTest {
+
+	@Test
+	public void dependencies() throws Exception {
+		final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+		final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(4);
+		final Task<Integer> a = scheduler.addTask("a", 0, () -> {
+			Thread.sleep(50);
+			finished.add("a");
+			return 1;
+		});
+		final Task<Integer> b = scheduler.addTask("b", 0, () -> {
+			finished.add("b");
+			return 10;
+		});
+		final Task<Integer> sum = scheduler.addTask("sum", 0, () -> {
+			finished.add("sum");
+			return a.getResult() + b.getResult();
+		}, a, b, null);
+		assertFalse(sum.isFinished());
+		scheduler.run();
+		assertTrue(sum.isFinished());
+		assertEquals(Integer.valueOf(11), sum.getResult());
+		assertEquals("sum", finished.get(2));
+	}
+
+	@Test
+	public void independentTasksRunConcurrently() throws Exception {
+		final CountDownLatch latch = new CountDownLatch(2);
+		final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(2);
+		// each task waits for the other one to start
+		final Task<Boolean> a = scheduler.addTask("a", 0, () -> {
+			latch.countDown();
+			return latch.await(10, TimeUnit.SECONDS);
+		});
+		final Task<Boolean> b = scheduler.addTask("b", 0, () -> {
+			latch.countDown();
+			return latch.await(10, TimeUnit.SECONDS);
+		});
+		scheduler.run();
+		assertTrue(a.getResult());
+		assertTrue(b.getResult());
+	}
+
+	@Test
+	public void timeout() throws Exception {
+		final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(1);
+		scheduler.addTask("slow", 100, () -> {
+			Thread.sleep(10000);
+			return null;
+		});
+		try {
+			scheduler.run();
+			fail();
+		} catch (final ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	@Test
+	public void timeoutStartsWhenTheTaskStarts() throws Exception {
+		final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(1);
+		scheduler.addTask("slow", 0, () -> {
+			Thread.sleep(500);
+			return null;
+		});
+		// it waits for the slow task longer than its timeout
+		final Task<Integer> fast = scheduler.addTask("fast", 200, () -> 1);
+		scheduler.run();
+		assertEquals(Integer.valueOf(1), fast.getResult());
+	}
+
+	@Test(expected = IOException.class)
+	public void failure() throws Exception {
+		final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(2);
+		final Task<Object> failing = scheduler.addTask("failing", 0, () -> {
+			throw new IOException("error");
+		});
+		scheduler.addTask("dependent", 0, () -> {
+			fail("it should not run");
+			return null;
+		}, failing);
+		scheduler.run();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void resultOfATaskNotFinished() {
+		final AnalysisTaskScheduler scheduler = new AnalysisTaskScheduler(1);
+		scheduler.addTask("a", 0, () -> 1).getResult();
+	}
+}
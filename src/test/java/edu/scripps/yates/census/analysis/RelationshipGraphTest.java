@@ -0,0 +1,55 @@
+package edu.scripps.yates.census.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+public class RelationshipGraphTest {
+	private static final String NL = System.getProperty("line.separator");
+
+	@Test
+	public void write() throws IOException {
+		final RelationshipGraph graph = new RelationshipGraph();
+		graph.add("PROTEIN2", "_rep1_exp1", "PEPTIDEB", "_rep1_exp1");
+		graph.add("PROTEIN1", "_rep1_exp1", "PEPTIDEB", "_rep1_exp1");
+		graph.add("PROTEIN1", "_rep1_exp1", "PEPTIDEA", "_rep1_exp1");
+		// repeated
+		graph.add("PROTEIN1", "_rep1_exp1", "PEPTIDEA", "_rep1_exp1");
+		graph.add("PROTEIN1_rep2_exp1", "PEPTIDEA_rep2_exp1");
+		assertEquals(3, graph.size());
+
+		final StringWriter writer = new StringWriter();
+		graph.write("protein\tpeptide", writer);
+		assertEquals("#protein\tpeptide" + NL //
+				+ "PROTEIN1_rep1_exp1\tPEPTIDEA_rep1_exp1" + NL //
+				+ "PROTEIN1_rep1_exp1\tPEPTIDEB_rep1_exp1" + NL //
+				+ "PROTEIN1_rep2_exp1\tPEPTIDEA_rep2_exp1" + NL //
+				+ "PROTEIN2_rep1_exp1\tPEPTIDEB_rep1_exp1" + NL, writer.toString());
+	}
+
+	@Test
+	public void addAll() throws IOException {
+		final Map<String, Set<String>> map = new THashMap<String, Set<String>>();
+		// the suffix is only appended to the keys that don't end with it
+		map.put("PROTEIN1", new THashSet<String>(Arrays.asList("PEPTIDEA", "PEPTIDEB_exp1")));
+		map.put("PROTEIN2_exp1", new THashSet<String>(Arrays.asList("PEPTIDEB")));
+		final RelationshipGraph graph = new RelationshipGraph();
+		graph.addAll(map, "_exp1", "_exp1");
+
+		final StringWriter writer = new StringWriter();
+		graph.write("header", writer);
+		assertEquals("#header" + NL //
+				+ "PROTEIN1_exp1\tPEPTIDEA_exp1" + NL //
+				+ "PROTEIN1_exp1\tPEPTIDEB_exp1" + NL //
+				+ "PROTEIN2_exp1\tPEPTIDEB_exp1" + NL, writer.toString());
+	}
+}
@@ -0,0 +1,78 @@
+package edu.scripps.yates.census.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SanXotStepCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void getKey() throws IOException {
+		final File dataFile = folder.newFile("data.xls");
+		write(dataFile, "id\tX\tV\nA\t1.0\t2.0\n");
+		final SanXotStepCache cache = new SanXotStepCache(folder.getRoot());
+		final Object[] parameters = new Object[] { 1, "sanxot", null };
+		final String key = cache.getKey("integrate", parameters, dataFile, null);
+		assertEquals(key, cache.getKey("integrate", parameters, dataFile, null));
+		assertFalse(key.equals(cache.getKey("calibrate", parameters, dataFile, null)));
+		assertFalse(key.equals(cache.getKey("integrate", new Object[] { 2, "sanxot", null }, dataFile, null)));
+		assertFalse(key.equals(cache.getKey("integrate", parameters, null, dataFile)));
+
+		// the same content in another file has the same key
+		final File copy = folder.newFile("copy.xls");
+		write(copy, "id\tX\tV\nA\t1.0\t2.0\n");
+		assertEquals(key, cache.getKey("integrate", parameters, copy, null));
+
+		write(dataFile, "id\tX\tV\nA\t1.0\t3.25\n");
+		assertFalse(key.equals(cache.getKey("integrate", parameters, dataFile, null)));
+	}
+
+	@Test
+	public void isCached() throws IOException {
+		final File outputFile = folder.newFile("prefix_higherLevel.xls");
+		write(outputFile, "idsup\tXsup\tVsup\n");
+		final SanXotStepCache cache = new SanXotStepCache(folder.getRoot());
+		assertFalse(cache.isCached("prefix", "key", outputFile));
+		cache.put("prefix", "key", outputFile);
+		assertTrue(cache.isCached("prefix", "key", outputFile));
+		assertFalse(cache.isCached("prefix", "otherKey", outputFile));
+		assertFalse(cache.isCached("otherPrefix", "key", outputFile));
+		assertFalse(cache.isCached("prefix", "key", outputFile, null));
+
+		// stored in the working folder
+		assertTrue(new File(folder.getRoot(), SanXotStepCache.CACHE_FILE_NAME).isFile());
+		assertTrue(new SanXotStepCache(folder.getRoot()).isCached("prefix", "key", outputFile));
+
+		// the outputs were modified
+		write(outputFile, "idsup\tXsup\tVsup\nA\t1.0\t2.0\n");
+		assertFalse(cache.isCached("prefix", "key", outputFile));
+		outputFile.delete();
+		assertFalse(cache.isCached("prefix", "key", outputFile));
+	}
+
+	@Test
+	public void putWithoutOutputs() throws IOException {
+		final File outputFile = folder.newFile("prefix_higherLevel.xls");
+		final SanXotStepCache cache = new SanXotStepCache(folder.getRoot());
+		cache.put("prefix", "key", outputFile);
+		assertTrue(cache.isCached("prefix", "key", outputFile));
+		// the step didn't write its outputs, so the entry is removed
+		cache.put("prefix", "key", new File(folder.getRoot(), "missing.xls"));
+		assertFalse(cache.isCached("prefix", "key", outputFile));
+	}
+}
@@ -0,0 +1,73 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+public class JavaCalibrationEngineTest {
+
+	private static void addGroup(Map<String, SanxotQuantResult> data, Map<String, Set<String>> relationships,
+			String upperId, double deviation, double weight) {
+		data.put(upperId + "1", new SanxotQuantResult(upperId + "1", deviation, weight));
+		data.put(upperId + "2", new SanxotQuantResult(upperId + "2", -deviation, weight));
+		relationships.put(upperId, new THashSet<String>(Arrays.asList(upperId + "1", upperId + "2")));
+	}
+
+	/**
+	 * The squared deviations from the averages are 1/(2kV) with k=2, so the
+	 * calibration converges to k=2 and no variance
+	 */
+	@Test
+	public void calibrationOfK() {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		addGroup(data, relationships, "A", 0.5, 1.0);
+		addGroup(data, relationships, "B", 0.25, 4.0);
+		final CalibrationTable table = new JavaCalibrationEngine().calibrate(data, relationships, 100);
+		assertEquals(2.0, table.getK(), 1.0E-4);
+		assertEquals(0.0, table.getVariance(), 1.0E-6);
+		assertTrue(table.getNumIterations() > 1);
+		assertEquals(2.0, table.getCalibratedData().get("A1").getWeight(), 1.0E-3);
+		assertEquals(8.0, table.getCalibratedData().get("B2").getWeight(), 1.0E-3);
+		// the ratios are not changed
+		assertEquals(-0.25, table.getCalibratedData().get("B2").getLog2ratio(), 0.0);
+	}
+
+	/**
+	 * All the weights are equal, so only the variance is fitted. The
+	 * deviations of 1 with a weight of 1 need a variance of 1
+	 */
+	@Test
+	public void calibrationOfVariance() {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		addGroup(data, relationships, "A", 1.0, 1.0);
+		addGroup(data, relationships, "B", 1.0, 1.0);
+		final CalibrationTable table = new JavaCalibrationEngine().calibrate(data, relationships, 100);
+		assertEquals(1.0, table.getK(), 1.0E-6);
+		assertEquals(1.0, table.getVariance(), 1.0E-5);
+		assertEquals(0.5, table.getCalibratedData().get("A1").getWeight(), 1.0E-5);
+	}
+
+	@Test
+	public void maxIterations() {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		addGroup(data, relationships, "A", 1.0, 1.0);
+		addGroup(data, relationships, "B", 1.0, 1.0);
+		final CalibrationTable table = new JavaCalibrationEngine().calibrate(data, relationships, 1);
+		assertEquals(1, table.getNumIterations());
+		// first iteration: squared deviation of 1 plus 1/sum(W) = 0.5, minus
+		// 1/W = 1
+		assertEquals(0.5, table.getVariance(), 1.0E-10);
+	}
+}
@@ -0,0 +1,117 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.scripps.yates.census.analysis.wrappers.OutStatsLine;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+public class JavaIntegrationEngineTest {
+	private static final double DELTA = 1.0E-7;
+
+	private static void addData(Map<String, SanxotQuantResult> data, String id, double ratio, double weight) {
+		data.put(id, new SanxotQuantResult(id, ratio, weight));
+	}
+
+	private static void addRelationships(Map<String, Set<String>> relationships, String upperId,
+			String... lowerIds) {
+		relationships.put(upperId, new THashSet<String>(Arrays.asList(lowerIds)));
+	}
+
+	/**
+	 * Two groups of two elements with a deviation of 1 from their average and
+	 * a weight of 1, so that Z^2 = 2/(1+variance) and the fitted variance is 1,
+	 * and a group of one element, that is not used to fit the variance
+	 *
+	 * @return
+	 */
+	private static IntegrationTable integrate(Double forcedVariance) {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		addData(data, "a1", 1.0, 1.0);
+		addData(data, "a2", 3.0, 1.0);
+		addData(data, "b1", -1.0, 1.0);
+		addData(data, "b2", 1.0, 1.0);
+		addData(data, "c1", 5.0, 2.0);
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		addRelationships(relationships, "A", "a1", "a2");
+		addRelationships(relationships, "B", "b1", "b2");
+		addRelationships(relationships, "C", "c1");
+		return new JavaIntegrationEngine().integrate(data, relationships, forcedVariance);
+	}
+
+	@Test
+	public void fittedVariance() {
+		final IntegrationTable table = integrate(null);
+		assertFalse(table.isVarianceForced());
+		assertEquals(1.0, table.getVariance(), 1.0E-6);
+
+		final SanxotQuantResult a = table.getHigherLevel().get("A");
+		assertEquals(2.0, a.getLog2ratio(), DELTA);
+		assertEquals(1.0, a.getWeight(), 1.0E-6);
+		final SanxotQuantResult b = table.getHigherLevel().get("B");
+		assertEquals(0.0, b.getLog2ratio(), DELTA);
+		final SanxotQuantResult c = table.getHigherLevel().get("C");
+		assertEquals(5.0, c.getLog2ratio(), DELTA);
+		assertEquals(2.0 / 3.0, c.getWeight(), 1.0E-6);
+
+		// the ratios relative to the upper level, with and without the
+		// variance in the weights
+		assertEquals(-1.0, table.getLowerLevelV().get("a1").getLog2ratio(), DELTA);
+		assertEquals(1.0, table.getLowerLevelV().get("a1").getWeight(), DELTA);
+		assertEquals(-1.0, table.getLowerLevelW().get("a1").getLog2ratio(), DELTA);
+		assertEquals(0.5, table.getLowerLevelW().get("a1").getWeight(), 1.0E-6);
+
+		assertEquals(5, table.getStatistics().size());
+		for (final OutStatsLine line : table.getStatistics()) {
+			if (line.getIdinf().equals("c1")) {
+				assertTrue(line.getZ().isNaN());
+				assertTrue(line.getFDR().isNaN());
+			} else {
+				assertEquals(1.0, Math.abs(line.getZ()), 1.0E-6);
+				// all the p-values are the same, so the FDRs are the p-values
+				assertEquals(0.3173105, line.getFDR(), 1.0E-6);
+				assertEquals(2, line.getN());
+			}
+		}
+	}
+
+	@Test
+	public void forcedVariance() {
+		final IntegrationTable table = integrate(0.0);
+		assertTrue(table.isVarianceForced());
+		assertEquals(0.0, table.getVariance(), 0.0);
+		assertEquals(2.0, table.getHigherLevel().get("A").getWeight(), DELTA);
+		assertEquals(1.0, table.getLowerLevelW().get("a1").getWeight(), DELTA);
+		for (final OutStatsLine line : table.getStatistics()) {
+			if (!line.getIdinf().equals("c1")) {
+				assertEquals(Math.sqrt(2.0), Math.abs(line.getZ()), DELTA);
+				assertEquals(0.1572992, line.getFDR(), 1.0E-6);
+			}
+		}
+	}
+
+	@Test
+	public void integrationIntoASingleElement() {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		addData(data, "a1", 1.0, 1.0);
+		addData(data, "a2", 4.0, 2.0);
+		// not valid, so it is discarded
+		addData(data, "a3", Double.NaN, 1.0);
+		addData(data, "a4", 1.0, 0.0);
+		final IntegrationTable table = new JavaIntegrationEngine().integrate(data, null, 0.0);
+		assertEquals(1, table.getHigherLevel().size());
+		final SanxotQuantResult all = table.getHigherLevel().get(IntegrationGroup.ALL_ID);
+		assertEquals(3.0, all.getLog2ratio(), DELTA);
+		assertEquals(3.0, all.getWeight(), DELTA);
+		assertEquals(2, table.getLowerLevelV().size());
+	}
+}
@@ -0,0 +1,69 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.scripps.yates.census.analysis.wrappers.OutStatsLine;
+import edu.scripps.yates.census.analysis.wrappers.SanxotQuantResult;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.set.hash.THashSet;
+
+public class JavaOutlierRemovalEngineTest {
+
+	private static void addGroup(Map<String, SanxotQuantResult> data, Map<String, Set<String>> relationships,
+			String upperId, int size) {
+		final Set<String> lowerIds = new THashSet<String>();
+		for (int i = 0; i < size; i++) {
+			final String id = upperId + i;
+			data.put(id, new SanxotQuantResult(id, 0.01 * (i % 3 - 1), 100.0));
+			lowerIds.add(id);
+		}
+		relationships.put(upperId, lowerIds);
+	}
+
+	@Test
+	public void removeOutliers() {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		addGroup(data, relationships, "A", 10);
+		addGroup(data, relationships, "B", 10);
+		// an outlier in A, that also makes the other elements of A look like
+		// outliers until it is removed
+		data.put("outlier", new SanxotQuantResult("outlier", 5.0, 100.0));
+		relationships.get("A").add("outlier");
+		final List<OutStatsLine> statistics = new JavaIntegrationEngine().integrate(data, relationships, 0.0)
+				.getStatistics();
+
+		final OutlierRemovalTable table = new JavaOutlierRemovalEngine().removeOutliers(statistics, 0.0, 0.01);
+		assertEquals(1, table.getNumOutliers());
+		assertEquals(1, table.getOutliers().size());
+		assertTrue(table.getOutliers().get("A").contains("outlier"));
+		assertFalse(table.getRelationships().get("A").contains("outlier"));
+		assertEquals(10, table.getRelationships().get("A").size());
+		assertEquals(10, table.getRelationships().get("B").size());
+		// the outlier is removed in the first iteration, and the second one
+		// finds no more
+		assertEquals(2, table.getNumIterations());
+		assertEquals(21, table.getData().size());
+	}
+
+	@Test
+	public void noOutliers() {
+		final Map<String, SanxotQuantResult> data = new THashMap<String, SanxotQuantResult>();
+		final Map<String, Set<String>> relationships = new THashMap<String, Set<String>>();
+		addGroup(data, relationships, "A", 10);
+		final List<OutStatsLine> statistics = new JavaIntegrationEngine().integrate(data, relationships, 0.0)
+				.getStatistics();
+		final OutlierRemovalTable table = new JavaOutlierRemovalEngine().removeOutliers(statistics, 0.0, 0.01);
+		assertEquals(0, table.getNumOutliers());
+		assertEquals(1, table.getNumIterations());
+		assertEquals(10, table.getRelationships().get("A").size());
+	}
+}
@@ -0,0 +1,55 @@
+package edu.scripps.yates.census.analysis.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SanXotStatisticsTest {
+	private static final double DELTA = 1.0E-7;
+
+	@Test
+	public void erfc() {
+		assertEquals(1.0, SanXotStatistics.erfc(0.0), DELTA);
+		assertEquals(0.4795001222, SanXotStatistics.erfc(0.5), DELTA);
+		assertEquals(0.1572992071, SanXotStatistics.erfc(1.0), DELTA);
+		assertEquals(0.0046777350, SanXotStatistics.erfc(2.0), DELTA);
+		assertEquals(1.8427007929, SanXotStatistics.erfc(-1.0), DELTA);
+	}
+
+	@Test
+	public void twoSidedPValue() {
+		assertEquals(0.05, SanXotStatistics.getTwoSidedPValue(1.959963985), DELTA);
+		assertEquals(0.05, SanXotStatistics.getTwoSidedPValue(-1.959963985), DELTA);
+		assertEquals(1.0, SanXotStatistics.getTwoSidedPValue(0.0), DELTA);
+	}
+
+	@Test
+	public void benjaminiHochbergFDRs() {
+		final double[] fdrs = SanXotStatistics
+				.getBenjaminiHochbergFDRs(new double[] { 0.01, 0.04, 0.03, 0.005, Double.NaN });
+		assertEquals(0.02, fdrs[0], DELTA);
+		assertEquals(0.04, fdrs[1], DELTA);
+		assertEquals(0.04, fdrs[2], DELTA);
+		assertEquals(0.02, fdrs[3], DELTA);
+		assertTrue(Double.isNaN(fdrs[4]));
+	}
+
+	@Test
+	public void benjaminiHochbergFDRsAreMonotone() {
+		// 0.035*3/2 and 0.02*3/1 are higher than 0.04*3/3, so their FDRs are
+		// lowered to 0.04
+		final double[] fdrs = SanXotStatistics.getBenjaminiHochbergFDRs(new double[] { 0.04, 0.035, 0.02 });
+		assertEquals(0.04, fdrs[0], DELTA);
+		assertEquals(0.04, fdrs[1], DELTA);
+		assertEquals(0.04, fdrs[2], DELTA);
+	}
+
+	@Test
+	public void weightWithVariance() {
+		assertEquals(0.5, SanXotStatistics.getWeightWithVariance(1.0, 1.0), DELTA);
+		assertEquals(4.0, SanXotStatistics.getWeightWithVariance(4.0, 0.0), DELTA);
+		assertEquals(2.0, SanXotStatistics.getWeightedAverage(new double[] { 1.0, 4.0 }, new double[] { 2.0, 1.0 }),
+				DELTA);
+	}
+}
@@ -0,0 +1,84 @@
+package edu.scripps.yates.census.read.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class IonArenaTest {
+
+	@Test
+	public void addAndRead() {
+		// small chunks so that the ions are spread over several buffers
+		final IonArena arena = new IonArena(2);
+		final int[] records = new int[5];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = arena.add(i + 1, 100.5 * (i + 1), 1000.0 * (i + 1));
+		}
+		assertEquals(5, arena.size());
+		assertEquals(3 * 2 * 24, arena.getAllocatedBytes());
+		for (int i = 0; i < records.length; i++) {
+			assertEquals(i + 1, arena.getIonNumber(records[i]));
+			assertEquals(100.5 * (i + 1), arena.getMass(records[i]), 0.0);
+			assertEquals(1000.0 * (i + 1), arena.getIntensity(records[i]), 0.0);
+			assertFalse(arena.isSingleton(records[i]));
+			assertFalse(arena.isInRatio(records[i]));
+		}
+	}
+
+	@Test
+	public void flags() {
+		final IonArena arena = new IonArena(4);
+		final int record = arena.add(3, 300.0, 10.0);
+		arena.setSingleton(record, true);
+		arena.setInRatio(record, true);
+		assertTrue(arena.isSingleton(record));
+		assertTrue(arena.isInRatio(record));
+		arena.setSingleton(record, false);
+		assertFalse(arena.isSingleton(record));
+		assertTrue(arena.isInRatio(record));
+		// flags don't overwrite the ion
+		assertEquals(3, arena.getIonNumber(record));
+		assertEquals(300.0, arena.getMass(record), 0.0);
+		assertEquals(10.0, arena.getIntensity(record), 0.0);
+	}
+
+	@Test
+	public void freedRecordsAreReused() {
+		final IonArena arena = new IonArena(4);
+		final int first = arena.add(1, 100.0, 1.0);
+		arena.add(2, 200.0, 2.0);
+		arena.setSingleton(first, true);
+		arena.free(first);
+		assertEquals(1, arena.size());
+		final int reused = arena.add(5, 500.0, 5.0);
+		assertEquals(first, reused);
+		assertEquals(2, arena.size());
+		assertEquals(5, arena.getIonNumber(reused));
+		assertEquals(500.0, arena.getMass(reused), 0.0);
+		// flags of the removed ion are cleared
+		assertFalse(arena.isSingleton(reused));
+	}
+
+	@Test
+	public void release() {
+		final IonArena arena = new IonArena(4);
+		final int record = arena.add(1, 100.0, 1.0);
+		arena.release();
+		assertTrue(arena.isReleased());
+		assertEquals(0, arena.size());
+		assertEquals(0, arena.getAllocatedBytes());
+		try {
+			arena.getMass(record);
+			fail("released ions cannot be read");
+		} catch (final IllegalStateException e) {
+		}
+		try {
+			arena.add(2, 200.0, 2.0);
+			fail("no ions can be added to a released arena");
+		} catch (final IllegalStateException e) {
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package edu.scripps.yates.census.read.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class VersionedCacheTest {
+
+	@Test
+	public void validForTheModificationCount() {
+		final VersionedCache<String> cache = new VersionedCache<String>();
+		assertFalse(cache.isValid(0));
+		assertNull(cache.get());
+
+		final String value = "value";
+		assertSame(value, cache.set(value, 3));
+		assertTrue(cache.isValid(3));
+		assertFalse(cache.isValid(4));
+		assertSame(value, cache.get());
+
+		cache.set("other", 4);
+		assertFalse(cache.isValid(3));
+		assertTrue(cache.isValid(4));
+		assertEquals("other", cache.get());
+
+		cache.invalidate();
+		assertFalse(cache.isValid(4));
+		assertNull(cache.get());
+	}
+
+	@Test
+	public void concurrentReaders() throws Exception {
+		final VersionedCache<List<Integer>> cache = new VersionedCache<List<Integer>>();
+		final int modificationCount = 7;
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<List<Integer>>> futures = new ArrayList<Future<List<Integer>>>();
+			for (int i = 0; i < 100; i++) {
+				futures.add(executor.submit(new Callable<List<Integer>>() {
+					@Override
+					public List<Integer> call() throws Exception {
+						if (!cache.isValid(modificationCount)) {
+							final List<Integer> list = new ArrayList<Integer>();
+							for (int j = 0; j < 1000; j++) {
+								list.add(j);
+							}
+							cache.set(Collections.unmodifiableList(list), modificationCount);
+						}
+						return cache.get();
+					}
+				}));
+			}
+			// every reader sees a complete value
+			for (final Future<List<Integer>> future : futures) {
+				final List<Integer> list = future.get();
+				assertEquals(1000, list.size());
+				assertEquals(Integer.valueOf(999), list.get(999));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(cache.isValid(modificationCount));
+	}
+}
@@ -0,0 +1,93 @@
+package edu.scripps.yates.census.read.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.scripps.yates.census.read.util.AccessionResolutionTable.Resolution;
+
+public class AccessionResolutionTableTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void clearInstances() {
+		AccessionResolutionTable.clearInstances();
+	}
+
+	@Test
+	public void saveAndLoad() throws IOException {
+		final AccessionResolutionTable table = AccessionResolutionTable.getInstance(folder.getRoot(), "2019_01");
+		assertFalse(table.isModified());
+		table.put("P12345", "P12345", null);
+		table.put("Q99999", "P12345", null);
+		table.put("IPI00000001", "P12345", Arrays.asList("Q99999", "Q88888"));
+		// not found in uniprot
+		table.put("P00000", null, null);
+		assertTrue(table.isModified());
+		table.save();
+		assertFalse(table.isModified());
+		assertTrue(table.getFile().isFile());
+
+		AccessionResolutionTable.clearInstances();
+		final AccessionResolutionTable loaded = AccessionResolutionTable.getInstance(folder.getRoot(), "2019_01");
+		assertEquals("P12345", loaded.get("Q99999").getPrimaryAccession());
+		final Resolution ipiResolution = loaded.get("IPI00000001");
+		assertEquals("P12345", ipiResolution.getPrimaryAccession());
+		assertEquals(Arrays.asList("Q99999", "Q88888"), ipiResolution.getSecondaryAccessions());
+		final Resolution notFound = loaded.get("P00000");
+		assertNotNull(notFound);
+		assertNull(notFound.getPrimaryAccession());
+		assertTrue(notFound.getSecondaryAccessions().isEmpty());
+		assertFalse(loaded.contains("O11111"));
+	}
+
+	@Test
+	public void saveMergesWithTheLoadedResolutions() throws IOException {
+		final AccessionResolutionTable table = AccessionResolutionTable.getInstance(folder.getRoot(), null);
+		table.put("P12345", "P12345", null);
+		table.save();
+		table.put("Q99999", "P12345", null);
+		// the new resolution replaces the saved one
+		table.put("P12345", null, null);
+		table.save();
+
+		AccessionResolutionTable.clearInstances();
+		final AccessionResolutionTable loaded = AccessionResolutionTable.getInstance(folder.getRoot(), null);
+		assertEquals("P12345", loaded.get("Q99999").getPrimaryAccession());
+		assertNull(loaded.get("P12345").getPrimaryAccession());
+		// the temporary file was moved
+		assertEquals(1, folder.getRoot().listFiles().length);
+	}
+
+	@Test
+	public void tablePerUniprotVersion() throws IOException {
+		final AccessionResolutionTable table = AccessionResolutionTable.getInstance(folder.getRoot(), "2019_01");
+		table.put("P12345", "P12345", null);
+		table.save();
+		final AccessionResolutionTable otherVersion = AccessionResolutionTable.getInstance(folder.getRoot(),
+				"2020_01");
+		assertFalse(table.getFile().equals(otherVersion.getFile()));
+		assertFalse(otherVersion.contains("P12345"));
+		assertTrue(table == AccessionResolutionTable.getInstance(folder.getRoot(), "2019_01"));
+	}
+
+	@Test(expected = IOException.class)
+	public void notATable() throws IOException {
+		final File file = AccessionResolutionTable.getInstance(folder.getRoot(), "2019_01").getFile();
+		AccessionResolutionTable.clearInstances();
+		java.nio.file.Files.write(file.toPath(), "not a table".getBytes());
+		AccessionResolutionTable.getInstance(folder.getRoot(), "2019_01");
+	}
+}
@@ -0,0 +1,108 @@
+package edu.scripps.yates.census.read.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import gnu.trove.map.hash.THashMap;
+
+public class BestPSMSelectorTest {
+	/**
+	 * A psm with an id and the key of its chromatographic peak, which can be
+	 * changed
+	 */
+	private static class TestPSM {
+		private final String id;
+		private String peakKey;
+
+		private TestPSM(String id, String peakKey) {
+			this.id = id;
+			this.peakKey = peakKey;
+		}
+	}
+
+	private final List<TestPSM> removed = new ArrayList<TestPSM>();
+	private final BestPSMSelector<TestPSM> selector = new BestPSMSelector<TestPSM>(psm -> psm.peakKey,
+			psm -> psm.id, removed::add);
+
+	@Test
+	public void keepsTheBestPerPeak() {
+		final TestPSM psm1 = new TestPSM("1", "peakA");
+		final TestPSM psm2 = new TestPSM("2", "peakA");
+		final TestPSM psm3 = new TestPSM("3", "peakB");
+		assertTrue(selector.offer(psm1, 0.5, 2.0f));
+		// better regression factor
+		assertTrue(selector.offer(psm2, 0.9, 1.0f));
+		assertTrue(selector.offer(psm3, 0.1, 1.0f));
+		assertEquals(Arrays.asList(psm1), removed);
+		assertEquals(1, selector.getNumDiscardedPSMs());
+		// the same psm is kept when offered again
+		assertTrue(selector.offer(psm2, 0.9, 1.0f));
+		assertEquals(1, selector.getNumDiscardedPSMs());
+	}
+
+	@Test
+	public void xcorrIfNoRegressionFactor() {
+		final TestPSM psm1 = new TestPSM("1", "peakA");
+		final TestPSM psm2 = new TestPSM("2", "peakA");
+		assertTrue(selector.offer(psm1, Double.NaN, 3.0f));
+		assertFalse(selector.offer(psm2, 0.9, 2.0f));
+		// ties keep the current one
+		final TestPSM psm3 = new TestPSM("3", "peakA");
+		assertFalse(selector.offer(psm3, Double.NaN, null));
+		assertEquals(Arrays.asList(psm2, psm3), removed);
+	}
+
+	@Test
+	public void losingPSMCountedOnce() {
+		final TestPSM best = new TestPSM("best", "peakA");
+		assertTrue(selector.offer(best, 0.9, 1.0f));
+		// the same losing psm read under three protein groups, as a new
+		// object each time
+		for (int i = 0; i < 3; i++) {
+			assertFalse(selector.offer(new TestPSM("loser", "peakA"), 0.1, 1.0f));
+		}
+		assertEquals(3, removed.size());
+		assertEquals(1, selector.getNumDiscardedPSMs());
+	}
+
+	@Test
+	public void reconcile() {
+		final Map<String, TestPSM> psms = new THashMap<String, TestPSM>();
+		psms.put("1", new TestPSM("1", "PEPTIDE_Hraw_2"));
+		psms.put("2", new TestPSM("2", "PEPTIDE_raw_2"));
+		psms.put("3", new TestPSM("3", "OTHER_raw_2"));
+		assertTrue(selector.offer(psms.get("1"), 0.8, 1.0f));
+		assertTrue(selector.offer(psms.get("2"), 0.5, 1.0f));
+		assertTrue(selector.offer(psms.get("3"), 0.5, 1.0f));
+		assertEquals(0, selector.reconcile());
+
+		// a raw file name read later makes the first two share the peak
+		psms.get("1").peakKey = "PEPTIDE_raw_2";
+		assertEquals(1, selector.reconcile());
+		assertEquals(Arrays.asList(psms.get("2")), removed);
+		assertEquals(1, selector.getNumDiscardedPSMs());
+		// the kept one is still the best of its peak
+		assertFalse(selector.offer(new TestPSM("4", "PEPTIDE_raw_2"), 0.7, 1.0f));
+		assertEquals(0, selector.reconcile());
+		assertEquals(2, selector.getNumDiscardedPSMs());
+	}
+
+	@Test
+	public void clear() {
+		final TestPSM psm1 = new TestPSM("1", "peakA");
+		selector.offer(psm1, 0.9, 1.0f);
+		selector.offer(new TestPSM("2", "peakA"), 0.1, 1.0f);
+		selector.clear();
+		assertEquals(0, selector.getNumDiscardedPSMs());
+		// nothing to compare with after clearing
+		assertTrue(selector.offer(new TestPSM("2", "peakA"), 0.1, 1.0f));
+	}
+}
@@ -0,0 +1,105 @@
+package edu.scripps.yates.census.read.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexStoreException;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
+import gnu.trove.map.hash.THashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+public class CachedDBIndexTest {
+	private final Map<String, Set<IndexedProtein>> proteinsBySequence = new THashMap<String, Set<IndexedProtein>>();
+	// number of lookups of each sequence that reached the index
+	private final TObjectIntHashMap<String> lookups = new TObjectIntHashMap<String>();
+	private final DBIndexInterface index = createIndex();
+
+	/**
+	 * An index that only looks up proteins by peptide sequence, counting the
+	 * lookups
+	 */
+	private DBIndexInterface createIndex() {
+		proteinsBySequence.put("PEPTIDE", Collections.singleton(new IndexedProtein(">P1 protein 1", 0)));
+		proteinsBySequence.put("PEPTIDEK", Collections.singleton(new IndexedProtein(">P2 protein 2", 1)));
+		return (DBIndexInterface) Proxy.newProxyInstance(DBIndexInterface.class.getClassLoader(),
+				new Class<?>[] { DBIndexInterface.class }, (proxy, method, args) -> {
+					if ("getProteins".equals(method.getName()) && args[0] instanceof String) {
+						lookups.adjustOrPutValue((String) args[0], 1, 1);
+						return proteinsBySequence.get(args[0]);
+					}
+					if ("equals".equals(method.getName())) {
+						return proxy == args[0];
+					}
+					if ("hashCode".equals(method.getName())) {
+						return System.identityHashCode(proxy);
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+	}
+
+	@Test
+	public void cachesFoundAndMissingSequences() throws DBIndexStoreException {
+		final CachedDBIndex cache = new CachedDBIndex(index, 10);
+		final DBIndexInterface cachedIndex = cache.asDBIndex();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(proteinsBySequence.get("PEPTIDE"), cachedIndex.getProteins("PEPTIDE"));
+			assertTrue(cachedIndex.getProteins("MISSING").isEmpty());
+		}
+		assertEquals(1, lookups.get("PEPTIDE"));
+		assertEquals(1, lookups.get("MISSING"));
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMissingHits());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.getNumMissingSequences());
+	}
+
+	@Test
+	public void missingFilterDoesNotHideProteins() throws DBIndexStoreException {
+		// a small filter, so that it has false positives
+		final CachedDBIndex cache = new CachedDBIndex(index, 1);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(cache.getProteins("MISSING" + i).isEmpty());
+		}
+		assertEquals(proteinsBySequence.get("PEPTIDE"), cache.getProteins("PEPTIDE"));
+		assertEquals(proteinsBySequence.get("PEPTIDEK"), cache.getProteins("PEPTIDEK"));
+		assertEquals(100, cache.getNumMissingSequences());
+	}
+
+	@Test
+	public void capacity() throws DBIndexStoreException {
+		final CachedDBIndex cache = new CachedDBIndex(index, 2);
+		assertEquals(2, cache.getCapacity());
+		cache.getProteins("PEPTIDE");
+		cache.getProteins("PEPTIDEK");
+		assertEquals(2, cache.size());
+		// the least recently used is discarded
+		cache.setCapacity(1);
+		assertEquals(1, cache.size());
+		cache.getProteins("PEPTIDEK");
+		assertEquals(1, lookups.get("PEPTIDEK"));
+		cache.getProteins("PEPTIDE");
+		assertEquals(2, lookups.get("PEPTIDE"));
+	}
+
+	@Test
+	public void sharedInstancePerIndex() {
+		final CachedDBIndex cache = CachedDBIndex.getInstance(index);
+		assertSame(cache, CachedDBIndex.getInstance(index));
+		// the decorated index is not decorated again
+		assertSame(cache, CachedDBIndex.getInstance(cache.asDBIndex()));
+		assertEquals(CachedDBIndex.getDefaultCapacity(), cache.getCapacity());
+		assertNotSame(cache, CachedDBIndex.getInstance(createIndex()));
+		CachedDBIndex.removeInstance(cache.asDBIndex());
+		assertNotSame(cache, CachedDBIndex.getInstance(index));
+	}
+}
@@ -0,0 +1,63 @@
+package edu.scripps.yates.census.read.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexInterface;
+import edu.scripps.yates.utilities.fasta.dbindex.DBIndexStoreException;
+import edu.scripps.yates.utilities.fasta.dbindex.IndexedProtein;
+import gnu.trove.map.hash.THashMap;
+
+public class FastaPeptideIndexTest {
+
+	private static FastaPeptideIndex buildIndex() {
+		final Map<String, String> sequences = new THashMap<String, String>();
+		sequences.put(">P1", "MKPEPTIDEKAAAR");
+		sequences.put(">P2", "GGPEPTIDEKLL");
+		sequences.put(">P3", "MSTQ");
+		return FastaPeptideIndex.build(sequences, 3);
+	}
+
+	@Test
+	public void getProteins() {
+		final FastaPeptideIndex index = buildIndex();
+		assertEquals(3, index.getNumProteins());
+		assertEquals(2, index.getProteins("PEPTIDEK").size());
+		assertEquals(1, index.getProteins("AAAR").size());
+		// shorter than the k-mers
+		assertEquals(1, index.getProteins("ST").size());
+		assertTrue(index.getProteins("PEPTIDEX").isEmpty());
+		// not across proteins
+		assertTrue(index.getProteins("AARGG").isEmpty());
+	}
+
+	@Test
+	public void batchLookup() {
+		final FastaPeptideIndex index = buildIndex();
+		final Map<String, Set<IndexedProtein>> proteins = index
+				.getProteins(Arrays.asList("PEPTIDEK", "MSTQ", "MISSING", "PEPTIDEK"));
+		assertEquals(3, proteins.size());
+		assertEquals(index.getProteins("PEPTIDEK"), proteins.get("PEPTIDEK"));
+		assertEquals(index.getProteins("MSTQ"), proteins.get("MSTQ"));
+		assertTrue(proteins.get("MISSING").isEmpty());
+	}
+
+	@Test
+	public void asDBIndex() throws DBIndexStoreException {
+		final FastaPeptideIndex index = buildIndex();
+		final DBIndexInterface dbIndex = index.asDBIndex();
+		// the same instances of the proteins
+		assertEquals(index.getProteins("PEPTIDEK"), dbIndex.getProteins("PEPTIDEK"));
+		assertTrue(dbIndex.getProteins("MISSING").isEmpty());
+		// it can be decorated with the cache as any other index
+		final CachedDBIndex cache = CachedDBIndex.getInstance(dbIndex);
+		assertEquals(index.getProteins("MSTQ"), cache.asDBIndex().getProteins("MSTQ"));
+		assertEquals(1, cache.getMisses());
+	}
+}
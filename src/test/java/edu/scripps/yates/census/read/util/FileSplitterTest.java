@@ -0,0 +1,52 @@
+package edu.scripps.yates.census.read.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import gnu.trove.set.hash.THashSet;
+
+public class FileSplitterTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void getDataSetName() {
+		final Set<String> dataSetNames = new THashSet<String>(Arrays.asList("rep1_exp1", "exp1", "rep2_exp1"));
+		// the longest suffix
+		assertEquals("rep1_exp1", FileSplitter.getDataSetName("PEPTIDE_rep1_exp1", dataSetNames));
+		assertEquals("exp1", FileSplitter.getDataSetName("PEP_TIDE_rep3_exp1", dataSetNames));
+		assertEquals("rep2_exp1", FileSplitter.getDataSetName("P12345_rep2_exp1", dataSetNames));
+		assertNull(FileSplitter.getDataSetName("PEPTIDE_exp2", dataSetNames));
+		assertNull(FileSplitter.getDataSetName("PEPTIDE", dataSetNames));
+		// the suffix has to follow a '_'
+		assertNull(FileSplitter.getDataSetName("PEPTIDEexp1", dataSetNames));
+	}
+
+	@Test
+	public void splitFiles() throws IOException {
+		final File inputFile = folder.newFile("relat.xls");
+		Files.write(inputFile.toPath(),
+				Arrays.asList("#header", "P1_exp1\tPEP_exp1", "P1_exp2\tPEP_exp2", "P2\tPEPTIDE_exp2", "P3\tPEP3"),
+				StandardCharsets.UTF_8);
+		final Map<String, File> files = FileSplitter.splitFiles(inputFile, Arrays.asList("exp1", "exp2"));
+		assertEquals(2, files.size());
+		assertEquals(FileSplitter.getDataSetFile(inputFile, "exp1"), files.get("exp1"));
+		assertEquals(Arrays.asList("#header", "P1_exp1\tPEP_exp1"),
+				Files.readAllLines(files.get("exp1").toPath(), StandardCharsets.UTF_8));
+		// the dataSet of the second column is used if the first one has none
+		assertEquals(Arrays.asList("#header", "P1_exp2\tPEP_exp2", "P2\tPEPTIDE_exp2"),
+				Files.readAllLines(files.get("exp2").toPath(), StandardCharsets.UTF_8));
+	}
+}
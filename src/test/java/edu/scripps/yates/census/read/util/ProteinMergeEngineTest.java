@@ -0,0 +1,87 @@
+package edu.scripps.yates.census.read.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import edu.scripps.yates.census.read.model.QuantifiedPSM;
+import edu.scripps.yates.census.read.model.QuantifiedProtein;
+import edu.scripps.yates.census.read.model.StaticQuantMaps;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedPSMInterface;
+import edu.scripps.yates.census.read.model.interfaces.QuantifiedProteinInterface;
+import gnu.trove.map.hash.THashMap;
+
+public class ProteinMergeEngineTest {
+
+	@After
+	public void clearStaticMaps() {
+		StaticQuantMaps.clearInfo();
+	}
+
+	private static QuantifiedProteinInterface createProtein(String accession, QuantifiedPSMInterface psm,
+			Map<String, QuantifiedProteinInterface> proteinMap) {
+		final QuantifiedProteinInterface protein = new QuantifiedProtein(accession);
+		protein.addPSM(psm, true);
+		psm.addQuantifiedProtein(protein, true);
+		proteinMap.put(accession, protein);
+		return protein;
+	}
+
+	private static QuantifiedPSMInterface createPSM(String sequence, String scanNumber) {
+		return new QuantifiedPSM(sequence, null, scanNumber, 2, "run", false, true, true);
+	}
+
+	@Test
+	public void mergeIntoExistingProtein() {
+		final Map<String, QuantifiedProteinInterface> proteinMap = new THashMap<String, QuantifiedProteinInterface>();
+		final QuantifiedPSMInterface psm1 = createPSM("PEPTIDEK", "1");
+		final QuantifiedPSMInterface psm2 = createPSM("ANTHERPEPTIDEK", "2");
+		final QuantifiedProteinInterface primary = createProtein("P12345", psm1, proteinMap);
+		final QuantifiedProteinInterface secondary = createProtein("Q99999", psm2, proteinMap);
+
+		final ProteinMergeEngine mergeEngine = new ProteinMergeEngine();
+		mergeEngine.proposeMerge("Q99999", "P12345");
+		assertEquals(1, mergeEngine.getNumProposedMerges());
+		mergeEngine.merge(proteinMap);
+
+		assertEquals(1, mergeEngine.getNumMergedProteins());
+		assertEquals(0, mergeEngine.getNumRenamedProteins());
+		assertEquals(1, proteinMap.size());
+		assertSame(primary, proteinMap.get("P12345"));
+		assertTrue(primary.getQuantifiedPSMs().contains(psm1));
+		assertTrue(primary.getQuantifiedPSMs().contains(psm2));
+		// the PSM of the merged protein points to the protein that received it
+		assertTrue(psm2.getQuantifiedProteins().contains(primary));
+		assertFalse(psm2.getQuantifiedProteins().contains(secondary));
+	}
+
+	@Test
+	public void cascadedMerges() {
+		final Map<String, QuantifiedProteinInterface> proteinMap = new THashMap<String, QuantifiedProteinInterface>();
+		final QuantifiedPSMInterface psm1 = createPSM("PEPTIDEK", "1");
+		final QuantifiedPSMInterface psm2 = createPSM("ANTHERPEPTIDEK", "2");
+		createProtein("A00001", psm1, proteinMap);
+		createProtein("B00001", psm2, proteinMap);
+
+		final ProteinMergeEngine mergeEngine = new ProteinMergeEngine();
+		// A is merged into B, that is merged into C, that is not in the map
+		mergeEngine.proposeMerge("A00001", "B00001");
+		mergeEngine.proposeMerge("B00001", "C00001");
+		mergeEngine.merge(proteinMap);
+
+		assertEquals(1, proteinMap.size());
+		final QuantifiedProteinInterface receiver = proteinMap.get("C00001");
+		assertEquals("C00001", receiver.getAccession());
+		assertEquals(1, mergeEngine.getNumRenamedProteins());
+		assertEquals(1, mergeEngine.getNumMergedProteins());
+		assertEquals(2, receiver.getQuantifiedPSMs().size());
+		assertEquals(1, psm1.getQuantifiedProteins().size());
+		assertEquals(1, psm2.getQuantifiedProteins().size());
+	}
+}